@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares running every task as its own work on a
+ * {@link WorkManagerExecutorService} with running them in batches on a
+ * {@link WorkManagerBatchingExecutorService}.
+ * <p/>
+ * The executor parameter is <tt>task</tt> for the per-task executor and
+ * <tt>batch</tt> for the batching executor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchingExecutorBenchmark {
+
+    private static final int TASKS = 1000;
+
+    @Param({"task", "batch"})
+    public String executor;
+
+    @Param({"100"})
+    public int batchSize;
+
+    /**
+     * Time spent by the WorkManager in every schedule call, in nanoseconds.
+     */
+    @Param({"0", "20000"})
+    public long scheduleLatency;
+
+    private LatencyWorkManager workmanager;
+    private ExecutorService executorService;
+
+    @Setup
+    public void setUp() {
+        workmanager = new LatencyWorkManager(scheduleLatency);
+        if ("task".equals(executor)) {
+            executorService = new WorkManagerExecutorService(workmanager, "task");
+        } else {
+            executorService = new WorkManagerBatchingExecutorService(workmanager, "batch", batchSize, 0, 4);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+        workmanager.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TASKS)
+    public void throughput() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(TASKS);
+        Runnable task = new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        };
+        for (int i = 0; i < TASKS; i++) {
+            executorService.execute(task);
+        }
+        latch.await();
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import commonj.work.Work;
+import commonj.work.WorkItem;
+import commonj.work.WorkListener;
+
+/**
+ * In-JVM WorkManager stand-in for the benchmarks, which spins for a
+ * configurable latency in every schedule call before handing the work to a
+ * JDK thread, as a container WorkManager does when dispatching work.
+ */
+public class LatencyWorkManager extends ExecutorWorkManager {
+
+    private final long scheduleLatency;
+
+    /**
+     * @param scheduleLatency the time spent in every schedule call, in nanoseconds
+     */
+    public LatencyWorkManager(long scheduleLatency) {
+        this.scheduleLatency = scheduleLatency;
+    }
+
+    @Override
+    public WorkItem schedule(Work work, WorkListener workListener) throws IllegalArgumentException {
+        if (scheduleLatency > 0) {
+            long deadline = System.nanoTime() + scheduleLatency;
+            while (System.nanoTime() < deadline) {
+                // spin, parking is too coarse for latencies of a few microseconds
+            }
+        }
+        return super.schedule(work, workListener);
+    }
+
+    public long getScheduleLatency() {
+        return scheduleLatency;
+    }
+}
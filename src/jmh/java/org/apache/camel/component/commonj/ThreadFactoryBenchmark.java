@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of creating and starting a thread through the
+ * {@link WorkManagerThreadFactory}, with and without a WorkManager.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThreadFactoryBenchmark {
+
+    @Param({"false", "true"})
+    public boolean useWorkmanager;
+
+    /**
+     * Time spent by the WorkManager in every schedule call, in nanoseconds.
+     */
+    @Param({"0", "20000"})
+    public long scheduleLatency;
+
+    private LatencyWorkManager workmanager;
+    private ThreadFactory threadFactory;
+
+    @Setup
+    public void setUp() {
+        workmanager = new LatencyWorkManager(scheduleLatency);
+        threadFactory = new WorkManagerThreadFactory(new ThreadPoolFactoryBenchmark.BenchmarkThreadFactory(),
+                                                     useWorkmanager ? workmanager : null, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        workmanager.shutdown();
+    }
+
+    @Benchmark
+    public Thread newThread() {
+        return threadFactory.newThread(new CountDownLatchTask(null));
+    }
+
+    /**
+     * Creates and starts a thread, and waits until it has run.
+     */
+    @Benchmark
+    public void newThreadAndRun() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        threadFactory.newThread(new CountDownLatchTask(latch)).start();
+        latch.await();
+    }
+
+    private static final class CountDownLatchTask implements Runnable {
+        private final CountDownLatch latch;
+
+        private CountDownLatchTask(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        public void run() {
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.impl.DefaultThreadPoolFactory;
+import org.apache.camel.spi.ThreadPoolFactory;
+import org.apache.camel.spi.ThreadPoolProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the pools of the {@link WorkManagerThreadPoolFactory} with the
+ * ones of Camel's {@link DefaultThreadPoolFactory}.
+ * <p/>
+ * The factory parameter is <tt>default</tt> for the Camel factory,
+ * <tt>workmanager</tt> for the WorkManagerThreadPoolFactory with the default
+ * (thread wrapping) pool profile, and <tt>task</tt>, <tt>batch</tt> or
+ * <tt>shared</tt> for the corresponding pool type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThreadPoolFactoryBenchmark {
+
+    private static final int BATCH = 100;
+    private static final Runnable NOOP = new Runnable() {
+        public void run() {
+        }
+    };
+
+    @Param({"default", "workmanager", "task", "batch", "shared"})
+    public String factory;
+
+    /**
+     * Time spent by the WorkManager in every schedule call, in nanoseconds.
+     */
+    @Param({"0", "20000"})
+    public long scheduleLatency;
+
+    private LatencyWorkManager workmanager;
+    private ThreadPoolFactory threadPoolFactory;
+    private ExecutorService fixed;
+    private ExecutorService cached;
+    private ScheduledExecutorService scheduled;
+
+    @Setup
+    public void setUp() {
+        workmanager = new LatencyWorkManager(scheduleLatency);
+        if ("default".equals(factory)) {
+            threadPoolFactory = new DefaultThreadPoolFactory();
+        } else {
+            WorkManagerThreadPoolFactory wmFactory = new WorkManagerThreadPoolFactory();
+            wmFactory.setWorkmanager(workmanager);
+            if (!"workmanager".equals(factory)) {
+                WorkManagerPoolProfile poolProfile = new WorkManagerPoolProfile();
+                poolProfile.setPoolType(WorkManagerPoolType.valueOf(factory.toUpperCase()));
+                wmFactory.setDefaultPoolProfile(poolProfile);
+            }
+            threadPoolFactory = wmFactory;
+        }
+        ThreadFactory threadFactory = new BenchmarkThreadFactory();
+        fixed = threadPoolFactory.newThreadPool(newProfile("fixed", 10, 10, 10000), threadFactory);
+        cached = threadPoolFactory.newCachedThreadPool(threadFactory);
+        scheduled = threadPoolFactory.newScheduledThreadPool(newProfile("scheduled", 10, 10, 100000), threadFactory);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        fixed.shutdownNow();
+        cached.shutdownNow();
+        scheduled.shutdownNow();
+        if (threadPoolFactory instanceof WorkManagerThreadPoolFactory) {
+            ((WorkManagerThreadPoolFactory) threadPoolFactory).shutdown();
+        }
+        workmanager.shutdown();
+    }
+
+    /**
+     * Time from submitting a task to a fixed pool until its result is available.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object submitLatency() throws Exception {
+        return fixed.submit(NOOP).get();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void fixedThroughput() throws InterruptedException {
+        runBatch(fixed);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void cachedThroughput() throws InterruptedException {
+        runBatch(cached);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void scheduledThroughput() throws InterruptedException {
+        runBatch(scheduled);
+    }
+
+    /**
+     * Schedules a delayed task and cancels it again, which is what timeouts
+     * and redelivery do for almost every exchange.
+     */
+    @Benchmark
+    public boolean scheduledChurn() {
+        ScheduledFuture<?> future = scheduled.schedule(NOOP, 1, TimeUnit.HOURS);
+        return future.cancel(false);
+    }
+
+    private static void runBatch(ExecutorService executor) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(BATCH);
+        Runnable task = new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        };
+        for (int i = 0; i < BATCH; i++) {
+            executor.execute(task);
+        }
+        latch.await();
+    }
+
+    private static ThreadPoolProfile newProfile(String id, int poolSize, int maxPoolSize, int maxQueueSize) {
+        ThreadPoolProfile profile = new ThreadPoolProfile(id);
+        profile.setPoolSize(poolSize);
+        profile.setMaxPoolSize(maxPoolSize);
+        profile.setMaxQueueSize(maxQueueSize);
+        profile.setKeepAliveTime(60L);
+        profile.setTimeUnit(TimeUnit.SECONDS);
+        return profile;
+    }
+
+    static final class BenchmarkThreadFactory implements ThreadFactory {
+        public Thread newThread(Runnable runnable) {
+            Thread answer = new Thread(runnable, "benchmark");
+            answer.setDaemon(true);
+            return answer;
+        }
+    }
+}
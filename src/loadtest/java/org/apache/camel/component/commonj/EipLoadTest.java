@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.processor.aggregate.UseLatestAggregationStrategy;
+import org.junit.Test;
+
+/**
+ * Load test of the multicast, splitter and aggregator running on the thread
+ * pools of the WorkManager.
+ *
+ * @version
+ */
+public class EipLoadTest extends LoadTestSupport {
+
+    @Test
+    public void testMulticast() throws Exception {
+        runLoad("multicast", "direct:multicast", "Hello World", 3);
+    }
+
+    @Test
+    public void testSplitter() throws Exception {
+        runLoad("splitter", "direct:splitter", "a,b,c,d,e,f,g,h,i,j", 10);
+    }
+
+    @Test
+    public void testAggregator() throws Exception {
+        runLoad("aggregator", "direct:aggregator", "Hello World", 0.1);
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:multicast").multicast().parallelProcessing().to("direct:a", "direct:b", "direct:c");
+
+                from("direct:a").process(statistics);
+                from("direct:b").process(statistics);
+                from("direct:c").process(statistics);
+
+                from("direct:splitter").split(body().tokenize(",")).parallelProcessing().process(statistics);
+
+                from("direct:aggregator").aggregate(constant(true), new UseLatestAggregationStrategy()).completionSize(10).completionTimeout(1000)
+                    .parallelProcessing().process(statistics);
+            }
+        };
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+
+/**
+ * Records the latency of the exchanges reaching the end of a route, from the
+ * time in nanoseconds in their {@link #SENT} header.
+ */
+public class LoadStatistics implements Processor {
+
+    public static final String SENT = "LoadTestSent";
+
+    private final WorkLatencyHistogram latency = new WorkLatencyHistogram();
+
+    public void process(Exchange exchange) throws Exception {
+        Long sent = exchange.getIn().getHeader(SENT, Long.class);
+        latency.record(sent != null ? System.nanoTime() - sent : 0);
+    }
+
+    /**
+     * Gets a processor setting the {@link #SENT} header, for the routes which
+     * create their exchanges themselves.
+     */
+    public Processor stamp() {
+        return new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                exchange.getIn().setHeader(SENT, System.nanoTime());
+            }
+        };
+    }
+
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    public WorkLatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Waits until the expected number of exchanges was recorded, returns
+     * whether it was.
+     */
+    public boolean await(long expected, long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (latency.getCount() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return latency.getCount() >= expected;
+    }
+
+    public void reset() {
+        latency.reset();
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Assert;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.After;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class of the load tests, which run routes on the thread pools of a
+ * {@link WorkManagerThreadPoolFactory} backed by a
+ * {@link SimulatedWorkManager}, and fail when the throughput, the 99th
+ * percentile latency or the number of rejections regress past a threshold.
+ * <p/>
+ * The load and the thresholds are set by system properties, which may be set
+ * for a single test class by putting its simple name after
+ * <tt>loadtest.</tt>, like <tt>loadtest.EipLoadTest.minThroughput</tt>:
+ * <ul>
+ * <li>loadtest.duration - measured time in milliseconds, default 10000</li>
+ * <li>loadtest.warmup - time in milliseconds before measuring, default 2000</li>
+ * <li>loadtest.producers - threads sending the messages, default 4</li>
+ * <li>loadtest.wm.maxThreads - threads of the WorkManager, default 20</li>
+ * <li>loadtest.wm.maxQueueSize - works waiting for a WorkManager thread, -1 for no limit</li>
+ * <li>loadtest.wm.scheduleLatency - time of a schedule call in microseconds, default 0</li>
+ * <li>loadtest.minThroughput - minimum exchanges per second, default 100</li>
+ * <li>loadtest.maxP99Latency - maximum 99th percentile latency in milliseconds, default 1000</li>
+ * <li>loadtest.maxRejected - maximum failed sends and rejected works, default 0</li>
+ * </ul>
+ */
+public abstract class LoadTestSupport extends CamelTestSupport {
+    private static final Logger LOG = LoggerFactory.getLogger(LoadTestSupport.class);
+
+    protected final LoadStatistics statistics = new LoadStatistics();
+    protected SimulatedWorkManager workmanager;
+    protected WorkManagerThreadPoolFactory threadPoolFactory;
+    private final AtomicLong failed = new AtomicLong();
+
+    @Override
+    protected CamelContext createCamelContext() throws Exception {
+        CamelContext context = super.createCamelContext();
+        workmanager = new SimulatedWorkManager("loadtest", (int)getProperty("wm.maxThreads", 20), (int)getProperty("wm.maxQueueSize", -1),
+                                               getProperty("wm.scheduleLatency", 0));
+        threadPoolFactory = new WorkManagerThreadPoolFactory();
+        threadPoolFactory.setWorkmanager(workmanager);
+        context.getExecutorServiceManager().setThreadPoolFactory(threadPoolFactory);
+        return context;
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+        threadPoolFactory.shutdown();
+        workmanager.shutdown();
+    }
+
+    /**
+     * Sends messages to the endpoint from the producer threads, first to warm
+     * up and then for the measured duration, waits until the routes recorded
+     * the expected exchanges and checks the numbers against the thresholds.
+     *
+     * @param exchangesPerMessage the number of exchanges a message records,
+     *            which is less than one when messages are aggregated
+     */
+    protected LoadResult runLoad(String name, String uri, Object body, double exchangesPerMessage) throws Exception {
+        send(uri, body, getProperty("warmup", 2000));
+        reset();
+        long start = System.nanoTime();
+        long sent = send(uri, body, getProperty("duration", 10000));
+        long expected = (long)(sent * exchangesPerMessage);
+        if (!statistics.await(expected, 30000)) {
+            LOG.warn("{} recorded {} of {} exchanges", new Object[] {name, statistics.getCount(), expected});
+        }
+        return check(new LoadResult(name, statistics, workmanager, failed.get(), System.nanoTime() - start));
+    }
+
+    /**
+     * Measures the routes which create their exchanges themselves, like timer
+     * routes, and checks the numbers against the thresholds.
+     */
+    protected LoadResult measureLoad(String name) throws Exception {
+        Thread.sleep(getProperty("warmup", 2000));
+        reset();
+        long start = System.nanoTime();
+        Thread.sleep(getProperty("duration", 10000));
+        return check(new LoadResult(name, statistics, workmanager, failed.get(), System.nanoTime() - start));
+    }
+
+    private void reset() {
+        statistics.reset();
+        workmanager.reset();
+        failed.set(0);
+    }
+
+    private long send(final String uri, final Object body, long duration) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+        final AtomicLong sent = new AtomicLong();
+        int producers = (int)getProperty("producers", 4);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        for (int i = 0; i < producers; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    while (System.nanoTime() < deadline) {
+                        try {
+                            template.sendBodyAndHeader(uri, body, LoadStatistics.SENT, System.nanoTime());
+                            sent.incrementAndGet();
+                        } catch (CamelExecutionException e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(duration + 60000, TimeUnit.MILLISECONDS);
+        return sent.get();
+    }
+
+    private LoadResult check(LoadResult result) {
+        LOG.info("{}", result);
+        long minThroughput = getProperty("minThroughput", 100);
+        long maxP99Latency = getProperty("maxP99Latency", 1000);
+        long maxRejected = getProperty("maxRejected", 0);
+        Assert.assertTrue(result.getName() + " throughput " + result.getThroughput() + "/s is below " + minThroughput + "/s",
+                          result.getThroughput() >= minThroughput);
+        Assert.assertTrue(result.getName() + " p99 latency " + result.getP99Latency() + " ms is above " + maxP99Latency + " ms",
+                          result.getP99Latency() <= maxP99Latency);
+        Assert.assertTrue(result.getName() + " rejected " + result.getRejected() + " is above " + maxRejected, result.getRejected() <= maxRejected);
+        return result;
+    }
+
+    /**
+     * Gets the system property <tt>loadtest.&lt;simple class name&gt;.key</tt>,
+     * or else <tt>loadtest.key</tt>.
+     */
+    protected long getProperty(String key, long defaultValue) {
+        String value = System.getProperty("loadtest." + getClass().getSimpleName() + "." + key);
+        if (value == null || value.trim().length() == 0) {
+            value = System.getProperty("loadtest." + key);
+        }
+        return value == null || value.trim().length() == 0 ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * The numbers of a load test run.
+     */
+    public static final class LoadResult {
+        private final String name;
+        private final long count;
+        private final double throughput;
+        private final double p50Latency;
+        private final double p99Latency;
+        private final double maxLatency;
+        private final double p99StartDelay;
+        private final int peakSlots;
+        private final double meanSlots;
+        private final long rejected;
+
+        private LoadResult(String name, LoadStatistics statistics, SimulatedWorkManager workmanager, long failed, long elapsed) {
+            this.name = name;
+            this.count = statistics.getCount();
+            this.throughput = count * 1000000000.0 / Math.max(1, elapsed);
+            this.p50Latency = toMillis(statistics.getLatency().getValueAtPercentile(50));
+            this.p99Latency = toMillis(statistics.getLatency().getValueAtPercentile(99));
+            this.maxLatency = toMillis(statistics.getLatency().getMax());
+            this.p99StartDelay = toMillis(workmanager.getStartDelay().getValueAtPercentile(99));
+            this.peakSlots = workmanager.getPeakBusyThreads();
+            this.meanSlots = workmanager.getMeanBusyThreads();
+            this.rejected = failed + workmanager.getRejectedCount();
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1000000.0;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the exchanges per second.
+         */
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public double getP50Latency() {
+            return p50Latency;
+        }
+
+        /**
+         * Gets the 99th percentile latency in milliseconds.
+         */
+        public double getP99Latency() {
+            return p99Latency;
+        }
+
+        public double getMaxLatency() {
+            return maxLatency;
+        }
+
+        /**
+         * Gets the 99th percentile of the time the works waited for a
+         * WorkManager thread, in milliseconds.
+         */
+        public double getP99StartDelay() {
+            return p99StartDelay;
+        }
+
+        public int getPeakSlots() {
+            return peakSlots;
+        }
+
+        public double getMeanSlots() {
+            return meanSlots;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public String toString() {
+            return String.format("%s: %d exchanges, %.0f/s, latency p50=%.2f ms p99=%.2f ms max=%.2f ms, WorkManager slots peak=%d mean=%.1f, "
+                                 + "start delay p99=%.2f ms, rejected=%d", name, count, throughput, p50Latency, p99Latency, maxLatency, peakSlots,
+                                 meanSlots, p99StartDelay, rejected);
+        }
+    }
+}
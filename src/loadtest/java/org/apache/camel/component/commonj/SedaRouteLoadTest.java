@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.junit.Test;
+
+/**
+ * Load test of the timer and seda routes of CamelContextTest.xml.
+ *
+ * @version
+ */
+public class SedaRouteLoadTest extends LoadTestSupport {
+
+    @Test
+    public void testSeda() throws Exception {
+        runLoad("seda", "seda:runtestnow", "Hello World", 1);
+    }
+
+    @Test
+    public void testTimerToSeda() throws Exception {
+        context.startRoute("timer");
+        measureLoad("timer to seda");
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("timer://LoadTimer?fixedRate=true&period=1").routeId("timer").noAutoStartup().process(statistics.stamp()).to("seda:runtestnow");
+
+                from("seda:runtestnow?concurrentConsumers=10").routeId("seda").process(statistics);
+            }
+        };
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkItem;
+import commonj.work.WorkListener;
+
+/**
+ * WorkManager stand-in for the load tests, which is constrained like the
+ * WorkManager of a container.
+ * <p/>
+ * It is a {@link LocalWorkManager} running at most maxThreads works at once,
+ * daemon works included, as the pool threads of Camel run as daemon works.
+ * The other works wait in a queue of maxQueueSize works, 0 or -1 for no
+ * limit, and are rejected through their {@link WorkListener} when it is full.
+ * Every schedule call takes scheduleLatency microseconds, as a container does
+ * when dispatching work. The number of busy threads is integrated over time
+ * for the mean slot usage.
+ */
+public class SimulatedWorkManager extends LocalWorkManager {
+
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final WorkLatencyHistogram startDelay = new WorkLatencyHistogram();
+    private int busy;
+    private int peakBusy;
+    private long busyTime;
+    private long lastChange = System.nanoTime();
+    private long since = lastChange;
+
+    /**
+     * @param maxThreads the maximum number of works running at once
+     * @param maxQueueSize the maximum number of works waiting for a thread, 0
+     *            or -1 for no limit
+     * @param scheduleLatency the time spent in every schedule call, in microseconds
+     */
+    public SimulatedWorkManager(String name, int maxThreads, int maxQueueSize, long scheduleLatency) {
+        super(name, maxThreads);
+        setMaxQueueSize(maxQueueSize);
+        setScheduleLatency(scheduleLatency);
+        setPoolDaemonWork(true);
+    }
+
+    public WorkItem schedule(Work work, WorkListener workListener) throws IllegalArgumentException {
+        scheduled.incrementAndGet();
+        return super.schedule(work, new MeasuringWorkListener(workListener));
+    }
+
+    private synchronized void changeBusy(int delta) {
+        long now = System.nanoTime();
+        busyTime += busy * (now - lastChange);
+        lastChange = now;
+        busy += delta;
+        peakBusy = Math.max(peakBusy, busy);
+    }
+
+    public long getScheduledCount() {
+        return scheduled.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public synchronized int getBusyThreads() {
+        return busy;
+    }
+
+    public synchronized int getPeakBusyThreads() {
+        return peakBusy;
+    }
+
+    /**
+     * Gets the mean number of busy threads since the last reset.
+     */
+    public synchronized double getMeanBusyThreads() {
+        long now = System.nanoTime();
+        long total = busyTime + busy * (now - lastChange);
+        return now > since ? (double)total / (now - since) : busy;
+    }
+
+    /**
+     * Gets the times the works waited for a thread.
+     */
+    public WorkLatencyHistogram getStartDelay() {
+        return startDelay;
+    }
+
+    /**
+     * Restarts the statistics, the works running now are counted as busy.
+     */
+    public synchronized void reset() {
+        long now = System.nanoTime();
+        busyTime = 0;
+        lastChange = now;
+        since = now;
+        peakBusy = busy;
+        scheduled.set(0);
+        rejected.set(0);
+        startDelay.reset();
+    }
+
+    public String toString() {
+        return "SimulatedWorkManager[" + getName() + ", maxThreads=" + getMaxThreads() + ", busy=" + getBusyThreads() + "]";
+    }
+
+    /**
+     * Records the events of a single work and passes them on to the listener
+     * of the work, if any.
+     */
+    private final class MeasuringWorkListener implements WorkListener {
+        private final WorkListener listener;
+        private volatile long accepted = System.nanoTime();
+        private volatile boolean started;
+
+        private MeasuringWorkListener(WorkListener listener) {
+            this.listener = listener;
+        }
+
+        public void workAccepted(WorkEvent event) {
+            accepted = System.nanoTime();
+            if (listener != null) {
+                listener.workAccepted(event);
+            }
+        }
+
+        public void workRejected(WorkEvent event) {
+            rejected.incrementAndGet();
+            if (listener != null) {
+                listener.workRejected(event);
+            }
+        }
+
+        public void workStarted(WorkEvent event) {
+            startDelay.record(System.nanoTime() - accepted);
+            started = true;
+            changeBusy(1);
+            if (listener != null) {
+                listener.workStarted(event);
+            }
+        }
+
+        public void workCompleted(WorkEvent event) {
+            if (started) {
+                changeBusy(-1);
+            }
+            if (listener != null) {
+                listener.workCompleted(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedResource;
+
+/**
+ * Rejection policy which blocks the caller until the task fits in the queue
+ * of the pool, up to a timeout after which the task is rejected. Unlike the
+ * caller runs policy the caller never runs the task itself, so a consumer or
+ * timer thread is slowed down to the pace of the pool instead of being held
+ * by a long running task.
+ */
+@ManagedResource(description = "Blocking offer rejection policy")
+public class BlockingOfferRejectionPolicy extends WorkManagerRejectionPolicy {
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong blockedTime = new AtomicLong();
+    private long timeout = 1000;
+
+    public BlockingOfferRejectionPolicy() {
+    }
+
+    public BlockingOfferRejectionPolicy(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            reject(runnable, executor);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean accepted;
+        try {
+            accepted = executor.getQueue().offer(runnable, timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        blockedTime.addAndGet(System.nanoTime() - start);
+        if (accepted && executor.isShutdown() && executor.getQueue().remove(runnable)) {
+            // the pool was shut down while waiting, and the task was not taken
+            accepted = false;
+        }
+        if (accepted) {
+            acceptedCount.incrementAndGet();
+        } else {
+            reject(runnable, executor);
+        }
+    }
+
+    @ManagedAttribute(description = "Number of tasks queued after blocking")
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    @ManagedAttribute(description = "Total time callers were blocked in milliseconds")
+    public long getBlockedTime() {
+        return TimeUnit.NANOSECONDS.toMillis(blockedTime.get());
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        acceptedCount.set(0);
+        blockedTime.set(0);
+    }
+
+    @ManagedAttribute(description = "Timeout in milliseconds")
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds to block the caller, default is
+     * 1000.
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public String toString() {
+        return "BlockingOfferRejectionPolicy[timeout=" + timeout + "ms]";
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+/**
+ * Propagates the context class loader, which the WorkManager threads of an
+ * application server do not have for the application of the submitting
+ * thread.
+ */
+public class ClassLoaderContextPropagator implements WorkManagerContextPropagator {
+
+    public Object capture() {
+        return Thread.currentThread().getContextClassLoader();
+    }
+
+    public Object restore(Object snapshot) {
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        if (snapshot != previous) {
+            thread.setContextClassLoader((ClassLoader)snapshot);
+        }
+        return previous;
+    }
+
+    public void reset(Object previous) {
+        restore(previous);
+    }
+
+    public String toString() {
+        return "ClassLoaderContextPropagator";
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.Map;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.impl.DefaultComponent;
+
+import commonj.work.WorkManager;
+
+/**
+ * The <a href="http://camel.apache.org/commonj.html">commonj</a> component,
+ * which hands the exchanges over to a consumer as WorkManager work, without a
+ * queue polled by consumer threads.
+ * <p/>
+ * The endpoints use the WorkManager of the component unless they are given
+ * one. When the component has none, it uses the WorkManager of the
+ * {@link WorkManagerExecutorServiceStrategy} of the CamelContext, or else
+ * creates a {@link LocalWorkManager} which is shut down when the component
+ * stops. The endpoints get the WorkManager of the component when they start.
+ */
+public class CommonjComponent extends DefaultComponent {
+    private WorkManager workmanager;
+    private LocalWorkManager localWorkmanager;
+
+    @Override
+    protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
+        CommonjEndpoint answer = new CommonjEndpoint(uri, this, remaining);
+        setProperties(answer, parameters);
+        return answer;
+    }
+
+    /**
+     * Gets the WorkManager of the endpoints which are not given one.
+     */
+    public synchronized WorkManager getWorkmanager() {
+        if (workmanager != null) {
+            return workmanager;
+        }
+        CamelContext context = getCamelContext();
+        if (context != null && context.getExecutorServiceStrategy() instanceof WorkManagerExecutorServiceStrategy) {
+            WorkManager answer = ((WorkManagerExecutorServiceStrategy)context.getExecutorServiceStrategy()).getWorkmanager();
+            if (answer != null) {
+                return answer;
+            }
+        }
+        if (localWorkmanager == null) {
+            localWorkmanager = new LocalWorkManager("Camel commonj", Runtime.getRuntime().availableProcessors() * 2);
+        }
+        return localWorkmanager;
+    }
+
+    /**
+     * Sets the WorkManager of the endpoints, default is the one of the
+     * {@link WorkManagerExecutorServiceStrategy}, or a {@link LocalWorkManager}.
+     */
+    public synchronized void setWorkmanager(WorkManager workmanager) {
+        this.workmanager = workmanager;
+    }
+
+    @Override
+    protected synchronized void doStop() throws Exception {
+        if (localWorkmanager != null) {
+            // a new one is created when the component is started again
+            localWorkmanager.shutdown();
+            localWorkmanager = null;
+        }
+        super.doStop();
+    }
+}
@@ -0,0 +1,379 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.CamelExchangeException;
+import org.apache.camel.Consumer;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.WaitForTaskToComplete;
+import org.apache.camel.impl.DefaultEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkListener;
+import commonj.work.WorkManager;
+
+/**
+ * An endpoint which schedules the exchanges sent to it as {@link Work} of a
+ * WorkManager, and processes them with its consumer inside that work.
+ * <p/>
+ * The exchanges wait on a lock free queue until a work takes them, at most
+ * <tt>maxConcurrentWork</tt> works are scheduled at the same time and every
+ * work processes up to <tt>batchSize</tt> exchanges. The completion of the
+ * work is reported through its {@link WorkListener}, which schedules the next
+ * work when more exchanges are waiting.
+ */
+public class CommonjEndpoint extends DefaultEndpoint {
+    private static final Logger LOG = LoggerFactory.getLogger(CommonjEndpoint.class);
+
+    private final String name;
+    private final Queue<PendingExchange> pending = new ConcurrentLinkedQueue<PendingExchange>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger activeWork = new AtomicInteger();
+    private final AtomicLong completedWork = new AtomicLong();
+    private final AtomicLong rejectedWork = new AtomicLong();
+    private volatile WorkManager workmanager;
+    private volatile WorkManager componentWorkmanager;
+    private volatile CommonjConsumer consumer;
+    private int maxConcurrentWork = 10;
+    private int batchSize = 1;
+    private WaitForTaskToComplete waitForTaskToComplete = WaitForTaskToComplete.IfReplyExpected;
+
+    public CommonjEndpoint(String endpointUri, CommonjComponent component, String name) {
+        super(endpointUri, component);
+        this.name = name;
+    }
+
+    public Producer createProducer() throws Exception {
+        return new CommonjProducer(this);
+    }
+
+    public Consumer createConsumer(Processor processor) throws Exception {
+        return new CommonjConsumer(this, processor);
+    }
+
+    public boolean isSingleton() {
+        return true;
+    }
+
+    synchronized void addConsumer(CommonjConsumer consumer) {
+        if (this.consumer != null && this.consumer != consumer) {
+            throw new IllegalStateException("Endpoint " + this + " already has the consumer " + this.consumer);
+        }
+        this.consumer = consumer;
+        dispatch();
+    }
+
+    void removeConsumer(CommonjConsumer consumer) {
+        synchronized (this) {
+            if (this.consumer != consumer) {
+                return;
+            }
+            this.consumer = null;
+        }
+        // nobody processes the waiting exchanges anymore, so do not keep their callers waiting
+        failPending();
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        // the WorkManager of the component may change when it is restarted
+        componentWorkmanager = getComponent().getWorkmanager();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        componentWorkmanager = null;
+        super.doStop();
+    }
+
+    @Override
+    public CommonjComponent getComponent() {
+        return (CommonjComponent)super.getComponent();
+    }
+
+    /**
+     * Queues the exchange and schedules a work for it when needed.
+     *
+     * @param callback called once the exchange is processed, or <tt>null</tt>
+     * @return <tt>true</tt> if the exchange was completed synchronously
+     */
+    boolean dispatch(Exchange exchange, AsyncCallback callback) {
+        if (consumer == null) {
+            exchange.setException(new CamelExchangeException("No consumers available on endpoint: " + this, exchange));
+            if (callback != null) {
+                callback.done(true);
+            }
+            return true;
+        }
+        pending.offer(new PendingExchange(exchange, callback));
+        queued.incrementAndGet();
+        if (consumer == null) {
+            // the consumer was removed in the meantime
+            failPending();
+        }
+        dispatch();
+        return false;
+    }
+
+    private void dispatch() {
+        for (;;) {
+            int active = activeWork.get();
+            if (queued.get() == 0 || active >= maxConcurrentWork || consumer == null) {
+                return;
+            }
+            if (activeWork.compareAndSet(active, active + 1)) {
+                ExchangeWork work = new ExchangeWork();
+                try {
+                    getWorkmanager().schedule(work, work);
+                } catch (RuntimeException e) {
+                    work.rejected(e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void workDone(boolean completed, Throwable cause) {
+        if (completed) {
+            completedWork.incrementAndGet();
+        } else {
+            rejectedWork.incrementAndGet();
+        }
+        int active = activeWork.decrementAndGet();
+        if (!completed && active == 0) {
+            // no other work will take the waiting exchanges
+            failPending(cause);
+        }
+        dispatch();
+    }
+
+    private void failPending(Throwable cause) {
+        PendingExchange exchange;
+        while ((exchange = pending.poll()) != null) {
+            queued.decrementAndGet();
+            RejectedExecutionException ree = new RejectedExecutionException("WorkManager " + getWorkmanager() + " rejected the work of " + this);
+            ree.initCause(cause);
+            exchange.exchange.setException(ree);
+            exchange.done();
+        }
+    }
+
+    private void failPending() {
+        PendingExchange exchange;
+        while ((exchange = pending.poll()) != null) {
+            queued.decrementAndGet();
+            exchange.exchange.setException(new CamelExchangeException("No consumers available on endpoint: " + this, exchange.exchange));
+            exchange.done();
+        }
+    }
+
+    private void process(PendingExchange pendingExchange, int index, int size) {
+        Exchange exchange = pendingExchange.exchange;
+        CommonjConsumer current = consumer;
+        try {
+            if (current == null) {
+                exchange.setException(new CamelExchangeException("No consumers available on endpoint: " + this, exchange));
+            } else {
+                if (batchSize > 1) {
+                    exchange.setProperty(Exchange.BATCH_INDEX, index);
+                    exchange.setProperty(Exchange.BATCH_SIZE, size);
+                    exchange.setProperty(Exchange.BATCH_COMPLETE, index == size - 1);
+                }
+                current.getProcessor().process(exchange);
+            }
+        } catch (Throwable e) {
+            exchange.setException(e);
+        }
+        if (pendingExchange.callback == null && exchange.getException() != null && current != null) {
+            // nobody waits for this exchange
+            current.getExceptionHandler().handleException("Error processing exchange", exchange, exchange.getException());
+        }
+        pendingExchange.done();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public WorkManager getWorkmanager() {
+        WorkManager answer = workmanager;
+        return answer != null ? answer : componentWorkmanager;
+    }
+
+    /**
+     * Sets the WorkManager the exchanges are processed on, default is the one
+     * the component has when the endpoint starts.
+     */
+    public void setWorkmanager(WorkManager workmanager) {
+        this.workmanager = workmanager;
+    }
+
+    public int getMaxConcurrentWork() {
+        return maxConcurrentWork;
+    }
+
+    /**
+     * Sets the maximum number of works scheduled at the same time, default is 10.
+     */
+    public void setMaxConcurrentWork(int maxConcurrentWork) {
+        if (maxConcurrentWork < 1) {
+            throw new IllegalArgumentException("MaxConcurrentWork must be >= 1, was " + maxConcurrentWork);
+        }
+        this.maxConcurrentWork = maxConcurrentWork;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the maximum number of exchanges processed by a single work, default
+     * is 1. The exchanges of a batch get the batch properties.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("BatchSize must be >= 1, was " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public WaitForTaskToComplete getWaitForTaskToComplete() {
+        return waitForTaskToComplete;
+    }
+
+    /**
+     * Sets whether the caller waits for the exchange to be processed, default
+     * is {@link WaitForTaskToComplete#IfReplyExpected}.
+     */
+    public void setWaitForTaskToComplete(WaitForTaskToComplete waitForTaskToComplete) {
+        this.waitForTaskToComplete = waitForTaskToComplete;
+    }
+
+    /**
+     * Number of exchanges waiting for a work.
+     */
+    public int getPendingCount() {
+        return queued.get();
+    }
+
+    /**
+     * Number of works scheduled and not completed yet.
+     */
+    public int getActiveWorkCount() {
+        return activeWork.get();
+    }
+
+    public long getCompletedWorkCount() {
+        return completedWork.get();
+    }
+
+    public long getRejectedWorkCount() {
+        return rejectedWork.get();
+    }
+
+    @Override
+    protected String createEndpointUri() {
+        return "commonj:" + name;
+    }
+
+    private static final class PendingExchange {
+        private final Exchange exchange;
+        private final AsyncCallback callback;
+
+        private PendingExchange(Exchange exchange, AsyncCallback callback) {
+            this.exchange = exchange;
+            this.callback = callback;
+        }
+
+        private void done() {
+            if (callback != null) {
+                callback.done(false);
+            }
+        }
+    }
+
+    /**
+     * Processes a batch of the waiting exchanges, and is its own listener so it
+     * knows when the WorkManager is done with it.
+     */
+    private final class ExchangeWork implements Work, WorkListener {
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        public void run() {
+            List<PendingExchange> batch = new ArrayList<PendingExchange>(Math.min(batchSize, 64));
+            PendingExchange exchange;
+            while (batch.size() < batchSize && (exchange = pending.poll()) != null) {
+                queued.decrementAndGet();
+                batch.add(exchange);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                process(batch.get(i), i, batch.size());
+            }
+        }
+
+        public boolean isDaemon() {
+            return false;
+        }
+
+        public void release() {
+            // the exchanges of the batch are processed one after the other
+        }
+
+        public void workAccepted(WorkEvent event) {
+        }
+
+        public void workStarted(WorkEvent event) {
+        }
+
+        public void workRejected(WorkEvent event) {
+            rejected(event.getException());
+        }
+
+        public void workCompleted(WorkEvent event) {
+            if (done.compareAndSet(false, true)) {
+                workDone(true, null);
+            }
+        }
+
+        private void rejected(Throwable cause) {
+            if (done.compareAndSet(false, true)) {
+                LOG.debug("Work of {} rejected", CommonjEndpoint.this, cause);
+                workDone(false, cause);
+            }
+        }
+
+        public String toString() {
+            return "ExchangeWork[" + name + "]";
+        }
+    }
+}
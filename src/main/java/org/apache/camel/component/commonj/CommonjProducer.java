@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.WaitForTaskToComplete;
+import org.apache.camel.impl.DefaultAsyncProducer;
+import org.apache.camel.util.ExchangeHelper;
+
+/**
+ * Schedules the exchanges as work of a {@link CommonjEndpoint}.
+ * <p/>
+ * When the caller waits for the task to complete, the exchange itself is
+ * processed and the callback is called once the work is done, so no thread of
+ * the caller is blocked. Otherwise a correlated copy is processed and the
+ * caller continues right away.
+ */
+public class CommonjProducer extends DefaultAsyncProducer {
+
+    public CommonjProducer(CommonjEndpoint endpoint) {
+        super(endpoint);
+    }
+
+    @Override
+    public CommonjEndpoint getEndpoint() {
+        return (CommonjEndpoint)super.getEndpoint();
+    }
+
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        WaitForTaskToComplete wait = getEndpoint().getWaitForTaskToComplete();
+        if (wait == WaitForTaskToComplete.Always
+            || (wait == WaitForTaskToComplete.IfReplyExpected && ExchangeHelper.isOutCapable(exchange))) {
+            return getEndpoint().dispatch(exchange, callback);
+        }
+        Exchange copy = ExchangeHelper.createCorrelatedCopy(exchange, true);
+        getEndpoint().dispatch(copy, null);
+        callback.done(true);
+        return true;
+    }
+}
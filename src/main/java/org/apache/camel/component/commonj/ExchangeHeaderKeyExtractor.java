@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import org.apache.camel.Exchange;
+
+/**
+ * Gets the ordering key of a {@link KeyedTask}, or else the value of a header
+ * of the exchange bound to the submitting thread by
+ * {@link WorkManagerExchangeBinding}.
+ */
+public class ExchangeHeaderKeyExtractor implements WorkManagerKeyExtractor {
+    private String headerName;
+
+    public ExchangeHeaderKeyExtractor() {
+    }
+
+    public ExchangeHeaderKeyExtractor(String headerName) {
+        this.headerName = headerName;
+    }
+
+    public Object getKey(Runnable task) {
+        Runnable unwrapped = WorkManagerThreadPoolExecutor.unwrap(task);
+        if (unwrapped instanceof WorkFutureTask) {
+            unwrapped = ((WorkFutureTask<?>)unwrapped).getTask();
+        }
+        if (unwrapped instanceof KeyedTask) {
+            return ((KeyedTask)unwrapped).getKey();
+        }
+        Exchange exchange = WorkManagerExchangeBinding.getExchange();
+        if (exchange == null || headerName == null) {
+            return null;
+        }
+        return exchange.getIn().getHeader(headerName);
+    }
+
+    public String getHeaderName() {
+        return headerName;
+    }
+
+    /**
+     * Sets the header with the ordering key.
+     */
+    public void setHeaderName(String headerName) {
+        this.headerName = headerName;
+    }
+
+    public String toString() {
+        return "ExchangeHeaderKeyExtractor[" + headerName + "]";
+    }
+}
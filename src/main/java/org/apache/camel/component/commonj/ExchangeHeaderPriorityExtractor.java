@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import org.apache.camel.Exchange;
+
+/**
+ * Gets the priority of a task from a header of the exchange bound to the
+ * submitting thread by {@link WorkManagerExchangeBinding}, such as the
+ * <tt>JMSPriority</tt> header.
+ */
+public class ExchangeHeaderPriorityExtractor implements WorkManagerPriorityExtractor {
+    private String headerName;
+    private int defaultPriority;
+
+    public ExchangeHeaderPriorityExtractor() {
+    }
+
+    public ExchangeHeaderPriorityExtractor(String headerName, int defaultPriority) {
+        this.headerName = headerName;
+        this.defaultPriority = defaultPriority;
+    }
+
+    public int getPriority(Runnable task) {
+        Exchange exchange = WorkManagerExchangeBinding.getExchange();
+        if (exchange == null || headerName == null) {
+            return defaultPriority;
+        }
+        Object value = exchange.getIn().getHeader(headerName);
+        if (value instanceof Number) {
+            return ((Number)value).intValue();
+        } else if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                // use the default
+            }
+        }
+        return defaultPriority;
+    }
+
+    public String getHeaderName() {
+        return headerName;
+    }
+
+    /**
+     * Sets the header with the priority.
+     */
+    public void setHeaderName(String headerName) {
+        this.headerName = headerName;
+    }
+
+    public int getDefaultPriority() {
+        return defaultPriority;
+    }
+
+    /**
+     * Sets the priority of the tasks without a priority header, default is 0.
+     */
+    public void setDefaultPriority(int defaultPriority) {
+        this.defaultPriority = defaultPriority;
+    }
+
+    public String toString() {
+        return "ExchangeHeaderPriorityExtractor[" + headerName + "]";
+    }
+}
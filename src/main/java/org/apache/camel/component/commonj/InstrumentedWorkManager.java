@@ -0,0 +1,254 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkItem;
+import commonj.work.WorkListener;
+import commonj.work.WorkManager;
+
+/**
+ * A WorkManager decorator which attaches a {@link WorkListener} to every
+ * scheduled work, and records the time the work waits between being accepted
+ * and started, the time it runs and the number of rejections in a
+ * {@link WorkStatistics} per pool.
+ * <p/>
+ * The pool of a work is found from its name, which is the thread name for
+ * the work of a {@link WorkManagerThreadWrapper}. The name is matched against
+ * the configured patterns, the first capturing group (or the whole pattern
+ * when it has no group) of the first matching pattern is the pool. When no
+ * pattern matches, the name without its thread counter is used, so all the
+ * threads of a Camel thread pool end up in the same statistics.
+ * <p/>
+ * When a CamelContext is set, the statistics are registered in its management
+ * strategy (JMX) under type <tt>workmanagers</tt>.
+ */
+public class InstrumentedWorkManager implements WorkManager, CamelContextAware {
+    private static final Pattern COUNTER = Pattern.compile("\\s*#\\d+");
+    private static final int MAX_CACHED_NAMES = 1024;
+
+    private final WorkManager workmanager;
+    private final ConcurrentMap<String, WorkStatistics> statistics = new ConcurrentHashMap<String, WorkStatistics>();
+    private final ConcurrentMap<String, WorkStatistics> names = new ConcurrentHashMap<String, WorkStatistics>();
+    private volatile List<Pattern> patterns = new ArrayList<Pattern>();
+    private volatile CamelContext camelContext;
+
+    public InstrumentedWorkManager(WorkManager workmanager) {
+        if (workmanager == null) {
+            throw new IllegalArgumentException("WorkManager must be specified");
+        }
+        this.workmanager = workmanager;
+    }
+
+    public WorkItem schedule(Work work) throws IllegalArgumentException {
+        return schedule(work, null);
+    }
+
+    public WorkItem schedule(Work work, WorkListener workListener) throws IllegalArgumentException {
+        WorkStatistics stats = getStatistics(work);
+        stats.onScheduled();
+        TimedWorkListener listener = new TimedWorkListener(stats, workListener);
+        try {
+            return workmanager.schedule(work, listener);
+        } catch (RuntimeException e) {
+            if (!listener.rejected) {
+                stats.onRejected();
+            }
+            throw e;
+        }
+    }
+
+    public boolean waitForAll(Collection workItems, long timeout) throws InterruptedException, IllegalArgumentException {
+        return workmanager.waitForAll(workItems, timeout);
+    }
+
+    public Collection waitForAny(Collection workItems, long timeout) throws InterruptedException, IllegalArgumentException {
+        return workmanager.waitForAny(workItems, timeout);
+    }
+
+    /**
+     * Gets the statistics the given work is recorded in.
+     */
+    public WorkStatistics getStatistics(Work work) {
+        String name = getWorkName(work);
+        WorkStatistics answer = names.get(name);
+        if (answer == null) {
+            answer = getStatistics(resolveKey(name), true);
+            if (names.size() < MAX_CACHED_NAMES) {
+                names.put(name, answer);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Gets the statistics of a pool, or <tt>null</tt> if no work of the pool has
+     * been scheduled yet.
+     */
+    public WorkStatistics getStatistics(String key) {
+        return getStatistics(key, false);
+    }
+
+    public Collection<WorkStatistics> getStatistics() {
+        return statistics.values();
+    }
+
+    private WorkStatistics getStatistics(String key, boolean create) {
+        WorkStatistics answer = statistics.get(key);
+        if (answer == null && create) {
+            answer = new WorkStatistics(key);
+            WorkStatistics existing = statistics.putIfAbsent(key, answer);
+            if (existing != null) {
+                answer = existing;
+            } else {
+                manage(answer);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Gets the name of the work which is matched against the patterns.
+     */
+    protected String getWorkName(Work work) {
+        if (work instanceof org.apache.camel.component.commonj.WorkItem) {
+            return ((org.apache.camel.component.commonj.WorkItem)work).getName();
+        }
+        return String.valueOf(work);
+    }
+
+    protected String resolveKey(String name) {
+        for (Pattern pattern : patterns) {
+            Matcher matcher = pattern.matcher(name);
+            if (matcher.matches()) {
+                return matcher.groupCount() > 0 && matcher.group(1) != null ? matcher.group(1) : pattern.pattern();
+            }
+        }
+        return COUNTER.matcher(name).replaceAll("");
+    }
+
+    private void manage(WorkStatistics stats) {
+        WorkManagerManagementHelper.manage(camelContext, stats, stats.getName());
+    }
+
+    /**
+     * Sets the patterns the work names are matched against to find their
+     * pool, in order.
+     */
+    public void setPatterns(List<String> patterns) {
+        List<Pattern> answer = new ArrayList<Pattern>();
+        for (String pattern : patterns) {
+            answer.add(Pattern.compile(pattern));
+        }
+        this.patterns = answer;
+        names.clear();
+    }
+
+    public List<String> getPatterns() {
+        List<String> answer = new ArrayList<String>();
+        for (Pattern pattern : patterns) {
+            answer.add(pattern.pattern());
+        }
+        return answer;
+    }
+
+    public WorkManager getWorkmanager() {
+        return workmanager;
+    }
+
+    public CamelContext getCamelContext() {
+        return camelContext;
+    }
+
+    /**
+     * Sets the CamelContext whose management strategy the statistics are
+     * registered in.
+     */
+    public void setCamelContext(CamelContext camelContext) {
+        this.camelContext = camelContext;
+        for (WorkStatistics stats : statistics.values()) {
+            manage(stats);
+        }
+    }
+
+    public String toString() {
+        return "InstrumentedWorkManager[" + workmanager + "]";
+    }
+
+    /**
+     * Records the events of a single work and passes them on to the listener
+     * of the work, if any.
+     */
+    private static final class TimedWorkListener implements WorkListener {
+        private final WorkStatistics statistics;
+        private final WorkListener listener;
+        private volatile long accepted;
+        private volatile long started;
+        private volatile boolean rejected;
+
+        private TimedWorkListener(WorkStatistics statistics, WorkListener listener) {
+            this.statistics = statistics;
+            this.listener = listener;
+            // until the WorkManager tells otherwise the work is accepted when scheduled
+            this.accepted = System.nanoTime();
+            this.started = accepted;
+        }
+
+        public void workAccepted(WorkEvent event) {
+            accepted = System.nanoTime();
+            if (listener != null) {
+                listener.workAccepted(event);
+            }
+        }
+
+        public void workRejected(WorkEvent event) {
+            rejected = true;
+            statistics.onRejected();
+            if (listener != null) {
+                listener.workRejected(event);
+            }
+        }
+
+        public void workStarted(WorkEvent event) {
+            long now = System.nanoTime();
+            started = now;
+            statistics.onStarted(now - accepted);
+            if (listener != null) {
+                listener.workStarted(event);
+            }
+        }
+
+        public void workCompleted(WorkEvent event) {
+            statistics.onCompleted(System.nanoTime() - started, event.getException() != null);
+            if (listener != null) {
+                listener.workCompleted(event);
+            }
+        }
+    }
+}
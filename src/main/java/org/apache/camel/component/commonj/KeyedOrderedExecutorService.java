@@ -0,0 +1,321 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link ExecutorService} which runs the tasks with the same ordering key
+ * one after the other, in the order they were submitted, while tasks with
+ * different keys run concurrently on the underlying executor. Tasks without a
+ * key run in any order.
+ * <p/>
+ * Every key with pending tasks has a lock free queue, which is run as a
+ * single task of the underlying executor and removed as soon as it is
+ * empty, so no thread or memory is held for idle keys. A queue runs at most
+ * batchSize tasks before it yields its thread to the other keys.
+ */
+public class KeyedOrderedExecutorService extends AbstractExecutorService {
+    private static final Logger LOG = LoggerFactory.getLogger(KeyedOrderedExecutorService.class);
+
+    private final ExecutorService executor;
+    private final WorkManagerKeyExtractor keyExtractor;
+    private final String name;
+    private final ConcurrentHashMap<Object, KeyQueue> queues = new ConcurrentHashMap<Object, KeyQueue>();
+    private int batchSize = 64;
+
+    public KeyedOrderedExecutorService(ExecutorService executor, WorkManagerKeyExtractor keyExtractor, String name) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor must be specified");
+        }
+        this.executor = executor;
+        this.keyExtractor = keyExtractor;
+        this.name = name;
+    }
+
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        Object key = keyExtractor != null ? keyExtractor.getKey(task) : null;
+        if (key == null) {
+            executor.execute(task);
+            return;
+        }
+        while (true) {
+            KeyQueue queue = queues.get(key);
+            if (queue == null) {
+                queue = new KeyQueue(key);
+                KeyQueue existing = queues.putIfAbsent(key, queue);
+                if (existing != null) {
+                    queue = existing;
+                }
+            }
+            if (queue.offer(task)) {
+                return;
+            }
+            // the queue was emptied and retired in the meantime
+            queues.remove(key, queue);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public List<Runnable> shutdownNow() {
+        List<Runnable> answer = new ArrayList<Runnable>();
+        // stop new queues from being scheduled and retire the queues before
+        // the running tasks are interrupted, so they do not move on to the next task
+        executor.shutdown();
+        for (KeyQueue queue : queues.values()) {
+            queue.retire(answer);
+        }
+        for (Runnable runnable : executor.shutdownNow()) {
+            if (!(runnable instanceof KeyQueue)) {
+                answer.add(runnable);
+            }
+        }
+        return answer;
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new WorkFutureTask<T>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new WorkFutureTask<T>(callable);
+    }
+
+    /**
+     * Number of keys with pending tasks.
+     */
+    public int getKeyCount() {
+        return queues.size();
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public WorkManagerKeyExtractor getKeyExtractor() {
+        return keyExtractor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the maximum number of tasks of a key run before the thread is given
+     * to the other keys, default is 64.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public String toString() {
+        return "KeyedOrderedExecutorService[" + name + ", keys=" + queues.size() + ", executor=" + executor + "]";
+    }
+
+    /**
+     * The pending tasks of a key. The count is the number of tasks offered and
+     * not yet run, and is set to -1 when the queue is retired. Whoever offers
+     * the first task of an empty queue schedules it.
+     */
+    private final class KeyQueue implements Runnable {
+        private final Object key;
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicInteger count = new AtomicInteger();
+
+        private KeyQueue(Object key) {
+            this.key = key;
+        }
+
+        boolean offer(Runnable task) {
+            int current;
+            do {
+                current = count.get();
+                if (current < 0) {
+                    return false;
+                }
+            } while (!count.compareAndSet(current, current + 1));
+            tasks.add(task);
+            if (count.get() < 0 && tasks.remove(task)) {
+                // the queue was retired by shutdownNow before the task was added
+                RejectedExecutionException e = new RejectedExecutionException("Executor " + KeyedOrderedExecutorService.this + " is shut down");
+                if (!WorkFutureTask.reject(task, e)) {
+                    throw e;
+                }
+                return true;
+            }
+            if (current == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    rejected(task, e);
+                }
+            }
+            return true;
+        }
+
+        public void run() {
+            while (drain()) {
+                try {
+                    executor.execute(this);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // the executor is shutting down, so complete the key in this thread
+                    LOG.debug("Running the remaining tasks of key {} in the current thread", key);
+                }
+            }
+        }
+
+        /**
+         * Runs at most batchSize tasks.
+         *
+         * @return whether there are tasks left
+         */
+        private boolean drain() {
+            for (int i = 0; i < batchSize; i++) {
+                Runnable task = poll();
+                if (task == null) {
+                    return false;
+                }
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    LOG.warn("Error running task " + task + " of key " + key + " in " + KeyedOrderedExecutorService.this, e);
+                }
+                if (done()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Counts a task as done, retiring the queue when it was the last one.
+         * When a new task is offered at the same time the queue is not retired,
+         * as the new task schedules it again.
+         */
+        private boolean done() {
+            int current;
+            do {
+                current = count.get();
+                if (current < 0) {
+                    return true;
+                }
+            } while (!count.compareAndSet(current, current - 1));
+            if (current > 1) {
+                return false;
+            }
+            if (count.compareAndSet(0, -1)) {
+                queues.remove(key, this);
+            }
+            return true;
+        }
+
+        /**
+         * Takes the next task, or null when the queue was retired and emptied
+         * by shutdownNow.
+         */
+        private Runnable poll() {
+            Runnable task;
+            while ((task = tasks.poll()) == null) {
+                if (count.get() <= 0) {
+                    return null;
+                }
+                // the count was incremented but the task is not added yet
+                Thread.yield();
+            }
+            return task;
+        }
+
+        /**
+         * Retires the queue and moves its pending tasks to the given list, so
+         * a thread still running the queue stops instead of waiting for the
+         * tasks to show up.
+         */
+        void retire(List<Runnable> pending) {
+            count.set(-1);
+            queues.remove(key, this);
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                pending.add(task);
+            }
+        }
+
+        /**
+         * Rejects the given task when the queue cannot be scheduled, throwing
+         * the exception if the task cannot be told it was rejected. The tasks
+         * other threads offered in the meantime stay queued, as they rely on
+         * the queue being scheduled, which is retried. If the executor rejects
+         * it again they are run in the current thread, as when the executor
+         * rejects a queue which has run.
+         */
+        private void rejected(Runnable task, RejectedExecutionException cause) {
+            tasks.remove(task);
+            if (!done()) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    LOG.debug("Running the pending tasks of key {} in the current thread", key);
+                    run();
+                }
+            }
+            if (!WorkFutureTask.reject(task, cause)) {
+                throw cause;
+            }
+        }
+
+        public String toString() {
+            return "KeyQueue[" + key + ", pending=" + count.get() + "]";
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rejection policy which sheds load right away, so the caller is never
+ * blocked. The shed task is handed to the fallback handler when one is set,
+ * for example to send it to an overflow destination, and is rejected
+ * otherwise. The fallback gets the task as the pool queued it, so it runs
+ * with the context captured on submission.
+ * <p/>
+ * With discardOldest the oldest queued task is shed instead, and the new task
+ * takes its place, which favours fresh work over work which already waited
+ * long.
+ */
+@ManagedResource(description = "Load shedding rejection policy")
+public class LoadSheddingRejectionPolicy extends WorkManagerRejectionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(LoadSheddingRejectionPolicy.class);
+
+    private final AtomicLong shedCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+    private RejectedExecutionHandler fallback;
+    private boolean discardOldest;
+
+    public LoadSheddingRejectionPolicy() {
+    }
+
+    public LoadSheddingRejectionPolicy(RejectedExecutionHandler fallback) {
+        this.fallback = fallback;
+    }
+
+    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+        Runnable shed = runnable;
+        if (discardOldest && !executor.isShutdown()) {
+            Runnable oldest = executor.getQueue().poll();
+            if (oldest != null) {
+                shed = oldest;
+                if (!executor.getQueue().offer(runnable)) {
+                    // lost the free slot to another caller
+                    shed(runnable, executor);
+                }
+            }
+        }
+        shed(shed, executor);
+    }
+
+    private void shed(Runnable runnable, ThreadPoolExecutor executor) {
+        shedCount.incrementAndGet();
+        if (fallback == null) {
+            reject(runnable, executor);
+            return;
+        }
+        fallbackCount.incrementAndGet();
+        try {
+            // the task of the pool, which runs the task with the context it was submitted with
+            fallback.rejectedExecution(runnable, executor);
+        } catch (RuntimeException e) {
+            LOG.debug("Fallback " + fallback + " failed for task " + WorkManagerThreadPoolExecutor.unwrap(runnable), e);
+            reject(runnable, executor);
+        }
+    }
+
+    @ManagedAttribute(description = "Number of shed tasks")
+    public long getShedCount() {
+        return shedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of shed tasks handed to the fallback")
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        shedCount.set(0);
+        fallbackCount.set(0);
+    }
+
+    public RejectedExecutionHandler getFallback() {
+        return fallback;
+    }
+
+    /**
+     * Sets the handler shed tasks are handed to, they are rejected when
+     * there is none or when it fails.
+     */
+    public void setFallback(RejectedExecutionHandler fallback) {
+        this.fallback = fallback;
+    }
+
+    @ManagedAttribute(description = "Whether the oldest queued task is shed")
+    public boolean isDiscardOldest() {
+        return discardOldest;
+    }
+
+    /**
+     * Sets whether the oldest queued task is shed instead of the new task,
+     * default is false.
+     */
+    public void setDiscardOldest(boolean discardOldest) {
+        this.discardOldest = discardOldest;
+    }
+
+    public String toString() {
+        return "LoadSheddingRejectionPolicy[fallback=" + fallback + ", discardOldest=" + discardOldest + "]";
+    }
+}
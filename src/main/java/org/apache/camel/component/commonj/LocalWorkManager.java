@@ -0,0 +1,566 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.work.Work;
+import commonj.work.WorkCompletedException;
+import commonj.work.WorkEvent;
+import commonj.work.WorkException;
+import commonj.work.WorkListener;
+import commonj.work.WorkManager;
+import commonj.work.WorkRejectedException;
+
+/**
+ * A WorkManager running the work on its own bounded set of threads, for
+ * running Camel outside of an application server.
+ * <p/>
+ * Work is queued on a lock free queue and run by at most maxThreads worker
+ * threads, which are started when needed and stop after being idle for
+ * keepAliveTime milliseconds. Work implementing {@link Comparable} is queued
+ * by priority on a {@link PriorityBlockingQueue}, which takes a lock, and runs
+ * before the other work. Work of classes not comparable with each other runs
+ * in the order it was scheduled. Daemon work runs on a thread of its own as it is
+ * expected to run for a long time, unless poolDaemonWork is set. The
+ * {@link WorkListener} gets all the events of the work.
+ * <p/>
+ * With poolDaemonWork, maxQueueSize and scheduleLatency it can stand in for
+ * the constrained WorkManager of a container in tests.
+ */
+public class LocalWorkManager implements WorkManager {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalWorkManager.class);
+    private static final Comparator<LocalWorkItem> PRIORITY_COMPARATOR = new PriorityComparator();
+
+    private final ConcurrentLinkedQueue<LocalWorkItem> queue = new ConcurrentLinkedQueue<LocalWorkItem>();
+    private final PriorityBlockingQueue<LocalWorkItem> priorityQueue = new PriorityBlockingQueue<LocalWorkItem>(11, PRIORITY_COMPARATOR);
+    private final Semaphore queued = new Semaphore(0);
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final Set<LocalWorkItem> running = Collections.newSetFromMap(new ConcurrentHashMap<LocalWorkItem, Boolean>());
+    private final AtomicInteger threads = new AtomicInteger();
+    private final AtomicInteger idle = new AtomicInteger();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private String name;
+    private int maxThreads;
+    private int maxQueueSize = -1;
+    private long keepAliveTime = 60000;
+    private boolean poolDaemonWork;
+    private long scheduleLatency;
+    private volatile boolean shutdown;
+
+    public LocalWorkManager() {
+        this("LocalWorkManager", Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public LocalWorkManager(String name, int maxThreads) {
+        this.name = name;
+        setMaxThreads(maxThreads);
+    }
+
+    public commonj.work.WorkItem schedule(Work work) throws IllegalArgumentException {
+        return schedule(work, null);
+    }
+
+    public commonj.work.WorkItem schedule(Work work, WorkListener workListener) throws IllegalArgumentException {
+        if (work == null) {
+            throw new IllegalArgumentException("Work must be specified");
+        }
+        if (scheduleLatency > 0) {
+            long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(scheduleLatency);
+            while (System.nanoTime() - deadline < 0) {
+                // spin, parking is too coarse for latencies of a few microseconds
+            }
+        }
+        LocalWorkItem item = new LocalWorkItem(work, workListener, sequence.incrementAndGet());
+        if (shutdown) {
+            item.setStatus(WorkEvent.WORK_REJECTED, new WorkRejectedException(this + " is shutdown"));
+        } else if (work.isDaemon() && !poolDaemonWork) {
+            item.setStatus(WorkEvent.WORK_ACCEPTED, null);
+            Thread thread = new Thread(item, name + " daemon #" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.start();
+        } else if (!reserveQueueSlot()) {
+            item.setStatus(WorkEvent.WORK_REJECTED, new WorkRejectedException("Queue of " + this + " is full"));
+        } else {
+            item.setStatus(WorkEvent.WORK_ACCEPTED, null);
+            if (work instanceof Comparable) {
+                priorityQueue.offer(item);
+            } else {
+                queue.offer(item);
+            }
+            queued.release();
+            startWorkerIfNeeded();
+        }
+        return item;
+    }
+
+    /**
+     * Counts the work about to be queued, unless the queue is full.
+     */
+    private boolean reserveQueueSlot() {
+        for (;;) {
+            int size = queueSize.get();
+            if (maxQueueSize > 0 && size >= maxQueueSize) {
+                return false;
+            }
+            if (queueSize.compareAndSet(size, size + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void startWorkerIfNeeded() {
+        while (idle.get() < queueSize.get()) {
+            int current = threads.get();
+            if (current >= maxThreads) {
+                return;
+            }
+            if (threads.compareAndSet(current, current + 1)) {
+                Thread thread = new Thread(new Worker(), name + " #" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                thread.start();
+                return;
+            }
+        }
+    }
+
+    private LocalWorkItem poll() {
+        LocalWorkItem answer = priorityQueue.poll();
+        if (answer == null) {
+            answer = queue.poll();
+        }
+        if (answer != null) {
+            queueSize.decrementAndGet();
+        }
+        return answer;
+    }
+
+    /**
+     * Blocks until all the work items completed or were rejected, or until the
+     * timeout (in milliseconds) elapsed.
+     */
+    public boolean waitForAll(Collection workItems, long timeout) throws InterruptedException, IllegalArgumentException {
+        List<LocalWorkItem> items = toLocalWorkItems(workItems);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (LocalWorkItem item : items) {
+            if (timeout == INDEFINITE) {
+                item.done.await();
+            } else if (!item.done.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Blocks until any of the work items completed or was rejected, or until
+     * the timeout (in milliseconds) elapsed, and returns the finished items.
+     */
+    public Collection waitForAny(Collection workItems, long timeout) throws InterruptedException, IllegalArgumentException {
+        List<LocalWorkItem> items = toLocalWorkItems(workItems);
+        Collection<commonj.work.WorkItem> answer = finished(items);
+        if (!answer.isEmpty() || timeout == IMMEDIATE) {
+            return answer;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        for (LocalWorkItem item : items) {
+            item.addWaiter(latch);
+        }
+        try {
+            if (timeout == INDEFINITE) {
+                latch.await();
+            } else {
+                latch.await(timeout, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            for (LocalWorkItem item : items) {
+                item.removeWaiter(latch);
+            }
+        }
+        return finished(items);
+    }
+
+    private static List<LocalWorkItem> toLocalWorkItems(Collection workItems) {
+        if (workItems == null) {
+            throw new IllegalArgumentException("WorkItems must be specified");
+        }
+        List<LocalWorkItem> answer = new ArrayList<LocalWorkItem>(workItems.size());
+        for (Object workItem : workItems) {
+            if (!(workItem instanceof LocalWorkItem)) {
+                throw new IllegalArgumentException("WorkItem " + workItem + " was not scheduled by a LocalWorkManager");
+            }
+            answer.add((LocalWorkItem)workItem);
+        }
+        return answer;
+    }
+
+    private static Collection<commonj.work.WorkItem> finished(List<LocalWorkItem> items) {
+        Collection<commonj.work.WorkItem> answer = new ArrayList<commonj.work.WorkItem>();
+        for (LocalWorkItem item : items) {
+            if (item.done.getCount() == 0) {
+                answer.add(item);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Rejects new work and releases the running work, the queued work still
+     * runs.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (LocalWorkItem item : running) {
+            item.work.release();
+        }
+        // wake up the idle workers so they can see the shutdown
+        queued.release(Math.max(1, threads.get()));
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        return shutdown && threads.get() == 0 && running.isEmpty();
+    }
+
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated()) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (millis <= 0) {
+                return false;
+            }
+            wait(millis);
+        }
+        return true;
+    }
+
+    private synchronized void signalTermination() {
+        notifyAll();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Sets the maximum number of threads running non daemon work.
+     */
+    public void setMaxThreads(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("MaxThreads must be >= 1, was " + maxThreads);
+        }
+        this.maxThreads = maxThreads;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * Sets the maximum number of queued work, beyond which work is rejected.
+     * Unbounded when 0 or negative, which is the default.
+     */
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public long getKeepAliveTime() {
+        return keepAliveTime;
+    }
+
+    /**
+     * Sets the time in milliseconds an idle worker thread waits for work
+     * before it stops.
+     */
+    public void setKeepAliveTime(long keepAliveTime) {
+        this.keepAliveTime = keepAliveTime;
+    }
+
+    public boolean isPoolDaemonWork() {
+        return poolDaemonWork;
+    }
+
+    /**
+     * Whether daemon work is queued and run by the worker threads like the
+     * other work, so it counts against maxThreads as in a container which caps
+     * all its threads. Default is <tt>false</tt>.
+     */
+    public void setPoolDaemonWork(boolean poolDaemonWork) {
+        this.poolDaemonWork = poolDaemonWork;
+    }
+
+    public long getScheduleLatency() {
+        return scheduleLatency;
+    }
+
+    /**
+     * Sets the time in microseconds every schedule call takes, as a container
+     * takes when dispatching work. Default is 0.
+     */
+    public void setScheduleLatency(long scheduleLatency) {
+        this.scheduleLatency = scheduleLatency;
+    }
+
+    public int getPoolSize() {
+        return threads.get();
+    }
+
+    public int getActiveCount() {
+        return running.size();
+    }
+
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public String toString() {
+        return "LocalWorkManager[" + name + ", threads=" + threads.get() + ", active=" + running.size() + ", queued=" + getQueueSize()
+               + ", shutdown=" + shutdown + "]";
+    }
+
+    private final class Worker implements Runnable {
+
+        public void run() {
+            try {
+                while (true) {
+                    boolean acquired;
+                    idle.incrementAndGet();
+                    try {
+                        acquired = queued.tryAcquire(keepAliveTime, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        acquired = false;
+                    } finally {
+                        idle.decrementAndGet();
+                    }
+                    if (!acquired) {
+                        return;
+                    }
+                    LocalWorkItem item = poll();
+                    if (item != null) {
+                        item.run();
+                        Thread.interrupted();
+                    } else if (shutdown) {
+                        return;
+                    }
+                }
+            } finally {
+                threads.decrementAndGet();
+                if (shutdown) {
+                    signalTermination();
+                } else {
+                    // work may have been queued while this worker was about to stop
+                    startWorkerIfNeeded();
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares two works when they are comparable with each other, that is
+     * when the class of one is assignable from the class of the other, and
+     * returns 0 otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    private static int compare(Work work1, Work work2) {
+        if (work1 instanceof Comparable && work2 instanceof Comparable
+            && (work1.getClass().isAssignableFrom(work2.getClass()) || work2.getClass().isAssignableFrom(work1.getClass()))) {
+            try {
+                return ((Comparable<Object>)work1).compareTo(work2);
+            } catch (ClassCastException e) {
+                // comparable with another type than its subclass
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Orders the {@link Comparable} work, and in the order of scheduling when
+     * equal or not comparable with each other.
+     */
+    private static final class PriorityComparator implements Comparator<LocalWorkItem> {
+
+        public int compare(LocalWorkItem item1, LocalWorkItem item2) {
+            int answer = LocalWorkManager.compare(item1.work, item2.work);
+            if (answer == 0) {
+                answer = item1.sequence < item2.sequence ? -1 : item1.sequence > item2.sequence ? 1 : 0;
+            }
+            return answer;
+        }
+    }
+
+    private final class LocalWorkItem implements commonj.work.WorkItem, Runnable {
+        private final Work work;
+        private final WorkListener listener;
+        private final long sequence;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final List<CountDownLatch> waiters = new ArrayList<CountDownLatch>(1);
+        private volatile int status;
+
+        private LocalWorkItem(Work work, WorkListener listener, long sequence) {
+            this.work = work;
+            this.listener = listener;
+            this.sequence = sequence;
+        }
+
+        public void run() {
+            WorkException exception = null;
+            running.add(this);
+            setStatus(WorkEvent.WORK_STARTED, null);
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                LOG.debug("Work " + work + " failed", e);
+                exception = new WorkCompletedException(e.getMessage(), e);
+            } catch (Error e) {
+                exception = new WorkCompletedException(e.getMessage(), e);
+                throw e;
+            } finally {
+                running.remove(this);
+                completed.incrementAndGet();
+                setStatus(WorkEvent.WORK_COMPLETED, exception);
+                if (shutdown && work.isDaemon()) {
+                    signalTermination();
+                }
+            }
+        }
+
+        private void setStatus(int status, WorkException exception) {
+            this.status = status;
+            if (listener != null) {
+                LocalWorkEvent event = new LocalWorkEvent(status, this, exception);
+                try {
+                    switch (status) {
+                    case WorkEvent.WORK_ACCEPTED:
+                        listener.workAccepted(event);
+                        break;
+                    case WorkEvent.WORK_REJECTED:
+                        listener.workRejected(event);
+                        break;
+                    case WorkEvent.WORK_STARTED:
+                        listener.workStarted(event);
+                        break;
+                    default:
+                        listener.workCompleted(event);
+                        break;
+                    }
+                } catch (RuntimeException e) {
+                    LOG.warn("WorkListener " + listener + " failed on " + event, e);
+                }
+            }
+            if (status == WorkEvent.WORK_COMPLETED || status == WorkEvent.WORK_REJECTED) {
+                synchronized (this) {
+                    done.countDown();
+                    for (CountDownLatch waiter : waiters) {
+                        waiter.countDown();
+                    }
+                }
+            }
+        }
+
+        private synchronized void addWaiter(CountDownLatch waiter) {
+            if (done.getCount() == 0) {
+                waiter.countDown();
+            } else {
+                waiters.add(waiter);
+            }
+        }
+
+        private synchronized void removeWaiter(CountDownLatch waiter) {
+            waiters.remove(waiter);
+        }
+
+        public Work getResult() {
+            return work;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public int compareTo(Object object) {
+            if (object instanceof LocalWorkItem) {
+                return PRIORITY_COMPARATOR.compare(this, (LocalWorkItem)object);
+            }
+            return LocalWorkManager.compare(work, ((commonj.work.WorkItem)object).getResult());
+        }
+
+        public String toString() {
+            return "LocalWorkItem[" + work + ", status=" + status + "]";
+        }
+    }
+
+    private static final class LocalWorkEvent implements WorkEvent {
+        private final int type;
+        private final commonj.work.WorkItem workItem;
+        private final WorkException exception;
+
+        private LocalWorkEvent(int type, commonj.work.WorkItem workItem, WorkException exception) {
+            this.type = type;
+            this.workItem = workItem;
+            this.exception = exception;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public commonj.work.WorkItem getWorkItem() {
+            return workItem;
+        }
+
+        public WorkException getException() {
+            return exception;
+        }
+
+        public String toString() {
+            return "LocalWorkEvent[type=" + type + ", " + workItem + "]";
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.Map;
+
+import org.slf4j.MDC;
+
+/**
+ * Propagates the slf4j MDC, which holds the exchange and breadcrumb ids when
+ * the CamelContext uses MDC logging.
+ */
+public class MdcContextPropagator implements WorkManagerContextPropagator {
+
+    public Object capture() {
+        Map<?, ?> context = MDC.getCopyOfContextMap();
+        return context == null || context.isEmpty() ? null : context;
+    }
+
+    public Object restore(Object snapshot) {
+        Object previous = capture();
+        reset(snapshot);
+        return previous;
+    }
+
+    public void reset(Object previous) {
+        if (previous != null) {
+            MDC.setContextMap((Map<?, ?>)previous);
+        } else {
+            MDC.clear();
+        }
+    }
+
+    public String toString() {
+        return "MdcContextPropagator";
+    }
+}
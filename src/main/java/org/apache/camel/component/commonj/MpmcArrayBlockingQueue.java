@@ -0,0 +1,374 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, array based, lock free multi producer multi consumer queue
+ * (after Dmitry Vyukov's bounded MPMC queue).
+ * <p/>
+ * Every slot of the array has a sequence number telling whether it can be
+ * written or read in the current lap, so producers and consumers only
+ * contend on a compare and set of the tail or head counter, and no node is
+ * allocated per element. Blocking operations spin for a while before parking
+ * on a condition, which is only signalled when a thread is actually parked.
+ * <p/>
+ * The sequence numbers need at least two slots, so a capacity of 1 is
+ * rounded up to 2. {@link #remove(Object)} marks the slot of the element as
+ * removed, the consumers skip it, and it only becomes free for the producers
+ * when the consumers pass it. The iterator is a weakly consistent view of the
+ * queue.
+ */
+public class MpmcArrayBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private static final int SPINS = 64;
+    private static final Object REMOVED = new Object();
+
+    private final int capacity;
+    private final AtomicReferenceArray<Object> items;
+    private final AtomicLongArray sequences;
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+    private final AtomicInteger removed = new AtomicInteger();
+
+    public MpmcArrayBlockingQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be >= 1, was " + capacity);
+        }
+        // with a single slot a written and a free slot have the same sequence
+        this.capacity = Math.max(2, capacity);
+        this.items = new AtomicReferenceArray<Object>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            long pos = tail.get();
+            int index = (int)(pos % capacity);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    items.set(index, e);
+                    sequences.set(index, pos + 1);
+                    if (waitingConsumers.get() > 0) {
+                        signal(notEmpty);
+                    }
+                    return true;
+                }
+            } else if (diff < 0) {
+                // the slot still holds the element of the previous lap
+                return false;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        while (true) {
+            long pos = head.get();
+            int index = (int)(pos % capacity);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    // taken atomically so a concurrent remove cannot take it as well
+                    Object answer = items.getAndSet(index, null);
+                    sequences.set(index, pos + capacity);
+                    if (waitingProducers.get() > 0) {
+                        signal(notFull);
+                    }
+                    if (answer != REMOVED) {
+                        return (E)answer;
+                    }
+                    removed.decrementAndGet();
+                }
+            } else if (diff < 0) {
+                // the slot has not been written in this lap yet
+                return null;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long end = tail.get();
+        for (long pos = head.get(); pos < end; pos++) {
+            Object e = items.get((int)(pos % capacity));
+            if (e != null && e != REMOVED) {
+                return (E)e;
+            }
+        }
+        return null;
+    }
+
+    public void put(E e) throws InterruptedException {
+        if (spinOffer(e)) {
+            return;
+        }
+        lock.lockInterruptibly();
+        try {
+            waitingProducers.incrementAndGet();
+            try {
+                while (!offer(e)) {
+                    notFull.await();
+                }
+            } finally {
+                waitingProducers.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (spinOffer(e)) {
+            return true;
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            waitingProducers.incrementAndGet();
+            try {
+                while (!offer(e)) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = notFull.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                waitingProducers.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public E take() throws InterruptedException {
+        E answer = spinPoll();
+        if (answer != null) {
+            return answer;
+        }
+        lock.lockInterruptibly();
+        try {
+            waitingConsumers.incrementAndGet();
+            try {
+                while ((answer = poll()) == null) {
+                    notEmpty.await();
+                }
+                return answer;
+            } finally {
+                waitingConsumers.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E answer = spinPoll();
+        if (answer != null) {
+            return answer;
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            waitingConsumers.incrementAndGet();
+            try {
+                while ((answer = poll()) == null) {
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                return answer;
+            } finally {
+                waitingConsumers.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean spinOffer(E e) {
+        for (int i = 0; i < SPINS; i++) {
+            if (offer(e)) {
+                return true;
+            }
+            if (i >= SPINS / 2) {
+                Thread.yield();
+            }
+        }
+        return false;
+    }
+
+    private E spinPoll() {
+        for (int i = 0; i < SPINS; i++) {
+            E answer = poll();
+            if (answer != null) {
+                return answer;
+            }
+            if (i >= SPINS / 2) {
+                Thread.yield();
+            }
+        }
+        return null;
+    }
+
+    private void signal(Condition condition) {
+        lock.lock();
+        try {
+            condition.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return Math.max(0, slotsInUse() - removed.get());
+    }
+
+    /**
+     * Number of slots holding an element, including the removed ones.
+     */
+    private int slotsInUse() {
+        while (true) {
+            long before = head.get();
+            long answer = tail.get() - before;
+            if (head.get() == before) {
+                return (int)Math.max(0, Math.min(capacity, answer));
+            }
+        }
+    }
+
+    public int remainingCapacity() {
+        return capacity - slotsInUse();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException("Cannot drain a queue to itself");
+        }
+        int answer = 0;
+        E e;
+        while (answer < maxElements && (e = poll()) != null) {
+            c.add(e);
+            answer++;
+        }
+        return answer;
+    }
+
+    /**
+     * Marks the slot of the first element equal to the given one as removed,
+     * the consumers skip it.
+     */
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        long end = tail.get();
+        for (long pos = head.get(); pos < end; pos++) {
+            int index = (int)(pos % capacity);
+            // only the slots written in this lap hold an element
+            if (sequences.get(index) != pos + 1) {
+                continue;
+            }
+            Object e = items.get(index);
+            if (e != null && e != REMOVED && o.equals(e) && items.compareAndSet(index, e, REMOVED)) {
+                removed.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<E>();
+        long end = tail.get();
+        for (long pos = Math.max(head.get(), end - capacity); pos < end; pos++) {
+            Object e = items.get((int)(pos % capacity));
+            if (e != null && e != REMOVED) {
+                snapshot.add((E)e);
+            }
+        }
+        final Iterator<E> iterator = snapshot.iterator();
+        return new Iterator<E>() {
+            private E last;
+
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public E next() {
+                last = iterator.next();
+                return last;
+            }
+
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                MpmcArrayBlockingQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    public String toString() {
+        return "MpmcArrayBlockingQueue[size=" + size() + ", capacity=" + capacity + "]";
+    }
+
+    /**
+     * Keeps the head and tail counters on cache lines of their own.
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
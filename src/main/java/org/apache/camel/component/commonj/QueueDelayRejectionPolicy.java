@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedResource;
+
+/**
+ * Rejection policy which rejects new tasks early, before the queue is full,
+ * while the oldest queued task has waited longer than maxQueueDelay. A queue
+ * which does not drain in time is a sign of overload, and the tasks queued
+ * behind it would likely miss their deadline anyway.
+ * <p/>
+ * The queue delay is only known by a {@link WorkManagerThreadPoolExecutor},
+ * which {@link WorkManagerThreadPoolFactory} creates for pools using this
+ * policy. On other pools the policy only rejects when the queue is full.
+ */
+@ManagedResource(description = "Queue delay rejection policy")
+public class QueueDelayRejectionPolicy extends WorkManagerRejectionPolicy {
+    private final AtomicLong earlyRejectedCount = new AtomicLong();
+    private long maxQueueDelay = 1000;
+
+    public QueueDelayRejectionPolicy() {
+    }
+
+    public QueueDelayRejectionPolicy(long maxQueueDelay) {
+        this.maxQueueDelay = maxQueueDelay;
+    }
+
+    /**
+     * Whether a new task should be rejected because the oldest queued task of
+     * the pool waited too long.
+     */
+    public boolean isOverdue(WorkManagerThreadPoolExecutor executor) {
+        return executor.getOldestQueueDelay() > TimeUnit.MILLISECONDS.toNanos(maxQueueDelay);
+    }
+
+    /**
+     * Rejects a task before it was queued.
+     */
+    public void rejectEarly(Runnable runnable, ThreadPoolExecutor executor) {
+        earlyRejectedCount.incrementAndGet();
+        reject(runnable, executor);
+    }
+
+    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+        reject(runnable, executor);
+    }
+
+    @ManagedAttribute(description = "Number of tasks rejected before the queue was full")
+    public long getEarlyRejectedCount() {
+        return earlyRejectedCount.get();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        earlyRejectedCount.set(0);
+    }
+
+    @ManagedAttribute(description = "Maximum queue delay in milliseconds")
+    public long getMaxQueueDelay() {
+        return maxQueueDelay;
+    }
+
+    /**
+     * Sets the time in milliseconds the oldest queued task may wait before new
+     * tasks are rejected, default is 1000.
+     */
+    public void setMaxQueueDelay(long maxQueueDelay) {
+        this.maxQueueDelay = maxQueueDelay;
+    }
+
+    public String toString() {
+        return "QueueDelayRejectionPolicy[maxQueueDelay=" + maxQueueDelay + "ms]";
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkListener;
+import commonj.work.WorkManager;
+
+/**
+ * Rejection policy which spills the tasks a full pool cannot take over to
+ * the {@link WorkManager}, where every task is scheduled as a short lived
+ * {@link Work} of its own. This absorbs bursts with the spare capacity of the
+ * WorkManager without growing the pool for good.
+ * <p/>
+ * At most burstLimit tasks are spilled over at the same time, beyond that
+ * the task is handed to the fallback handler, or rejected when there is
+ * none. {@link WorkManagerThreadPoolFactory} sets its WorkManager on the
+ * policy when it has none.
+ */
+@ManagedResource(description = "Spillover rejection policy")
+public class SpilloverRejectionPolicy extends WorkManagerRejectionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(SpilloverRejectionPolicy.class);
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong burstExceededCount = new AtomicLong();
+    private volatile WorkManager workmanager;
+    private int burstLimit = 10;
+    private RejectedExecutionHandler fallback;
+
+    public SpilloverRejectionPolicy() {
+    }
+
+    public SpilloverRejectionPolicy(WorkManager workmanager, int burstLimit) {
+        this.workmanager = workmanager;
+        this.burstLimit = burstLimit;
+    }
+
+    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            reject(runnable, executor);
+            return;
+        }
+        WorkManager wm = workmanager;
+        if (wm == null || !acquire()) {
+            burstExceededCount.incrementAndGet();
+            fallback(runnable, executor);
+            return;
+        }
+        // runs the task of the pool, so the task keeps the context it was submitted with
+        SpilloverWork work = new SpilloverWork(runnable, executor);
+        try {
+            wm.schedule(work, work);
+            spilledCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            LOG.debug("WorkManager refused spillover of task " + WorkManagerThreadPoolExecutor.unwrap(runnable), e);
+            work.done();
+            fallback(runnable, executor);
+        }
+    }
+
+    private boolean acquire() {
+        while (true) {
+            int active = activeCount.get();
+            if (active >= burstLimit) {
+                return false;
+            }
+            if (activeCount.compareAndSet(active, active + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void fallback(Runnable runnable, ThreadPoolExecutor executor) {
+        if (fallback != null) {
+            fallback.rejectedExecution(runnable, executor);
+        } else {
+            reject(runnable, executor);
+        }
+    }
+
+    @ManagedAttribute(description = "Number of spilled over tasks which have not completed yet")
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of tasks spilled over to the WorkManager")
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of tasks not spilled over as the burst limit was reached")
+    public long getBurstExceededCount() {
+        return burstExceededCount.get();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        spilledCount.set(0);
+        burstExceededCount.set(0);
+    }
+
+    public WorkManager getWorkmanager() {
+        return workmanager;
+    }
+
+    public void setWorkmanager(WorkManager workmanager) {
+        this.workmanager = workmanager;
+    }
+
+    @ManagedAttribute(description = "Maximum number of spilled over tasks")
+    public int getBurstLimit() {
+        return burstLimit;
+    }
+
+    /**
+     * Sets the maximum number of tasks spilled over at the same time, default
+     * is 10.
+     */
+    @ManagedAttribute(description = "Maximum number of spilled over tasks")
+    public void setBurstLimit(int burstLimit) {
+        this.burstLimit = burstLimit;
+    }
+
+    public RejectedExecutionHandler getFallback() {
+        return fallback;
+    }
+
+    /**
+     * Sets the handler for the tasks beyond the burst limit, they are
+     * rejected when there is none.
+     */
+    public void setFallback(RejectedExecutionHandler fallback) {
+        this.fallback = fallback;
+    }
+
+    public String toString() {
+        return "SpilloverRejectionPolicy[burstLimit=" + burstLimit + ", active=" + activeCount.get() + "]";
+    }
+
+    /**
+     * The work of a spilled over task, which is its own {@link WorkListener}
+     * to give back its place in the burst when done or rejected.
+     */
+    private final class SpilloverWork implements Work, WorkListener {
+        private final Runnable task;
+        private final ThreadPoolExecutor executor;
+        private final String name;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private SpilloverWork(Runnable task, ThreadPoolExecutor executor) {
+            this.task = task;
+            this.executor = executor;
+            // named after the pool, not the task, so the works of a pool share their statistics
+            if (executor instanceof WorkManagerThreadPoolExecutor) {
+                this.name = ((WorkManagerThreadPoolExecutor)executor).getName();
+            } else {
+                this.name = String.valueOf(executor.getThreadFactory());
+            }
+        }
+
+        public void run() {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                LOG.warn("Error running spilled over task " + WorkManagerThreadPoolExecutor.unwrap(task) + " of " + executor, e);
+            } finally {
+                done();
+            }
+        }
+
+        void done() {
+            if (done.compareAndSet(false, true)) {
+                activeCount.decrementAndGet();
+            }
+        }
+
+        public void release() {
+        }
+
+        public boolean isDaemon() {
+            return false;
+        }
+
+        public void workAccepted(WorkEvent event) {
+        }
+
+        public void workStarted(WorkEvent event) {
+        }
+
+        public void workRejected(WorkEvent event) {
+            done();
+            incrementRejected();
+            Runnable submitted = WorkManagerThreadPoolExecutor.unwrap(task);
+            if (!WorkFutureTask.reject(submitted, event.getException())) {
+                LOG.warn("WorkManager rejected spilled over task " + submitted + " of " + executor, event.getException());
+            }
+        }
+
+        public void workCompleted(WorkEvent event) {
+            done();
+        }
+
+        public String toString() {
+            return "SpilloverWork[" + name + "]";
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.timers.Timer;
+import commonj.timers.TimerListener;
+import commonj.timers.TimerManager;
+import commonj.work.WorkManager;
+
+/**
+ * A {@link ScheduledExecutorService} on top of a commonj {@link TimerManager}.
+ * <p/>
+ * The delays are kept by the TimerManager, and a task is only handed to the
+ * WorkManager when its timer expires, so no thread is held between the
+ * executions of a scheduled task. A fixed rate task which is still running
+ * when its timer expires again skips that execution, a fixed delay task is
+ * rescheduled once it has completed.
+ */
+public class TimerManagerScheduledExecutorService extends AbstractExecutorService implements ScheduledExecutorService {
+    private static final Logger LOG = LoggerFactory.getLogger(TimerManagerScheduledExecutorService.class);
+
+    private final TimerManager timerManager;
+    private final String name;
+    private final ExecutorService taskExecutor;
+    private final Set<TimerTask<?>> tasks = Collections.newSetFromMap(new ConcurrentHashMap<TimerTask<?>, Boolean>());
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition termination = lock.newCondition();
+    private volatile boolean shutdown;
+
+    public TimerManagerScheduledExecutorService(TimerManager timerManager, WorkManager workmanager, String name) {
+        this(timerManager, name, new WorkManagerExecutorService(workmanager, name));
+    }
+
+    public TimerManagerScheduledExecutorService(TimerManager timerManager, String name, ExecutorService taskExecutor) {
+        if (timerManager == null) {
+            throw new IllegalArgumentException("TimerManager must be specified");
+        }
+        this.timerManager = timerManager;
+        this.name = name;
+        this.taskExecutor = taskExecutor;
+    }
+
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return schedule(new TimerTask<Object>(command, null, toMillis(delay, unit), 0));
+    }
+
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return schedule(new TimerTask<V>(callable, toMillis(delay, unit)));
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be > 0, was " + period);
+        }
+        return schedule(new TimerTask<Object>(command, null, toMillis(initialDelay, unit), Math.max(1, unit.toMillis(period))));
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("Delay must be > 0, was " + delay);
+        }
+        return schedule(new TimerTask<Object>(command, null, toMillis(initialDelay, unit), -Math.max(1, unit.toMillis(delay))));
+    }
+
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Task " + command + " rejected from " + this);
+        }
+        taskExecutor.execute(command);
+    }
+
+    private static long toMillis(long delay, TimeUnit unit) {
+        return Math.max(0, unit.toMillis(delay));
+    }
+
+    private <V> ScheduledFuture<V> schedule(TimerTask<V> task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Task " + task + " rejected from " + this);
+        }
+        tasks.add(task);
+        try {
+            if (task.period > 0) {
+                task.timer = timerManager.scheduleAtFixedRate(task, task.delay, task.period);
+            } else {
+                task.timer = timerManager.schedule(task, task.delay);
+            }
+        } catch (RuntimeException e) {
+            completed(task);
+            RejectedExecutionException ree = new RejectedExecutionException("TimerManager rejected task " + task + " from " + this);
+            ree.initCause(e);
+            throw ree;
+        }
+        return task;
+    }
+
+    private void completed(TimerTask<?> task) {
+        if (tasks.remove(task) && shutdown && tasks.isEmpty()) {
+            taskExecutor.shutdown();
+            lock.lock();
+            try {
+                termination.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting tasks and cancels the periodic tasks, delayed tasks
+     * still run when their timer expires.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (TimerTask<?> task : tasks) {
+            if (task.isPeriodic()) {
+                task.cancel(false);
+            }
+        }
+        if (tasks.isEmpty()) {
+            taskExecutor.shutdown();
+        }
+    }
+
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> answer = new ArrayList<Runnable>();
+        for (TimerTask<?> task : tasks) {
+            if (task.cancel(false)) {
+                answer.add(task);
+            }
+        }
+        answer.addAll(taskExecutor.shutdownNow());
+        return answer;
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        return shutdown && tasks.isEmpty() && taskExecutor.isTerminated();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!shutdown || !tasks.isEmpty()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = termination.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return taskExecutor.awaitTermination(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Number of tasks with a pending timer.
+     */
+    public int getScheduledCount() {
+        return tasks.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public TimerManager getTimerManager() {
+        return timerManager;
+    }
+
+    public ExecutorService getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    public String toString() {
+        return "TimerManagerScheduledExecutorService[" + name + ", scheduled=" + tasks.size() + ", shutdown=" + shutdown + "]";
+    }
+
+    /**
+     * A scheduled task, which is the {@link TimerListener} of its own timer.
+     * A positive period is a fixed rate, a negative period a fixed delay.
+     */
+    private final class TimerTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V>, TimerListener {
+        private final long delay;
+        private final long period;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile Timer timer;
+        private volatile long time;
+
+        private TimerTask(Runnable runnable, V result, long delay, long period) {
+            super(runnable, result);
+            this.delay = delay;
+            this.period = period;
+            this.time = System.currentTimeMillis() + delay;
+        }
+
+        private TimerTask(Callable<V> callable, long delay) {
+            super(callable);
+            this.delay = delay;
+            this.period = 0;
+            this.time = System.currentTimeMillis() + delay;
+        }
+
+        public void timerExpired(Timer expired) {
+            if (isCancelled()) {
+                expired.cancel();
+                completed(this);
+                return;
+            }
+            if (!running.compareAndSet(false, true)) {
+                LOG.trace("Skipping execution of {} as it is still running", this);
+                return;
+            }
+            try {
+                taskExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                running.set(false);
+                LOG.warn("Cannot run expired task " + this + " of " + TimerManagerScheduledExecutorService.this, e);
+                cancel(false);
+            }
+        }
+
+        public void run() {
+            try {
+                if (!isPeriodic()) {
+                    super.run();
+                    completed(this);
+                } else if (!runAndReset()) {
+                    // failed or cancelled, so it will not run again
+                    cancelTimer();
+                    completed(this);
+                } else if (period > 0) {
+                    time += period;
+                } else if (shutdown || isCancelled()) {
+                    completed(this);
+                } else {
+                    time = System.currentTimeMillis() - period;
+                    timer = timerManager.schedule(this, -period);
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Cannot reschedule task " + this + " of " + TimerManagerScheduledExecutorService.this, e);
+                setException(e);
+                completed(this);
+            } finally {
+                running.set(false);
+            }
+        }
+
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean answer = super.cancel(mayInterruptIfRunning);
+            if (answer) {
+                cancelTimer();
+                if (!running.get()) {
+                    completed(this);
+                }
+            }
+            return answer;
+        }
+
+        private void cancelTimer() {
+            Timer current = timer;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            if (other == this) {
+                return 0;
+            }
+            long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+
+        public String toString() {
+            return "TimerTask[delay=" + getDelay(TimeUnit.MILLISECONDS) + "ms, period=" + period + "ms]";
+        }
+    }
+}
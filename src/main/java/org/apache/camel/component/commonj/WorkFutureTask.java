@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.camel.util.concurrent.Rejectable;
+
+/**
+ * Future which can be failed when the WorkManager rejects the work it was
+ * submitted with.
+ */
+class WorkFutureTask<T> extends FutureTask<T> implements Rejectable {
+    private final Object task;
+
+    WorkFutureTask(Runnable runnable, T value) {
+        super(runnable, value);
+        this.task = runnable;
+    }
+
+    WorkFutureTask(Callable<T> callable) {
+        super(callable);
+        this.task = callable;
+    }
+
+    /**
+     * Gets the submitted runnable, or <tt>null</tt> for a callable.
+     */
+    Runnable getTask() {
+        return task instanceof Runnable ? (Runnable)task : null;
+    }
+
+    public void reject() {
+        reject(null);
+    }
+
+    void reject(Throwable cause) {
+        if (task instanceof Rejectable) {
+            ((Rejectable)task).reject();
+        }
+        RejectedExecutionException e = new RejectedExecutionException("WorkManager rejected task " + task);
+        if (cause != null) {
+            e.initCause(cause);
+        }
+        setException(e);
+    }
+
+    /**
+     * Rejects the task, failing its future if it is a {@link WorkFutureTask}.
+     *
+     * @return <tt>false</tt> if the task could not be told it was rejected
+     */
+    static boolean reject(Runnable task, Throwable cause) {
+        if (task instanceof WorkFutureTask) {
+            ((WorkFutureTask<?>)task).reject(cause);
+        } else if (task instanceof Rejectable) {
+            ((Rejectable)task).reject();
+        } else {
+            return false;
+        }
+        return true;
+    }
+}
@@ -18,15 +18,86 @@ package org.apache.camel.component.commonj;
 
 import commonj.work.Work;
 
+/**
+ * A daemon work running the task of a pool thread. Releasing the work
+ * interrupts the WorkManager thread while it runs the task.
+ * <p/>
+ * The events it records are of the pool thread, so have no route id; the
+ * tasks run by the thread are recorded by their pool.
+ */
 public class WorkItem implements Work {
-    private Thread thread;
+    private static final WorkManagerEventRecorder EVENTS = WorkManagerEventRecorder.getInstance();
+    private final Runnable runnable;
+    private final String name;
+    private Thread carrier;
+    private long scheduledTime;
+    private volatile long startedTime;
+    private volatile boolean started;
 
     public WorkItem(Thread thread) {
-        this.thread = thread;
+        this(thread, thread.getName());
+    }
+
+    public WorkItem(Runnable runnable, String name) {
+        this.runnable = runnable;
+        this.name = name;
+    }
+
+    /**
+     * The name of the thread this work runs.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public synchronized void release() {
+        if (carrier != null) {
+            if (EVENTS.isEnabled() && startedTime > 0) {
+                EVENTS.released(WorkManagerEventRecorder.getPoolName(name), null, System.nanoTime() - startedTime);
+            }
+            carrier.interrupt();
+        }
+    }
+
+    /**
+     * Records the work being scheduled, before it is handed to the WorkManager.
+     */
+    void scheduling() {
+        if (EVENTS.isEnabled()) {
+            scheduledTime = System.nanoTime();
+            EVENTS.scheduled(WorkManagerEventRecorder.getPoolName(name), null);
+        }
+    }
+
+    /**
+     * Records the work being rejected by the WorkManager.
+     */
+    void rejected(Throwable cause) {
+        if (EVENTS.isEnabled()) {
+            EVENTS.rejected(WorkManagerEventRecorder.getPoolName(name), null, cause);
+        }
+    }
+
+    /**
+     * Whether the WorkManager thread running this work is interrupted.
+     */
+    public synchronized boolean isInterrupted() {
+        return carrier != null && carrier.isInterrupted();
     }
 
-    public void release() {
-        thread.interrupt();
+    /**
+     * Gets the WorkManager thread running this work, or <tt>null</tt> when it
+     * is not running.
+     */
+    public synchronized Thread getCarrier() {
+        return carrier;
+    }
+
+    /**
+     * Whether a WorkManager thread started running this work.
+     */
+    public boolean isStarted() {
+        return started;
     }
 
     public boolean isDaemon() {
@@ -34,6 +105,29 @@ public class WorkItem implements Work {
     }
 
     public void run() {
-        thread.run();
+        synchronized (this) {
+            carrier = Thread.currentThread();
+        }
+        started = true;
+        long start = 0;
+        if (EVENTS.isEnabled()) {
+            start = System.nanoTime();
+            startedTime = start;
+            EVENTS.started(WorkManagerEventRecorder.getPoolName(name), null, scheduledTime > 0 ? start - scheduledTime : 0);
+        }
+        try {
+            runnable.run();
+        } finally {
+            synchronized (this) {
+                carrier = null;
+            }
+            if (start > 0) {
+                EVENTS.completed(WorkManagerEventRecorder.getPoolName(name), null, System.nanoTime() - start);
+            }
+        }
+    }
+
+    public String toString() {
+        return name;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,341 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.camel.util.concurrent.Rejectable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.work.WorkManager;
+
+/**
+ * An {@link java.util.concurrent.ExecutorService} which queues the submitted
+ * tasks and runs up to <tt>batchSize</tt> of them inside a single WorkManager
+ * work, scheduled through a {@link WorkManagerExecutorService}.
+ * <p/>
+ * A batch waits at most <tt>batchDelay</tt> microseconds for more tasks to
+ * arrive before it completes. A failing task does not affect the other tasks
+ * of its batch, and every submitted task still gets its own future.
+ * <p/>
+ * When the WorkManager rejects a batch only the task of the caller whose
+ * submission scheduled it is rejected, the other queued tasks wait for the
+ * next batch. When the WorkManager reports the rejection later on and no
+ * other batch runs, the queued tasks are rejected, as no batch would take
+ * them.
+ */
+public class WorkManagerBatchingExecutorService extends AbstractExecutorService {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerBatchingExecutorService.class);
+    private final WorkManagerExecutorService delegate;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger activeBatches = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition termination = lock.newCondition();
+    private final int batchSize;
+    private final long batchDelay;
+    private final int maxConcurrentBatches;
+    private volatile boolean shutdown;
+
+    /**
+     * @param workmanager the WorkManager to schedule the batches on
+     * @param name the name of the executor
+     * @param batchSize maximum number of tasks to run in a single work
+     * @param batchDelay maximum time in microseconds a batch waits for more tasks
+     * @param maxConcurrentBatches maximum number of batches scheduled at the same time
+     */
+    public WorkManagerBatchingExecutorService(WorkManager workmanager, String name, int batchSize, long batchDelay, int maxConcurrentBatches) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("BatchSize must be >= 1, was " + batchSize);
+        }
+        if (maxConcurrentBatches < 1) {
+            throw new IllegalArgumentException("MaxConcurrentBatches must be >= 1, was " + maxConcurrentBatches);
+        }
+        this.delegate = new WorkManagerExecutorService(workmanager, name);
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.maxConcurrentBatches = maxConcurrentBatches;
+    }
+
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Task " + task + " rejected from " + this);
+        }
+        tasks.offer(task);
+        queued.incrementAndGet();
+        try {
+            dispatch();
+        } catch (RejectedExecutionException e) {
+            // unless a running batch already took it
+            if (tasks.remove(task)) {
+                queued.decrementAndGet();
+                rejected.incrementAndGet();
+                signalIfTerminated();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Schedules another batch when there are no batches running, or when the
+     * running batches have more queued tasks than they will take.
+     */
+    private void dispatch() {
+        for (;;) {
+            int active = activeBatches.get();
+            int pending = queued.get();
+            if (pending == 0 || active >= maxConcurrentBatches || (active > 0 && pending <= active * batchSize)) {
+                return;
+            }
+            if (activeBatches.compareAndSet(active, active + 1)) {
+                Batch batch = new Batch();
+                try {
+                    delegate.execute(batch);
+                } catch (RejectedExecutionException e) {
+                    activeBatches.decrementAndGet();
+                    throw e;
+                }
+                if (batch.dispatched()) {
+                    return;
+                }
+                throw new RejectedExecutionException("WorkManager rejected batch of " + this);
+            }
+        }
+    }
+
+    private void batchDone() {
+        activeBatches.decrementAndGet();
+        if (queued.get() > 0) {
+            try {
+                dispatch();
+            } catch (RejectedExecutionException e) {
+                LOG.debug("WorkManager rejected the next batch, {} tasks wait for another one", queued.get());
+            }
+        }
+        signalIfTerminated();
+    }
+
+    /**
+     * Rejects the queued tasks, as the WorkManager rejected the batch which
+     * would have run them.
+     */
+    private void rejectQueued() {
+        RejectedExecutionException cause = new RejectedExecutionException("WorkManager rejected batch of " + this);
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            if (!WorkFutureTask.reject(task, cause)) {
+                LOG.warn("WorkManager rejected the batch of task " + task + " from " + this + ", the task is lost", cause);
+            }
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        signalIfTerminated();
+    }
+
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> answer = new ArrayList<Runnable>();
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            queued.decrementAndGet();
+            answer.add(task);
+        }
+        delegate.shutdownNow();
+        signalIfTerminated();
+        return answer;
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        return shutdown && queued.get() == 0 && activeBatches.get() == 0;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!isTerminated()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = termination.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalIfTerminated() {
+        if (isTerminated()) {
+            delegate.shutdown();
+            lock.lock();
+            try {
+                termination.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Number of tasks waiting to be picked up by a batch.
+     */
+    public int getQueueSize() {
+        return queued.get();
+    }
+
+    public int getActiveBatches() {
+        return activeBatches.get();
+    }
+
+    public long getCompletedTaskCount() {
+        return completed.get();
+    }
+
+    /**
+     * Number of tasks rejected because the executor is shut down or the
+     * WorkManager refused their batch.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getBatchDelay() {
+        return batchDelay;
+    }
+
+    public int getMaxConcurrentBatches() {
+        return maxConcurrentBatches;
+    }
+
+    public void setCallerRunsWhenRejected(boolean callerRunsWhenRejected) {
+        delegate.setCallerRunsWhenRejected(callerRunsWhenRejected);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new WorkFutureTask<T>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new WorkFutureTask<T>(callable);
+    }
+
+    public String toString() {
+        return "WorkManagerBatchingExecutorService[" + delegate.getName() + ", queued=" + queued.get() + ", activeBatches=" + activeBatches.get()
+               + ", shutdown=" + shutdown + "]";
+    }
+
+    /**
+     * Runs queued tasks in a single WorkManager work.
+     */
+    private final class Batch implements Runnable, Rejectable {
+        private boolean dispatched;
+        private boolean rejected;
+
+        public void run() {
+            long delayNanos = TimeUnit.MICROSECONDS.toNanos(batchDelay);
+            long deadline = System.nanoTime() + delayNanos;
+            int count = 0;
+            try {
+                while (count < batchSize) {
+                    Runnable task = tasks.poll();
+                    if (task == null) {
+                        if (delayNanos <= 0 || shutdown || deadline - System.nanoTime() <= 0) {
+                            break;
+                        }
+                        LockSupport.parkNanos(Math.min(deadline - System.nanoTime(), 10000L));
+                        continue;
+                    }
+                    queued.decrementAndGet();
+                    count++;
+                    try {
+                        task.run();
+                    } catch (Throwable e) {
+                        LOG.warn("Error running task " + task + " in " + WorkManagerBatchingExecutorService.this, e);
+                    }
+                    completed.incrementAndGet();
+                }
+            } finally {
+                LOG.trace("Batch completed running {} tasks", count);
+                batchDone();
+            }
+        }
+
+        /**
+         * Marks the batch as scheduled by the WorkManager, unless it rejected
+         * the batch while it was scheduled.
+         *
+         * @return whether the batch was scheduled
+         */
+        synchronized boolean dispatched() {
+            dispatched = !rejected;
+            return dispatched;
+        }
+
+        /**
+         * The WorkManager rejected the batch, its tasks stay queued for the
+         * next batch. When the rejection is reported after the batch was
+         * scheduled, the caller has gone, so the queued tasks are rejected
+         * unless another batch runs to take them.
+         */
+        public void reject() {
+            boolean late;
+            synchronized (this) {
+                rejected = true;
+                late = dispatched;
+            }
+            if (activeBatches.decrementAndGet() == 0 && late) {
+                rejectQueued();
+            }
+            signalIfTerminated();
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+import org.apache.camel.Exchange;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.util.concurrent.Rejectable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the tasks in flight in the pools of a route or a thread pool
+ * profile, so a route with a slow downstream cannot take every WorkManager
+ * thread from the other routes.
+ * <p/>
+ * A task takes a permit when it is handed to its pool and gives it back when
+ * it has run, whichever pool of the bulkhead it was submitted to. The permits
+ * are counted with compare-and-set, without locks. When there is no permit
+ * the task is rejected with a {@link RejectedExecutionException}, unless
+ * maxWaiting is set: then up to maxWaiting tasks wait for a permit, and a
+ * task which did not get one within maxWaitTime milliseconds is rejected by
+ * the next task submitted or permit given back. A waiting task is handed to
+ * its pool by the thread giving back the permit, with the exchange of the
+ * submitting thread bound. The hand-off does not recurse when a pool runs the
+ * task in the calling thread, the thread keeps handing off the waiting tasks
+ * in a loop instead, so it runs at most maxWaiting of them.
+ * <p/>
+ * A bulkhead applies to the pools of the {@link WorkManagerExecutorServiceStrategy}
+ * and the {@link WorkManagerThreadPoolFactory} matching its profileId and
+ * routeId, a bulkhead without either applies to all pools.
+ */
+@ManagedResource(description = "WorkManager bulkhead")
+public class WorkManagerBulkhead implements CamelContextAware {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerBulkhead.class);
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Queue<WaitingTask> waiting = new ConcurrentLinkedQueue<WaitingTask>();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong deniedCount = new AtomicLong();
+    private final AtomicLong waitedCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+    private final ThreadLocal<Boolean> draining = new ThreadLocal<Boolean>();
+    private String name;
+    private String profileId;
+    private String routeId;
+    private int maxConcurrent = 10;
+    private int maxWaiting;
+    private long maxWaitTime = 1000;
+    private CamelContext camelContext;
+
+    public WorkManagerBulkhead() {
+    }
+
+    public WorkManagerBulkhead(String name, int maxConcurrent) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Gets the first bulkhead matching the pool, or <tt>null</tt> if there is
+     * none.
+     */
+    public static WorkManagerBulkhead getBulkhead(List<WorkManagerBulkhead> bulkheads, String profileId, String routeId) {
+        if (bulkheads != null) {
+            for (WorkManagerBulkhead bulkhead : bulkheads) {
+                if (bulkhead.matches(profileId, routeId)) {
+                    return bulkhead;
+                }
+            }
+        }
+        return null;
+    }
+
+    public boolean matches(String profileId, String routeId) {
+        if (this.profileId != null && !this.profileId.equals(profileId)) {
+            return false;
+        }
+        return this.routeId == null || this.routeId.equals(routeId);
+    }
+
+    /**
+     * Hands the task to the executor when a permit is free, or else lets it
+     * wait for one.
+     *
+     * @throws RejectedExecutionException if there is no permit and no room to
+     *             wait, or the executor rejects the task
+     */
+    public void execute(Runnable task, Executor executor) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (waitingCount.get() > 0) {
+            expire();
+        }
+        // waiting tasks go first
+        if (waitingCount.get() == 0 && tryAcquire()) {
+            acceptedCount.incrementAndGet();
+            dispatch(task, executor);
+            return;
+        }
+        if (!reserveWaiting()) {
+            deniedCount.incrementAndGet();
+            throw new RejectedExecutionException("Task " + task + " rejected from " + this + ", all " + maxConcurrent + " permits are taken");
+        }
+        waitedCount.incrementAndGet();
+        waiting.offer(new WaitingTask(task, executor));
+        // a permit may have been given back before the task was queued
+        drain();
+    }
+
+    private boolean tryAcquire() {
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= maxConcurrent) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean reserveWaiting() {
+        for (;;) {
+            int current = waitingCount.get();
+            if (current >= maxWaiting) {
+                return false;
+            }
+            if (waitingCount.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void release() {
+        inFlight.decrementAndGet();
+        if (waitingCount.get() > 0) {
+            expire();
+            drain();
+        }
+    }
+
+    /**
+     * Rejects the tasks at the head of the queue which waited longer than
+     * maxWaitTime, so they do not wait for a permit to be given back.
+     */
+    private void expire() {
+        long maxWait = TimeUnit.MILLISECONDS.toNanos(maxWaitTime);
+        WaitingTask head;
+        while ((head = waiting.peek()) != null) {
+            long waited = System.nanoTime() - head.queued;
+            if (waited <= maxWait) {
+                return;
+            }
+            if (waiting.remove(head)) {
+                waitingCount.decrementAndGet();
+                expired(head, waited);
+            }
+        }
+    }
+
+    private void expired(WaitingTask task, long waited) {
+        waitTime.addAndGet(waited);
+        expiredCount.incrementAndGet();
+        reject(task.task, new RejectedExecutionException("Task " + task.task + " waited " + TimeUnit.NANOSECONDS.toMillis(waited)
+                                                         + " ms for a permit of " + this));
+    }
+
+    /**
+     * Hands the waiting tasks to their executor while there are permits. A
+     * task the executor runs in this thread gives back its permit while this
+     * thread drains, which then leaves the next task to this loop instead of
+     * recursing.
+     */
+    private void drain() {
+        if (draining.get() != null) {
+            return;
+        }
+        draining.set(Boolean.TRUE);
+        try {
+            while (waitingCount.get() > 0 && tryAcquire()) {
+                WaitingTask next = waiting.poll();
+                if (next == null) {
+                    // another thread reserved but did not queue yet, it drains itself
+                    inFlight.decrementAndGet();
+                    return;
+                }
+                waitingCount.decrementAndGet();
+                long waited = System.nanoTime() - next.queued;
+                if (waited > TimeUnit.MILLISECONDS.toNanos(maxWaitTime)) {
+                    inFlight.decrementAndGet();
+                    expired(next, waited);
+                    continue;
+                }
+                waitTime.addAndGet(waited);
+                acceptedCount.incrementAndGet();
+                Exchange previous = WorkManagerExchangeBinding.bind(next.exchange);
+                try {
+                    dispatch(next.task, next.executor);
+                } catch (RejectedExecutionException e) {
+                    reject(next.task, e);
+                } finally {
+                    WorkManagerExchangeBinding.restore(previous);
+                }
+            }
+        } finally {
+            draining.remove();
+        }
+    }
+
+    private void dispatch(Runnable task, Executor executor) {
+        Permit permit = new Permit(task);
+        try {
+            executor.execute(permit);
+        } catch (RuntimeException e) {
+            permit.giveBack();
+            throw e;
+        }
+    }
+
+    private void reject(Runnable task, RejectedExecutionException cause) {
+        if (!WorkFutureTask.reject(task, cause)) {
+            LOG.warn("Dropped task " + task + " rejected from " + this, cause);
+        }
+    }
+
+    @ManagedAttribute(description = "Number of tasks holding a permit")
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    @ManagedAttribute(description = "Number of tasks waiting for a permit")
+    public int getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of tasks which got a permit")
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of tasks rejected without waiting")
+    public long getDeniedCount() {
+        return deniedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of tasks which waited for a permit")
+    public long getWaitedCount() {
+        return waitedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of tasks rejected after waiting longer than maxWaitTime")
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    @ManagedAttribute(description = "Mean wait time of the tasks which waited in microseconds")
+    public long getAverageWaitTime() {
+        long count = waitedCount.get() - waitingCount.get();
+        return count > 0 ? TimeUnit.NANOSECONDS.toMicros(waitTime.get() / count) : 0;
+    }
+
+    @ManagedOperation(description = "Reset the counters")
+    public void reset() {
+        acceptedCount.set(0);
+        deniedCount.set(0);
+        waitedCount.set(waitingCount.get());
+        expiredCount.set(0);
+        waitTime.set(0);
+    }
+
+    @ManagedAttribute(description = "Name")
+    public String getName() {
+        if (name != null) {
+            return name;
+        }
+        return routeId != null ? routeId : profileId != null ? profileId : "default";
+    }
+
+    /**
+     * Sets the name the bulkhead is registered in JMX with, default is its
+     * route id or profile id.
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getProfileId() {
+        return profileId;
+    }
+
+    /**
+     * Sets the thread pool profile id of the pools the bulkhead applies to.
+     */
+    public void setProfileId(String profileId) {
+        this.profileId = profileId;
+    }
+
+    public String getRouteId() {
+        return routeId;
+    }
+
+    /**
+     * Sets the route id of the pools the bulkhead applies to. Only the pools
+     * of the {@link WorkManagerExecutorServiceStrategy} have a route id.
+     */
+    public void setRouteId(String routeId) {
+        this.routeId = routeId;
+    }
+
+    @ManagedAttribute(description = "Maximum number of tasks in flight")
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Sets the maximum number of tasks in flight in the pools of the
+     * bulkhead, queued or running, default is 10.
+     */
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    @ManagedAttribute(description = "Maximum number of tasks waiting for a permit")
+    public int getMaxWaiting() {
+        return maxWaiting;
+    }
+
+    /**
+     * Sets the maximum number of tasks waiting for a permit, default is 0
+     * which rejects the tasks right away when there is none.
+     */
+    public void setMaxWaiting(int maxWaiting) {
+        this.maxWaiting = maxWaiting;
+    }
+
+    @ManagedAttribute(description = "Maximum wait time in milliseconds")
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * Sets the time in milliseconds a task may wait for a permit, default is
+     * 1000.
+     */
+    public void setMaxWaitTime(long maxWaitTime) {
+        this.maxWaitTime = maxWaitTime;
+    }
+
+    public CamelContext getCamelContext() {
+        return camelContext;
+    }
+
+    public void setCamelContext(CamelContext camelContext) {
+        this.camelContext = camelContext;
+        WorkManagerManagementHelper.manage(camelContext, this, "bulkhead " + getName());
+    }
+
+    public String toString() {
+        return "WorkManagerBulkhead[" + getName() + ", inFlight=" + inFlight.get() + "/" + maxConcurrent + ", waiting=" + waitingCount.get() + "]";
+    }
+
+    /**
+     * A task waiting for a permit, with the exchange it was submitted for.
+     */
+    private static final class WaitingTask {
+        private final Runnable task;
+        private final Executor executor;
+        private final Exchange exchange = WorkManagerExchangeBinding.getExchange();
+        private final long queued = System.nanoTime();
+
+        private WaitingTask(Runnable task, Executor executor) {
+            this.task = task;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Gives back the permits of the tasks which a pool returned from
+     * shutdownNow, and gets the tasks as they were submitted.
+     */
+    static List<Runnable> giveBack(List<Runnable> tasks) {
+        List<Runnable> answer = new ArrayList<Runnable>(tasks.size());
+        for (Runnable task : tasks) {
+            if (task instanceof Permit) {
+                Permit permit = (Permit)task;
+                permit.giveBack();
+                answer.add(permit.task);
+            } else {
+                answer.add(task);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Runs a task and gives back its permit, also when the pool rejects or
+     * discards it.
+     */
+    private final class Permit implements Runnable, Rejectable {
+        private final Runnable task;
+        private final AtomicBoolean held = new AtomicBoolean(true);
+
+        private Permit(Runnable task) {
+            this.task = task;
+        }
+
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                giveBack();
+            }
+        }
+
+        public void reject() {
+            giveBack();
+            if (!WorkFutureTask.reject(task, null)) {
+                LOG.warn("Dropped task {} rejected from {}", task, WorkManagerBulkhead.this);
+            }
+        }
+
+        private void giveBack() {
+            if (held.compareAndSet(true, false)) {
+                release();
+            }
+        }
+
+        public String toString() {
+            return String.valueOf(task);
+        }
+    }
+}
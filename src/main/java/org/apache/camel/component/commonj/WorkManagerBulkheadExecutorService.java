@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link ExecutorService} which hands its tasks to a pool through a
+ * {@link WorkManagerBulkhead}, which may be shared with other pools.
+ */
+public class WorkManagerBulkheadExecutorService extends AbstractExecutorService {
+    private final WorkManagerBulkhead bulkhead;
+    private final ExecutorService executor;
+
+    public WorkManagerBulkheadExecutorService(WorkManagerBulkhead bulkhead, ExecutorService executor) {
+        if (bulkhead == null) {
+            throw new IllegalArgumentException("Bulkhead must be specified");
+        }
+        this.bulkhead = bulkhead;
+        this.executor = executor;
+    }
+
+    public void execute(Runnable task) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Task " + task + " rejected from " + this);
+        }
+        bulkhead.execute(task, executor);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public List<Runnable> shutdownNow() {
+        return WorkManagerBulkhead.giveBack(executor.shutdownNow());
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    public WorkManagerBulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new WorkFutureTask<T>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new WorkFutureTask<T>(callable);
+    }
+
+    public String toString() {
+        return "WorkManagerBulkheadExecutorService[" + bulkhead + " -> " + executor + "]";
+    }
+}
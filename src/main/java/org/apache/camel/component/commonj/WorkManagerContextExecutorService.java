@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.util.concurrent.Rejectable;
+
+/**
+ * An {@link ExecutorService} which captures the context of the submitting
+ * thread with the {@link WorkManagerContextPropagator}s, and restores it
+ * around the task in the pool it hands the task to.
+ */
+public class WorkManagerContextExecutorService extends AbstractExecutorService {
+    private final ExecutorService executor;
+    private final WorkManagerContextPropagator[] propagators;
+
+    public WorkManagerContextExecutorService(ExecutorService executor, List<WorkManagerContextPropagator> propagators) {
+        this(executor, WorkManagerContextSnapshot.toArray(propagators));
+    }
+
+    private WorkManagerContextExecutorService(ExecutorService executor, WorkManagerContextPropagator[] propagators) {
+        this.executor = executor;
+        this.propagators = propagators;
+    }
+
+    /**
+     * Propagates the context to the tasks of the pool. The thread, priority
+     * and task pools capture the context in the task they queue anyway, the
+     * other pools are wrapped.
+     */
+    static ExecutorService propagate(ExecutorService executor, WorkManagerContextPropagator[] propagators) {
+        if (propagators.length == 0) {
+            return executor;
+        } else if (executor instanceof WorkManagerThreadPoolExecutor) {
+            ((WorkManagerThreadPoolExecutor)executor).setContextPropagators(propagators);
+            return executor;
+        } else if (executor instanceof WorkManagerPriorityThreadPoolExecutor) {
+            ((WorkManagerPriorityThreadPoolExecutor)executor).setContextPropagators(propagators);
+            return executor;
+        } else if (executor instanceof WorkManagerExecutorService) {
+            ((WorkManagerExecutorService)executor).setContextPropagators(propagators);
+            return executor;
+        }
+        return new WorkManagerContextExecutorService(executor, propagators);
+    }
+
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        executor.execute(new ContextTask(task, WorkManagerContextSnapshot.capture(propagators)));
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public List<Runnable> shutdownNow() {
+        List<Runnable> answer = new ArrayList<Runnable>();
+        for (Runnable runnable : executor.shutdownNow()) {
+            answer.add(runnable instanceof ContextTask ? ((ContextTask)runnable).task : runnable);
+        }
+        return answer;
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new WorkFutureTask<T>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new WorkFutureTask<T>(callable);
+    }
+
+    public String toString() {
+        return "WorkManagerContextExecutorService[" + executor + "]";
+    }
+
+    /**
+     * A task with the context it was submitted in.
+     */
+    private static final class ContextTask implements WorkManagerThreadPoolExecutor.WrappedTask, Rejectable {
+        private final Runnable task;
+        private final WorkManagerContextSnapshot snapshot;
+
+        private ContextTask(Runnable task, WorkManagerContextSnapshot snapshot) {
+            this.task = task;
+            this.snapshot = snapshot;
+        }
+
+        public Runnable getTask() {
+            return task;
+        }
+
+        public void run() {
+            WorkManagerContextSnapshot.run(snapshot, task);
+        }
+
+        public void reject() {
+            if (task instanceof Rejectable) {
+                ((Rejectable)task).reject();
+            }
+        }
+
+        public String toString() {
+            return task.toString();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+/**
+ * Carries a part of the context of the thread submitting a task, such as the
+ * MDC or the context class loader, over to the thread running it.
+ * <p/>
+ * The context is captured once when the task is submitted, and restored
+ * around the task on the WorkManager thread, so the processors need not set
+ * it up again on every exchange. Security principals or transaction hints of
+ * a container can be carried by propagators of their own.
+ */
+public interface WorkManagerContextPropagator {
+
+    /**
+     * Captures the context of the current thread, called in the submitting
+     * thread.
+     *
+     * @return an immutable snapshot of the context, may be <tt>null</tt>
+     */
+    Object capture();
+
+    /**
+     * Restores a captured context in the current thread before the task runs.
+     *
+     * @return the context it replaced, which is given to {@link #reset(Object)}
+     *         after the task ran
+     */
+    Object restore(Object snapshot);
+
+    /**
+     * Puts back the context replaced by {@link #restore(Object)}.
+     */
+    void reset(Object previous);
+}
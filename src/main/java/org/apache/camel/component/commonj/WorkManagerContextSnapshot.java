@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.List;
+
+/**
+ * The contexts captured by the {@link WorkManagerContextPropagator}s when a
+ * task is submitted, which are restored around the task when it runs.
+ * <p/>
+ * A snapshot holds one array with a value per propagator, and restoring it
+ * allocates one more array for the replaced values.
+ */
+public final class WorkManagerContextSnapshot {
+    private static final WorkManagerContextPropagator[] NONE = new WorkManagerContextPropagator[0];
+
+    private final WorkManagerContextPropagator[] propagators;
+    private final Object[] values;
+
+    private WorkManagerContextSnapshot(WorkManagerContextPropagator[] propagators, Object[] values) {
+        this.propagators = propagators;
+        this.values = values;
+    }
+
+    /**
+     * Captures the context of the current thread.
+     *
+     * @return the snapshot, or <tt>null</tt> when there are no propagators
+     */
+    public static WorkManagerContextSnapshot capture(WorkManagerContextPropagator[] propagators) {
+        if (propagators == null || propagators.length == 0) {
+            return null;
+        }
+        Object[] values = new Object[propagators.length];
+        for (int i = 0; i < propagators.length; i++) {
+            values[i] = propagators[i].capture();
+        }
+        return new WorkManagerContextSnapshot(propagators, values);
+    }
+
+    /**
+     * Runs the task in the captured context, and puts back the context of the
+     * current thread afterwards.
+     */
+    public void run(Runnable task) {
+        Object[] previous = new Object[propagators.length];
+        int restored = 0;
+        try {
+            for (; restored < propagators.length; restored++) {
+                previous[restored] = propagators[restored].restore(values[restored]);
+            }
+            task.run();
+        } finally {
+            while (restored > 0) {
+                restored--;
+                propagators[restored].reset(previous[restored]);
+            }
+        }
+    }
+
+    /**
+     * Runs the task in the captured context of the snapshot, or as is when
+     * there is none.
+     */
+    static void run(WorkManagerContextSnapshot snapshot, Runnable task) {
+        if (snapshot != null) {
+            snapshot.run(task);
+        } else {
+            task.run();
+        }
+    }
+
+    static WorkManagerContextPropagator[] toArray(List<WorkManagerContextPropagator> propagators) {
+        return propagators == null || propagators.isEmpty() ? NONE : propagators.toArray(new WorkManagerContextPropagator[propagators.size()]);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.util.concurrent.RejectableThreadPoolExecutor;
+
+/**
+ * A thread pool which counts the tasks it rejects, whatever its rejection
+ * policy. The policy it is given is called by a handler of its own, and is
+ * the one it returns as its policy.
+ */
+public class WorkManagerCountingThreadPoolExecutor extends RejectableThreadPoolExecutor {
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile RejectedExecutionHandler rejectedExecutionHandler = new ThreadPoolExecutor.AbortPolicy();
+
+    public WorkManagerCountingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+        super.setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+                reject(task);
+            }
+        });
+    }
+
+    /**
+     * Rejects the task with the policy of the pool.
+     */
+    protected void reject(Runnable task) {
+        rejectedCount.incrementAndGet();
+        rejectedExecutionHandler.rejectedExecution(task, this);
+    }
+
+    /**
+     * Counts a task the pool rejects without its policy.
+     */
+    protected void incrementRejected() {
+        rejectedCount.incrementAndGet();
+    }
+
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        if (handler == null) {
+            throw new NullPointerException();
+        }
+        this.rejectedExecutionHandler = handler;
+    }
+
+    @Override
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        return rejectedExecutionHandler;
+    }
+
+    /**
+     * The number of tasks the pool rejected.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.regex.Pattern;
+
+import org.apache.camel.Exchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the works being scheduled, started, completed, rejected and
+ * released, as JDK Flight Recorder events when running on JDK 11 or later.
+ * <p/>
+ * The Flight Recorder events are built in the <tt>jdk11</tt> profile and
+ * loaded by name, so this class does not depend on them. Without them, or
+ * when the system property <tt>org.apache.camel.component.commonj.jfr</tt> is
+ * <tt>false</tt>, the recorder does nothing. The callers check
+ * {@link #isEnabled()} before taking any timestamp, so there is no overhead
+ * unless a recording has the events enabled.
+ */
+public class WorkManagerEventRecorder {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerEventRecorder.class);
+    private static final String JFR_RECORDER = "org.apache.camel.component.commonj.JfrWorkManagerEventRecorder";
+    private static final Pattern COUNTER = Pattern.compile("\\s*#\\d+");
+    private static final WorkManagerEventRecorder INSTANCE = create();
+
+    protected WorkManagerEventRecorder() {
+    }
+
+    private static WorkManagerEventRecorder create() {
+        if (!Boolean.parseBoolean(System.getProperty("org.apache.camel.component.commonj.jfr", "true"))) {
+            return new WorkManagerEventRecorder();
+        }
+        try {
+            WorkManagerEventRecorder answer = (WorkManagerEventRecorder)Class.forName(JFR_RECORDER).newInstance();
+            LOG.debug("Recording WorkManager events with {}", answer);
+            return answer;
+        } catch (Throwable e) {
+            // not on JDK 11 or not built with the jdk11 profile
+            LOG.trace("Flight Recorder events not available", e);
+            return new WorkManagerEventRecorder();
+        }
+    }
+
+    public static WorkManagerEventRecorder getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the pool name of a thread, which is its name without the thread counter.
+     */
+    public static String getPoolName(String threadName) {
+        return threadName != null ? COUNTER.matcher(threadName).replaceFirst("") : null;
+    }
+
+    /**
+     * Gets the id of the route of the exchange bound to the current thread by
+     * the {@link WorkManagerExchangeBinding}, if any.
+     */
+    public static String getRouteId() {
+        Exchange exchange = WorkManagerExchangeBinding.getExchange();
+        return exchange != null ? exchange.getFromRouteId() : null;
+    }
+
+    /**
+     * Whether any of the events is recorded.
+     */
+    public boolean isEnabled() {
+        return false;
+    }
+
+    public void scheduled(String pool, String routeId) {
+    }
+
+    /**
+     * @param queueTime nanoseconds between being scheduled and started
+     */
+    public void started(String pool, String routeId, long queueTime) {
+    }
+
+    /**
+     * @param runTime nanoseconds the work ran
+     */
+    public void completed(String pool, String routeId, long runTime) {
+    }
+
+    public void rejected(String pool, String routeId, Throwable cause) {
+    }
+
+    /**
+     * @param runTime nanoseconds the work ran before it was released
+     */
+    public void released(String pool, String routeId, long runTime) {
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.model.ProcessorDefinition;
+import org.apache.camel.processor.DelegateAsyncProcessor;
+import org.apache.camel.spi.InterceptStrategy;
+
+/**
+ * Binds the exchange being processed to the current thread, so the executors
+ * can get an ordering key or a priority from the exchange of the tasks
+ * submitted by threads, seda or a parallel splitter, which only see a
+ * {@link Runnable}.
+ * <p/>
+ * Add it as an intercept strategy to the CamelContext, for example as a bean
+ * in the Spring XML.
+ */
+public class WorkManagerExchangeBinding implements InterceptStrategy {
+    private static final ThreadLocal<Exchange> EXCHANGE = new ThreadLocal<Exchange>();
+
+    public Processor wrapProcessorInInterceptors(CamelContext context, ProcessorDefinition<?> definition, Processor target, Processor nextTarget) {
+        return new BindingProcessor(target);
+    }
+
+    /**
+     * Gets the exchange being processed by the current thread, or
+     * <tt>null</tt> if there is none.
+     */
+    public static Exchange getExchange() {
+        return EXCHANGE.get();
+    }
+
+    /**
+     * Binds the exchange to the current thread.
+     *
+     * @return the exchange bound before, to restore with {@link #restore(Exchange)}
+     */
+    static Exchange bind(Exchange exchange) {
+        Exchange previous = EXCHANGE.get();
+        EXCHANGE.set(exchange);
+        return previous;
+    }
+
+    static void restore(Exchange previous) {
+        if (previous != null) {
+            EXCHANGE.set(previous);
+        } else {
+            EXCHANGE.remove();
+        }
+    }
+
+    /**
+     * Binds the exchange while its processor runs, which is when the tasks are
+     * submitted.
+     */
+    private static final class BindingProcessor extends DelegateAsyncProcessor {
+
+        private BindingProcessor(Processor processor) {
+            super(processor);
+        }
+
+        @Override
+        public boolean process(Exchange exchange, AsyncCallback callback) {
+            Exchange previous = bind(exchange);
+            try {
+                return super.process(exchange, callback);
+            } finally {
+                restore(previous);
+            }
+        }
+
+        public String toString() {
+            return "ExchangeBinding[" + getProcessor() + "]";
+        }
+    }
+}
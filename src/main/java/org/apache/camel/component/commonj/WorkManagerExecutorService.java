@@ -0,0 +1,371 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkListener;
+import commonj.work.WorkManager;
+
+/**
+ * An {@link java.util.concurrent.ExecutorService} which schedules every task
+ * as its own {@link Work} on the {@link WorkManager}.
+ * <p/>
+ * Unlike the thread pools backed by {@link WorkManagerThreadWrapper} no
+ * WorkManager thread is held while the executor is idle, so the WorkManager
+ * can balance short Camel tasks with the rest of the application server.
+ * Futures are completed when the work has run, or failed with a
+ * {@link RejectedExecutionException} when the WorkManager reports the work
+ * as rejected through its {@link WorkListener}. Other tasks rejected that
+ * way run in the thread reporting the rejection when
+ * <tt>callerRunsWhenRejected</tt> is set.
+ */
+public class WorkManagerExecutorService extends AbstractExecutorService {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerExecutorService.class);
+    private static final WorkManagerEventRecorder EVENTS = WorkManagerEventRecorder.getInstance();
+    private final WorkManager workmanager;
+    private final String name;
+    private final Set<TaskWork> works = Collections.newSetFromMap(new ConcurrentHashMap<TaskWork, Boolean>());
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition termination = lock.newCondition();
+    private volatile boolean shutdown;
+    private boolean callerRunsWhenRejected = true;
+    private volatile WorkManagerContextPropagator[] contextPropagators;
+
+    public WorkManagerExecutorService(WorkManager workmanager, String name) {
+        if (workmanager == null) {
+            throw new IllegalArgumentException("WorkManager must be specified");
+        }
+        this.workmanager = workmanager;
+        this.name = name;
+    }
+
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            reject(task, null);
+            return;
+        }
+        TaskWork work = new TaskWork(task);
+        works.add(work);
+        if (shutdown && works.remove(work)) {
+            reject(task, null);
+            return;
+        }
+        if (EVENTS.isEnabled()) {
+            work.scheduledTime = System.nanoTime();
+            work.routeId = WorkManagerEventRecorder.getRouteId();
+            EVENTS.scheduled(name, work.routeId);
+        }
+        try {
+            workmanager.schedule(work, work);
+        } catch (RuntimeException e) {
+            works.remove(work);
+            signalIfTerminated();
+            if (EVENTS.isEnabled()) {
+                EVENTS.rejected(name, work.routeId, e);
+            }
+            reject(task, e);
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        signalIfTerminated();
+    }
+
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> answer = new ArrayList<Runnable>();
+        for (TaskWork work : works) {
+            if (work.cancel()) {
+                answer.add(work.task);
+                works.remove(work);
+            } else {
+                work.release();
+            }
+        }
+        signalIfTerminated();
+        return answer;
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        return shutdown && works.isEmpty();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!isTerminated()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = termination.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of works scheduled on the WorkManager which have not completed yet.
+     */
+    public int getPendingCount() {
+        return works.size();
+    }
+
+    /**
+     * Number of works running a task.
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public long getCompletedTaskCount() {
+        return completed.get();
+    }
+
+    /**
+     * Number of tasks the WorkManager refused, including those run by the
+     * calling thread.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public WorkManager getWorkmanager() {
+        return workmanager;
+    }
+
+    public boolean isCallerRunsWhenRejected() {
+        return callerRunsWhenRejected;
+    }
+
+    /**
+     * Whether the calling thread should run the task if the WorkManager
+     * refuses to schedule it, default is <tt>true</tt> which matches the
+     * <tt>CallerRuns</tt> policy of the Camel thread pool profiles.
+     * Otherwise a {@link RejectedExecutionException} is thrown.
+     * <p/>
+     * When the WorkManager rejects the work after the task was submitted,
+     * the task runs in the thread reporting the rejection instead, unless it
+     * is a future, which fails. Without this option such a task is told it
+     * was rejected if it is {@link org.apache.camel.util.concurrent.Rejectable},
+     * otherwise it is lost and only logged.
+     */
+    public void setCallerRunsWhenRejected(boolean callerRunsWhenRejected) {
+        this.callerRunsWhenRejected = callerRunsWhenRejected;
+    }
+
+    /**
+     * Sets the propagators of the context of the submitting threads to the
+     * tasks.
+     */
+    public void setContextPropagators(WorkManagerContextPropagator[] contextPropagators) {
+        this.contextPropagators = contextPropagators;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new WorkFutureTask<T>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new WorkFutureTask<T>(callable);
+    }
+
+    private void reject(Runnable task, Throwable cause) {
+        rejected.incrementAndGet();
+        if (!shutdown && callerRunsWhenRejected) {
+            LOG.debug("WorkManager refused task, running it in the calling thread: {}", task);
+            task.run();
+            return;
+        }
+        RejectedExecutionException e = new RejectedExecutionException("Task " + task + " rejected from " + this);
+        if (cause != null) {
+            e.initCause(cause);
+        }
+        throw e;
+    }
+
+    private void onRejected(TaskWork work, Throwable cause) {
+        if (EVENTS.isEnabled()) {
+            EVENTS.rejected(name, work.routeId, cause);
+        }
+        rejected.incrementAndGet();
+        works.remove(work);
+        signalIfTerminated();
+        if (!(work.task instanceof WorkFutureTask) && !shutdown && callerRunsWhenRejected) {
+            LOG.debug("WorkManager rejected task, running it in the thread reporting the rejection: {}", work.task);
+            try {
+                WorkManagerContextSnapshot.run(work.snapshot, work.task);
+            } catch (Throwable e) {
+                LOG.warn("Error running task " + work.task + " in " + this, e);
+            }
+        } else if (!WorkFutureTask.reject(work.task, cause)) {
+            LOG.warn("WorkManager rejected task " + work.task + " from " + this + ", the task is lost", cause);
+        }
+    }
+
+    private void onDone(TaskWork work) {
+        if (works.remove(work)) {
+            signalIfTerminated();
+        }
+    }
+
+    private void signalIfTerminated() {
+        if (isTerminated()) {
+            lock.lock();
+            try {
+                termination.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public String toString() {
+        return "WorkManagerExecutorService[" + name + ", pending=" + works.size() + ", shutdown=" + shutdown + "]";
+    }
+
+    /**
+     * The work scheduled for a single task, it is its own {@link WorkListener}
+     * so no extra object is needed per submission. The state moves from NEW to
+     * RUNNING and DONE when the work runs, or from NEW to CANCELLED, so a task
+     * is either run or handed back by shutdownNow, never both.
+     */
+    private final class TaskWork implements Work, WorkListener {
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int CANCELLED = 3;
+        private final Runnable task;
+        private final WorkManagerContextSnapshot snapshot = WorkManagerContextSnapshot.capture(contextPropagators);
+        private final AtomicInteger state = new AtomicInteger(NEW);
+        private volatile Thread runner;
+        private volatile long startedTime;
+        private long scheduledTime;
+        private String routeId;
+
+        private TaskWork(Runnable task) {
+            this.task = task;
+        }
+
+        public void run() {
+            runner = Thread.currentThread();
+            if (!state.compareAndSet(NEW, RUNNING)) {
+                runner = null;
+                onDone(this);
+                return;
+            }
+            active.incrementAndGet();
+            long start = 0;
+            if (EVENTS.isEnabled()) {
+                start = System.nanoTime();
+                startedTime = start;
+                EVENTS.started(name, routeId, scheduledTime > 0 ? start - scheduledTime : 0);
+            }
+            try {
+                WorkManagerContextSnapshot.run(snapshot, task);
+            } catch (Throwable e) {
+                LOG.warn("Error running task " + task + " in " + WorkManagerExecutorService.this, e);
+            } finally {
+                synchronized (this) {
+                    // release interrupts the runner only while it runs this task
+                    state.set(DONE);
+                    runner = null;
+                }
+                active.decrementAndGet();
+                completed.incrementAndGet();
+                if (start > 0) {
+                    EVENTS.completed(name, routeId, System.nanoTime() - start);
+                }
+                onDone(this);
+            }
+        }
+
+        boolean cancel() {
+            return state.compareAndSet(NEW, CANCELLED);
+        }
+
+        public synchronized void release() {
+            Thread thread = runner;
+            if (thread != null && state.get() == RUNNING) {
+                if (EVENTS.isEnabled() && startedTime > 0) {
+                    EVENTS.released(name, routeId, System.nanoTime() - startedTime);
+                }
+                thread.interrupt();
+            }
+        }
+
+        public boolean isDaemon() {
+            return false;
+        }
+
+        public void workAccepted(WorkEvent event) {
+        }
+
+        public void workStarted(WorkEvent event) {
+        }
+
+        public void workRejected(WorkEvent event) {
+            onRejected(this, event.getException());
+        }
+
+        public void workCompleted(WorkEvent event) {
+            onDone(this);
+        }
+
+        public String toString() {
+            return "TaskWork[" + name + "]";
+        }
+    }
+}
@@ -19,7 +19,6 @@ package org.apache.camel.component.commonj;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.SynchronousQueue;
@@ -46,16 +45,11 @@ import commonj.work.WorkManager;
  * @version $Revision: 925619 $
  */
 public final class WorkManagerExecutorServiceHelper {
-    private static Logger LOG = LoggerFactory.getLogger(WorkManagerExecutorServiceHelper.class);
-    private static WorkManager workmanager;
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerExecutorServiceHelper.class);
 
     private WorkManagerExecutorServiceHelper() {
     }
 
-    public static void setWorkmanager(WorkManager workmanager) {
-        WorkManagerExecutorServiceHelper.workmanager = workmanager;
-    }
-
     /**
      * Creates a new thread name with the given prefix
      * 
@@ -70,70 +64,78 @@ public final class WorkManagerExecutorServiceHelper {
     /**
      * Creates a new scheduled thread pool which can schedule threads.
      * 
+     * @param workmanager the WorkManager, or <tt>null</tt> to use plain JDK threads
      * @param poolSize the core pool size
      * @param pattern pattern of the thread name
      * @param name ${name} in the pattern name
      * @param daemon whether the threads is daemon or not
      * @return the created pool
      */
-    public static ScheduledExecutorService newScheduledThreadPool(final int poolSize, final String pattern, final String name, final boolean daemon) {
-        return Executors.newScheduledThreadPool(poolSize, new WorkmanagerThreadFactory(pattern, name, daemon));
+    public static ScheduledExecutorService newScheduledThreadPool(WorkManager workmanager, final int poolSize, final String pattern, final String name,
+                                                                  final boolean daemon) {
+        return Executors.newScheduledThreadPool(poolSize, new WorkmanagerThreadFactory(workmanager, pattern, name, daemon));
     }
 
     /**
      * Creates a new fixed thread pool
      * 
+     * @param workmanager the WorkManager, or <tt>null</tt> to use plain JDK threads
      * @param poolSize the fixed pool size
      * @param pattern pattern of the thread name
      * @param name ${name} in the pattern name
      * @param daemon whether the threads is daemon or not
      * @return the created pool
      */
-    public static ExecutorService newFixedThreadPool(final int poolSize, final String pattern, final String name, final boolean daemon) {
-        return Executors.newFixedThreadPool(poolSize, new WorkmanagerThreadFactory(pattern, name, daemon));
+    public static ExecutorService newFixedThreadPool(WorkManager workmanager, final int poolSize, final String pattern, final String name, final boolean daemon) {
+        return Executors.newFixedThreadPool(poolSize, new WorkmanagerThreadFactory(workmanager, pattern, name, daemon));
     }
 
     /**
      * Creates a new single thread pool (usually for background tasks)
      * 
+     * @param workmanager the WorkManager, or <tt>null</tt> to use plain JDK threads
      * @param pattern pattern of the thread name
      * @param name ${name} in the pattern name
      * @param daemon whether the threads is daemon or not
      * @return the created pool
      */
-    public static ExecutorService newSingleThreadExecutor(final String pattern, final String name, final boolean daemon) {
-        return Executors.newSingleThreadExecutor(new WorkmanagerThreadFactory(pattern, name, daemon));
+    public static ExecutorService newSingleThreadExecutor(WorkManager workmanager, final String pattern, final String name, final boolean daemon) {
+        return Executors.newSingleThreadExecutor(new WorkmanagerThreadFactory(workmanager, pattern, name, daemon));
     }
 
     /**
      * Creates a new cached thread pool
      * 
+     * @param workmanager the WorkManager, or <tt>null</tt> to use plain JDK threads
      * @param pattern pattern of the thread name
      * @param name ${name} in the pattern name
      * @param daemon whether the threads is daemon or not
      * @return the created pool
      */
-    public static ExecutorService newCachedThreadPool(final String pattern, final String name, final boolean daemon) {
-        return Executors.newCachedThreadPool(new WorkmanagerThreadFactory(pattern, name, daemon));
+    public static ExecutorService newCachedThreadPool(WorkManager workmanager, final String pattern, final String name, final boolean daemon) {
+        return Executors.newCachedThreadPool(new WorkmanagerThreadFactory(workmanager, pattern, name, daemon));
     }
 
     /**
      * Creates a new custom thread pool using 60 seconds as keep alive and with
      * an unbounded queue.
      * 
+     * @param workmanager the WorkManager, or <tt>null</tt> to use plain JDK threads
      * @param pattern pattern of the thread name
      * @param name ${name} in the pattern name
      * @param corePoolSize the core size
      * @param maxPoolSize the maximum pool size
      * @return the created pool
      */
-    public static ExecutorService newThreadPool(final String pattern, final String name, int corePoolSize, int maxPoolSize) {
-        return WorkManagerExecutorServiceHelper.newThreadPool(pattern, name, corePoolSize, maxPoolSize, 60, TimeUnit.SECONDS, -1, new ThreadPoolExecutor.CallerRunsPolicy(), true);
+    public static ExecutorService newThreadPool(WorkManager workmanager, final String pattern, final String name, int corePoolSize, int maxPoolSize) {
+        return WorkManagerExecutorServiceHelper.newThreadPool(workmanager, pattern, name, corePoolSize, maxPoolSize, 60, TimeUnit.SECONDS, -1,
+                                                              new ThreadPoolExecutor.CallerRunsPolicy(), true);
     }
 
     /**
      * Creates a new custom thread pool
      * 
+     * @param workmanager the WorkManager, or <tt>null</tt> to use plain JDK threads
      * @param pattern pattern of the thread name
      * @param name ${name} in the pattern name
      * @param corePoolSize the core size
@@ -151,8 +153,22 @@ public final class WorkManagerExecutorServiceHelper {
      * @return the created pool
      * @throws IllegalArgumentException if parameters is not valid
      */
-    public static ExecutorService newThreadPool(final String pattern, final String name, int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit timeUnit,
-                                                int maxQueueSize, RejectedExecutionHandler rejectedExecutionHandler, final boolean daemon) {
+    public static ExecutorService newThreadPool(WorkManager workmanager, final String pattern, final String name, int corePoolSize, int maxPoolSize,
+                                                long keepAliveTime, TimeUnit timeUnit, int maxQueueSize, RejectedExecutionHandler rejectedExecutionHandler,
+                                                final boolean daemon) {
+        return newThreadPool(workmanager, pattern, name, corePoolSize, maxPoolSize, keepAliveTime, timeUnit, maxQueueSize, rejectedExecutionHandler, daemon,
+                             WorkManagerQueueType.LINKED);
+    }
+
+    /**
+     * Creates a new custom thread pool with the given kind of task queue
+     * 
+     * @param queueType the kind of queue used when the queue is bounded
+     * @see #newThreadPool(WorkManager, String, String, int, int, long, TimeUnit, int, RejectedExecutionHandler, boolean)
+     */
+    public static ExecutorService newThreadPool(WorkManager workmanager, final String pattern, final String name, int corePoolSize, int maxPoolSize,
+                                                long keepAliveTime, TimeUnit timeUnit, int maxQueueSize, RejectedExecutionHandler rejectedExecutionHandler,
+                                                final boolean daemon, WorkManagerQueueType queueType) {
         // validate max >= core
         if (maxPoolSize < corePoolSize) {
             throw new IllegalArgumentException("MaxPoolSize must be >= corePoolSize, was " + maxPoolSize + " >= " + corePoolSize);
@@ -162,15 +178,13 @@ public final class WorkManagerExecutorServiceHelper {
         if (corePoolSize == 0 && maxQueueSize <= 0) {
             // use a synchronous so we can act like the cached thread pool
             queue = new SynchronousQueue<Runnable>();
-        } else if (maxQueueSize <= 0) {
-            // unbounded task queue
-            queue = new LinkedBlockingQueue<Runnable>();
         } else {
-            // bounded task queue
-            queue = new LinkedBlockingQueue<Runnable>(maxQueueSize);
+            // unbounded or bounded task queue
+            queue = queueType.createQueue(maxQueueSize);
         }
-        ThreadPoolExecutor answer = new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, timeUnit, queue);
-        answer.setThreadFactory(new WorkmanagerThreadFactory(pattern, name, daemon));
+        // counts its rejections for the pool registry
+        ThreadPoolExecutor answer = new WorkManagerCountingThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, timeUnit, queue);
+        answer.setThreadFactory(new WorkmanagerThreadFactory(workmanager, pattern, name, daemon));
         if (rejectedExecutionHandler == null) {
             rejectedExecutionHandler = new ThreadPoolExecutor.CallerRunsPolicy();
         }
@@ -183,11 +197,13 @@ public final class WorkManagerExecutorServiceHelper {
      */
     private static final class WorkmanagerThreadFactory implements ThreadFactory {
 
+        private final WorkManager workmanager;
         private final String pattern;
         private final String name;
         private final boolean daemon;
 
-        private WorkmanagerThreadFactory(String pattern, String name, boolean daemon) {
+        private WorkmanagerThreadFactory(WorkManager workmanager, String pattern, String name, boolean daemon) {
+            this.workmanager = workmanager;
             this.pattern = pattern;
             this.name = name;
             this.daemon = daemon;
@@ -197,7 +213,7 @@ public final class WorkManagerExecutorServiceHelper {
             String threadName = getThreadName(pattern, name);
             Thread answer;
             if (workmanager != null) {
-                answer = new WorkManagerThreadWrapper(workmanager, new Thread(runnable, threadName));
+                answer = new WorkManagerThreadWrapper(workmanager, runnable, threadName);
             } else {
                 answer = new Thread(runnable, threadName);
             }
@@ -25,6 +25,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
 import org.apache.camel.impl.DefaultExecutorServiceStrategy;
 import org.apache.camel.impl.DefaultShutdownStrategy;
 import org.apache.camel.model.OptionalIdentifiedDefinition;
@@ -32,8 +33,8 @@ import org.apache.camel.model.ProcessorDefinition;
 import org.apache.camel.model.ProcessorDefinitionHelper;
 import org.apache.camel.model.RouteDefinition;
 import org.apache.camel.spi.LifecycleStrategy;
+import org.apache.camel.spi.ThreadPoolProfile;
 import org.apache.camel.util.ObjectHelper;
-import org.apache.camel.util.concurrent.ExecutorServiceHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,15 +51,27 @@ public class WorkManagerExecutorServiceStrategy extends DefaultExecutorServiceSt
     // protected
     private final List<ExecutorService> executorServices = new ArrayList<ExecutorService>();
     private final CamelContext camelContext;
+    private WorkManagerQueueType queueType = WorkManagerQueueType.LINKED;
+    private volatile WorkManager workmanager;
+    private volatile WorkManagerPlacementPolicy placementPolicy;
+    private volatile WorkManagerPoolRegistry poolRegistry;
+    private volatile WorkManagerPoolWatchdog watchdog;
+    private List<WorkManagerBulkhead> bulkheads = new ArrayList<WorkManagerBulkhead>();
+    private List<WorkManagerContextPropagator> contextPropagators = new ArrayList<WorkManagerContextPropagator>();
+    private volatile WorkManagerContextPropagator[] propagators = WorkManagerContextSnapshot.toArray(contextPropagators);
 
     public WorkManagerExecutorServiceStrategy(CamelContext context) {
         super(context);
         this.camelContext = context;
+        placementPolicy = new WorkManagerPlacementPolicy();
+        poolRegistry = new WorkManagerPoolRegistry();
+        poolRegistry.setCamelContext(context);
     }
 
     @Override
     public ExecutorService newCachedThreadPool(Object source, String name) {
-        ExecutorService answer = WorkManagerExecutorServiceHelper.newCachedThreadPool(getThreadNamePattern(), name, true);
+        ExecutorService answer = WorkManagerExecutorServiceHelper.newCachedThreadPool(getWorkmanager(source), getThreadNamePattern(), name, true);
+        answer = withContext(withBulkhead(answer, source, getDefaultThreadPoolProfile().getId()));
         onThreadPoolCreated(answer, source, getDefaultThreadPoolProfile().getId());
         LOG.debug("Created new cached thread pool for source: " + source + " with name: " + name + ". -> " + answer);
         return answer;
@@ -66,7 +79,7 @@ public class WorkManagerExecutorServiceStrategy extends DefaultExecutorServiceSt
 
     @Override
     public ScheduledExecutorService newScheduledThreadPool(Object source, String name, int poolSize) {
-        ScheduledExecutorService answer = WorkManagerExecutorServiceHelper.newScheduledThreadPool(poolSize, getThreadNamePattern(), name, true);
+        ScheduledExecutorService answer = WorkManagerExecutorServiceHelper.newScheduledThreadPool(getWorkmanager(source), poolSize, getThreadNamePattern(), name, true);
         onThreadPoolCreated(answer, source, getDefaultThreadPoolProfile().getId());
         LOG.debug("Created new scheduled thread pool for source: " + source + " with name: " + name + ". [poolSize=" + poolSize + "]. -> " + answer);
         return answer;
@@ -74,7 +87,8 @@ public class WorkManagerExecutorServiceStrategy extends DefaultExecutorServiceSt
 
     @Override
     public ExecutorService newFixedThreadPool(Object source, String name, int poolSize) {
-        ExecutorService answer = WorkManagerExecutorServiceHelper.newFixedThreadPool(poolSize, getThreadNamePattern(), name, true);
+        ExecutorService answer = WorkManagerExecutorServiceHelper.newFixedThreadPool(getWorkmanager(source), poolSize, getThreadNamePattern(), name, true);
+        answer = withContext(withBulkhead(answer, source, getDefaultThreadPoolProfile().getId()));
         onThreadPoolCreated(answer, source, getDefaultThreadPoolProfile().getId());
         LOG.debug("Created new fixed thread pool for source: " + source + " with name: " + name + ". [poolSize=" + poolSize + "]. -> " + answer);
         return answer;
@@ -82,12 +96,8 @@ public class WorkManagerExecutorServiceStrategy extends DefaultExecutorServiceSt
 
     @Override
     public ExecutorService newSingleThreadExecutor(Object source, String name) {
-        ExecutorService answer;
-        if (source instanceof DefaultShutdownStrategy) {
-            answer = ExecutorServiceHelper.newSingleThreadExecutor(getThreadNamePattern(), name, true);
-        } else {
-            answer = WorkManagerExecutorServiceHelper.newSingleThreadExecutor(getThreadNamePattern(), name, true);
-        }
+        ExecutorService answer = WorkManagerExecutorServiceHelper.newSingleThreadExecutor(getWorkmanager(source), getThreadNamePattern(), name, true);
+        answer = withContext(withBulkhead(answer, source, getDefaultThreadPoolProfile().getId()));
         onThreadPoolCreated(answer, source, getDefaultThreadPoolProfile().getId());
 
         LOG.debug("Created new single thread pool for source: " + source + " with name: " + name + ". -> " + answer);
@@ -96,7 +106,9 @@ public class WorkManagerExecutorServiceStrategy extends DefaultExecutorServiceSt
 
     @Override
     public ExecutorService newThreadPool(Object source, String name, int corePoolSize, int maxPoolSize) {
-        ExecutorService answer = WorkManagerExecutorServiceHelper.newThreadPool(getThreadNamePattern(), name, corePoolSize, maxPoolSize);
+        ExecutorService answer = WorkManagerExecutorServiceHelper.newThreadPool(getWorkmanager(source), getThreadNamePattern(), name, corePoolSize, maxPoolSize, 60,
+                                                                                TimeUnit.SECONDS, -1, new ThreadPoolExecutor.CallerRunsPolicy(), true, queueType);
+        answer = withContext(withBulkhead(answer, source, getDefaultThreadPoolProfile().getId()));
         onThreadPoolCreated(answer, source, getDefaultThreadPoolProfile().getId());
 
         LOG.debug("Created new thread pool for source: " + source + " with name: " + name + ". [poolSize=" + corePoolSize + ", maxPoolSize=" + maxPoolSize + "] -> " + answer);
@@ -106,11 +118,52 @@ public class WorkManagerExecutorServiceStrategy extends DefaultExecutorServiceSt
     @Override
     public ExecutorService newThreadPool(Object source, String name, int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit timeUnit, int maxQueueSize,
                                          RejectedExecutionHandler rejectedExecutionHandler, boolean daemon) {
+        return createThreadPool(source, name, getDefaultThreadPoolProfile().getId(), corePoolSize, maxPoolSize, keepAliveTime, timeUnit, maxQueueSize,
+                                rejectedExecutionHandler, daemon);
+    }
+
+    @Override
+    public ExecutorService newDefaultThreadPool(Object source, String name) {
+        return createThreadPool(source, name, getDefaultThreadPoolProfile());
+    }
+
+    @Override
+    public ExecutorService newThreadPool(Object source, String name, String threadPoolProfileId) {
+        ThreadPoolProfile profile = getThreadPoolProfile(threadPoolProfileId);
+        if (profile == null) {
+            return null;
+        }
+        return createThreadPool(source, name, profile);
+    }
+
+    /**
+     * Creates the thread pool of a thread pool profile, where the settings
+     * the profile does not have are taken from the default profile.
+     */
+    private ExecutorService createThreadPool(Object source, String name, ThreadPoolProfile profile) {
+        ThreadPoolProfile defaultProfile = getDefaultThreadPoolProfile();
+        return createThreadPool(source, name, profile.getId(),
+                                valueOf(profile.getPoolSize(), defaultProfile.getPoolSize()),
+                                valueOf(profile.getMaxPoolSize(), defaultProfile.getMaxPoolSize()),
+                                valueOf(profile.getKeepAliveTime(), defaultProfile.getKeepAliveTime()),
+                                valueOf(profile.getTimeUnit(), defaultProfile.getTimeUnit()),
+                                valueOf(profile.getMaxQueueSize(), defaultProfile.getMaxQueueSize()),
+                                valueOf(profile.getRejectedExecutionHandler(), defaultProfile.getRejectedExecutionHandler()), true);
+    }
+
+    private static <T> T valueOf(T value, T defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    private ExecutorService createThreadPool(Object source, String name, String threadPoolProfileId, int corePoolSize, int maxPoolSize, long keepAliveTime,
+                                             TimeUnit timeUnit, int maxQueueSize, RejectedExecutionHandler rejectedExecutionHandler, boolean daemon) {
         // the thread name must not be null
         ObjectHelper.notNull(name, "ThreadName");
-        ExecutorService answer = WorkManagerExecutorServiceHelper.newThreadPool(getThreadNamePattern(), name, corePoolSize, maxPoolSize, keepAliveTime, timeUnit, maxQueueSize,
-                                                                                rejectedExecutionHandler, daemon);
-        onThreadPoolCreated(answer, source, getDefaultThreadPoolProfile().getId());
+        ExecutorService answer = WorkManagerExecutorServiceHelper.newThreadPool(getWorkmanager(source, threadPoolProfileId), getThreadNamePattern(), name, corePoolSize,
+                                                                                maxPoolSize, keepAliveTime, timeUnit, maxQueueSize, rejectedExecutionHandler, daemon,
+                                                                                queueType);
+        answer = withContext(withBulkhead(answer, source, threadPoolProfileId));
+        onThreadPoolCreated(answer, source, threadPoolProfileId);
 
         LOG.debug("Created new thread pool for source: " + source + " with name: " + name + ". [poolSize=" + corePoolSize + ", maxPoolSize=" + maxPoolSize + ", keepAliveTime="
                   + keepAliveTime + " " + timeUnit + ", maxQueueSize=" + maxQueueSize + ", rejectedExecutionHandler=" + rejectedExecutionHandler + ", daemon=" + daemon + "] -> "
@@ -150,17 +203,38 @@ public class WorkManagerExecutorServiceStrategy extends DefaultExecutorServiceSt
         ObjectHelper.notEmpty(id, "id for thread pool " + executorService);
 
         // extract route id if possible
-        if (source instanceof ProcessorDefinition) {
-            RouteDefinition route = ProcessorDefinitionHelper.getRoute((ProcessorDefinition)source);
-            if (route != null) {
-                routeId = route.idOrCreate(camelContext.getNodeIdFactory());
+        routeId = getRouteId(source);
+
+        // register every kind of pool, including the scheduled and wrapped
+        // pools which the lifecycle strategies below do not manage
+        WorkManagerPoolRegistry registry = poolRegistry;
+        if (registry != null) {
+            registry.register(executorService, id, sourceId, routeId, threadPoolProfileId);
+        }
+        WorkManagerPoolWatchdog current = watchdog;
+        if (current != null) {
+            synchronized (this) {
+                if (current.getPoolRegistry() == null) {
+                    current.setPoolRegistry(registry);
+                }
+                if (current.getWorkmanager() == null) {
+                    current.setWorkmanager(workmanager);
+                }
             }
+            current.start();
         }
 
         // let lifecycle strategy be notified as well which can let it be
         // managed in JMX as well
-        if (executorService instanceof ThreadPoolExecutor) {
-            ThreadPoolExecutor threadPool = (ThreadPoolExecutor)executorService;
+        ExecutorService pool = executorService;
+        if (pool instanceof WorkManagerContextExecutorService) {
+            pool = ((WorkManagerContextExecutorService)pool).getExecutor();
+        }
+        if (pool instanceof WorkManagerBulkheadExecutorService) {
+            pool = ((WorkManagerBulkheadExecutorService)pool).getExecutor();
+        }
+        if (pool instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor threadPool = (ThreadPoolExecutor)pool;
             for (LifecycleStrategy lifecycle : camelContext.getLifecycleStrategies()) {
                 lifecycle.onThreadPoolAdd(camelContext, threadPool, id, sourceId, routeId, threadPoolProfileId);
             }
@@ -170,8 +244,180 @@ public class WorkManagerExecutorServiceStrategy extends DefaultExecutorServiceSt
         onNewExecutorService(executorService);
     }
 
+    /**
+     * Propagates the context of the submitting threads to the tasks of the
+     * pool, which must be the outermost executor to capture it on submission.
+     */
+    protected ExecutorService withContext(ExecutorService executorService) {
+        return WorkManagerContextExecutorService.propagate(executorService, propagators);
+    }
+
+    /**
+     * Hands the tasks of the pool through the first bulkhead matching it, if
+     * any. Scheduled pools have no bulkhead.
+     *
+     * @param threadPoolProfileId the id of the thread pool profile the pool
+     *            is created from
+     */
+    protected ExecutorService withBulkhead(ExecutorService executorService, Object source, String threadPoolProfileId) {
+        WorkManagerBulkhead bulkhead = WorkManagerBulkhead.getBulkhead(bulkheads, threadPoolProfileId, getRouteId(source));
+        if (bulkhead == null) {
+            return executorService;
+        }
+        LOG.debug("Limiting thread pool for source {} by {}", source, bulkhead);
+        return new WorkManagerBulkheadExecutorService(bulkhead, executorService);
+    }
+
+    /**
+     * Gets the WorkManager of the pool for the given source, which is not
+     * created from a thread pool profile, so it is placed as one of the
+     * default profile.
+     */
+    protected WorkManager getWorkmanager(Object source) {
+        return getWorkmanager(source, getDefaultThreadPoolProfile().getId());
+    }
+
+    /**
+     * Gets the WorkManager of the pool for the given source by the placement
+     * policy, or <tt>null</tt> to use plain JDK threads. The pools of the
+     * {@link DefaultShutdownStrategy} always use JDK threads, whatever the
+     * policy, as it must be able to run when the WorkManager is stopping.
+     *
+     * @param threadPoolProfileId the id of the thread pool profile the pool
+     *            is created from
+     */
+    protected WorkManager getWorkmanager(Object source, String threadPoolProfileId) {
+        if (source instanceof DefaultShutdownStrategy) {
+            return null;
+        }
+        WorkManagerPlacementPolicy policy = placementPolicy;
+        if (policy == null) {
+            return workmanager;
+        }
+        return policy.getWorkmanager(threadPoolProfileId, source, getRouteId(source), workmanager);
+    }
+
+    private String getRouteId(Object source) {
+        if (source instanceof ProcessorDefinition) {
+            RouteDefinition route = ProcessorDefinitionHelper.getRoute((ProcessorDefinition)source);
+            if (route != null) {
+                return route.idOrCreate(camelContext.getNodeIdFactory());
+            }
+        }
+        return null;
+    }
+
+    public WorkManagerQueueType getQueueType() {
+        return queueType;
+    }
+
+    /**
+     * Sets the kind of task queue of the bounded thread pools, default is
+     * {@link WorkManagerQueueType#LINKED}.
+     */
+    public void setQueueType(WorkManagerQueueType queueType) {
+        this.queueType = queueType;
+    }
+
+    public WorkManagerPlacementPolicy getPlacementPolicy() {
+        return placementPolicy;
+    }
+
+    /**
+     * Sets the policy placing the pools on named WorkManagers or plain JDK
+     * threads. The pools created from a thread pool profile match on its id,
+     * the other pools on the id of the default profile.
+     */
+    public void setPlacementPolicy(WorkManagerPlacementPolicy placementPolicy) {
+        this.placementPolicy = placementPolicy;
+        if (placementPolicy != null) {
+            for (WorkManager wm : placementPolicy.getWorkmanagers().values()) {
+                setCamelContext(wm);
+            }
+        }
+    }
+
+    public WorkManager getWorkmanager() {
+        return workmanager;
+    }
+
+    public List<WorkManagerBulkhead> getBulkheads() {
+        return bulkheads;
+    }
+
+    /**
+     * Sets the bulkheads limiting the tasks in flight of the pools, in the
+     * order they are matched.
+     */
+    public void setBulkheads(List<WorkManagerBulkhead> bulkheads) {
+        this.bulkheads = new ArrayList<WorkManagerBulkhead>(bulkheads);
+        for (WorkManagerBulkhead bulkhead : bulkheads) {
+            if (bulkhead.getCamelContext() == null) {
+                bulkhead.setCamelContext(camelContext);
+            }
+        }
+    }
+
+    public List<WorkManagerContextPropagator> getContextPropagators() {
+        return contextPropagators;
+    }
+
+    /**
+     * Sets the propagators of the context of the submitting threads, such as
+     * {@link MdcContextPropagator}, to the tasks of the pools created
+     * afterwards. Scheduled pools do not propagate the context.
+     */
+    public void setContextPropagators(List<WorkManagerContextPropagator> contextPropagators) {
+        this.contextPropagators = new ArrayList<WorkManagerContextPropagator>(contextPropagators);
+        this.propagators = WorkManagerContextSnapshot.toArray(this.contextPropagators);
+    }
+
+    public WorkManagerPoolRegistry getPoolRegistry() {
+        return poolRegistry;
+    }
+
+    /**
+     * Sets the registry of the pools of this context, which may be shared
+     * with a {@link WorkManagerThreadPoolFactory}. Default is a registry of
+     * its own, <tt>null</tt> registers no pools.
+     */
+    public void setPoolRegistry(WorkManagerPoolRegistry poolRegistry) {
+        if (poolRegistry != null && poolRegistry.getCamelContext() == null) {
+            poolRegistry.setCamelContext(camelContext);
+        }
+        this.poolRegistry = poolRegistry;
+    }
+
+    public WorkManagerPoolWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * Sets the watchdog reporting the pools of this context which stall or
+     * deadlock. It checks the pool registry of this context and runs on its
+     * WorkManager, unless it has its own.
+     */
+    public void setWatchdog(WorkManagerPoolWatchdog watchdog) {
+        if (watchdog != null && watchdog.getCamelContext() == null) {
+            watchdog.setCamelContext(camelContext);
+        }
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * Sets the WorkManager of the thread pools of this context, which is not
+     * shared with the other contexts in the JVM.
+     */
     public void setWorkmanager(WorkManager workmanager) {
-        WorkManagerExecutorServiceHelper.setWorkmanager(workmanager);
+        setCamelContext(workmanager);
+        this.workmanager = workmanager;
+    }
+
+    private void setCamelContext(WorkManager workmanager) {
+        // let an instrumented workmanager register its statistics in this context
+        if (workmanager instanceof CamelContextAware && ((CamelContextAware)workmanager).getCamelContext() == null) {
+            ((CamelContextAware)workmanager).setCamelContext(camelContext);
+        }
     }
 
 }
@@ -0,0 +1,393 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkListener;
+import commonj.work.WorkManager;
+
+/**
+ * A {@link ForkJoinPool.ForkJoinWorkerThreadFactory} whose workers run within
+ * a WorkManager slot, like the threads of {@link WorkManagerThreadFactory}.
+ * <p/>
+ * A fork join worker must be a thread of the pool, so it cannot run inside a
+ * WorkManager work. Instead the factory reserves a lease per worker up front,
+ * a work which holds its WorkManager slot until it is released, and every
+ * worker takes a lease before it runs tasks. The tasks run on that worker, a
+ * plain thread the WorkManager does not manage, which takes the context class
+ * loader of the lease; no other context of the container carries over.
+ * <p/>
+ * The pool creates its workers on the thread submitting a task, so
+ * {@link #newThread(ForkJoinPool)} does not wait for the WorkManager. The new
+ * worker waits for a started lease on its own thread instead, and schedules
+ * the leases the WorkManager rejected again every 100 milliseconds. The
+ * leases are kept while the pool runs, a terminated worker gives its lease to
+ * the next one, and they are released when the pool shuts down. The workers
+ * the pool starts beyond its parallelism, to make up for workers blocked in
+ * a join or a managed blocker, find every lease taken and run without one.
+ */
+public class WorkManagerForkJoinWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerForkJoinWorkerThreadFactory.class);
+    private static final long RETRY_INTERVAL = 100;
+    private final WorkManager workmanager;
+    private final WorkManagerSlotReservoir reservoir;
+    private final String name;
+    private final Deque<SlotLease> ready = new ArrayDeque<SlotLease>();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final AtomicInteger leaseCount = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private int leases;
+    private int pendingCount;
+    private int heldCount;
+    private int waitingCount;
+    private boolean shutdown;
+
+    public WorkManagerForkJoinWorkerThreadFactory(WorkManager workmanager, String name) {
+        if (workmanager == null) {
+            throw new IllegalArgumentException("WorkManager must be specified");
+        }
+        this.workmanager = workmanager;
+        this.reservoir = null;
+        this.name = name;
+    }
+
+    /**
+     * Creates a factory whose leases run on the works of the slot reservoir.
+     */
+    public WorkManagerForkJoinWorkerThreadFactory(WorkManagerSlotReservoir reservoir, String name) {
+        if (reservoir == null || reservoir.getWorkmanager() == null) {
+            throw new IllegalArgumentException("WorkManagerSlotReservoir with a WorkManager must be specified");
+        }
+        this.workmanager = reservoir.getWorkmanager();
+        this.reservoir = reservoir;
+        this.name = name;
+    }
+
+    /**
+     * Creates a pool of the given parallelism, whose leases are reserved now
+     * and released when it shuts down.
+     */
+    public ForkJoinPool newPool(int parallelism) {
+        reserve(parallelism);
+        return new ForkJoinPool(parallelism, this, null, false) {
+            @Override
+            public void shutdown() {
+                super.shutdown();
+                WorkManagerForkJoinWorkerThreadFactory.this.shutdown();
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                try {
+                    return super.shutdownNow();
+                } finally {
+                    WorkManagerForkJoinWorkerThreadFactory.this.shutdown();
+                }
+            }
+        };
+    }
+
+    /**
+     * Schedules leases until the factory holds the given number of leases,
+     * which is the parallelism of the pool unless it is called before the
+     * pool creates its first worker.
+     */
+    public void reserve(int count) {
+        synchronized (this) {
+            leases = count;
+        }
+        scheduleMissing();
+    }
+
+    /**
+     * Schedules the leases not scheduled yet or rejected by the WorkManager.
+     */
+    private void scheduleMissing() {
+        int missing;
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            missing = leases - pendingCount - leaseCount.get();
+            if (missing <= 0) {
+                return;
+            }
+            pendingCount += missing;
+        }
+        for (int i = 0; i < missing; i++) {
+            SlotLease lease = new SlotLease();
+            try {
+                if (reservoir != null) {
+                    reservoir.execute(new WorkItem(lease, name));
+                } else {
+                    workmanager.schedule(lease, lease);
+                }
+            } catch (RuntimeException e) {
+                LOG.debug("WorkManager " + workmanager + " rejected a lease of " + name, e);
+                lease.rejected();
+            }
+        }
+    }
+
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        boolean first;
+        synchronized (this) {
+            first = leases == 0;
+        }
+        if (first) {
+            reserve(pool.getParallelism());
+        }
+        ForkJoinWorkerThread answer = new LeasedWorkerThread(pool);
+        answer.setName(name + " #" + threadCounter.incrementAndGet());
+        LOG.trace("Created thread[{}]", answer);
+        return answer;
+    }
+
+    /**
+     * Waits for a started lease, or returns <tt>null</tt> when every lease is
+     * held or waited for by another worker, or the pool shut down with no
+     * lease left to wait for.
+     */
+    private SlotLease takeLease(ForkJoinPool pool) throws InterruptedException {
+        synchronized (this) {
+            if (ready.isEmpty() && heldCount + waitingCount >= leases) {
+                LOG.debug("All {} leases of {} are taken, a compensating worker runs without a WorkManager slot", leases, name);
+                return null;
+            }
+            waitingCount++;
+        }
+        try {
+            for (;;) {
+                boolean missing;
+                synchronized (this) {
+                    if (!ready.isEmpty()) {
+                        heldCount++;
+                        return ready.pollFirst();
+                    }
+                    shutdown |= pool.isShutdown();
+                    if (shutdown && pendingCount == 0) {
+                        return null;
+                    }
+                    missing = pendingCount + leaseCount.get() < leases;
+                }
+                if (missing) {
+                    scheduleMissing();
+                }
+                synchronized (this) {
+                    if (ready.isEmpty() && !(shutdown && pendingCount == 0)) {
+                        wait(RETRY_INTERVAL);
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                waitingCount--;
+                releaseIdle();
+            }
+        }
+    }
+
+    /**
+     * Takes the lease back from a terminated worker.
+     */
+    private synchronized void recycle(SlotLease lease, ForkJoinPool pool) {
+        shutdown |= pool.isShutdown();
+        heldCount--;
+        ready.addFirst(lease);
+        notifyAll();
+        releaseIdle();
+    }
+
+    /**
+     * Releases the leases not held by a worker, the workers release theirs
+     * when they terminate.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        notifyAll();
+        releaseIdle();
+    }
+
+    /**
+     * Releases the ready leases once the pool shut down and no worker waits
+     * for one.
+     */
+    private void releaseIdle() {
+        if (shutdown && waitingCount == 0) {
+            SlotLease lease;
+            while ((lease = ready.pollFirst()) != null) {
+                lease.release();
+            }
+        }
+    }
+
+    /**
+     * Number of started leases, held by a worker or ready for one.
+     */
+    public int getLeaseCount() {
+        return leaseCount.get();
+    }
+
+    /**
+     * Number of leases the WorkManager rejected.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public WorkManager getWorkmanager() {
+        return workmanager;
+    }
+
+    public String toString() {
+        return "WorkManagerForkJoinWorkerThreadFactory[" + name + ", leases=" + leaseCount.get() + "]";
+    }
+
+    /**
+     * A work holding a WorkManager slot until it is released.
+     */
+    private final class SlotLease implements Work, WorkListener {
+        private final CountDownLatch released = new CountDownLatch(1);
+        private boolean pending = true;
+        private volatile ClassLoader contextClassLoader;
+
+        public void run() {
+            contextClassLoader = Thread.currentThread().getContextClassLoader();
+            if (!started()) {
+                return;
+            }
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                synchronized (WorkManagerForkJoinWorkerThreadFactory.this) {
+                    ready.remove(this);
+                }
+                leaseCount.decrementAndGet();
+            }
+        }
+
+        /**
+         * Offers the started lease to the workers, unless the pool shut down.
+         */
+        private boolean started() {
+            synchronized (WorkManagerForkJoinWorkerThreadFactory.this) {
+                pending = false;
+                pendingCount--;
+                WorkManagerForkJoinWorkerThreadFactory.this.notifyAll();
+                if (shutdown && waitingCount == 0) {
+                    return false;
+                }
+                leaseCount.incrementAndGet();
+                ready.addFirst(this);
+                return true;
+            }
+        }
+
+        private void rejected() {
+            synchronized (WorkManagerForkJoinWorkerThreadFactory.this) {
+                if (pending) {
+                    pending = false;
+                    pendingCount--;
+                    rejectedCount.incrementAndGet();
+                    WorkManagerForkJoinWorkerThreadFactory.this.notifyAll();
+                }
+            }
+        }
+
+        public boolean isDaemon() {
+            return false;
+        }
+
+        public void release() {
+            released.countDown();
+        }
+
+        public void workAccepted(WorkEvent event) {
+        }
+
+        public void workStarted(WorkEvent event) {
+        }
+
+        public void workRejected(WorkEvent event) {
+            rejected();
+        }
+
+        public void workCompleted(WorkEvent event) {
+        }
+
+        /**
+         * The name of the pool, so all leases of the pool share their
+         * statistics in the WorkManager.
+         */
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * A worker which takes a lease before it runs tasks and gives it back
+     * when it terminates.
+     */
+    private final class LeasedWorkerThread extends ForkJoinWorkerThread {
+        private SlotLease lease;
+
+        private LeasedWorkerThread(ForkJoinPool pool) {
+            super(pool);
+        }
+
+        @Override
+        protected void onStart() {
+            super.onStart();
+            try {
+                lease = takeLease(getPool());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (lease == null) {
+                LOG.debug("Worker {} runs without a WorkManager slot", getName());
+            } else if (lease.contextClassLoader != null) {
+                setContextClassLoader(lease.contextClassLoader);
+            }
+        }
+
+        @Override
+        protected void onTermination(Throwable exception) {
+            try {
+                super.onTermination(exception);
+            } finally {
+                if (lease != null) {
+                    recycle(lease, getPool());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import javax.management.ObjectName;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.spi.ManagementStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers the managed objects of this component in the management strategy
+ * of a CamelContext, under type <tt>workmanagers</tt>.
+ */
+final class WorkManagerManagementHelper {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerManagementHelper.class);
+
+    private WorkManagerManagementHelper() {
+    }
+
+    /**
+     * Registers the object, does nothing when the context has no management
+     * agent.
+     */
+    static void manage(CamelContext context, Object managedObject, String name) {
+        if (context == null) {
+            return;
+        }
+        ManagementStrategy strategy = context.getManagementStrategy();
+        if (strategy == null || strategy.getManagementAgent() == null) {
+            return;
+        }
+        try {
+            strategy.manageNamedObject(managedObject, getObjectName(strategy, context, name));
+        } catch (Exception e) {
+            LOG.warn("Cannot register " + managedObject + " in JMX", e);
+        }
+    }
+
+    static void unmanage(CamelContext context, String name) {
+        if (context == null) {
+            return;
+        }
+        ManagementStrategy strategy = context.getManagementStrategy();
+        if (strategy == null || strategy.getManagementAgent() == null) {
+            return;
+        }
+        try {
+            strategy.unmanageNamedObject(getObjectName(strategy, context, name));
+        } catch (Exception e) {
+            LOG.warn("Cannot unregister " + name + " from JMX", e);
+        }
+    }
+
+    private static ObjectName getObjectName(ManagementStrategy strategy, CamelContext context, String name) throws Exception {
+        return new ObjectName(strategy.getManagementAgent().getMBeanObjectDomainName() + ":context=" + context.getName()
+                              + ",type=workmanagers,name=" + ObjectName.quote(name));
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+/**
+ * A rule of a {@link WorkManagerPlacementPolicy}, which places the thread
+ * pools matching all of its criteria on a named WorkManager, or on plain JDK
+ * threads with the name {@link #JDK}. A criterion which is not set matches
+ * every pool.
+ */
+public class WorkManagerPlacement {
+
+    /**
+     * The name of the placement on plain JDK threads.
+     */
+    public static final String JDK = "jdk";
+
+    private String profileId;
+    private String sourceType;
+    private String routeId;
+    private String workmanager;
+
+    public WorkManagerPlacement() {
+    }
+
+    public WorkManagerPlacement(String workmanager) {
+        this.workmanager = workmanager;
+    }
+
+    /**
+     * Whether a pool with the given thread pool profile id, source and route id
+     * matches this rule, any of which may be <tt>null</tt> when unknown.
+     */
+    public boolean matches(String profileId, Object source, String routeId) {
+        if (this.profileId != null && !this.profileId.equals(profileId)) {
+            return false;
+        }
+        if (this.routeId != null && !this.routeId.equals(routeId)) {
+            return false;
+        }
+        return sourceType == null || isSourceType(source);
+    }
+
+    private boolean isSourceType(Object source) {
+        if (source == null) {
+            return false;
+        }
+        for (Class<?> type = source.getClass(); type != null; type = type.getSuperclass()) {
+            if (sourceType.equals(type.getName()) || sourceType.equals(type.getSimpleName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isJdk() {
+        return JDK.equals(workmanager);
+    }
+
+    public String getProfileId() {
+        return profileId;
+    }
+
+    /**
+     * Sets the id of the thread pool profile to match.
+     */
+    public void setProfileId(String profileId) {
+        this.profileId = profileId;
+    }
+
+    public String getSourceType() {
+        return sourceType;
+    }
+
+    /**
+     * Sets the class name, simple or fully qualified, the source of the pool
+     * or one of its super classes must have.
+     */
+    public void setSourceType(String sourceType) {
+        this.sourceType = sourceType;
+    }
+
+    public String getRouteId() {
+        return routeId;
+    }
+
+    /**
+     * Sets the id of the route to match.
+     */
+    public void setRouteId(String routeId) {
+        this.routeId = routeId;
+    }
+
+    public String getWorkmanager() {
+        return workmanager;
+    }
+
+    /**
+     * Sets the name of the WorkManager of the matching pools, or {@link #JDK}.
+     */
+    public void setWorkmanager(String workmanager) {
+        this.workmanager = workmanager;
+    }
+
+    public String toString() {
+        return "WorkManagerPlacement[profileId=" + profileId + ", sourceType=" + sourceType + ", routeId=" + routeId + " -> " + workmanager + "]";
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.work.WorkManager;
+
+/**
+ * Places thread pools on one of several named WorkManagers, or on plain JDK
+ * threads, so latency critical routes do not compete with batch work for
+ * the same WorkManager. The first {@link WorkManagerPlacement} matching a
+ * pool wins, pools matching none use the default WorkManager.
+ */
+public class WorkManagerPlacementPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerPlacementPolicy.class);
+
+    private Map<String, WorkManager> workmanagers = new HashMap<String, WorkManager>();
+    private List<WorkManagerPlacement> placements = new ArrayList<WorkManagerPlacement>();
+
+    /**
+     * Gets the first placement matching the pool, or <tt>null</tt> if there
+     * is none.
+     */
+    public WorkManagerPlacement getPlacement(String profileId, Object source, String routeId) {
+        for (WorkManagerPlacement placement : placements) {
+            if (placement.matches(profileId, source, routeId)) {
+                return placement;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the WorkManager to run the pool on.
+     *
+     * @return the WorkManager of the matching placement, the default
+     *         WorkManager when none matches, or <tt>null</tt> for plain JDK
+     *         threads
+     * @throws IllegalArgumentException if the placement names an unknown
+     *             WorkManager
+     */
+    public WorkManager getWorkmanager(String profileId, Object source, String routeId, WorkManager defaultWorkmanager) {
+        WorkManagerPlacement placement = getPlacement(profileId, source, routeId);
+        if (placement == null) {
+            return defaultWorkmanager;
+        }
+        LOG.debug("Placing thread pool of profile {} for source {} on {}", new Object[] {profileId, source, placement});
+        if (placement.isJdk()) {
+            return null;
+        }
+        WorkManager answer = workmanagers.get(placement.getWorkmanager());
+        if (answer == null) {
+            throw new IllegalArgumentException("Unknown WorkManager " + placement.getWorkmanager() + " in " + placement);
+        }
+        return answer;
+    }
+
+    public Map<String, WorkManager> getWorkmanagers() {
+        return workmanagers;
+    }
+
+    /**
+     * Sets the WorkManagers the placements refer to by name.
+     */
+    public void setWorkmanagers(Map<String, WorkManager> workmanagers) {
+        this.workmanagers = new HashMap<String, WorkManager>(workmanagers);
+    }
+
+    public void addWorkmanager(String name, WorkManager workmanager) {
+        workmanagers.put(name, workmanager);
+    }
+
+    public List<WorkManagerPlacement> getPlacements() {
+        return placements;
+    }
+
+    /**
+     * Sets the placements, in the order they are matched.
+     */
+    public void setPlacements(List<WorkManagerPlacement> placements) {
+        this.placements = new ArrayList<WorkManagerPlacement>(placements);
+    }
+
+    public void addPlacement(WorkManagerPlacement placement) {
+        placements.add(placement);
+    }
+
+    public String toString() {
+        return "WorkManagerPlacementPolicy[workmanagers=" + workmanagers.keySet() + ", placements=" + placements + "]";
+    }
+}
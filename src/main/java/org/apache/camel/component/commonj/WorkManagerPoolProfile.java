@@ -0,0 +1,288 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.RejectedExecutionHandler;
+
+/**
+ * WorkManager specific options for the thread pools created by
+ * {@link WorkManagerThreadPoolFactory}.
+ * <p/>
+ * A profile applies to the Camel {@link org.apache.camel.spi.ThreadPoolProfile}
+ * with the same id. A profile without an id is the default profile and
+ * applies to every thread pool without a matching profile.
+ */
+public class WorkManagerPoolProfile {
+    private String id;
+    private WorkManagerPoolType poolType = WorkManagerPoolType.THREAD;
+    private WorkManagerQueueType queueType = WorkManagerQueueType.LINKED;
+    private int batchSize = 100;
+    private long batchDelay;
+    private WorkManagerScheduledPoolType scheduledPoolType = WorkManagerScheduledPoolType.THREAD;
+    private long tickDuration = 10;
+    private int wheelSize = 512;
+    private boolean adaptive;
+    private int adaptiveMinPoolSize = -1;
+    private int adaptiveMaxPoolSize = -1;
+    private RejectedExecutionHandler rejectedExecutionHandler;
+    private boolean ordered;
+    private String orderingKeyHeader;
+    private WorkManagerKeyExtractor keyExtractor;
+    private String priorityHeader;
+    private WorkManagerPriorityExtractor priorityExtractor;
+    private long agingInterval = 1000;
+    private boolean prestart;
+
+    public WorkManagerPoolProfile() {
+    }
+
+    public WorkManagerPoolProfile(String id) {
+        this.id = id;
+    }
+
+    public boolean isDefaultProfile() {
+        return id == null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public WorkManagerPoolType getPoolType() {
+        return poolType;
+    }
+
+    /**
+     * Sets the kind of executor to create, default is {@link WorkManagerPoolType#THREAD}.
+     */
+    public void setPoolType(WorkManagerPoolType poolType) {
+        this.poolType = poolType;
+    }
+
+    public WorkManagerQueueType getQueueType() {
+        return queueType;
+    }
+
+    /**
+     * Sets the kind of task queue of a bounded {@link WorkManagerPoolType#THREAD}
+     * pool, default is {@link WorkManagerQueueType#LINKED}.
+     */
+    public void setQueueType(WorkManagerQueueType queueType) {
+        this.queueType = queueType;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the maximum number of tasks run in a single work when using
+     * {@link WorkManagerPoolType#BATCH}, default is 100.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchDelay() {
+        return batchDelay;
+    }
+
+    /**
+     * Sets the maximum time in microseconds a batch waits for more tasks when
+     * using {@link WorkManagerPoolType#BATCH}, default is 0 which completes
+     * the batch as soon as the queue is empty.
+     */
+    public void setBatchDelay(long batchDelay) {
+        this.batchDelay = batchDelay;
+    }
+
+    public WorkManagerScheduledPoolType getScheduledPoolType() {
+        return scheduledPoolType;
+    }
+
+    /**
+     * Sets the kind of scheduled executor to create, default is {@link WorkManagerScheduledPoolType#THREAD}.
+     */
+    public void setScheduledPoolType(WorkManagerScheduledPoolType scheduledPoolType) {
+        this.scheduledPoolType = scheduledPoolType;
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * Sets the tick resolution in milliseconds when using
+     * {@link WorkManagerScheduledPoolType#TIMING_WHEEL}, default is 10.
+     */
+    public void setTickDuration(long tickDuration) {
+        this.tickDuration = tickDuration;
+    }
+
+    public int getWheelSize() {
+        return wheelSize;
+    }
+
+    /**
+     * Sets the number of ticks of the wheel when using
+     * {@link WorkManagerScheduledPoolType#TIMING_WHEEL}, default is 512.
+     */
+    public void setWheelSize(int wheelSize) {
+        this.wheelSize = wheelSize;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Sets whether a {@link WorkManagerPoolType#THREAD} pool is resized by the
+     * {@link WorkManagerPoolSizer} of the factory, default is false.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public int getAdaptiveMinPoolSize() {
+        return adaptiveMinPoolSize;
+    }
+
+    /**
+     * Sets the smallest size an adaptive pool shrinks to, default is the pool
+     * size of the thread pool profile.
+     */
+    public void setAdaptiveMinPoolSize(int adaptiveMinPoolSize) {
+        this.adaptiveMinPoolSize = adaptiveMinPoolSize;
+    }
+
+    public int getAdaptiveMaxPoolSize() {
+        return adaptiveMaxPoolSize;
+    }
+
+    /**
+     * Sets the largest size an adaptive pool grows to, default is the max pool
+     * size of the thread pool profile.
+     */
+    public void setAdaptiveMaxPoolSize(int adaptiveMaxPoolSize) {
+        this.adaptiveMaxPoolSize = adaptiveMaxPoolSize;
+    }
+
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        return rejectedExecutionHandler;
+    }
+
+    /**
+     * Sets the rejection policy, such as a {@link BlockingOfferRejectionPolicy},
+     * {@link LoadSheddingRejectionPolicy}, {@link QueueDelayRejectionPolicy} or
+     * {@link SpilloverRejectionPolicy}, which overrides the one of the thread pool profile. Default is none.
+     */
+    public void setRejectedExecutionHandler(RejectedExecutionHandler rejectedExecutionHandler) {
+        this.rejectedExecutionHandler = rejectedExecutionHandler;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Sets whether the tasks with the same ordering key run one after the
+     * other, using a {@link KeyedOrderedExecutorService}. Default is false.
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    public String getOrderingKeyHeader() {
+        return orderingKeyHeader;
+    }
+
+    /**
+     * Sets the header of the exchange with the ordering key of an ordered
+     * pool, which needs a {@link WorkManagerExchangeBinding} in the context.
+     */
+    public void setOrderingKeyHeader(String orderingKeyHeader) {
+        this.orderingKeyHeader = orderingKeyHeader;
+    }
+
+    public WorkManagerKeyExtractor getKeyExtractor() {
+        return keyExtractor;
+    }
+
+    /**
+     * Sets how the ordering key of a task is found, default is the key of a
+     * {@link KeyedTask} or else the ordering key header.
+     */
+    public void setKeyExtractor(WorkManagerKeyExtractor keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    public String getPriorityHeader() {
+        return priorityHeader;
+    }
+
+    /**
+     * Sets the header of the exchange with the priority of the tasks of a
+     * {@link WorkManagerPoolType#PRIORITY} pool, which needs a
+     * {@link WorkManagerExchangeBinding} in the context.
+     */
+    public void setPriorityHeader(String priorityHeader) {
+        this.priorityHeader = priorityHeader;
+    }
+
+    public WorkManagerPriorityExtractor getPriorityExtractor() {
+        return priorityExtractor;
+    }
+
+    /**
+     * Sets how the priority of a task is found, default is the priority header.
+     */
+    public void setPriorityExtractor(WorkManagerPriorityExtractor priorityExtractor) {
+        this.priorityExtractor = priorityExtractor;
+    }
+
+    public long getAgingInterval() {
+        return agingInterval;
+    }
+
+    /**
+     * Sets the time in milliseconds a task of a {@link WorkManagerPoolType#PRIORITY}
+     * pool waits to gain one priority level, default is 1000.
+     */
+    public void setAgingInterval(long agingInterval) {
+        this.agingInterval = agingInterval;
+    }
+
+    public boolean isPrestart() {
+        return prestart;
+    }
+
+    /**
+     * Sets whether the core threads of a thread pool are started when the pool
+     * is created, instead of by the first tasks. Default is false.
+     */
+    public void setPrestart(boolean prestart) {
+        this.prestart = prestart;
+    }
+
+    public String toString() {
+        return "WorkManagerPoolProfile[" + id + ", poolType=" + poolType + ", queueType=" + queueType + ", scheduledPoolType=" + scheduledPoolType + "]";
+    }
+}
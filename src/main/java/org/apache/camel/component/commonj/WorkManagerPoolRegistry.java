@@ -0,0 +1,518 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.util.concurrent.SizedScheduledExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inventory of the pools created by the {@link WorkManagerExecutorServiceStrategy}
+ * and the {@link WorkManagerThreadPoolFactory}, whatever their kind.
+ * <p/>
+ * Every pool is registered in JMX with its live active count, queue size,
+ * completed and rejected counts and the number of WorkManager threads it
+ * holds, and {@link #getSnapshot()} returns the same numbers for all the pools
+ * at once. The numbers are read from the pools when asked and the registry
+ * does not change the pools. The rejections are counted by the pools of this
+ * component and the WorkManager rejection policies, so another JDK pool with
+ * a JDK policy reports -1. Terminated pools are unregistered the next time
+ * the registry is used.
+ */
+@ManagedResource(description = "WorkManager pool registry")
+public class WorkManagerPoolRegistry implements CamelContextAware {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerPoolRegistry.class);
+
+    private final Map<ExecutorService, RegisteredPool> pools = new ConcurrentHashMap<ExecutorService, RegisteredPool>();
+    private final Set<String> names = new HashSet<String>();
+    private CamelContext camelContext;
+    private boolean trackThreads;
+
+    /**
+     * Registers a pool, does nothing when it is already registered.
+     *
+     * @param executor the pool
+     * @param id the id of the pool
+     * @param sourceId the id of what the pool was created for, may be <tt>null</tt>
+     * @param routeId the id of the route of the source, may be <tt>null</tt>
+     * @param threadPoolProfileId the id of the thread pool profile, may be <tt>null</tt>
+     */
+    public synchronized RegisteredPool register(ExecutorService executor, String id, String sourceId, String routeId, String threadPoolProfileId) {
+        RegisteredPool answer = pools.get(executor);
+        if (answer != null) {
+            return answer;
+        }
+        removeTerminated();
+        String managedName = "pool " + id;
+        for (int i = 2; !names.add(managedName); i++) {
+            managedName = "pool " + id + " #" + i;
+        }
+        answer = new RegisteredPool(executor, id, sourceId, routeId, threadPoolProfileId, managedName);
+        pools.put(executor, answer);
+        if (trackThreads) {
+            trackThreads(answer);
+        }
+        LOG.debug("Registered {}", answer);
+        WorkManagerManagementHelper.manage(camelContext, answer, managedName);
+        return answer;
+    }
+
+    /**
+     * Lets the thread factories of the pools keep track of the threads they
+     * create from now on, for a {@link WorkManagerPoolWatchdog} checking the
+     * pools of this registry.
+     */
+    public synchronized void trackThreads() {
+        if (!trackThreads) {
+            trackThreads = true;
+            for (RegisteredPool pool : pools.values()) {
+                trackThreads(pool);
+            }
+        }
+    }
+
+    private static void trackThreads(RegisteredPool pool) {
+        if (pool.getDelegate() instanceof ThreadPoolExecutor) {
+            ThreadFactory factory = ((ThreadPoolExecutor)pool.getDelegate()).getThreadFactory();
+            if (factory instanceof WorkManagerThreadFactory) {
+                ((WorkManagerThreadFactory)factory).trackThreads();
+            }
+        }
+    }
+
+    public synchronized void unregister(ExecutorService executor) {
+        RegisteredPool pool = pools.remove(executor);
+        if (pool != null) {
+            names.remove(pool.managedName);
+            WorkManagerManagementHelper.unmanage(camelContext, pool.managedName);
+            LOG.debug("Unregistered {}", pool);
+        }
+    }
+
+    private void removeTerminated() {
+        for (RegisteredPool pool : pools.values()) {
+            if (pool.executor.isTerminated()) {
+                unregister(pool.executor);
+            }
+        }
+    }
+
+    public RegisteredPool getPool(ExecutorService executor) {
+        return pools.get(executor);
+    }
+
+    /**
+     * Gets the registered pools which are not terminated.
+     */
+    public synchronized List<RegisteredPool> getPools() {
+        removeTerminated();
+        return new ArrayList<RegisteredPool>(pools.values());
+    }
+
+    /**
+     * Gets the numbers of all the pools, the pools holding the most
+     * WorkManager threads first.
+     */
+    public List<PoolSnapshot> getSnapshot() {
+        List<PoolSnapshot> answer = new ArrayList<PoolSnapshot>();
+        for (RegisteredPool pool : getPools()) {
+            answer.add(pool.snapshot());
+        }
+        Collections.sort(answer, new Comparator<PoolSnapshot>() {
+            public int compare(PoolSnapshot a, PoolSnapshot b) {
+                return a.slotCount > b.slotCount ? -1 : a.slotCount < b.slotCount ? 1 : a.activeCount > b.activeCount ? -1 : a.activeCount < b.activeCount ? 1 : 0;
+            }
+        });
+        return answer;
+    }
+
+    @ManagedOperation(description = "The pools holding the most WorkManager threads first")
+    public String dumpPools() {
+        StringBuilder answer = new StringBuilder();
+        for (PoolSnapshot snapshot : getSnapshot()) {
+            answer.append(snapshot).append('\n');
+        }
+        return answer.toString();
+    }
+
+    @ManagedAttribute(description = "Number of pools")
+    public int getPoolCount() {
+        return getPools().size();
+    }
+
+    @ManagedAttribute(description = "WorkManager threads held by the pools")
+    public int getTotalSlotCount() {
+        int answer = 0;
+        for (RegisteredPool pool : getPools()) {
+            answer += pool.getSlotCount();
+        }
+        return answer;
+    }
+
+    public CamelContext getCamelContext() {
+        return camelContext;
+    }
+
+    /**
+     * Sets the CamelContext whose management strategy the registry and its
+     * pools are registered in.
+     */
+    public synchronized void setCamelContext(CamelContext camelContext) {
+        this.camelContext = camelContext;
+        WorkManagerManagementHelper.manage(camelContext, this, "PoolRegistry");
+        for (RegisteredPool pool : pools.values()) {
+            WorkManagerManagementHelper.manage(camelContext, pool, pool.managedName);
+        }
+    }
+
+    public String toString() {
+        return "WorkManagerPoolRegistry[pools=" + pools.size() + "]";
+    }
+
+    /**
+     * Gets the executor which runs the tasks of a wrapping executor.
+     */
+    private static ExecutorService unwrap(ExecutorService executor) {
+        if (executor instanceof SizedScheduledExecutorService) {
+            return ((SizedScheduledExecutorService)executor).getScheduledThreadPoolExecutor();
+        } else if (executor instanceof KeyedOrderedExecutorService) {
+            return unwrap(((KeyedOrderedExecutorService)executor).getExecutor());
+        } else if (executor instanceof WorkManagerBulkheadExecutorService) {
+            return unwrap(((WorkManagerBulkheadExecutorService)executor).getExecutor());
+        } else if (executor instanceof WorkManagerContextExecutorService) {
+            return unwrap(((WorkManagerContextExecutorService)executor).getExecutor());
+        }
+        return executor;
+    }
+
+    private static int getActiveCount(ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor)executor).getActiveCount();
+        } else if (executor instanceof WorkManagerExecutorService) {
+            return ((WorkManagerExecutorService)executor).getActiveCount();
+        } else if (executor instanceof WorkManagerBatchingExecutorService) {
+            return ((WorkManagerBatchingExecutorService)executor).getActiveBatches();
+        } else if (executor instanceof WorkManagerVirtualExecutorService) {
+            return ((WorkManagerVirtualExecutorService)executor).getActiveCount();
+        } else if (executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool)executor).getActiveThreadCount();
+        } else if (executor instanceof WorkManagerTimingWheelExecutorService) {
+            return getActiveCount(((WorkManagerTimingWheelExecutorService)executor).getTaskExecutor());
+        } else if (executor instanceof TimerManagerScheduledExecutorService) {
+            return getActiveCount(((TimerManagerScheduledExecutorService)executor).getTaskExecutor());
+        }
+        return -1;
+    }
+
+    private static int getQueueSize(ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor)executor).getQueue().size();
+        } else if (executor instanceof WorkManagerExecutorService) {
+            WorkManagerExecutorService wmes = (WorkManagerExecutorService)executor;
+            return Math.max(0, wmes.getPendingCount() - wmes.getActiveCount());
+        } else if (executor instanceof WorkManagerBatchingExecutorService) {
+            return ((WorkManagerBatchingExecutorService)executor).getQueueSize();
+        } else if (executor instanceof WorkManagerVirtualExecutorService) {
+            return ((WorkManagerVirtualExecutorService)executor).getQueueSize();
+        } else if (executor instanceof ForkJoinPool) {
+            ForkJoinPool pool = (ForkJoinPool)executor;
+            return (int)Math.min(Integer.MAX_VALUE, pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+        } else if (executor instanceof WorkManagerTimingWheelExecutorService) {
+            WorkManagerTimingWheelExecutorService wheel = (WorkManagerTimingWheelExecutorService)executor;
+            return wheel.getScheduledCount() + Math.max(0, getQueueSize(wheel.getTaskExecutor()));
+        } else if (executor instanceof TimerManagerScheduledExecutorService) {
+            TimerManagerScheduledExecutorService timer = (TimerManagerScheduledExecutorService)executor;
+            return timer.getScheduledCount() + Math.max(0, getQueueSize(timer.getTaskExecutor()));
+        }
+        return -1;
+    }
+
+    private static long getCompletedTaskCount(ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor)executor).getCompletedTaskCount();
+        } else if (executor instanceof WorkManagerExecutorService) {
+            return ((WorkManagerExecutorService)executor).getCompletedTaskCount();
+        } else if (executor instanceof WorkManagerBatchingExecutorService) {
+            return ((WorkManagerBatchingExecutorService)executor).getCompletedTaskCount();
+        } else if (executor instanceof WorkManagerVirtualExecutorService) {
+            return ((WorkManagerVirtualExecutorService)executor).getCompletedTaskCount();
+        } else if (executor instanceof WorkManagerTimingWheelExecutorService) {
+            return getCompletedTaskCount(((WorkManagerTimingWheelExecutorService)executor).getTaskExecutor());
+        } else if (executor instanceof TimerManagerScheduledExecutorService) {
+            return getCompletedTaskCount(((TimerManagerScheduledExecutorService)executor).getTaskExecutor());
+        }
+        return -1;
+    }
+
+    private static long getRejectedCount(ExecutorService executor) {
+        if (executor instanceof WorkManagerCountingThreadPoolExecutor) {
+            return ((WorkManagerCountingThreadPoolExecutor)executor).getRejectedCount();
+        } else if (executor instanceof ThreadPoolExecutor) {
+            // other pools only count when their policy does
+            RejectedExecutionHandler handler = ((ThreadPoolExecutor)executor).getRejectedExecutionHandler();
+            if (handler instanceof WorkManagerRejectionPolicy) {
+                return ((WorkManagerRejectionPolicy)handler).getRejectedCount();
+            }
+        } else if (executor instanceof WorkManagerExecutorService) {
+            return ((WorkManagerExecutorService)executor).getRejectedCount();
+        } else if (executor instanceof WorkManagerBatchingExecutorService) {
+            return ((WorkManagerBatchingExecutorService)executor).getRejectedCount();
+        } else if (executor instanceof WorkManagerVirtualExecutorService) {
+            return ((WorkManagerVirtualExecutorService)executor).getRejectedCount();
+        } else if (executor instanceof ForkJoinPool) {
+            ForkJoinPool.ForkJoinWorkerThreadFactory factory = ((ForkJoinPool)executor).getFactory();
+            if (factory instanceof WorkManagerForkJoinWorkerThreadFactory) {
+                return ((WorkManagerForkJoinWorkerThreadFactory)factory).getRejectedCount();
+            }
+            return 0;
+        } else if (executor instanceof WorkManagerTimingWheelExecutorService) {
+            return getRejectedCount(((WorkManagerTimingWheelExecutorService)executor).getTaskExecutor());
+        } else if (executor instanceof TimerManagerScheduledExecutorService) {
+            return getRejectedCount(((TimerManagerScheduledExecutorService)executor).getTaskExecutor());
+        }
+        return -1;
+    }
+
+    private static int getSlotCount(ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor)executor;
+            if (pool.getThreadFactory() instanceof WorkManagerThreadFactory
+                && ((WorkManagerThreadFactory)pool.getThreadFactory()).getWorkmanager() != null) {
+                return pool.getPoolSize();
+            }
+        } else if (executor instanceof WorkManagerExecutorService) {
+            return ((WorkManagerExecutorService)executor).getPendingCount();
+        } else if (executor instanceof WorkManagerBatchingExecutorService) {
+            return ((WorkManagerBatchingExecutorService)executor).getActiveBatches();
+        } else if (executor instanceof ForkJoinPool) {
+            ForkJoinPool.ForkJoinWorkerThreadFactory factory = ((ForkJoinPool)executor).getFactory();
+            if (factory instanceof WorkManagerForkJoinWorkerThreadFactory) {
+                return ((WorkManagerForkJoinWorkerThreadFactory)factory).getLeaseCount();
+            }
+        } else if (executor instanceof WorkManagerTimingWheelExecutorService) {
+            WorkManagerTimingWheelExecutorService wheel = (WorkManagerTimingWheelExecutorService)executor;
+            return (wheel.isTickerRunning() ? 1 : 0) + getSlotCount(wheel.getTaskExecutor());
+        } else if (executor instanceof TimerManagerScheduledExecutorService) {
+            return getSlotCount(((TimerManagerScheduledExecutorService)executor).getTaskExecutor());
+        }
+        // the shared pools run on the threads of the scheduler
+        return 0;
+    }
+
+    /**
+     * A registered pool, which reads its numbers from the executor.
+     */
+    @ManagedResource(description = "WorkManager pool")
+    public static final class RegisteredPool {
+        private final ExecutorService executor;
+        private final ExecutorService delegate;
+        private final String id;
+        private final String sourceId;
+        private final String routeId;
+        private final String threadPoolProfileId;
+        private final String managedName;
+
+        private RegisteredPool(ExecutorService executor, String id, String sourceId, String routeId, String threadPoolProfileId, String managedName) {
+            this.executor = executor;
+            this.delegate = unwrap(executor);
+            this.id = id;
+            this.sourceId = sourceId;
+            this.routeId = routeId;
+            this.threadPoolProfileId = threadPoolProfileId;
+            this.managedName = managedName;
+        }
+
+        public ExecutorService getExecutor() {
+            return executor;
+        }
+
+        /**
+         * Gets the executor running the tasks, behind the scheduling, ordering
+         * and bulkhead wrappers.
+         */
+        ExecutorService getDelegate() {
+            return delegate;
+        }
+
+        @ManagedAttribute(description = "Id")
+        public String getId() {
+            return id;
+        }
+
+        @ManagedAttribute(description = "Source id")
+        public String getSourceId() {
+            return sourceId;
+        }
+
+        @ManagedAttribute(description = "Route id")
+        public String getRouteId() {
+            return routeId;
+        }
+
+        @ManagedAttribute(description = "Thread pool profile id")
+        public String getThreadPoolProfileId() {
+            return threadPoolProfileId;
+        }
+
+        @ManagedAttribute(description = "Kind of executor")
+        public String getType() {
+            return executor.getClass().getSimpleName();
+        }
+
+        @ManagedAttribute(description = "Number of running tasks, -1 if unknown")
+        public int getActiveCount() {
+            return WorkManagerPoolRegistry.getActiveCount(delegate);
+        }
+
+        @ManagedAttribute(description = "Number of waiting tasks, -1 if unknown")
+        public int getQueueSize() {
+            return WorkManagerPoolRegistry.getQueueSize(delegate);
+        }
+
+        @ManagedAttribute(description = "Number of completed tasks, -1 if unknown")
+        public long getCompletedTaskCount() {
+            return WorkManagerPoolRegistry.getCompletedTaskCount(delegate);
+        }
+
+        /**
+         * Number of rejected tasks. A {@link WorkManagerRejectionPolicy}
+         * shared by several pools counts the rejections of all of them.
+         */
+        @ManagedAttribute(description = "Number of rejected tasks, -1 if unknown")
+        public long getRejectedCount() {
+            return WorkManagerPoolRegistry.getRejectedCount(delegate);
+        }
+
+        @ManagedAttribute(description = "Number of WorkManager threads held")
+        public int getSlotCount() {
+            return WorkManagerPoolRegistry.getSlotCount(delegate);
+        }
+
+        @ManagedAttribute(description = "Whether the pool is shut down")
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        public PoolSnapshot snapshot() {
+            return new PoolSnapshot(this);
+        }
+
+        public String toString() {
+            return "RegisteredPool[" + id + ", sourceId=" + sourceId + ", routeId=" + routeId + ", type=" + getType() + "]";
+        }
+    }
+
+    /**
+     * The numbers of a pool at one point in time.
+     */
+    public static final class PoolSnapshot {
+        private final String id;
+        private final String sourceId;
+        private final String routeId;
+        private final String threadPoolProfileId;
+        private final String type;
+        private final int activeCount;
+        private final int queueSize;
+        private final long completedTaskCount;
+        private final long rejectedCount;
+        private final int slotCount;
+        private final boolean shutdown;
+
+        private PoolSnapshot(RegisteredPool pool) {
+            this.id = pool.id;
+            this.sourceId = pool.sourceId;
+            this.routeId = pool.routeId;
+            this.threadPoolProfileId = pool.threadPoolProfileId;
+            this.type = pool.getType();
+            this.activeCount = pool.getActiveCount();
+            this.queueSize = pool.getQueueSize();
+            this.completedTaskCount = pool.getCompletedTaskCount();
+            this.rejectedCount = pool.getRejectedCount();
+            this.slotCount = pool.getSlotCount();
+            this.shutdown = pool.isShutdown();
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getSourceId() {
+            return sourceId;
+        }
+
+        public String getRouteId() {
+            return routeId;
+        }
+
+        public String getThreadPoolProfileId() {
+            return threadPoolProfileId;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public int getActiveCount() {
+            return activeCount;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        public long getCompletedTaskCount() {
+            return completedTaskCount;
+        }
+
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        public int getSlotCount() {
+            return slotCount;
+        }
+
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        public String toString() {
+            return id + " [sourceId=" + sourceId + ", routeId=" + routeId + ", profile=" + threadPoolProfileId + ", type=" + type + ", slots=" + slotCount
+                   + ", active=" + activeCount + ", queued=" + queueSize + ", completed=" + completedTaskCount + ", rejected=" + rejectedCount
+                   + (shutdown ? ", shutdown" : "") + "]";
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.work.Work;
+import commonj.work.WorkManager;
+
+/**
+ * Adjusts the size of thread pools to the time their tasks wait in the queue.
+ * <p/>
+ * Every interval the queue depth, the mean time the started tasks waited and
+ * the completion rate of every registered pool are sampled. When the tasks
+ * waited longer than targetWaitTime, or the queued tasks will wait longer at
+ * the current completion rate, the pool grows by increment threads (additive increase). When the tasks
+ * waited less than half targetWaitTime and threads are idle, the pool shrinks
+ * by decreaseFactor (multiplicative decrease). A pool stays within its own
+ * bounds, and a pool only grows while the threads of all the pools together
+ * stay within maxTotalThreads, the share of the WorkManager threads Camel may
+ * use. The threads of a pool are its live threads or its core size, whichever
+ * is larger, and with a poolRegistry the WorkManager threads held by the
+ * other pools of the registry count as well.
+ * <p/>
+ * The sampling runs as a daemon work on the WorkManager, or on a daemon
+ * thread when no WorkManager is set.
+ */
+@ManagedResource(description = "WorkManager thread pool sizer")
+public class WorkManagerPoolSizer implements CamelContextAware {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerPoolSizer.class);
+
+    private final List<AdaptivePool> pools = new CopyOnWriteArrayList<AdaptivePool>();
+    private final AtomicLong resizeCount = new AtomicLong();
+    private WorkManager workmanager;
+    private CamelContext camelContext;
+    private long interval = 1000;
+    private long targetWaitTime = 10;
+    private int increment = 1;
+    private double decreaseFactor = 0.75;
+    private int maxTotalThreads = -1;
+    private volatile WorkManagerPoolRegistry poolRegistry;
+    private Sampler sampler;
+
+    /**
+     * Registers a pool to resize between the given bounds, and starts the
+     * sampling if needed.
+     */
+    public void register(WorkManagerThreadPoolExecutor executor, int minPoolSize, int maxPoolSize) {
+        if (minPoolSize < 1 || maxPoolSize < minPoolSize) {
+            throw new IllegalArgumentException("Bounds of " + executor + " must be 1 <= min <= max, was " + minPoolSize + " and " + maxPoolSize);
+        }
+        AdaptivePool pool = new AdaptivePool(executor, minPoolSize, maxPoolSize);
+        pools.add(pool);
+        LOG.debug("Registered {}", pool);
+        WorkManagerManagementHelper.manage(camelContext, pool, pool.getManagedName());
+        start();
+    }
+
+    public synchronized void start() {
+        if (sampler != null) {
+            return;
+        }
+        sampler = new Sampler();
+        if (workmanager != null) {
+            workmanager.schedule(sampler);
+        } else {
+            Thread thread = new Thread(sampler, "WorkManagerPoolSizer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        if (sampler != null) {
+            sampler.release();
+            sampler = null;
+        }
+    }
+
+    /**
+     * Samples all the pools and resizes them when needed. Shut down pools are
+     * unregistered.
+     */
+    public void sample() {
+        for (AdaptivePool pool : pools) {
+            if (pool.executor.isShutdown()) {
+                pools.remove(pool);
+                WorkManagerManagementHelper.unmanage(camelContext, pool.getManagedName());
+                LOG.debug("Unregistered {}", pool);
+            } else {
+                sample(pool);
+            }
+        }
+    }
+
+    private void sample(AdaptivePool pool) {
+        WorkManagerThreadPoolExecutor executor = pool.executor;
+        long now = System.nanoTime();
+        long waitTime = executor.getWaitTime();
+        long waitCount = executor.getWaitCount();
+        long completed = executor.getCompletedTaskCount();
+        long started = waitCount - pool.lastWaitCount;
+        pool.averageWaitTime = started > 0 ? (waitTime - pool.lastWaitTime) / started : 0;
+        pool.completionRate = (completed - pool.lastCompleted) * 1000000000.0 / Math.max(1, now - pool.lastSample);
+        pool.queueSize = executor.getQueue().size();
+        pool.lastSample = now;
+        pool.lastWaitTime = waitTime;
+        pool.lastWaitCount = waitCount;
+        pool.lastCompleted = completed;
+
+        int core = executor.getCorePoolSize();
+        long target = TimeUnit.MILLISECONDS.toNanos(targetWaitTime);
+        int size = core;
+        // the time the queued tasks will wait at the current completion rate
+        double projectedWaitTime = pool.queueSize == 0 ? 0 : pool.completionRate > 0 ? pool.queueSize / pool.completionRate * 1000000000.0 : Double.MAX_VALUE;
+        if ((pool.averageWaitTime > target || projectedWaitTime > target) && core < pool.maxPoolSize) {
+            size = Math.min(pool.maxPoolSize, core + increment);
+            if (maxTotalThreads > 0) {
+                size = Math.min(size, core + Math.max(0, maxTotalThreads - getTotalThreads()));
+            }
+        } else if (pool.averageWaitTime < target / 2 && pool.queueSize == 0 && executor.getActiveCount() < core && core > pool.minPoolSize) {
+            size = Math.max(pool.minPoolSize, Math.min(core - 1, (int)(core * decreaseFactor)));
+        }
+        if (size != core) {
+            resize(pool, size);
+            LOG.info("Resized {} from {} to {} threads [waitTime={}us, queueSize={}, completionRate={}/s]",
+                     new Object[] {executor.getName(), core, size, TimeUnit.NANOSECONDS.toMicros(pool.averageWaitTime), pool.queueSize,
+                                   (long)pool.completionRate});
+        } else {
+            LOG.trace("Sampled {}", pool);
+        }
+    }
+
+    private void resize(AdaptivePool pool, int size) {
+        WorkManagerThreadPoolExecutor executor = pool.executor;
+        if (size > executor.getCorePoolSize()) {
+            if (size > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(size);
+            }
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            int max = Math.max(size, pool.initialMaximumPoolSize);
+            if (executor.getMaximumPoolSize() > max) {
+                executor.setMaximumPoolSize(max);
+            }
+        }
+        pool.resizeCount.incrementAndGet();
+        resizeCount.incrementAndGet();
+    }
+
+    @ManagedAttribute(description = "Number of pools")
+    public int getPoolCount() {
+        return pools.size();
+    }
+
+    /**
+     * The threads of all the pools together, see {@link #setMaxTotalThreads(int)}.
+     */
+    @ManagedAttribute(description = "Total threads of the pools")
+    public int getTotalThreads() {
+        int answer = 0;
+        for (AdaptivePool pool : pools) {
+            answer += Math.max(pool.executor.getCorePoolSize(), pool.executor.getPoolSize());
+        }
+        WorkManagerPoolRegistry registry = poolRegistry;
+        if (registry != null) {
+            for (WorkManagerPoolRegistry.RegisteredPool pool : registry.getPools()) {
+                if (!isAdaptive(pool.getExecutor())) {
+                    answer += pool.getSlotCount();
+                }
+            }
+        }
+        return answer;
+    }
+
+    private boolean isAdaptive(Object executor) {
+        for (AdaptivePool pool : pools) {
+            if (pool.executor == executor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @ManagedAttribute(description = "Number of resizes")
+    public long getResizeCount() {
+        return resizeCount.get();
+    }
+
+    public List<AdaptivePool> getPools() {
+        return pools;
+    }
+
+    public WorkManager getWorkmanager() {
+        return workmanager;
+    }
+
+    public void setWorkmanager(WorkManager workmanager) {
+        this.workmanager = workmanager;
+    }
+
+    public CamelContext getCamelContext() {
+        return camelContext;
+    }
+
+    /**
+     * Sets the CamelContext whose management strategy the sizer and its pools
+     * are registered in.
+     */
+    public void setCamelContext(CamelContext camelContext) {
+        this.camelContext = camelContext;
+        WorkManagerManagementHelper.manage(camelContext, this, "PoolSizer");
+        for (AdaptivePool pool : pools) {
+            WorkManagerManagementHelper.manage(camelContext, pool, pool.getManagedName());
+        }
+    }
+
+    @ManagedAttribute(description = "Sample interval in milliseconds")
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the time in milliseconds between two samples, default is 1000.
+     */
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    @ManagedAttribute(description = "Target wait time in milliseconds")
+    public long getTargetWaitTime() {
+        return targetWaitTime;
+    }
+
+    /**
+     * Sets the time in milliseconds tasks may wait in the queue before the pool
+     * grows, default is 10.
+     */
+    public void setTargetWaitTime(long targetWaitTime) {
+        this.targetWaitTime = targetWaitTime;
+    }
+
+    public int getIncrement() {
+        return increment;
+    }
+
+    /**
+     * Sets the number of threads a pool grows by, default is 1.
+     */
+    public void setIncrement(int increment) {
+        this.increment = increment;
+    }
+
+    public double getDecreaseFactor() {
+        return decreaseFactor;
+    }
+
+    /**
+     * Sets the factor a pool shrinks by, default is 0.75.
+     */
+    public void setDecreaseFactor(double decreaseFactor) {
+        this.decreaseFactor = decreaseFactor;
+    }
+
+    @ManagedAttribute(description = "Maximum total threads of the pools")
+    public int getMaxTotalThreads() {
+        return maxTotalThreads;
+    }
+
+    /**
+     * Sets the number of threads of all the pools together beyond which no
+     * pool grows, default is -1 for no maximum. The threads of an adaptive
+     * pool are its live threads or its core size, whichever is larger, plus
+     * the WorkManager threads held by the other pools of the poolRegistry.
+     */
+    public void setMaxTotalThreads(int maxTotalThreads) {
+        this.maxTotalThreads = maxTotalThreads;
+    }
+
+    public WorkManagerPoolRegistry getPoolRegistry() {
+        return poolRegistry;
+    }
+
+    /**
+     * Sets the registry whose other pools count towards maxTotalThreads. The
+     * {@link WorkManagerThreadPoolFactory} sets its own registry when none is
+     * set.
+     */
+    public void setPoolRegistry(WorkManagerPoolRegistry poolRegistry) {
+        this.poolRegistry = poolRegistry;
+    }
+
+    public String toString() {
+        return "WorkManagerPoolSizer[pools=" + pools.size() + ", totalThreads=" + getTotalThreads() + ", resizes=" + resizeCount.get() + "]";
+    }
+
+    /**
+     * A pool resized by the sizer, with its last sample.
+     */
+    @ManagedResource(description = "Adaptive WorkManager thread pool")
+    public static final class AdaptivePool {
+        private final WorkManagerThreadPoolExecutor executor;
+        private final int minPoolSize;
+        private final int maxPoolSize;
+        private final int initialMaximumPoolSize;
+        private final AtomicLong resizeCount = new AtomicLong();
+        private long lastSample = System.nanoTime();
+        private long lastWaitTime;
+        private long lastWaitCount;
+        private long lastCompleted;
+        private volatile long averageWaitTime;
+        private volatile double completionRate;
+        private volatile int queueSize;
+
+        private AdaptivePool(WorkManagerThreadPoolExecutor executor, int minPoolSize, int maxPoolSize) {
+            this.executor = executor;
+            this.minPoolSize = minPoolSize;
+            this.maxPoolSize = maxPoolSize;
+            this.initialMaximumPoolSize = executor.getMaximumPoolSize();
+        }
+
+        private String getManagedName() {
+            return executor.getName() + " sizer";
+        }
+
+        public WorkManagerThreadPoolExecutor getExecutor() {
+            return executor;
+        }
+
+        @ManagedAttribute(description = "Name")
+        public String getName() {
+            return executor.getName();
+        }
+
+        @ManagedAttribute(description = "Minimum pool size")
+        public int getMinPoolSize() {
+            return minPoolSize;
+        }
+
+        @ManagedAttribute(description = "Maximum pool size")
+        public int getMaxPoolSize() {
+            return maxPoolSize;
+        }
+
+        @ManagedAttribute(description = "Core pool size")
+        public int getCorePoolSize() {
+            return executor.getCorePoolSize();
+        }
+
+        @ManagedAttribute(description = "Mean wait time of the last sample in microseconds")
+        public long getAverageWaitTime() {
+            return TimeUnit.NANOSECONDS.toMicros(averageWaitTime);
+        }
+
+        @ManagedAttribute(description = "Completed tasks per second of the last sample")
+        public double getCompletionRate() {
+            return completionRate;
+        }
+
+        @ManagedAttribute(description = "Queue size of the last sample")
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        @ManagedAttribute(description = "Number of resizes")
+        public long getResizeCount() {
+            return resizeCount.get();
+        }
+
+        public String toString() {
+            return "AdaptivePool[" + executor.getName() + ", corePoolSize=" + executor.getCorePoolSize() + ", min=" + minPoolSize + ", max="
+                   + maxPoolSize + ", waitTime=" + getAverageWaitTime() + "us, queueSize=" + queueSize + "]";
+        }
+    }
+
+    /**
+     * Samples the pools every interval until released.
+     */
+    private final class Sampler implements Work, Runnable {
+        private volatile boolean released;
+
+        public void run() {
+            LOG.debug("Started sampling every {} ms", interval);
+            while (!released) {
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    if (released) {
+                        break;
+                    }
+                }
+                try {
+                    sample();
+                } catch (RuntimeException e) {
+                    LOG.warn("Cannot sample the pools of " + WorkManagerPoolSizer.this, e);
+                }
+            }
+            LOG.debug("Stopped sampling");
+        }
+
+        public void release() {
+            released = true;
+        }
+
+        public boolean isDaemon() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+/**
+ * The kind of executor {@link WorkManagerThreadPoolFactory} creates for a
+ * thread pool profile.
+ */
+public enum WorkManagerPoolType {
+
+    /**
+     * A JDK thread pool where every pool thread is backed by a long running
+     * WorkManager daemon work.
+     */
+    THREAD,
+
+    /**
+     * Every task is scheduled as its own short lived WorkManager work.
+     */
+    TASK,
+
+    /**
+     * Tasks are queued and run in batches, where every batch is a single
+     * short lived WorkManager work.
+     */
+    BATCH,
+
+    /**
+     * A lightweight executor running on the {@link WorkManagerScheduler}
+     * shared by all pools of the factory, which uses a fixed number of
+     * WorkManager daemon works regardless of the number of pools.
+     */
+    SHARED,
+
+    /**
+     * A thread pool like {@link #THREAD} which runs the queued tasks by
+     * priority, where waiting tasks age so they are not starved.
+     */
+    PRIORITY,
+
+    /**
+     * A work stealing fork join pool, where every worker holds a WorkManager
+     * slot while it is alive.
+     */
+    FORK_JOIN
+}
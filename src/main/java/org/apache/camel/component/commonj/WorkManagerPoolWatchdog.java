@@ -0,0 +1,601 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.work.Work;
+import commonj.work.WorkManager;
+
+/**
+ * Detects the pools of a {@link WorkManagerPoolRegistry} which stopped making
+ * progress.
+ * <p/>
+ * Every interval the completed and rejected tasks and the queue of every pool
+ * are sampled. A pool stalls when it completed no task for stallTime while
+ * tasks wait in its queue or are rejected, for instance because its threads
+ * still wait for a capped WorkManager. A pool deadlocks when all its threads
+ * wait on tasks queued in the same pool, or in a pool whose threads are all
+ * waiting as well, which happens when tasks submit nested tasks and wait for
+ * them, or when its threads are deadlocked on monitors. A deadlock is
+ * reported when it is seen by two checks in a row.
+ * <p/>
+ * The report holds the numbers of the pool, the stacks of its threads and
+ * the graph of the pools waiting on each other. When lendWork is enabled a
+ * stalled thread pool gets an extra thread, which runs the queued tasks the
+ * other threads wait on, until its queue drained.
+ * <p/>
+ * The checks run as a daemon work on the WorkManager, or on a daemon thread
+ * when no WorkManager is set.
+ */
+@ManagedResource(description = "WorkManager pool watchdog")
+public class WorkManagerPoolWatchdog implements CamelContextAware {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerPoolWatchdog.class);
+
+    private final Map<WorkManagerPoolRegistry.RegisteredPool, PoolState> states = new ConcurrentHashMap<WorkManagerPoolRegistry.RegisteredPool, PoolState>();
+    private final AtomicLong stallCount = new AtomicLong();
+    private final AtomicLong deadlockCount = new AtomicLong();
+    private final AtomicLong loanCount = new AtomicLong();
+    private WorkManager workmanager;
+    private CamelContext camelContext;
+    private WorkManagerPoolRegistry poolRegistry;
+    private long interval = 1000;
+    private long stallTime = 10000;
+    private boolean lendWork;
+    private int maxLoans = 1;
+    private int maxStackDepth = 20;
+    private volatile String lastReport;
+    private Checker checker;
+
+    public WorkManagerPoolWatchdog() {
+    }
+
+    public WorkManagerPoolWatchdog(WorkManagerPoolRegistry poolRegistry) {
+        setPoolRegistry(poolRegistry);
+    }
+
+    public synchronized void start() {
+        if (checker != null) {
+            return;
+        }
+        checker = new Checker();
+        if (workmanager != null) {
+            workmanager.schedule(checker);
+        } else {
+            Thread thread = new Thread(checker, "WorkManagerPoolWatchdog");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        if (checker != null) {
+            checker.release();
+            checker = null;
+        }
+    }
+
+    /**
+     * Checks all the registered pools, reports the pools which stalled or
+     * deadlocked and lends them a thread when enabled.
+     */
+    public void check() {
+        if (poolRegistry == null) {
+            return;
+        }
+        synchronized (states) {
+            long now = System.nanoTime();
+            List<WorkManagerPoolRegistry.RegisteredPool> pools = poolRegistry.getPools();
+            states.keySet().retainAll(pools);
+            List<PoolState> suspects = new ArrayList<PoolState>();
+            for (WorkManagerPoolRegistry.RegisteredPool pool : pools) {
+                PoolState state = states.get(pool);
+                if (state == null) {
+                    state = new PoolState(pool, now);
+                    states.put(pool, state);
+                }
+                if (state.sample(now)) {
+                    suspects.add(state);
+                }
+            }
+            if (suspects.isEmpty()) {
+                return;
+            }
+
+            PoolGraph graph = new PoolGraph(pools, maxStackDepth);
+            for (PoolState state : suspects) {
+                state.deadlockChecks = graph.isDeadlocked(state.pool) ? state.deadlockChecks + 1 : 0;
+                String reason = null;
+                if (state.deadlockChecks >= 2) {
+                    reason = "deadlocked, all its threads wait on tasks which cannot run";
+                } else if (now - state.lastProgress >= TimeUnit.MILLISECONDS.toNanos(stallTime)) {
+                    reason = "stalled, no task completed in " + TimeUnit.NANOSECONDS.toMillis(now - state.lastProgress) + " ms while tasks wait";
+                }
+                if (reason == null) {
+                    continue;
+                }
+                if (!state.reported) {
+                    state.reported = true;
+                    if (state.deadlockChecks >= 2) {
+                        deadlockCount.incrementAndGet();
+                    } else {
+                        stallCount.incrementAndGet();
+                    }
+                    lastReport = graph.report(state.pool, reason);
+                    LOG.warn(lastReport);
+                }
+                if (lendWork && (state.loans == 0 || now - state.lastLoan >= TimeUnit.MILLISECONDS.toNanos(stallTime))) {
+                    lend(state, now);
+                }
+            }
+        }
+    }
+
+    private void lend(PoolState state, long now) {
+        ExecutorService delegate = state.pool.getDelegate();
+        if (!(delegate instanceof ThreadPoolExecutor) || state.loans >= maxLoans) {
+            return;
+        }
+        ThreadPoolExecutor executor = (ThreadPoolExecutor)delegate;
+        if (state.loans == 0) {
+            state.corePoolSize = executor.getCorePoolSize();
+            state.maximumPoolSize = executor.getMaximumPoolSize();
+        }
+        int core = executor.getCorePoolSize() + 1;
+        if (core > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(core);
+        }
+        executor.setCorePoolSize(core);
+        // start the lent thread right away, as no task may come to start it
+        executor.prestartCoreThread();
+        state.loans++;
+        state.lentCorePoolSize = core;
+        state.lastLoan = now;
+        loanCount.incrementAndGet();
+        LOG.info("Lent a thread to {}, now {} threads", state.pool.getId(), core);
+    }
+
+    /**
+     * Takes back the threads lent to a pool, unless it was resized since.
+     */
+    private void giveBack(PoolState state) {
+        if (state.loans == 0) {
+            return;
+        }
+        ThreadPoolExecutor executor = (ThreadPoolExecutor)state.pool.getDelegate();
+        if (executor.getCorePoolSize() == state.lentCorePoolSize) {
+            executor.setCorePoolSize(state.corePoolSize);
+            if (executor.getMaximumPoolSize() > state.maximumPoolSize) {
+                executor.setMaximumPoolSize(state.maximumPoolSize);
+            }
+            LOG.info("Took back {} threads lent to {}", state.loans, state.pool.getId());
+        }
+        state.loans = 0;
+    }
+
+    /**
+     * Gets the graph of the registered pools waiting on each other, with the
+     * stacks of the waiting threads.
+     */
+    @ManagedOperation(description = "Graph of the pools waiting on each other")
+    public String dumpPoolGraph() {
+        if (poolRegistry == null) {
+            return "";
+        }
+        return new PoolGraph(poolRegistry.getPools(), maxStackDepth).describe();
+    }
+
+    @ManagedAttribute(description = "Last report of a stalled or deadlocked pool")
+    public String getLastReport() {
+        return lastReport;
+    }
+
+    @ManagedAttribute(description = "Number of stalled pools")
+    public long getStallCount() {
+        return stallCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of deadlocked pools")
+    public long getDeadlockCount() {
+        return deadlockCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of threads lent")
+    public long getLoanCount() {
+        return loanCount.get();
+    }
+
+    public WorkManagerPoolRegistry getPoolRegistry() {
+        return poolRegistry;
+    }
+
+    /**
+     * Sets the registry of the pools to check, whose pools keep track of their
+     * threads from now on.
+     */
+    public void setPoolRegistry(WorkManagerPoolRegistry poolRegistry) {
+        if (poolRegistry != null) {
+            poolRegistry.trackThreads();
+        }
+        this.poolRegistry = poolRegistry;
+    }
+
+    public WorkManager getWorkmanager() {
+        return workmanager;
+    }
+
+    public void setWorkmanager(WorkManager workmanager) {
+        this.workmanager = workmanager;
+    }
+
+    public CamelContext getCamelContext() {
+        return camelContext;
+    }
+
+    public void setCamelContext(CamelContext camelContext) {
+        this.camelContext = camelContext;
+        WorkManagerManagementHelper.manage(camelContext, this, "PoolWatchdog");
+    }
+
+    @ManagedAttribute(description = "Check interval in milliseconds")
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the time in milliseconds between two checks, default is 1000.
+     */
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    @ManagedAttribute(description = "Stall time in milliseconds")
+    public long getStallTime() {
+        return stallTime;
+    }
+
+    /**
+     * Sets the time in milliseconds a pool may complete no task while tasks
+     * wait before it is reported, default is 10000.
+     */
+    public void setStallTime(long stallTime) {
+        this.stallTime = stallTime;
+    }
+
+    @ManagedAttribute(description = "Whether stalled pools get an extra thread")
+    public boolean isLendWork() {
+        return lendWork;
+    }
+
+    /**
+     * Sets whether a stalled thread pool gets an extra thread until its queue
+     * drained, default is false.
+     */
+    public void setLendWork(boolean lendWork) {
+        this.lendWork = lendWork;
+    }
+
+    public int getMaxLoans() {
+        return maxLoans;
+    }
+
+    /**
+     * Sets the number of threads a stalled pool may get, one every stallTime,
+     * default is 1.
+     */
+    public void setMaxLoans(int maxLoans) {
+        this.maxLoans = maxLoans;
+    }
+
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /**
+     * Sets the number of frames of the reported stacks, default is 20.
+     */
+    public void setMaxStackDepth(int maxStackDepth) {
+        this.maxStackDepth = maxStackDepth;
+    }
+
+    public String toString() {
+        return "WorkManagerPoolWatchdog[stalls=" + stallCount.get() + ", deadlocks=" + deadlockCount.get() + ", loans=" + loanCount.get() + "]";
+    }
+
+    private static Runnable unwrap(Runnable task) {
+        Runnable answer = task;
+        while (answer instanceof WorkManagerThreadPoolExecutor.WrappedTask) {
+            answer = ((WorkManagerThreadPoolExecutor.WrappedTask)answer).getTask();
+        }
+        return answer;
+    }
+
+    private static List<Thread> getThreads(ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            ThreadFactory factory = ((ThreadPoolExecutor)executor).getThreadFactory();
+            if (factory instanceof WorkManagerThreadFactory) {
+                return ((WorkManagerThreadFactory)factory).getThreads();
+            }
+        }
+        return new ArrayList<Thread>();
+    }
+
+    private static int getWaitingThreadCount(ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            ThreadFactory factory = ((ThreadPoolExecutor)executor).getThreadFactory();
+            if (factory instanceof WorkManagerThreadFactory) {
+                return ((WorkManagerThreadFactory)factory).getWaitingThreadCount();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The progress of a pool between two checks.
+     */
+    private final class PoolState {
+        private final WorkManagerPoolRegistry.RegisteredPool pool;
+        private long lastCompleted;
+        private long lastRejected;
+        private long lastProgress;
+        private int deadlockChecks;
+        private boolean reported;
+        private int loans;
+        private long lastLoan;
+        private int corePoolSize;
+        private int maximumPoolSize;
+        private int lentCorePoolSize;
+
+        private PoolState(WorkManagerPoolRegistry.RegisteredPool pool, long now) {
+            this.pool = pool;
+            this.lastCompleted = pool.getCompletedTaskCount();
+            this.lastRejected = pool.getRejectedCount();
+            this.lastProgress = now;
+        }
+
+        /**
+         * Samples the pool, returns whether tasks wait while it completed none
+         * since the last check. A pool which does not count its completed
+         * tasks, such as a ForkJoinPool, is never taken as stalled.
+         */
+        private boolean sample(long now) {
+            long completed = pool.getCompletedTaskCount();
+            if (completed < 0) {
+                lastProgress = now;
+                return false;
+            }
+            long rejected = pool.getRejectedCount();
+            // the queue of a scheduled pool holds the delayed tasks
+            boolean waiting = rejected > lastRejected || !(pool.getDelegate() instanceof ScheduledExecutorService) && pool.getQueueSize() > 0;
+            boolean progressed = completed != lastCompleted;
+            lastCompleted = completed;
+            lastRejected = rejected;
+            if (!waiting) {
+                giveBack(this);
+            }
+            if (progressed || !waiting) {
+                lastProgress = now;
+                deadlockChecks = 0;
+                if (reported) {
+                    reported = false;
+                    LOG.info("Pool {} makes progress again", pool.getId());
+                }
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The threads of the pools and the pools they wait on.
+     */
+    private static final class PoolGraph {
+        private final List<WorkManagerPoolRegistry.RegisteredPool> pools;
+        private final Map<WorkManagerPoolRegistry.RegisteredPool, List<ThreadInfo>> threads = new HashMap<WorkManagerPoolRegistry.RegisteredPool, List<ThreadInfo>>();
+        private final Map<ThreadInfo, WorkManagerPoolRegistry.RegisteredPool> waitsOn = new HashMap<ThreadInfo, WorkManagerPoolRegistry.RegisteredPool>();
+        private final Set<Long> deadlocked = new HashSet<Long>();
+
+        private PoolGraph(List<WorkManagerPoolRegistry.RegisteredPool> pools, int maxStackDepth) {
+            this.pools = pools;
+            ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+            // the queued tasks by identity, which is what a waiting thread reports
+            Map<Integer, Object[]> queued = new HashMap<Integer, Object[]>();
+            for (WorkManagerPoolRegistry.RegisteredPool pool : pools) {
+                ExecutorService delegate = pool.getDelegate();
+                if (delegate instanceof ThreadPoolExecutor) {
+                    for (Object task : ((ThreadPoolExecutor)delegate).getQueue().toArray()) {
+                        Runnable unwrapped = unwrap((Runnable)task);
+                        queued.put(System.identityHashCode(unwrapped), new Object[] {unwrapped.getClass().getName(), pool});
+                    }
+                }
+                List<Thread> poolThreads = getThreads(delegate);
+                long[] ids = new long[poolThreads.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = poolThreads.get(i).getId();
+                }
+                List<ThreadInfo> infos = new ArrayList<ThreadInfo>();
+                for (ThreadInfo info : ids.length > 0 ? mx.getThreadInfo(ids, maxStackDepth) : new ThreadInfo[0]) {
+                    if (info != null) {
+                        infos.add(info);
+                    }
+                }
+                threads.put(pool, infos);
+            }
+            for (List<ThreadInfo> infos : threads.values()) {
+                for (ThreadInfo info : infos) {
+                    LockInfo lock = info.getLockInfo();
+                    Object[] task = lock != null ? queued.get(lock.getIdentityHashCode()) : null;
+                    if (task != null && task[0].equals(lock.getClassName())) {
+                        waitsOn.put(info, (WorkManagerPoolRegistry.RegisteredPool)task[1]);
+                    }
+                }
+            }
+            long[] ids = mx.findDeadlockedThreads();
+            if (ids != null) {
+                for (long id : ids) {
+                    deadlocked.add(id);
+                }
+            }
+        }
+
+        /**
+         * Whether all the threads of the pool wait on tasks queued in the pool
+         * itself or in pools which are deadlocked as well, or on deadlocked
+         * monitors.
+         */
+        private boolean isDeadlocked(WorkManagerPoolRegistry.RegisteredPool pool) {
+            return isDeadlocked(pool, new HashSet<WorkManagerPoolRegistry.RegisteredPool>());
+        }
+
+        private boolean isDeadlocked(WorkManagerPoolRegistry.RegisteredPool pool, Set<WorkManagerPoolRegistry.RegisteredPool> visited) {
+            if (!visited.add(pool)) {
+                return true;
+            }
+            List<ThreadInfo> infos = threads.get(pool);
+            if (infos == null || infos.isEmpty()) {
+                return false;
+            }
+            for (ThreadInfo info : infos) {
+                WorkManagerPoolRegistry.RegisteredPool target = waitsOn.get(info);
+                if (!deadlocked.contains(info.getThreadId()) && (target == null || !isDeadlocked(target, visited))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Map<WorkManagerPoolRegistry.RegisteredPool, Integer> getEdges(WorkManagerPoolRegistry.RegisteredPool pool) {
+            Map<WorkManagerPoolRegistry.RegisteredPool, Integer> answer = new LinkedHashMap<WorkManagerPoolRegistry.RegisteredPool, Integer>();
+            for (ThreadInfo info : threads.get(pool)) {
+                WorkManagerPoolRegistry.RegisteredPool target = waitsOn.get(info);
+                if (target != null) {
+                    Integer count = answer.get(target);
+                    answer.put(target, count == null ? 1 : count + 1);
+                }
+            }
+            return answer;
+        }
+
+        private String report(WorkManagerPoolRegistry.RegisteredPool pool, String reason) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Pool ").append(pool.snapshot()).append(" is ").append(reason);
+            int waiting = getWaitingThreadCount(pool.getDelegate());
+            if (waiting > 0) {
+                sb.append("\n  ").append(waiting).append(" threads wait for a WorkManager thread");
+            }
+            for (Map.Entry<WorkManagerPoolRegistry.RegisteredPool, Integer> edge : getEdges(pool).entrySet()) {
+                sb.append("\n  ").append(edge.getValue()).append(" threads wait on tasks queued in ").append(edge.getKey().getId());
+            }
+            for (ThreadInfo info : threads.get(pool)) {
+                appendThread(sb, info);
+            }
+            sb.append("\n").append(describe());
+            return sb.toString();
+        }
+
+        private String describe() {
+            StringBuilder sb = new StringBuilder("Pool graph:");
+            for (WorkManagerPoolRegistry.RegisteredPool pool : pools) {
+                List<ThreadInfo> infos = threads.get(pool);
+                int blocked = 0;
+                for (ThreadInfo info : infos) {
+                    if (info.getThreadState() != Thread.State.RUNNABLE) {
+                        blocked++;
+                    }
+                }
+                sb.append("\n  ").append(pool.getId()).append(" [threads=").append(infos.size()).append(", waiting=").append(blocked)
+                    .append(", queued=").append(pool.getQueueSize()).append("]");
+                for (Map.Entry<WorkManagerPoolRegistry.RegisteredPool, Integer> edge : getEdges(pool).entrySet()) {
+                    sb.append("\n    -> ").append(edge.getKey().getId()).append(" (").append(edge.getValue()).append(" threads)");
+                }
+            }
+            return sb.toString();
+        }
+
+        private static void appendThread(StringBuilder sb, ThreadInfo info) {
+            sb.append("\n\"").append(info.getThreadName()).append("\" ").append(info.getThreadState());
+            if (info.getLockName() != null) {
+                sb.append(" on ").append(info.getLockName());
+            }
+            if (info.getLockOwnerName() != null) {
+                sb.append(" owned by \"").append(info.getLockOwnerName()).append("\"");
+            }
+            for (StackTraceElement element : info.getStackTrace()) {
+                sb.append("\n\tat ").append(element);
+            }
+        }
+    }
+
+    /**
+     * Checks the pools every interval until released.
+     */
+    private final class Checker implements Work, Runnable {
+        private volatile boolean released;
+
+        public void run() {
+            LOG.debug("Started checking every {} ms", interval);
+            while (!released) {
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    if (released) {
+                        break;
+                    }
+                }
+                try {
+                    check();
+                } catch (RuntimeException e) {
+                    LOG.warn("Cannot check the pools of " + WorkManagerPoolWatchdog.this, e);
+                }
+            }
+            LOG.debug("Stopped checking");
+        }
+
+        public void release() {
+            released = true;
+        }
+
+        public boolean isDaemon() {
+            return true;
+        }
+    }
+}
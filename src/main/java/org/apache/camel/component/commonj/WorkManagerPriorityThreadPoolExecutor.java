@@ -0,0 +1,284 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.util.concurrent.Rejectable;
+
+/**
+ * A thread pool which runs the queued tasks by priority instead of in
+ * arrival order.
+ * <p/>
+ * Waiting tasks age: every agingInterval a task waits counts as one priority
+ * level, so a task is ordered as if it was queued priority times
+ * agingInterval earlier. As this order does not change while tasks wait, it
+ * fits a plain {@link PriorityBlockingQueue}, and a low priority task is
+ * overtaken by newer tasks for at most the difference in priority times
+ * agingInterval.
+ * <p/>
+ * As the queue is unbounded the pool runs on its core threads, and
+ * maxQueueSize is checked when a task is submitted.
+ */
+public class WorkManagerPriorityThreadPoolExecutor extends WorkManagerCountingThreadPoolExecutor {
+    private static final int MAX_PRIORITY = 1000000;
+
+    private final String name;
+    private final WorkManagerPriorityExtractor priorityExtractor;
+    private final long agingInterval;
+    private final int maxQueueSize;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentHashMap<Integer, PriorityStatistics> statistics = new ConcurrentHashMap<Integer, PriorityStatistics>();
+    private volatile WorkManagerContextPropagator[] contextPropagators;
+
+    /**
+     * @param agingInterval the time a task waits to gain one priority level
+     * @param maxQueueSize the maximum number of queued tasks, or <tt>-1</tt>
+     *            for unbounded
+     */
+    public WorkManagerPriorityThreadPoolExecutor(String name, int poolSize, long keepAliveTime, TimeUnit unit, WorkManagerPriorityExtractor priorityExtractor,
+                                                 long agingInterval, TimeUnit agingUnit, int maxQueueSize) {
+        super(poolSize, poolSize, keepAliveTime, unit, new PriorityBlockingQueue<Runnable>());
+        if (priorityExtractor == null) {
+            throw new IllegalArgumentException("PriorityExtractor must be specified");
+        }
+        this.name = name;
+        this.priorityExtractor = priorityExtractor;
+        this.agingInterval = Math.max(1, agingUnit.toNanos(agingInterval));
+        this.maxQueueSize = maxQueueSize;
+        allowCoreThreadTimeOut(keepAliveTime > 0);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (command instanceof PriorityTask) {
+            super.execute(command);
+            return;
+        }
+        int priority = Math.max(-MAX_PRIORITY, Math.min(MAX_PRIORITY, priorityExtractor.getPriority(command)));
+        PriorityTask task = new PriorityTask(command, priority, getStatistics(priority));
+        if (maxQueueSize > 0 && getQueue().size() >= maxQueueSize) {
+            reject(task);
+            return;
+        }
+        super.execute(task);
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        if (runnable instanceof PriorityTask) {
+            ((PriorityTask)runnable).dequeued();
+        }
+        super.beforeExecute(thread, runnable);
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        for (Runnable queued : getQueue()) {
+            if (queued instanceof PriorityTask && ((PriorityTask)queued).task == task && super.remove(queued)) {
+                return true;
+            }
+        }
+        return super.remove(task);
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> answer = new ArrayList<Runnable>();
+        for (Runnable runnable : super.shutdownNow()) {
+            answer.add(WorkManagerThreadPoolExecutor.unwrap(runnable));
+        }
+        return answer;
+    }
+
+    private PriorityStatistics getStatistics(int priority) {
+        PriorityStatistics answer = statistics.get(priority);
+        if (answer == null) {
+            answer = new PriorityStatistics(priority);
+            PriorityStatistics existing = statistics.putIfAbsent(priority, answer);
+            if (existing != null) {
+                answer = existing;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Gets the statistics of every priority a task was submitted with, by
+     * priority.
+     */
+    public Map<Integer, PriorityStatistics> getStatistics() {
+        return new TreeMap<Integer, PriorityStatistics>(statistics);
+    }
+
+    /**
+     * Number of queued tasks with the given priority.
+     */
+    public int getQueueSize(int priority) {
+        int answer = 0;
+        for (Runnable queued : getQueue()) {
+            if (queued instanceof PriorityTask && ((PriorityTask)queued).statistics.priority == priority) {
+                answer++;
+            }
+        }
+        return answer;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public WorkManagerPriorityExtractor getPriorityExtractor() {
+        return priorityExtractor;
+    }
+
+    /**
+     * The time in nanoseconds a task waits to gain one priority level.
+     */
+    public long getAgingInterval() {
+        return agingInterval;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * Sets the propagators of the context of the submitting threads to the
+     * tasks.
+     */
+    public void setContextPropagators(WorkManagerContextPropagator[] contextPropagators) {
+        this.contextPropagators = contextPropagators;
+    }
+
+    public String toString() {
+        return "WorkManagerPriorityThreadPoolExecutor[" + name + ", poolSize=" + getPoolSize() + ", queued=" + getQueue().size() + ", priorities="
+               + getStatistics().values() + "]";
+    }
+
+    /**
+     * The queue depth and wait time of the tasks with a priority.
+     */
+    public final class PriorityStatistics {
+        private final int priority;
+        private final AtomicLong started = new AtomicLong();
+        private final AtomicLong waitTime = new AtomicLong();
+        private final AtomicLong maxWaitTime = new AtomicLong();
+
+        private PriorityStatistics(int priority) {
+            this.priority = priority;
+        }
+
+        private void started(long wait) {
+            started.incrementAndGet();
+            waitTime.addAndGet(wait);
+            long max;
+            do {
+                max = maxWaitTime.get();
+            } while (wait > max && !maxWaitTime.compareAndSet(max, wait));
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public int getQueueSize() {
+            return WorkManagerPriorityThreadPoolExecutor.this.getQueueSize(priority);
+        }
+
+        public long getStartedCount() {
+            return started.get();
+        }
+
+        /**
+         * The mean time in microseconds the started tasks waited.
+         */
+        public long getAverageWaitTime() {
+            long count = started.get();
+            return count > 0 ? TimeUnit.NANOSECONDS.toMicros(waitTime.get() / count) : 0;
+        }
+
+        /**
+         * The longest time in microseconds a started task waited.
+         */
+        public long getMaxWaitTime() {
+            return TimeUnit.NANOSECONDS.toMicros(maxWaitTime.get());
+        }
+
+        public String toString() {
+            return "priority " + priority + " [started=" + started.get() + ", averageWaitTime=" + getAverageWaitTime() + "us]";
+        }
+    }
+
+    /**
+     * A queued task, ordered by its aged priority and then in arrival order.
+     */
+    private final class PriorityTask implements WorkManagerThreadPoolExecutor.WrappedTask, Rejectable, Comparable<PriorityTask> {
+        private final Runnable task;
+        private final PriorityStatistics statistics;
+        private final long queued = System.nanoTime();
+        private final long order;
+        private final long seq = sequence.getAndIncrement();
+        private final WorkManagerContextSnapshot snapshot = WorkManagerContextSnapshot.capture(contextPropagators);
+
+        private PriorityTask(Runnable task, int priority, PriorityStatistics statistics) {
+            this.task = task;
+            this.statistics = statistics;
+            this.order = queued - priority * agingInterval;
+        }
+
+        void dequeued() {
+            statistics.started(System.nanoTime() - queued);
+        }
+
+        public Runnable getTask() {
+            return task;
+        }
+
+        public void run() {
+            WorkManagerContextSnapshot.run(snapshot, task);
+        }
+
+        public void reject() {
+            if (task instanceof Rejectable) {
+                ((Rejectable)task).reject();
+            }
+        }
+
+        public int compareTo(PriorityTask other) {
+            long diff = order - other.order;
+            if (diff == 0) {
+                diff = seq - other.seq;
+            }
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+
+        public String toString() {
+            return task.toString();
+        }
+    }
+}
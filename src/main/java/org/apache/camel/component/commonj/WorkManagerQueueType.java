@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The kind of task queue of the thread pools.
+ */
+public enum WorkManagerQueueType {
+
+    /**
+     * A {@link LinkedBlockingQueue}, the default.
+     */
+    LINKED,
+
+    /**
+     * An {@link ArrayBlockingQueue}, which does not allocate a node per task.
+     */
+    ARRAY,
+
+    /**
+     * A lock free {@link MpmcArrayBlockingQueue}, so producers and consumers do
+     * not contend on a lock and no node is allocated per task.
+     */
+    MPMC;
+
+    /**
+     * Creates a task queue. The array based queues are bounded, so an
+     * unbounded queue is always a {@link LinkedBlockingQueue}.
+     *
+     * @param maxQueueSize the maximum number of tasks in the queue, use
+     *            <tt>0</tt> or <tt>-1</tt> for unbounded
+     */
+    public BlockingQueue<Runnable> createQueue(int maxQueueSize) {
+        if (maxQueueSize <= 0 || maxQueueSize == Integer.MAX_VALUE) {
+            return new LinkedBlockingQueue<Runnable>();
+        }
+        switch (this) {
+        case ARRAY:
+            return new ArrayBlockingQueue<Runnable>(maxQueueSize);
+        case MPMC:
+            return new MpmcArrayBlockingQueue<Runnable>(maxQueueSize);
+        default:
+            return new LinkedBlockingQueue<Runnable>(maxQueueSize);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+
+/**
+ * Base class of the rejection policies of the WorkManager thread pools, which
+ * count their decisions and are registered in JMX when a CamelContext is set.
+ * <p/>
+ * A task is rejected without running it in the calling thread: a
+ * {@link org.apache.camel.util.concurrent.Rejectable} task, such as the
+ * exchange of a threads processor, is told it was rejected, any other task
+ * gets a {@link RejectedExecutionException}.
+ */
+public abstract class WorkManagerRejectionPolicy implements RejectedExecutionHandler, CamelContextAware {
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private String name;
+    private CamelContext camelContext;
+
+    /**
+     * Rejects the task.
+     */
+    protected void reject(Runnable runnable, ThreadPoolExecutor executor) {
+        rejectedCount.incrementAndGet();
+        Runnable task = WorkManagerThreadPoolExecutor.unwrap(runnable);
+        if (!WorkFutureTask.reject(task, null)) {
+            throw new RejectedExecutionException("Task " + task + " rejected from " + executor + " by " + this);
+        }
+    }
+
+    /**
+     * Counts a task which was rejected after it was accepted by the policy.
+     */
+    protected void incrementRejected() {
+        rejectedCount.incrementAndGet();
+    }
+
+    @ManagedAttribute(description = "Number of rejected tasks")
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @ManagedOperation(description = "Reset the counters")
+    public void reset() {
+        rejectedCount.set(0);
+    }
+
+    @ManagedAttribute(description = "Name")
+    public String getName() {
+        return name != null ? name : getClass().getSimpleName();
+    }
+
+    /**
+     * Sets the name the policy is registered in JMX with, default is its
+     * class name.
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public CamelContext getCamelContext() {
+        return camelContext;
+    }
+
+    public void setCamelContext(CamelContext camelContext) {
+        this.camelContext = camelContext;
+        WorkManagerManagementHelper.manage(camelContext, this, getName());
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+/**
+ * The kind of scheduled executor {@link WorkManagerThreadPoolFactory} creates
+ * for a thread pool profile.
+ */
+public enum WorkManagerScheduledPoolType {
+
+    /**
+     * A JDK scheduled thread pool where every pool thread is backed by a long
+     * running WorkManager daemon work.
+     */
+    THREAD,
+
+    /**
+     * A hashed timing wheel driven by a single WorkManager daemon work, the
+     * expired tasks are scheduled as their own WorkManager work.
+     */
+    TIMING_WHEEL,
+
+    /**
+     * The delays are kept by a commonj TimerManager, the expired tasks are
+     * scheduled as their own WorkManager work.
+     */
+    TIMER_MANAGER
+}
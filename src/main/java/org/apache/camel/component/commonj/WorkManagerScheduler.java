@@ -0,0 +1,334 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkListener;
+import commonj.work.WorkManager;
+
+/**
+ * Scheduler which runs tasks on a fixed number of long running WorkManager
+ * daemon works.
+ * <p/>
+ * Every worker has its own deque, tasks submitted from a worker go to its own
+ * deque and other tasks are spread round robin. Idle workers steal from the
+ * tail of the other deques before parking. Camel thread pools are layered on
+ * top as {@link WorkManagerVirtualExecutorService}s, so the number of
+ * WorkManager threads in use does not grow with the number of pools.
+ * <p/>
+ * A task holds its worker for as long as it runs. Tasks which block for a
+ * long time, such as the consumer loops of seda endpoints, pin the workers
+ * and starve every pool sharing the scheduler, so they should run on pools
+ * of another type. When the WorkManager releases all the workers the
+ * scheduler stops running, the tasks left in the deques are rejected, and
+ * so are new tasks until it is started again.
+ */
+public class WorkManagerScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerScheduler.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final ThreadLocal<Worker> CURRENT = new ThreadLocal<Worker>();
+
+    private final WorkManager workmanager;
+    private final Worker[] workers;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger idle = new AtomicInteger();
+    private final AtomicInteger alive = new AtomicInteger();
+    private final AtomicLong steals = new AtomicLong();
+    private volatile boolean running;
+    private boolean stopped;
+
+    public WorkManagerScheduler(WorkManager workmanager, int parallelism) {
+        if (workmanager == null) {
+            throw new IllegalArgumentException("WorkManager must be specified");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be >= 1, was " + parallelism);
+        }
+        this.workmanager = workmanager;
+        this.workers = new Worker[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            workers[i] = new Worker(i);
+        }
+    }
+
+    /**
+     * Schedules the daemon works on the WorkManager.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        if (stopped) {
+            throw new IllegalStateException("Cannot restart a stopped " + this);
+        }
+        running = true;
+        for (Worker worker : workers) {
+            worker.released = false;
+            alive.incrementAndGet();
+            try {
+                workmanager.schedule(worker, worker);
+            } catch (RuntimeException e) {
+                workerStopped();
+                throw e;
+            }
+        }
+        LOG.debug("Started {} with {} workers", this, workers.length);
+    }
+
+    /**
+     * Releases the daemon works, tasks which have not been started yet are
+     * rejected.
+     */
+    public synchronized void stop() {
+        running = false;
+        stopped = true;
+        for (Worker worker : workers) {
+            worker.release();
+        }
+        rejectQueued();
+        LOG.debug("Stopped {}", this);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Submits the task to the deque of the current worker, or to the next
+     * worker when not called from one of the workers.
+     */
+    public void submit(Runnable task) {
+        if (!running) {
+            throw new RejectedExecutionException("Task " + task + " rejected from " + this);
+        }
+        Worker worker = CURRENT.get();
+        if (worker == null || worker.scheduler() != this) {
+            worker = workers[(next.getAndIncrement() & Integer.MAX_VALUE) % workers.length];
+        }
+        worker.deque.offerLast(task);
+        // the last worker may have stopped while we were queueing
+        if (!running && worker.deque.removeLastOccurrence(task)) {
+            throw new RejectedExecutionException("Task " + task + " rejected from " + this);
+        }
+        signal();
+    }
+
+    /**
+     * Called when a worker no longer runs tasks, the last one to stop while
+     * the scheduler is running rejects the tasks left in the deques.
+     */
+    private void workerStopped() {
+        if (alive.decrementAndGet() > 0 || !running) {
+            return;
+        }
+        synchronized (this) {
+            if (!running || alive.get() > 0) {
+                return;
+            }
+            running = false;
+        }
+        LOG.warn("The WorkManager released all the workers of {}, new tasks are rejected", this);
+        rejectQueued();
+    }
+
+    /**
+     * Rejects the tasks left in the deques once the scheduler no longer runs.
+     */
+    private void rejectQueued() {
+        for (Worker worker : workers) {
+            Runnable task;
+            while ((task = worker.deque.pollFirst()) != null) {
+                if (!WorkFutureTask.reject(task, null)) {
+                    LOG.warn("Discarded task {} from {}", task, this);
+                }
+            }
+        }
+    }
+
+    private void signal() {
+        if (idle.get() > 0) {
+            for (Worker worker : workers) {
+                if (worker.parked) {
+                    LockSupport.unpark(worker.thread);
+                    return;
+                }
+            }
+        }
+    }
+
+    private Runnable steal(Worker thief) {
+        for (int i = 1; i < workers.length; i++) {
+            Worker victim = workers[(thief.index + i) % workers.length];
+            Runnable task = victim.deque.pollLast();
+            if (task != null) {
+                steals.incrementAndGet();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasWork() {
+        for (Worker worker : workers) {
+            if (!worker.deque.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getParallelism() {
+        return workers.length;
+    }
+
+    /**
+     * Number of workers scheduled on the WorkManager which have not stopped.
+     */
+    public int getAliveWorkers() {
+        return alive.get();
+    }
+
+    public int getIdleWorkers() {
+        return idle.get();
+    }
+
+    public long getStealCount() {
+        return steals.get();
+    }
+
+    /**
+     * Number of tasks waiting in the deques of the workers.
+     */
+    public int getQueueSize() {
+        int answer = 0;
+        for (Worker worker : workers) {
+            answer += worker.deque.size();
+        }
+        return answer;
+    }
+
+    public String toString() {
+        return "WorkManagerScheduler[parallelism=" + workers.length + ", idle=" + idle.get() + ", running=" + running + "]";
+    }
+
+    /**
+     * A long running WorkManager daemon work running tasks from its own
+     * deque or stolen from the other workers.
+     */
+    private final class Worker implements Work, WorkListener {
+        private final int index;
+        private final BlockingDeque<Runnable> deque = new LinkedBlockingDeque<Runnable>();
+        private volatile Thread thread;
+        private volatile boolean parked;
+        private volatile boolean released;
+
+        private Worker(int index) {
+            this.index = index;
+        }
+
+        WorkManagerScheduler scheduler() {
+            return WorkManagerScheduler.this;
+        }
+
+        public void run() {
+            thread = Thread.currentThread();
+            CURRENT.set(this);
+            LOG.trace("Worker {} started", index);
+            try {
+                while (running && !released) {
+                    Runnable task = deque.pollFirst();
+                    if (task == null) {
+                        task = steal(this);
+                    }
+                    if (task != null) {
+                        runTask(task);
+                        continue;
+                    }
+                    parked = true;
+                    idle.incrementAndGet();
+                    try {
+                        if (!hasWork() && running && !released) {
+                            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                        }
+                    } finally {
+                        parked = false;
+                        idle.decrementAndGet();
+                    }
+                    // the WorkManager may interrupt us when it wants its thread back
+                    if (Thread.interrupted()) {
+                        LOG.debug("Worker {} interrupted", index);
+                    }
+                }
+            } finally {
+                CURRENT.remove();
+                thread = null;
+                LOG.trace("Worker {} stopped", index);
+                workerStopped();
+            }
+        }
+
+        private void runTask(Runnable task) {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                LOG.warn("Error running task " + task + " in " + WorkManagerScheduler.this, e);
+            }
+        }
+
+        public void release() {
+            released = true;
+            Thread t = thread;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+
+        public boolean isDaemon() {
+            return true;
+        }
+
+        public void workAccepted(WorkEvent event) {
+        }
+
+        public void workRejected(WorkEvent event) {
+            LOG.warn("WorkManager rejected worker " + index + " of " + WorkManagerScheduler.this, event.getException());
+            workerStopped();
+        }
+
+        public void workStarted(WorkEvent event) {
+        }
+
+        public void workCompleted(WorkEvent event) {
+        }
+
+        public String toString() {
+            return "WorkManagerScheduler.Worker[" + index + "]";
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.work.Work;
+import commonj.work.WorkManager;
+
+/**
+ * A reservoir of WorkManager daemon works which park while idle, so starting
+ * a pool thread hands its {@link WorkItem} over to an idle work instead of
+ * scheduling a new one. When the pool thread exits, its work returns to the
+ * reservoir and waits <tt>keepAliveTime</tt> milliseconds for the next one.
+ * <p/>
+ * The reservoir keeps at least <tt>prestart</tt> idle works, which are
+ * scheduled when it starts so the first pool threads do not wait for the
+ * WorkManager. The idle works are used most recently returned first, so the
+ * works above that minimum are the ones which time out.
+ */
+public class WorkManagerSlotReservoir {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerSlotReservoir.class);
+    private static final int IDLE = 0;
+    private static final int BUSY = 1;
+    private static final int RETIRED = 2;
+
+    private final ConcurrentLinkedDeque<Carrier> idle = new ConcurrentLinkedDeque<Carrier>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger carrierCount = new AtomicInteger();
+    private final AtomicLong handOffCount = new AtomicLong();
+    private final AtomicLong scheduledCount = new AtomicLong();
+    private volatile WorkManager workmanager;
+    private volatile int prestart;
+    private volatile long keepAliveTime = 60000;
+    private volatile boolean started;
+    private volatile boolean shutdown;
+
+    public WorkManagerSlotReservoir() {
+    }
+
+    public WorkManagerSlotReservoir(WorkManager workmanager, int prestart) {
+        this.workmanager = workmanager;
+        this.prestart = prestart;
+    }
+
+    /**
+     * Schedules the prestarted works, the first time it is called.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        if (workmanager == null) {
+            throw new IllegalArgumentException("WorkManager must be specified");
+        }
+        started = true;
+        shutdown = false;
+        for (int i = 0; i < prestart; i++) {
+            schedule(new Carrier(null));
+        }
+        LOG.debug("Started {}", this);
+    }
+
+    /**
+     * Runs the work on an idle work of the reservoir, or schedules a new work
+     * for it when there is none.
+     *
+     * @throws RejectedExecutionException if the reservoir is shut down
+     */
+    public void execute(WorkItem work) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Work " + work + " rejected from " + this);
+        }
+        Carrier carrier;
+        while ((carrier = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            if (carrier.assign(work)) {
+                handOffCount.incrementAndGet();
+                return;
+            }
+        }
+        schedule(new Carrier(work));
+    }
+
+    private void schedule(Carrier carrier) {
+        carrierCount.incrementAndGet();
+        try {
+            workmanager.schedule(carrier);
+            scheduledCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            carrierCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the idle works, the busy works stop once their pool thread exits.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        started = false;
+        Carrier carrier;
+        while ((carrier = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            carrier.retire();
+        }
+    }
+
+    /**
+     * Number of works of the reservoir, idle or running a pool thread.
+     */
+    public int getCarrierCount() {
+        return carrierCount.get();
+    }
+
+    /**
+     * Number of idle works.
+     */
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * Number of pool threads handed over to an idle work.
+     */
+    public long getHandOffCount() {
+        return handOffCount.get();
+    }
+
+    /**
+     * Number of works scheduled on the WorkManager.
+     */
+    public long getScheduledCount() {
+        return scheduledCount.get();
+    }
+
+    public WorkManager getWorkmanager() {
+        return workmanager;
+    }
+
+    public void setWorkmanager(WorkManager workmanager) {
+        this.workmanager = workmanager;
+    }
+
+    public int getPrestart() {
+        return prestart;
+    }
+
+    /**
+     * Sets the number of works scheduled when the reservoir starts, which is
+     * also the number of idle works kept when they time out. Default is 0.
+     */
+    public void setPrestart(int prestart) {
+        this.prestart = prestart;
+    }
+
+    public long getKeepAliveTime() {
+        return keepAliveTime;
+    }
+
+    /**
+     * Sets the time in milliseconds an idle work waits for a pool thread
+     * before it completes, default is 60000.
+     */
+    public void setKeepAliveTime(long keepAliveTime) {
+        this.keepAliveTime = keepAliveTime;
+    }
+
+    public String toString() {
+        return "WorkManagerSlotReservoir[carriers=" + carrierCount.get() + ", idle=" + idleCount.get() + ", prestart=" + prestart + "]";
+    }
+
+    /**
+     * A daemon work which runs the pool threads handed over to it, one after
+     * the other, and parks in between.
+     */
+    private final class Carrier implements Work {
+        private final AtomicInteger state = new AtomicInteger(BUSY);
+        private volatile WorkItem work;
+        private volatile WorkItem running;
+        private volatile Thread thread;
+        private volatile boolean released;
+
+        private Carrier(WorkItem work) {
+            this.work = work;
+        }
+
+        /**
+         * Hands the work over, which fails when the carrier just retired.
+         */
+        private boolean assign(WorkItem next) {
+            work = next;
+            if (state.compareAndSet(IDLE, BUSY)) {
+                LockSupport.unpark(thread);
+                return true;
+            }
+            work = null;
+            return false;
+        }
+
+        private void retire() {
+            if (state.compareAndSet(IDLE, RETIRED)) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        public void run() {
+            thread = Thread.currentThread();
+            try {
+                for (;;) {
+                    WorkItem next = work;
+                    if (next != null) {
+                        work = null;
+                        running = next;
+                        try {
+                            next.run();
+                        } catch (Throwable e) {
+                            LOG.warn("Pool thread " + next.getName() + " of " + WorkManagerSlotReservoir.this + " failed", e);
+                        } finally {
+                            running = null;
+                        }
+                        // do not keep an interrupt of the pool thread for the next one
+                        Thread.interrupted();
+                    }
+                    if (shutdown || released || !park()) {
+                        return;
+                    }
+                }
+            } finally {
+                carrierCount.decrementAndGet();
+                thread = null;
+            }
+        }
+
+        /**
+         * Waits idle for the next pool thread.
+         *
+         * @return <tt>false</tt> if the carrier retired
+         */
+        private boolean park() {
+            state.set(IDLE);
+            idleCount.incrementAndGet();
+            idle.offerFirst(this);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(keepAliveTime);
+            for (;;) {
+                int current = state.get();
+                if (current == BUSY) {
+                    return true;
+                } else if (current == RETIRED) {
+                    return false;
+                }
+                long nanos = deadline - System.nanoTime();
+                if (shutdown || released) {
+                    if (state.compareAndSet(IDLE, RETIRED)) {
+                        if (idle.remove(this)) {
+                            idleCount.decrementAndGet();
+                        }
+                        return false;
+                    }
+                } else if (nanos <= 0) {
+                    if (reserveRetirement()) {
+                        if (state.compareAndSet(IDLE, RETIRED)) {
+                            if (!idle.remove(this)) {
+                                // taken by execute, which counted it already
+                                idleCount.incrementAndGet();
+                            }
+                            return false;
+                        }
+                        // assigned meanwhile, and counted by execute
+                        idleCount.incrementAndGet();
+                    } else {
+                        // one of the works kept idle, wait another period
+                        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(keepAliveTime);
+                    }
+                } else {
+                    LockSupport.parkNanos(this, nanos);
+                }
+            }
+        }
+
+        /**
+         * Takes this carrier off the idle count, unless that would leave less
+         * than the prestarted number of idle works.
+         */
+        private boolean reserveRetirement() {
+            for (;;) {
+                int count = idleCount.get();
+                if (count <= prestart) {
+                    return false;
+                }
+                if (idleCount.compareAndSet(count, count - 1)) {
+                    return true;
+                }
+            }
+        }
+
+        public boolean isDaemon() {
+            return true;
+        }
+
+        /**
+         * Stops the carrier, the WorkManager releases its daemon works when
+         * it shuts down.
+         */
+        public void release() {
+            released = true;
+            LockSupport.unpark(thread);
+            WorkItem current = running;
+            if (current != null) {
+                current.release();
+            }
+        }
+
+        public String toString() {
+            return "WorkManagerSlotReservoir.Carrier[" + thread + "]";
+        }
+    }
+}
@@ -16,37 +16,197 @@
  */
 package org.apache.camel.component.commonj;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import commonj.work.WorkManager;
 
+/**
+ * Creates the threads of a pool as {@link WorkManagerThreadWrapper}s, which
+ * run as WorkManager work, or on a {@link WorkManagerSlotReservoir}.
+ * <p/>
+ * The threads are named by the thread name pattern, where #counter# is the
+ * number of the thread in this factory and #name# is the name of the
+ * delegate thread factory, which only creates the threads when there is no
+ * WorkManager. The priority is kept on the thread object, the WorkManager
+ * thread running it keeps its own.
+ */
 public class WorkManagerThreadFactory implements ThreadFactory {
+    public static final String DEFAULT_THREAD_NAME_PATTERN = "WorkManager thread ##counter# - #name#";
     private static final Logger LOG = LoggerFactory.getLogger(WorkManagerThreadFactory.class);
-    private boolean daemon;
-    private WorkManager workmanager;
-    private ThreadFactory threadFactory;
+    private final boolean daemon;
+    private final WorkManager workmanager;
+    private final WorkManagerSlotReservoir reservoir;
+    private final ThreadFactory threadFactory;
+    private final String name;
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private volatile String threadNamePattern = DEFAULT_THREAD_NAME_PATTERN;
+    private volatile int priority = Thread.NORM_PRIORITY;
+    private volatile Thread.UncaughtExceptionHandler uncaughtExceptionHandler;
+    private volatile Set<Thread> threads;
     
     public WorkManagerThreadFactory(ThreadFactory threadFactory, WorkManager workmanager, boolean daemon) {
+        this(threadFactory, workmanager, null, daemon);
+    }
+
+    public WorkManagerThreadFactory(ThreadFactory threadFactory, WorkManagerSlotReservoir reservoir, boolean daemon) {
+        this(threadFactory, reservoir.getWorkmanager(), reservoir, daemon);
+    }
+
+    private WorkManagerThreadFactory(ThreadFactory threadFactory, WorkManager workmanager, WorkManagerSlotReservoir reservoir, boolean daemon) {
         this.daemon = daemon;
         this.threadFactory = threadFactory;
         this.workmanager = workmanager;
+        this.reservoir = reservoir;
+        this.name = getName(threadFactory);
+    }
+
+    /**
+     * Gets the name of the thread factory, which is the name between the
+     * brackets when it prints itself as Camel's thread factories do.
+     */
+    private static String getName(ThreadFactory threadFactory) {
+        String answer = String.valueOf(threadFactory);
+        int start = answer.indexOf('[');
+        if (start > 0 && answer.endsWith("]")) {
+            answer = answer.substring(start + 1, answer.length() - 1);
+        }
+        return answer;
     }
 
     public Thread newThread(Runnable runnable) {
         Thread answer;
-        if (workmanager != null) {
-            answer = new WorkManagerThreadWrapper(workmanager, threadFactory.newThread(runnable));
-        } else {
+        if (workmanager == null) {
             answer = threadFactory.newThread(runnable);
+        } else {
+            String threadName = threadNamePattern.replace("#counter#", String.valueOf(threadCounter.incrementAndGet())).replace("#name#", name);
+            if (reservoir != null) {
+                answer = new WorkManagerThreadWrapper(reservoir, runnable, threadName);
+            } else {
+                answer = new WorkManagerThreadWrapper(workmanager, runnable, threadName);
+            }
+            answer.setPriority(priority);
+            if (uncaughtExceptionHandler != null) {
+                answer.setUncaughtExceptionHandler(uncaughtExceptionHandler);
+            }
         }
         answer.setDaemon(daemon);
+        Set<Thread> current = threads;
+        if (current != null) {
+            current.add(answer);
+        }
         LOG.trace("Created thread[{}]", answer);
         return answer;
     }
 
+    /**
+     * Keeps track of the threads created from now on for {@link #getThreads()}
+     * and {@link #getWaitingThreadCount()}, which start tracking them the first
+     * time they are called otherwise.
+     */
+    public synchronized void trackThreads() {
+        if (threads == null) {
+            threads = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Thread, Boolean>()));
+        }
+    }
+
+    public String getThreadNamePattern() {
+        return threadNamePattern;
+    }
+
+    /**
+     * Sets the pattern of the thread names, where #counter# is replaced by the
+     * number of the thread and #name# by the name of the thread factory.
+     */
+    public void setThreadNamePattern(String threadNamePattern) {
+        this.threadNamePattern = threadNamePattern;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public Thread.UncaughtExceptionHandler getUncaughtExceptionHandler() {
+        return uncaughtExceptionHandler;
+    }
+
+    /**
+     * Sets the handler of what the tasks throw, which is the handler of the
+     * thread group when not set.
+     */
+    public void setUncaughtExceptionHandler(Thread.UncaughtExceptionHandler uncaughtExceptionHandler) {
+        this.uncaughtExceptionHandler = uncaughtExceptionHandler;
+    }
+
+    /**
+     * Gets the WorkManager the threads run on, or <tt>null</tt> when they are
+     * plain JDK threads.
+     */
+    public WorkManager getWorkmanager() {
+        return reservoir != null ? reservoir.getWorkmanager() : workmanager;
+    }
+
+    /**
+     * Gets the threads running the tasks of the pool right now, which are the
+     * WorkManager threads running the {@link WorkManagerThreadWrapper}s, or
+     * the live JDK threads.
+     */
+    public List<Thread> getThreads() {
+        List<Thread> answer = new ArrayList<Thread>();
+        Set<Thread> current = getTrackedThreads();
+        synchronized (current) {
+            for (Thread thread : current) {
+                if (thread instanceof WorkManagerThreadWrapper) {
+                    Thread carrier = ((WorkManagerThreadWrapper)thread).getCarrier();
+                    if (carrier != null) {
+                        answer.add(carrier);
+                    }
+                } else if (thread.isAlive()) {
+                    answer.add(thread);
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Gets the number of threads which were started, but still wait for a
+     * WorkManager thread to run on.
+     */
+    public int getWaitingThreadCount() {
+        int answer = 0;
+        Set<Thread> current = getTrackedThreads();
+        synchronized (current) {
+            for (Thread thread : current) {
+                if (thread instanceof WorkManagerThreadWrapper && ((WorkManagerThreadWrapper)thread).isWaitingForWorkManager()) {
+                    answer++;
+                }
+            }
+        }
+        return answer;
+    }
+
+    private Set<Thread> getTrackedThreads() {
+        Set<Thread> current = threads;
+        if (current == null) {
+            trackThreads();
+            current = threads;
+        }
+        return current;
+    }
+
     public String toString() {
         String tfstr = "null";
         if( threadFactory != null){
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.util.concurrent.Rejectable;
+
+/**
+ * A thread pool which records how long its tasks wait in the queue before a
+ * thread picks them up, so it can be resized by a {@link WorkManagerPoolSizer}
+ * and reject tasks early with a {@link QueueDelayRejectionPolicy}.
+ * <p/>
+ * Its tasks are recorded by the {@link WorkManagerEventRecorder} with the
+ * route id of the submitting thread, while the works running its threads are
+ * recorded without a route id.
+ */
+public class WorkManagerThreadPoolExecutor extends WorkManagerCountingThreadPoolExecutor {
+    private static final WorkManagerEventRecorder EVENTS = WorkManagerEventRecorder.getInstance();
+    private final String name;
+    private final AtomicLong waitTime = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private volatile WorkManagerContextPropagator[] contextPropagators;
+
+    public WorkManagerThreadPoolExecutor(String name, int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+        this.name = name;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Runnable task = wrap(command);
+        if (task instanceof QueuedTask && ((QueuedTask)task).recorded) {
+            EVENTS.scheduled(name, ((QueuedTask)task).routeId);
+        }
+        RejectedExecutionHandler handler = getRejectedExecutionHandler();
+        if (handler instanceof QueueDelayRejectionPolicy && ((QueueDelayRejectionPolicy)handler).isOverdue(this)) {
+            incrementRejected();
+            rejected(task);
+            ((QueueDelayRejectionPolicy)handler).rejectEarly(task, this);
+            return;
+        }
+        super.execute(task);
+    }
+
+    /**
+     * Wraps a task to record the time it is queued, and the context of the
+     * submitting thread.
+     */
+    protected Runnable wrap(Runnable command) {
+        return command instanceof QueuedTask ? command : new QueuedTask(command, WorkManagerContextSnapshot.capture(contextPropagators));
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        if (runnable instanceof QueuedTask) {
+            QueuedTask task = (QueuedTask)runnable;
+            long now = System.nanoTime();
+            waitTime.addAndGet(now - task.queued);
+            waitCount.incrementAndGet();
+            if (task.recorded) {
+                task.started = now;
+                EVENTS.started(name, task.routeId, now - task.queued);
+            }
+        }
+        super.beforeExecute(thread, runnable);
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        super.afterExecute(runnable, throwable);
+        if (runnable instanceof QueuedTask && ((QueuedTask)runnable).started > 0) {
+            EVENTS.completed(name, ((QueuedTask)runnable).routeId, System.nanoTime() - ((QueuedTask)runnable).started);
+        }
+    }
+
+    @Override
+    protected void reject(Runnable task) {
+        rejected(task);
+        super.reject(task);
+    }
+
+    private void rejected(Runnable task) {
+        if (task instanceof QueuedTask && ((QueuedTask)task).recorded) {
+            EVENTS.rejected(name, ((QueuedTask)task).routeId, null);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> answer = new ArrayList<Runnable>();
+        for (Runnable runnable : super.shutdownNow()) {
+            answer.add(unwrap(runnable));
+        }
+        return answer;
+    }
+
+    /**
+     * The time in nanoseconds the oldest queued task has waited so far.
+     */
+    public long getOldestQueueDelay() {
+        Runnable oldest = getQueue().peek();
+        return oldest instanceof QueuedTask ? System.nanoTime() - ((QueuedTask)oldest).queued : 0;
+    }
+
+    /**
+     * Gets the task of the pool wrapping the given task, or the task itself.
+     */
+    static Runnable unwrap(Runnable runnable) {
+        return runnable instanceof WrappedTask ? ((WrappedTask)runnable).getTask() : runnable;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets the propagators of the context of the submitting threads to the
+     * tasks.
+     */
+    public void setContextPropagators(WorkManagerContextPropagator[] contextPropagators) {
+        this.contextPropagators = contextPropagators;
+    }
+
+    /**
+     * The total time in nanoseconds the started tasks have waited in the queue.
+     */
+    public long getWaitTime() {
+        return waitTime.get();
+    }
+
+    /**
+     * The number of started tasks.
+     */
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    public String toString() {
+        return "WorkManagerThreadPoolExecutor[" + name + ", poolSize=" + getPoolSize() + ", corePoolSize=" + getCorePoolSize() + ", maximumPoolSize="
+               + getMaximumPoolSize() + ", queued=" + getQueue().size() + "]";
+    }
+
+    /**
+     * A task wrapped by a pool.
+     */
+    interface WrappedTask extends Runnable {
+        Runnable getTask();
+    }
+
+    private static final class QueuedTask implements WrappedTask, Rejectable {
+        private final Runnable task;
+        private final WorkManagerContextSnapshot snapshot;
+        private final long queued = System.nanoTime();
+        private final boolean recorded = EVENTS.isEnabled();
+        private final String routeId = recorded ? WorkManagerEventRecorder.getRouteId() : null;
+        private long started;
+
+        private QueuedTask(Runnable task, WorkManagerContextSnapshot snapshot) {
+            this.task = task;
+            this.snapshot = snapshot;
+        }
+
+        public Runnable getTask() {
+            return task;
+        }
+
+        public void run() {
+            WorkManagerContextSnapshot.run(snapshot, task);
+        }
+
+        public void reject() {
+            if (task instanceof Rejectable) {
+                ((Rejectable)task).reject();
+            }
+        }
+
+        public String toString() {
+            return task.toString();
+        }
+    }
+}
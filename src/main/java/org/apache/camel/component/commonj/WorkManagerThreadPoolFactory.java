@@ -16,10 +16,12 @@
  */
 package org.apache.camel.component.commonj;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -31,24 +33,123 @@ import java.util.concurrent.TimeUnit;
 import org.apache.camel.spi.ThreadPoolFactory;
 import org.apache.camel.spi.ThreadPoolProfile;
 import org.apache.camel.util.concurrent.RejectableScheduledThreadPoolExecutor;
-import org.apache.camel.util.concurrent.RejectableThreadPoolExecutor;
 import org.apache.camel.util.concurrent.SizedScheduledExecutorService;
 
+import commonj.timers.TimerManager;
 import commonj.work.WorkManager;
 
 public class WorkManagerThreadPoolFactory implements ThreadPoolFactory {
-    private WorkManager workmanager;
+    private volatile WorkManager workmanager;
+    private volatile TimerManager timerManager;
+    private volatile WorkManagerPoolSizer poolSizer;
+    private volatile WorkManagerPlacementPolicy placementPolicy;
+    private volatile WorkManagerSlotReservoir slotReservoir;
+    private volatile WorkManagerPoolRegistry poolRegistry = new WorkManagerPoolRegistry();
+    private volatile WorkManagerPoolWatchdog watchdog;
+    private List<WorkManagerPoolProfile> poolProfiles = new ArrayList<WorkManagerPoolProfile>();
+    private List<WorkManagerBulkhead> bulkheads = new ArrayList<WorkManagerBulkhead>();
+    private List<WorkManagerContextPropagator> contextPropagators = new ArrayList<WorkManagerContextPropagator>();
+    private volatile WorkManagerContextPropagator[] propagators = WorkManagerContextSnapshot.toArray(contextPropagators);
+    private WorkManagerPoolProfile defaultPoolProfile = new WorkManagerPoolProfile();
+    private int schedulerParallelism = Runtime.getRuntime().availableProcessors();
+    private String threadNamePattern = WorkManagerThreadFactory.DEFAULT_THREAD_NAME_PATTERN;
+    private WorkManagerScheduler scheduler;
     
     @Override
     public ExecutorService newCachedThreadPool(ThreadFactory threadFactory) {
-        ThreadFactory wmThreadFactory = new WorkManagerThreadFactory(threadFactory,workmanager,true);
+        return register(withContext(withBulkhead(createCachedThreadPool(threadFactory), null)), threadFactory, null);
+    }
+
+    private ExecutorService createCachedThreadPool(ThreadFactory threadFactory) {
+        WorkManager wm = getWorkmanager(null);
+        if (wm != null && defaultPoolProfile.getPoolType() == WorkManagerPoolType.TASK) {
+            return newTaskExecutorService(wm, threadFactory.toString(), null);
+        } else if (wm != null && defaultPoolProfile.getPoolType() == WorkManagerPoolType.BATCH) {
+            return newBatchingExecutorService(wm, threadFactory.toString(), defaultPoolProfile, Runtime.getRuntime().availableProcessors(), null);
+        } else if (wm != null && defaultPoolProfile.getPoolType() == WorkManagerPoolType.SHARED) {
+            return newVirtualExecutorService(wm, threadFactory.toString(), Integer.MAX_VALUE, -1, null);
+        }
+        ThreadFactory wmThreadFactory = newThreadFactory(threadFactory, wm);
+        if (propagators.length > 0) {
+            // carries the context in the task it queues anyway
+            ThreadPoolExecutor answer = new WorkManagerThreadPoolExecutor(threadFactory.toString(), 0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+                                                                          new SynchronousQueue<Runnable>());
+            answer.setThreadFactory(wmThreadFactory);
+            return answer;
+        }
         return Executors.newCachedThreadPool(wmThreadFactory);
     }
     
     public ExecutorService newThreadPool(int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit timeUnit,
                         int maxQueueSize, RejectedExecutionHandler rejectedExecutionHandler,
                         ThreadFactory threadFactory) throws IllegalArgumentException {
-        ThreadFactory wmThreadFactory = new WorkManagerThreadFactory(threadFactory,workmanager,true);
+        return newThreadPool(corePoolSize, maxPoolSize, keepAliveTime, timeUnit, maxQueueSize, rejectedExecutionHandler, threadFactory,
+                             defaultPoolProfile.getQueueType());
+    }
+
+    public ExecutorService newThreadPool(int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit timeUnit,
+                        int maxQueueSize, RejectedExecutionHandler rejectedExecutionHandler,
+                        ThreadFactory threadFactory, WorkManagerQueueType queueType) throws IllegalArgumentException {
+        if (rejectedExecutionHandler == null) {
+            rejectedExecutionHandler = defaultPoolProfile.getRejectedExecutionHandler();
+        }
+        configure(rejectedExecutionHandler);
+        String name = rejectedExecutionHandler instanceof QueueDelayRejectionPolicy ? String.valueOf(threadFactory) : null;
+        ExecutorService answer = createThreadPool(getWorkmanager(null), name, corePoolSize, maxPoolSize, keepAliveTime, timeUnit, maxQueueSize,
+                                                  rejectedExecutionHandler, threadFactory, queueType);
+        return register(withContext(withBulkhead(answer, null)), threadFactory, null);
+    }
+
+    /**
+     * Hands the tasks of the pool through the first bulkhead matching the
+     * thread pool profile id, if any.
+     */
+    private ExecutorService withBulkhead(ExecutorService executor, String profileId) {
+        WorkManagerBulkhead bulkhead = WorkManagerBulkhead.getBulkhead(bulkheads, profileId, null);
+        return bulkhead != null ? new WorkManagerBulkheadExecutorService(bulkhead, executor) : executor;
+    }
+
+    /**
+     * Propagates the context of the submitting threads to the tasks of the
+     * pool, which must be the outermost executor to capture it on submission.
+     */
+    private ExecutorService withContext(ExecutorService executor) {
+        return WorkManagerContextExecutorService.propagate(executor, propagators);
+    }
+
+    /**
+     * Registers the pool in the pool registry, if any, and starts the
+     * watchdog, if any.
+     */
+    private <T extends ExecutorService> T register(T executor, ThreadFactory threadFactory, String profileId) {
+        WorkManagerPoolRegistry registry = poolRegistry;
+        if (registry != null) {
+            registry.register(executor, String.valueOf(threadFactory), null, null, profileId);
+        }
+        WorkManagerPoolWatchdog current = watchdog;
+        if (current != null) {
+            synchronized (this) {
+                if (current.getPoolRegistry() == null) {
+                    current.setPoolRegistry(registry);
+                }
+                if (current.getWorkmanager() == null) {
+                    current.setWorkmanager(workmanager);
+                }
+            }
+            current.start();
+        }
+        return executor;
+    }
+
+    /**
+     * Creates the thread pool, which records the wait time of its tasks when
+     * a name is given so it can be adaptive or reject on queue delay. It is
+     * always a {@link WorkManagerThreadPoolExecutor} when the name is not null.
+     */
+    private ThreadPoolExecutor createThreadPool(WorkManager wm, String name, int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit timeUnit,
+                                                int maxQueueSize, RejectedExecutionHandler rejectedExecutionHandler,
+                                                ThreadFactory threadFactory, WorkManagerQueueType queueType) {
+        ThreadFactory wmThreadFactory = newThreadFactory(threadFactory, wm);
         // the core pool size must be higher than 0
         if (corePoolSize < 1) {
             throw new IllegalArgumentException("CorePoolSize must be >= 1, was " + corePoolSize);
@@ -71,10 +172,18 @@ public class WorkManagerThreadPoolFactory implements ThreadPoolFactory {
             workQueue = new SynchronousQueue<Runnable>();
         } else {
             // bounded task queue to store tasks on the queue
-            workQueue = new LinkedBlockingQueue<Runnable>(maxQueueSize);
+            workQueue = queueType.createQueue(maxQueueSize);
         }
 
-        ThreadPoolExecutor answer = new RejectableThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, timeUnit, workQueue);
+        ThreadPoolExecutor answer;
+        if (name != null) {
+            answer = new WorkManagerThreadPoolExecutor(name, corePoolSize, maxPoolSize, keepAliveTime, timeUnit, workQueue);
+        } else if (propagators.length > 0) {
+            // carries the context in the task it queues anyway
+            answer = new WorkManagerThreadPoolExecutor(String.valueOf(threadFactory), corePoolSize, maxPoolSize, keepAliveTime, timeUnit, workQueue);
+        } else {
+            answer = new WorkManagerCountingThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, timeUnit, workQueue);
+        }
         answer.setThreadFactory(wmThreadFactory);
         if (rejectedExecutionHandler == null) {
             rejectedExecutionHandler = new ThreadPoolExecutor.CallerRunsPolicy();
@@ -85,25 +194,94 @@ public class WorkManagerThreadPoolFactory implements ThreadPoolFactory {
 
     @Override
     public ExecutorService newThreadPool(ThreadPoolProfile profile, ThreadFactory factory) {
-        return newThreadPool(profile.getPoolSize(), 
-                             profile.getMaxPoolSize(), 
-                             profile.getKeepAliveTime(),
-                             profile.getTimeUnit(),
-                             profile.getMaxQueueSize(), 
-                             profile.getRejectedExecutionHandler(),
-                             factory);
+        WorkManagerPoolProfile poolProfile = getPoolProfile(profile.getId());
+        ExecutorService pool = createExecutorService(profile, poolProfile, factory);
+        ExecutorService answer = withBulkhead(pool, profile.getId());
+        if (poolProfile.isOrdered()) {
+            answer = newKeyedOrderedExecutorService(answer, profile.getId(), poolProfile);
+        }
+        answer = register(withContext(answer), factory, profile.getId());
+        // once registered, so a watchdog sees the threads
+        if (poolProfile.isPrestart() && pool instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor)pool).prestartAllCoreThreads();
+        }
+        return answer;
+    }
+
+    private ExecutorService createExecutorService(ThreadPoolProfile profile, WorkManagerPoolProfile poolProfile, ThreadFactory factory) {
+        RejectedExecutionHandler rejectedExecutionHandler = getRejectedExecutionHandler(profile, poolProfile);
+        WorkManager wm = getWorkmanager(profile.getId());
+        if (wm != null && poolProfile.getPoolType() == WorkManagerPoolType.TASK) {
+            return newTaskExecutorService(wm, profile.getId(), rejectedExecutionHandler);
+        } else if (wm != null && poolProfile.getPoolType() == WorkManagerPoolType.BATCH) {
+            return newBatchingExecutorService(wm, profile.getId(), poolProfile, profile.getMaxPoolSize(), rejectedExecutionHandler);
+        } else if (wm != null && poolProfile.getPoolType() == WorkManagerPoolType.SHARED) {
+            return newVirtualExecutorService(wm, profile.getId(), profile.getMaxPoolSize(), profile.getMaxQueueSize(), rejectedExecutionHandler);
+        } else if (poolProfile.getPoolType() == WorkManagerPoolType.FORK_JOIN) {
+            return newForkJoinPool(wm, profile.getId(), profile.getMaxPoolSize());
+        } else if (poolProfile.getPoolType() == WorkManagerPoolType.PRIORITY) {
+            return newPriorityThreadPool(wm, profile, poolProfile, factory, rejectedExecutionHandler);
+        } else if (poolSizer != null && poolProfile.isAdaptive()) {
+            return newAdaptiveThreadPool(wm, profile, poolProfile, factory);
+        }
+        String name = rejectedExecutionHandler instanceof QueueDelayRejectionPolicy ? profile.getId() : null;
+        return createThreadPool(wm, name,
+                                profile.getPoolSize(), 
+                                profile.getMaxPoolSize(), 
+                                profile.getKeepAliveTime(),
+                                profile.getTimeUnit(),
+                                profile.getMaxQueueSize(), 
+                                rejectedExecutionHandler,
+                                factory,
+                                poolProfile.getQueueType());
+    }
+
+    /**
+     * Gets the rejection policy of the pool profile, falling back to the one
+     * of the thread pool profile.
+     */
+    private RejectedExecutionHandler getRejectedExecutionHandler(ThreadPoolProfile profile, WorkManagerPoolProfile poolProfile) {
+        RejectedExecutionHandler answer = poolProfile.getRejectedExecutionHandler();
+        if (answer == null) {
+            answer = profile.getRejectedExecutionHandler();
+        }
+        configure(answer);
+        return answer;
+    }
+
+    /**
+     * Sets the WorkManager on a spillover policy which has none.
+     */
+    private void configure(RejectedExecutionHandler rejectedExecutionHandler) {
+        if (rejectedExecutionHandler instanceof SpilloverRejectionPolicy) {
+            SpilloverRejectionPolicy spillover = (SpilloverRejectionPolicy)rejectedExecutionHandler;
+            if (spillover.getWorkmanager() == null) {
+                spillover.setWorkmanager(workmanager);
+            }
+        }
     }
 
     @Override
     public ScheduledExecutorService newScheduledThreadPool(ThreadPoolProfile profile, ThreadFactory threadFactory) {
-        RejectedExecutionHandler rejectedExecutionHandler = profile.getRejectedExecutionHandler();
-        ThreadFactory wmThreadFactory = new WorkManagerThreadFactory(threadFactory,workmanager,true);
+        return register(createScheduledThreadPool(profile, threadFactory), threadFactory, profile.getId());
+    }
+
+    private ScheduledExecutorService createScheduledThreadPool(ThreadPoolProfile profile, ThreadFactory threadFactory) {
+        WorkManagerPoolProfile poolProfile = getPoolProfile(profile.getId());
+        WorkManager wm = getWorkmanager(profile.getId());
+        if (wm != null && poolProfile.getScheduledPoolType() == WorkManagerScheduledPoolType.TIMING_WHEEL) {
+            return new WorkManagerTimingWheelExecutorService(wm, profile.getId(), poolProfile.getTickDuration(), poolProfile.getWheelSize());
+        } else if (wm != null && timerManager != null && poolProfile.getScheduledPoolType() == WorkManagerScheduledPoolType.TIMER_MANAGER) {
+            return new TimerManagerScheduledExecutorService(timerManager, wm, profile.getId());
+        }
+        RejectedExecutionHandler rejectedExecutionHandler = getRejectedExecutionHandler(profile, poolProfile);
+        ThreadFactory wmThreadFactory = newThreadFactory(threadFactory, wm);
         if (rejectedExecutionHandler == null) {
             rejectedExecutionHandler = new ThreadPoolExecutor.CallerRunsPolicy();
         }
 
         ScheduledThreadPoolExecutor answer = new RejectableScheduledThreadPoolExecutor(profile.getPoolSize(), wmThreadFactory, rejectedExecutionHandler);
-        // TODO: when JDK7 we should setRemoveOnCancelPolicy(true)
+        answer.setRemoveOnCancelPolicy(true);
 
         // need to wrap the thread pool in a sized to guard against the problem that the
         // JDK created thread pool has an unbounded queue (see class javadoc), which mean
@@ -115,6 +293,256 @@ public class WorkManagerThreadPoolFactory implements ThreadPoolFactory {
         }
     }
 
+    /**
+     * Creates the thread factory of the pools backed by the given WorkManager,
+     * which uses the slot reservoir when it is on the same WorkManager.
+     */
+    protected ThreadFactory newThreadFactory(ThreadFactory threadFactory, WorkManager wm) {
+        WorkManagerSlotReservoir reservoir = slotReservoir;
+        if (wm != null && reservoir != null) {
+            synchronized (this) {
+                if (reservoir.getWorkmanager() == null) {
+                    reservoir.setWorkmanager(workmanager);
+                }
+            }
+            if (reservoir.getWorkmanager() == wm) {
+                reservoir.start();
+                WorkManagerThreadFactory answer = new WorkManagerThreadFactory(threadFactory, reservoir, true);
+                answer.setThreadNamePattern(threadNamePattern);
+                return answer;
+            }
+        }
+        WorkManagerThreadFactory answer = new WorkManagerThreadFactory(threadFactory, wm, true);
+        answer.setThreadNamePattern(threadNamePattern);
+        return answer;
+    }
+
+    /**
+     * Creates a thread pool which is resized by the pool sizer, within the
+     * bounds of the pool profile.
+     */
+    protected ExecutorService newAdaptiveThreadPool(WorkManager wm, ThreadPoolProfile profile, WorkManagerPoolProfile poolProfile, ThreadFactory factory) {
+        // the pool sizer needs the wait time, so the pool must have a name even when the profile has no id
+        String name = profile.getId() != null ? profile.getId() : String.valueOf(factory);
+        WorkManagerThreadPoolExecutor answer = (WorkManagerThreadPoolExecutor)createThreadPool(wm, name, profile.getPoolSize(), profile.getMaxPoolSize(),
+                                                                                               profile.getKeepAliveTime(), profile.getTimeUnit(),
+                                                                                               profile.getMaxQueueSize(), getRejectedExecutionHandler(profile, poolProfile),
+                                                                                               factory, poolProfile.getQueueType());
+        int min = poolProfile.getAdaptiveMinPoolSize() > 0 ? poolProfile.getAdaptiveMinPoolSize() : profile.getPoolSize();
+        int max = poolProfile.getAdaptiveMaxPoolSize() > 0 ? poolProfile.getAdaptiveMaxPoolSize() : profile.getMaxPoolSize();
+        synchronized (this) {
+            if (poolSizer.getWorkmanager() == null) {
+                poolSizer.setWorkmanager(workmanager);
+            }
+            if (poolSizer.getPoolRegistry() == null) {
+                poolSizer.setPoolRegistry(poolRegistry);
+            }
+        }
+        poolSizer.register(answer, min, Math.max(min, max));
+        return answer;
+    }
+
+    /**
+     * Creates a thread pool of max pool size threads, which runs the queued
+     * tasks by aged priority.
+     */
+    protected ExecutorService newPriorityThreadPool(WorkManager wm, ThreadPoolProfile profile, WorkManagerPoolProfile poolProfile, ThreadFactory factory,
+                                                    RejectedExecutionHandler rejectedExecutionHandler) {
+        WorkManagerPriorityExtractor priorityExtractor = poolProfile.getPriorityExtractor();
+        if (priorityExtractor == null) {
+            priorityExtractor = new ExchangeHeaderPriorityExtractor(poolProfile.getPriorityHeader(), 0);
+        }
+        WorkManagerPriorityThreadPoolExecutor answer = new WorkManagerPriorityThreadPoolExecutor(profile.getId(), Math.max(1, profile.getMaxPoolSize()),
+                                                                                                 profile.getKeepAliveTime(), profile.getTimeUnit(),
+                                                                                                 priorityExtractor, poolProfile.getAgingInterval(),
+                                                                                                 TimeUnit.MILLISECONDS, profile.getMaxQueueSize());
+        answer.setThreadFactory(newThreadFactory(factory, wm));
+        if (rejectedExecutionHandler == null) {
+            rejectedExecutionHandler = new ThreadPoolExecutor.CallerRunsPolicy();
+        }
+        answer.setRejectedExecutionHandler(rejectedExecutionHandler);
+        return answer;
+    }
+
+    /**
+     * Creates a fork join pool with max pool size workers, which are leased
+     * from the WorkManager, on the slot reservoir when it is on the same
+     * WorkManager, or plain JDK workers when there is none.
+     */
+    protected ExecutorService newForkJoinPool(WorkManager wm, String name, int maxPoolSize) {
+        int parallelism = maxPoolSize > 0 ? maxPoolSize : Runtime.getRuntime().availableProcessors();
+        if (wm == null) {
+            return new ForkJoinPool(parallelism);
+        }
+        WorkManagerSlotReservoir reservoir = slotReservoir;
+        if (reservoir != null && reservoir.getWorkmanager() == wm) {
+            reservoir.start();
+            return new WorkManagerForkJoinWorkerThreadFactory(reservoir, name).newPool(parallelism);
+        }
+        return new WorkManagerForkJoinWorkerThreadFactory(wm, name).newPool(parallelism);
+    }
+
+    /**
+     * Wraps the executor to run the tasks with the same ordering key one after
+     * the other.
+     */
+    protected ExecutorService newKeyedOrderedExecutorService(ExecutorService executor, String name, WorkManagerPoolProfile poolProfile) {
+        WorkManagerKeyExtractor keyExtractor = poolProfile.getKeyExtractor();
+        if (keyExtractor == null) {
+            keyExtractor = new ExchangeHeaderKeyExtractor(poolProfile.getOrderingKeyHeader());
+        }
+        return new KeyedOrderedExecutorService(executor, keyExtractor, name);
+    }
+
+    /**
+     * Creates an executor which schedules every task as its own WorkManager work.
+     */
+    protected ExecutorService newTaskExecutorService(WorkManager wm, String name, RejectedExecutionHandler rejectedExecutionHandler) {
+        WorkManagerExecutorService answer = new WorkManagerExecutorService(wm, name);
+        answer.setCallerRunsWhenRejected(rejectedExecutionHandler == null || rejectedExecutionHandler instanceof ThreadPoolExecutor.CallerRunsPolicy);
+        return answer;
+    }
+
+    /**
+     * Creates an executor which runs the tasks in batches, where every batch is
+     * a single WorkManager work. The max pool size is the maximum number of
+     * batches running at the same time.
+     */
+    protected ExecutorService newBatchingExecutorService(WorkManager wm, String name, WorkManagerPoolProfile poolProfile, int maxPoolSize,
+                                                         RejectedExecutionHandler rejectedExecutionHandler) {
+        WorkManagerBatchingExecutorService answer = new WorkManagerBatchingExecutorService(wm, name, poolProfile.getBatchSize(),
+                                                                                           poolProfile.getBatchDelay(), Math.max(1, maxPoolSize));
+        answer.setCallerRunsWhenRejected(rejectedExecutionHandler == null || rejectedExecutionHandler instanceof ThreadPoolExecutor.CallerRunsPolicy);
+        return answer;
+    }
+
+    /**
+     * Creates an executor running on the shared scheduler, limited to
+     * maxPoolSize concurrent tasks and maxQueueSize waiting tasks. The
+     * scheduler runs on the default WorkManager, so a pool placed on another
+     * WorkManager schedules every task as its own work there instead.
+     */
+    protected ExecutorService newVirtualExecutorService(WorkManager wm, String name, int maxPoolSize, int maxQueueSize,
+                                                        RejectedExecutionHandler rejectedExecutionHandler) {
+        if (wm != workmanager) {
+            return newTaskExecutorService(wm, name, rejectedExecutionHandler);
+        }
+        WorkManagerVirtualExecutorService answer = new WorkManagerVirtualExecutorService(getScheduler(), name, Math.max(1, maxPoolSize), maxQueueSize);
+        answer.setCallerRunsWhenRejected(rejectedExecutionHandler == null || rejectedExecutionHandler instanceof ThreadPoolExecutor.CallerRunsPolicy);
+        return answer;
+    }
+
+    /**
+     * Gets the scheduler shared by the pools of type {@link WorkManagerPoolType#SHARED},
+     * starting it the first time.
+     */
+    public synchronized WorkManagerScheduler getScheduler() {
+        if (scheduler == null) {
+            scheduler = new WorkManagerScheduler(workmanager, schedulerParallelism);
+            scheduler.start();
+        }
+        return scheduler;
+    }
+
+    /**
+     * Stops the shared scheduler, if it was started, the pool sizer, the
+     * watchdog and the slot reservoir.
+     */
+    public synchronized void shutdown() {
+        if (slotReservoir != null) {
+            slotReservoir.shutdown();
+        }
+        if (scheduler != null) {
+            scheduler.stop();
+            scheduler = null;
+        }
+        if (poolSizer != null) {
+            poolSizer.stop();
+        }
+        if (watchdog != null) {
+            watchdog.stop();
+        }
+    }
+
+    public String getThreadNamePattern() {
+        return threadNamePattern;
+    }
+
+    /**
+     * Sets the pattern of the names of the pool threads, where #counter# is
+     * the number of the thread in its pool and #name# the name of the pool,
+     * default is "WorkManager thread ##counter# - #name#".
+     */
+    public void setThreadNamePattern(String threadNamePattern) {
+        this.threadNamePattern = threadNamePattern;
+    }
+
+    public int getSchedulerParallelism() {
+        return schedulerParallelism;
+    }
+
+    /**
+     * Sets the number of WorkManager daemon works used by the shared
+     * scheduler, default is the number of available processors.
+     */
+    public void setSchedulerParallelism(int schedulerParallelism) {
+        this.schedulerParallelism = schedulerParallelism;
+    }
+
+    /**
+     * Gets the WorkManager of the pools of the given thread pool profile id by
+     * the placement policy, or <tt>null</tt> to use plain JDK threads.
+     */
+    protected WorkManager getWorkmanager(String profileId) {
+        WorkManagerPlacementPolicy policy = placementPolicy;
+        if (policy == null) {
+            return workmanager;
+        }
+        return policy.getWorkmanager(profileId, null, null, workmanager);
+    }
+
+    /**
+     * Gets the pool profile for the given thread pool profile id, falling back
+     * to the default pool profile.
+     */
+    public WorkManagerPoolProfile getPoolProfile(String id) {
+        if (id != null) {
+            for (WorkManagerPoolProfile poolProfile : poolProfiles) {
+                if (id.equals(poolProfile.getId())) {
+                    return poolProfile;
+                }
+            }
+        }
+        return defaultPoolProfile;
+    }
+
+    public List<WorkManagerPoolProfile> getPoolProfiles() {
+        return poolProfiles;
+    }
+
+    public void setPoolProfiles(List<WorkManagerPoolProfile> poolProfiles) {
+        this.poolProfiles = new ArrayList<WorkManagerPoolProfile>();
+        for (WorkManagerPoolProfile poolProfile : poolProfiles) {
+            addPoolProfile(poolProfile);
+        }
+    }
+
+    public void addPoolProfile(WorkManagerPoolProfile poolProfile) {
+        if (poolProfile.isDefaultProfile()) {
+            defaultPoolProfile = poolProfile;
+        } else {
+            poolProfiles.add(poolProfile);
+        }
+    }
+
+    public WorkManagerPoolProfile getDefaultPoolProfile() {
+        return defaultPoolProfile;
+    }
+
+    public void setDefaultPoolProfile(WorkManagerPoolProfile defaultPoolProfile) {
+        this.defaultPoolProfile = defaultPoolProfile;
+    }
+
     public void setWorkmanager(WorkManager workmanager) {
         this.workmanager = workmanager;
     }
@@ -122,4 +550,105 @@ public class WorkManagerThreadPoolFactory implements ThreadPoolFactory {
     public WorkManager getWorkmanager() {
         return workmanager;
     }
+
+    public WorkManagerSlotReservoir getSlotReservoir() {
+        return slotReservoir;
+    }
+
+    /**
+     * Sets the reservoir of idle WorkManager works the pool threads run on,
+     * instead of scheduling a work for every new pool thread. The reservoir
+     * is started when the first pool uses it. Default is none.
+     */
+    public void setSlotReservoir(WorkManagerSlotReservoir slotReservoir) {
+        this.slotReservoir = slotReservoir;
+    }
+
+    /**
+     * Sets the TimerManager used by the scheduled pools of type
+     * {@link WorkManagerScheduledPoolType#TIMER_MANAGER}.
+     */
+    public void setTimerManager(TimerManager timerManager) {
+        this.timerManager = timerManager;
+    }
+
+    public TimerManager getTimerManager() {
+        return timerManager;
+    }
+
+    /**
+     * Sets the sizer which resizes the pools with an adaptive pool profile.
+     */
+    public void setPoolSizer(WorkManagerPoolSizer poolSizer) {
+        this.poolSizer = poolSizer;
+    }
+
+    public WorkManagerPoolSizer getPoolSizer() {
+        return poolSizer;
+    }
+
+    /**
+     * Sets the policy placing the pools of a thread pool profile on a named
+     * WorkManager, or on plain JDK threads.
+     */
+    public void setPlacementPolicy(WorkManagerPlacementPolicy placementPolicy) {
+        this.placementPolicy = placementPolicy;
+    }
+
+    public WorkManagerPlacementPolicy getPlacementPolicy() {
+        return placementPolicy;
+    }
+
+    public List<WorkManagerBulkhead> getBulkheads() {
+        return bulkheads;
+    }
+
+    /**
+     * Sets the bulkheads limiting the tasks in flight of the pools, in the
+     * order they are matched on the thread pool profile id. Scheduled pools
+     * have no bulkhead.
+     */
+    public void setBulkheads(List<WorkManagerBulkhead> bulkheads) {
+        this.bulkheads = new ArrayList<WorkManagerBulkhead>(bulkheads);
+    }
+
+    public WorkManagerPoolRegistry getPoolRegistry() {
+        return poolRegistry;
+    }
+
+    /**
+     * Sets the registry of the created pools, which may be shared with a
+     * {@link WorkManagerExecutorServiceStrategy}. Default is a registry of its
+     * own, <tt>null</tt> registers no pools.
+     */
+    public void setPoolRegistry(WorkManagerPoolRegistry poolRegistry) {
+        this.poolRegistry = poolRegistry;
+    }
+
+    public WorkManagerPoolWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * Sets the watchdog reporting the created pools which stall or deadlock.
+     * It checks the pool registry of this factory and runs on its WorkManager,
+     * unless it has its own.
+     */
+    public void setWatchdog(WorkManagerPoolWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    public List<WorkManagerContextPropagator> getContextPropagators() {
+        return contextPropagators;
+    }
+
+    /**
+     * Sets the propagators of the context of the submitting threads, such as
+     * {@link MdcContextPropagator}, to the tasks of the pools created
+     * afterwards. Scheduled pools do not propagate the context.
+     */
+    public void setContextPropagators(List<WorkManagerContextPropagator> contextPropagators) {
+        this.contextPropagators = new ArrayList<WorkManagerContextPropagator>(contextPropagators);
+        this.propagators = WorkManagerContextSnapshot.toArray(this.contextPropagators);
+    }
 }
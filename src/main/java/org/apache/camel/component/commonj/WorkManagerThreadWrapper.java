@@ -14,16 +14,24 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.apache.camel.component.commonj;
 
-import commonj.work.Work;
 import commonj.work.WorkManager;
 
+/**
+ * A thread which is never started itself, but runs as a {@link WorkItem} of a
+ * WorkManager, or of a {@link WorkManagerSlotReservoir} when it has one.
+ * <p/>
+ * A wrapper created with a runnable and a name is the thread object of the
+ * pool, which runs the runnable itself. A wrapper around a delegate thread
+ * passes the thread state on to the delegate.
+ */
 public class WorkManagerThreadWrapper extends Thread {
-    private WorkManager wm;
-    private Thread thread;
-    private Work work;
+    private final WorkManager wm;
+    private final WorkManagerSlotReservoir reservoir;
+    private final Thread thread;
+    private final Runnable runnable;
+    private volatile WorkItem work;
 
     /**
      * Every WorkmanagerThreadWrapper has a WorkManager and a RunnableWrapper
@@ -32,7 +40,25 @@ public class WorkManagerThreadWrapper extends Thread {
     public WorkManagerThreadWrapper(WorkManager wm, Thread thread) {
         super();
         this.wm = wm;
+        this.reservoir = null;
         this.thread = thread;
+        this.runnable = thread;
+    }
+
+    public WorkManagerThreadWrapper(WorkManager wm, Runnable runnable, String name) {
+        super(name);
+        this.wm = wm;
+        this.reservoir = null;
+        this.thread = null;
+        this.runnable = runnable;
+    }
+
+    public WorkManagerThreadWrapper(WorkManagerSlotReservoir reservoir, Runnable runnable, String name) {
+        super(name);
+        this.wm = reservoir.getWorkmanager();
+        this.reservoir = reservoir;
+        this.thread = null;
+        this.runnable = runnable;
     }
 
     public void destroy() {
@@ -42,31 +68,84 @@ public class WorkManagerThreadWrapper extends Thread {
     }
 
     public ClassLoader getContextClassLoader() {
-        return thread.getContextClassLoader();
+        return thread != null ? thread.getContextClassLoader() : super.getContextClassLoader();
     }
 
     public void interrupt() {
         if (work != null) {
             work.release();
         }
-        thread.interrupt();
+        if (thread != null) {
+            thread.interrupt();
+        }
     }
 
     public boolean isInterrupted() {
-        return thread.isInterrupted();
+        if (thread != null) {
+            return thread.isInterrupted();
+        }
+        WorkItem current = work;
+        return current != null && current.isInterrupted();
     }
 
     public void setContextClassLoader(ClassLoader cl) {
-        thread.setContextClassLoader(cl);
+        if (thread != null) {
+            thread.setContextClassLoader(cl);
+        } else {
+            super.setContextClassLoader(cl);
+        }
+    }
+
+    /**
+     * Runs the task on the WorkManager thread, which keeps its own priority,
+     * and hands what it throws to the uncaught exception handler of this
+     * thread, as a started thread would.
+     */
+    public void run() {
+        try {
+            runnable.run();
+        } catch (Throwable e) {
+            getUncaughtExceptionHandler().uncaughtException(this, e);
+        }
+    }
+
+    /**
+     * Gets the WorkManager thread running this thread, or <tt>null</tt> when
+     * it is not running.
+     */
+    public Thread getCarrier() {
+        WorkItem current = work;
+        return current != null ? current.getCarrier() : null;
+    }
+
+    /**
+     * Whether this thread was started, but still waits for a WorkManager
+     * thread to run on.
+     */
+    public boolean isWaitingForWorkManager() {
+        WorkItem current = work;
+        return current != null && !current.isStarted();
     }
 
     /**
      * Start the thread. This will start a WorkManager daemon thread and will
-     * immediately submit the WorkItem to it.
+     * immediately submit the WorkItem to it, or hand the WorkItem over to an
+     * idle work of the reservoir.
      */
     public synchronized void start() {
-        work = new WorkItem(thread);
-        wm.schedule(work);
+        work = thread != null ? new WorkItem(thread) : new WorkItem(this, getName());
+        work.scheduling();
+        try {
+            if (reservoir != null) {
+                reservoir.execute(work);
+            } else {
+                wm.schedule(work);
+            }
+        } catch (RuntimeException e) {
+            work.rejected(e);
+            work = null;
+            throw e;
+        }
     }
 
 }
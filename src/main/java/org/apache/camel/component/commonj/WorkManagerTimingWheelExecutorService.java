@@ -0,0 +1,606 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.camel.util.concurrent.Rejectable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkListener;
+import commonj.work.WorkManager;
+
+/**
+ * A {@link ScheduledExecutorService} based on a hashed timing wheel which is
+ * driven by a single WorkManager daemon work.
+ * <p/>
+ * Scheduling and cancelling a task are O(1), and a cancelled task is removed
+ * from the wheel right away instead of staying queued until its delay has
+ * passed. Tasks fire with the precision of <tt>tickDuration</tt> and are run
+ * by a {@link WorkManagerExecutorService}, so the daemon work only keeps time.
+ * When the WorkManager rejects the daemon work the tasks on the wheel are
+ * rejected, and the next task scheduled tries to start it again.
+ */
+public class WorkManagerTimingWheelExecutorService extends AbstractExecutorService implements ScheduledExecutorService {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerTimingWheelExecutorService.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // over 36 years, so a deadline plus a period cannot overflow
+    private static final long MAX_DELAY_NANOS = Long.MAX_VALUE >> 2;
+
+    private final WorkManager workmanager;
+    private final String name;
+    private final ExecutorService taskExecutor;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime = System.nanoTime();
+    private final Queue<TimerTask<?>> additions = new ConcurrentLinkedQueue<TimerTask<?>>();
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private final CountDownLatch tickerStopped = new CountDownLatch(1);
+    private final Ticker ticker = new Ticker();
+    private volatile boolean started;
+    private volatile boolean shutdown;
+
+    /**
+     * @param workmanager the WorkManager to run the ticker and the tasks on
+     * @param name the name of the executor
+     * @param tickDuration the duration of a tick in milliseconds
+     * @param wheelSize the number of buckets of the wheel, rounded up to a power of two
+     */
+    public WorkManagerTimingWheelExecutorService(WorkManager workmanager, String name, long tickDuration, int wheelSize) {
+        this(workmanager, name, tickDuration, wheelSize, newTaskExecutor(workmanager, name));
+    }
+
+    public WorkManagerTimingWheelExecutorService(WorkManager workmanager, String name, long tickDuration, int wheelSize, ExecutorService taskExecutor) {
+        if (workmanager == null) {
+            throw new IllegalArgumentException("WorkManager must be specified");
+        }
+        if (tickDuration < 1) {
+            throw new IllegalArgumentException("TickDuration must be >= 1, was " + tickDuration);
+        }
+        if (wheelSize < 1 || wheelSize > 1 << 30) {
+            throw new IllegalArgumentException("WheelSize must be between 1 and 2^30, was " + wheelSize);
+        }
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.workmanager = workmanager;
+        this.name = name;
+        this.taskExecutor = taskExecutor;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        this.wheel = new Bucket[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Creates the executor of the expired tasks, which must not run a rejected
+     * task in the calling thread, as that is the ticker.
+     */
+    private static ExecutorService newTaskExecutor(WorkManager workmanager, String name) {
+        WorkManagerExecutorService answer = new WorkManagerExecutorService(workmanager, name);
+        answer.setCallerRunsWhenRejected(false);
+        return answer;
+    }
+
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return schedule(new TimerTask<Object>(command, null, deadline(delay, unit), 0));
+    }
+
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return schedule(new TimerTask<V>(callable, deadline(delay, unit)));
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be > 0, was " + period);
+        }
+        return schedule(new TimerTask<Object>(command, null, deadline(initialDelay, unit), toNanos(period, unit)));
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("Delay must be > 0, was " + delay);
+        }
+        return schedule(new TimerTask<Object>(command, null, deadline(initialDelay, unit), -toNanos(delay, unit)));
+    }
+
+    /**
+     * Tasks without a delay bypass the wheel.
+     */
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Task " + command + " rejected from " + this);
+        }
+        taskExecutor.execute(command);
+    }
+
+    private <V> ScheduledFuture<V> schedule(TimerTask<V> task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Task " + task + " rejected from " + this);
+        }
+        start();
+        scheduled.incrementAndGet();
+        add(task);
+        return task;
+    }
+
+    private void add(TimerTask<?> task) {
+        additions.offer(task);
+        if (ticker.idle) {
+            LockSupport.unpark(ticker.thread);
+        }
+    }
+
+    private long now() {
+        return System.nanoTime() - startTime;
+    }
+
+    private long deadline(long delay, TimeUnit unit) {
+        return now() + toNanos(delay, unit);
+    }
+
+    /**
+     * Converts a delay to nanoseconds, capped like ScheduledThreadPoolExecutor
+     * does so that a delay near Long.MAX_VALUE does not overflow the deadline.
+     */
+    private static long toNanos(long delay, TimeUnit unit) {
+        return Math.min(unit.toNanos(Math.max(0, delay)), MAX_DELAY_NANOS);
+    }
+
+    private void start() {
+        if (!started) {
+            synchronized (this) {
+                if (!started) {
+                    ticker.rejected = false;
+                    try {
+                        workmanager.schedule(ticker, ticker);
+                    } catch (RuntimeException e) {
+                        RejectedExecutionException ree = new RejectedExecutionException("Cannot schedule the ticker of " + this);
+                        ree.initCause(e);
+                        throw ree;
+                    }
+                    if (ticker.rejected) {
+                        throw new RejectedExecutionException("WorkManager rejected the ticker of " + this);
+                    }
+                    started = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Called when the WorkManager rejects the ticker. When it does so after the
+     * ticker was scheduled nothing keeps time for the tasks on the wheel, so
+     * they are rejected, and the next task scheduled starts a new ticker.
+     */
+    private synchronized void tickerRejected(Throwable cause) {
+        ticker.rejected = true;
+        if (!started) {
+            // reported while scheduling, start rejects the task of the caller
+            return;
+        }
+        started = false;
+        List<TimerTask<?>> pending = new ArrayList<TimerTask<?>>();
+        TimerTask<?> task;
+        while ((task = additions.poll()) != null) {
+            pending.add(task);
+            scheduled.decrementAndGet();
+        }
+        for (Bucket bucket : wheel) {
+            bucket.clear(pending);
+        }
+        for (TimerTask<?> current : pending) {
+            current.reject(cause);
+        }
+        if (shutdown) {
+            tickerStopped.countDown();
+            taskExecutor.shutdown();
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        if (started) {
+            LockSupport.unpark(ticker.thread);
+        } else {
+            tickerStopped.countDown();
+            taskExecutor.shutdown();
+        }
+    }
+
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<TimerTask<?>> pending = new ArrayList<TimerTask<?>>();
+        TimerTask<?> task;
+        while ((task = additions.poll()) != null) {
+            pending.add(task);
+            scheduled.decrementAndGet();
+        }
+        for (Bucket bucket : wheel) {
+            bucket.clear(pending);
+        }
+        List<Runnable> answer = new ArrayList<Runnable>();
+        for (TimerTask<?> current : pending) {
+            if (current.cancel(false)) {
+                answer.add(current);
+            }
+        }
+        answer.addAll(taskExecutor.shutdownNow());
+        shutdown();
+        return answer;
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        return tickerStopped.getCount() == 0 && taskExecutor.isTerminated();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!tickerStopped.await(timeout, unit)) {
+            return false;
+        }
+        return taskExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Number of tasks waiting on the wheel, including periodic tasks.
+     */
+    public int getScheduledCount() {
+        return scheduled.get();
+    }
+
+    public long getTickDuration() {
+        return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+    }
+
+    public int getWheelSize() {
+        return wheel.length;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Whether the ticker holds a WorkManager thread.
+     */
+    public boolean isTickerRunning() {
+        return started && tickerStopped.getCount() > 0;
+    }
+
+    public ExecutorService getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    public String toString() {
+        return "WorkManagerTimingWheelExecutorService[" + name + ", scheduled=" + scheduled.get() + ", shutdown=" + shutdown + "]";
+    }
+
+    /**
+     * The WorkManager daemon work which advances the wheel every tick and
+     * hands the expired tasks to the task executor.
+     */
+    private final class Ticker implements Work, WorkListener {
+        private final List<TimerTask<?>> expired = new ArrayList<TimerTask<?>>();
+        private volatile Thread thread;
+        private volatile boolean idle;
+        private volatile boolean released;
+        private volatile boolean rejected;
+        private long tick;
+
+        public void run() {
+            thread = Thread.currentThread();
+            tick = now() / tickNanos;
+            LOG.debug("Started ticker of {}", WorkManagerTimingWheelExecutorService.this);
+            try {
+                while (!released && !(shutdown && scheduled.get() == 0)) {
+                    waitForNextTick();
+                    transferAdditions();
+                    wheel[(int)(tick & mask)].expire(expired);
+                    for (TimerTask<?> task : expired) {
+                        dispatch(task);
+                    }
+                    expired.clear();
+                    tick++;
+                }
+            } finally {
+                thread = null;
+                LOG.debug("Stopped ticker of {}", WorkManagerTimingWheelExecutorService.this);
+                tickerStopped.countDown();
+                taskExecutor.shutdown();
+            }
+        }
+
+        private void waitForNextTick() {
+            if (scheduled.get() == 0 && additions.isEmpty()) {
+                // nothing on the wheel, so wait until something is scheduled
+                idle = true;
+                try {
+                    if (scheduled.get() == 0 && additions.isEmpty() && !shutdown && !released) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                } finally {
+                    idle = false;
+                }
+                // the wheel is empty so it is safe to skip the ticks we slept through
+                tick = Math.max(tick, now() / tickNanos);
+                return;
+            }
+            long deadline = (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = deadline - now()) > 0 && !released) {
+                LockSupport.parkNanos(this, sleep);
+                if (shutdown && scheduled.get() == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void transferAdditions() {
+            // limit the transfer so a flood of new tasks cannot stall the wheel
+            for (int i = 0; i < 100000; i++) {
+                TimerTask<?> task = additions.poll();
+                if (task == null) {
+                    return;
+                }
+                if (task.isCancelled()) {
+                    scheduled.decrementAndGet();
+                    continue;
+                }
+                long expiry = task.deadline / tickNanos;
+                task.rounds = (expiry - tick) / wheel.length;
+                wheel[(int)(Math.max(expiry, tick) & mask)].add(task);
+            }
+        }
+
+        private void dispatch(TimerTask<?> task) {
+            if (!task.isPeriodic()) {
+                scheduled.decrementAndGet();
+            } else if (shutdown) {
+                task.cancel(false);
+                scheduled.decrementAndGet();
+                return;
+            }
+            try {
+                taskExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                LOG.warn("Cannot run expired task " + task + " of " + WorkManagerTimingWheelExecutorService.this, e);
+                task.cancel(false);
+                if (task.isPeriodic()) {
+                    scheduled.decrementAndGet();
+                }
+            }
+        }
+
+        public void release() {
+            released = true;
+            LockSupport.unpark(thread);
+        }
+
+        public boolean isDaemon() {
+            return true;
+        }
+
+        public void workAccepted(WorkEvent event) {
+        }
+
+        public void workRejected(WorkEvent event) {
+            LOG.warn("WorkManager rejected the ticker of " + WorkManagerTimingWheelExecutorService.this, event.getException());
+            tickerRejected(event.getException());
+        }
+
+        public void workStarted(WorkEvent event) {
+        }
+
+        public void workCompleted(WorkEvent event) {
+        }
+
+        public String toString() {
+            return "Ticker[" + name + "]";
+        }
+    }
+
+    /**
+     * A slot of the wheel holding a doubly linked list of tasks.
+     */
+    private final class Bucket {
+        private TimerTask<?> head;
+        private TimerTask<?> tail;
+
+        synchronized void add(TimerTask<?> task) {
+            task.bucket = this;
+            task.prev = tail;
+            task.next = null;
+            if (tail == null) {
+                head = task;
+            } else {
+                tail.next = task;
+            }
+            tail = task;
+        }
+
+        synchronized boolean remove(TimerTask<?> task) {
+            if (task.bucket != this) {
+                return false;
+            }
+            unlink(task);
+            return true;
+        }
+
+        synchronized void expire(List<TimerTask<?>> expired) {
+            TimerTask<?> task = head;
+            while (task != null) {
+                TimerTask<?> next = task.next;
+                if (task.isCancelled()) {
+                    unlink(task);
+                    scheduled.decrementAndGet();
+                } else if (task.rounds <= 0) {
+                    unlink(task);
+                    expired.add(task);
+                } else {
+                    task.rounds--;
+                }
+                task = next;
+            }
+        }
+
+        synchronized void clear(List<TimerTask<?>> removed) {
+            while (head != null) {
+                TimerTask<?> task = head;
+                unlink(task);
+                removed.add(task);
+                scheduled.decrementAndGet();
+            }
+        }
+
+        private void unlink(TimerTask<?> task) {
+            if (task.prev == null) {
+                head = task.next;
+            } else {
+                task.prev.next = task.next;
+            }
+            if (task.next == null) {
+                tail = task.prev;
+            } else {
+                task.next.prev = task.prev;
+            }
+            task.prev = null;
+            task.next = null;
+            task.bucket = null;
+        }
+    }
+
+    /**
+     * A task on the wheel. A positive period is a fixed rate, a negative
+     * period a fixed delay. It fails when the task executor rejects it.
+     */
+    private final class TimerTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V>, Rejectable {
+        private final long period;
+        private volatile long deadline;
+        private long rounds;
+        private volatile Bucket bucket;
+        private TimerTask<?> prev;
+        private TimerTask<?> next;
+
+        private TimerTask(Runnable runnable, V result, long deadline, long period) {
+            super(runnable, result);
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        private TimerTask(Callable<V> callable, long deadline) {
+            super(callable);
+            this.deadline = deadline;
+            this.period = 0;
+        }
+
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - now(), TimeUnit.NANOSECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            if (other == this) {
+                return 0;
+            }
+            long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean answer = super.cancel(mayInterruptIfRunning);
+            Bucket current = bucket;
+            // remove right away, a task not on the wheel yet is dropped when transferred
+            if (answer && current != null && current.remove(this)) {
+                scheduled.decrementAndGet();
+            }
+            return answer;
+        }
+
+        public void run() {
+            if (!isPeriodic()) {
+                super.run();
+            } else if (runAndReset()) {
+                if (shutdown || isCancelled()) {
+                    scheduled.decrementAndGet();
+                    return;
+                }
+                deadline = period > 0 ? deadline + period : now() - period;
+                add(this);
+            } else {
+                // failed or cancelled, so it will not run again
+                scheduled.decrementAndGet();
+            }
+        }
+
+        /**
+         * The WorkManager rejected the work running the expired task.
+         */
+        public void reject() {
+            setException(new RejectedExecutionException("WorkManager rejected task " + this + " of " + WorkManagerTimingWheelExecutorService.this));
+            if (isPeriodic()) {
+                // still counted as it would be added again
+                scheduled.decrementAndGet();
+            }
+        }
+
+        /**
+         * Fails the task, as no ticker is left to run it.
+         */
+        void reject(Throwable cause) {
+            RejectedExecutionException e = new RejectedExecutionException("WorkManager rejected the ticker of " + WorkManagerTimingWheelExecutorService.this);
+            if (cause != null) {
+                e.initCause(cause);
+            }
+            setException(e);
+        }
+
+        public String toString() {
+            return "TimerTask[delay=" + getDelay(TimeUnit.MILLISECONDS) + "ms, period=" + TimeUnit.NANOSECONDS.toMillis(period) + "ms]";
+        }
+    }
+}
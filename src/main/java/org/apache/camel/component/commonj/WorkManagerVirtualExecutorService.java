@@ -0,0 +1,316 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.camel.util.concurrent.Rejectable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A lightweight {@link java.util.concurrent.ExecutorService} running its
+ * tasks on a shared {@link WorkManagerScheduler}.
+ * <p/>
+ * At most <tt>maxConcurrency</tt> tasks of this executor run at the same
+ * time, further tasks wait in a queue bounded by <tt>maxQueueSize</tt>
+ * (<tt>-1</tt> or <tt>0</tt> for unbounded). A running task hands its slot to
+ * the next queued task by submitting it to the scheduler again, so the
+ * executors sharing a scheduler take turns on the workers.
+ */
+public class WorkManagerVirtualExecutorService extends AbstractExecutorService {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkManagerVirtualExecutorService.class);
+    private final WorkManagerScheduler scheduler;
+    private final String name;
+    private final int maxConcurrency;
+    private final int maxQueueSize;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition termination = lock.newCondition();
+    private volatile boolean shutdown;
+    private boolean callerRunsWhenRejected = true;
+
+    public WorkManagerVirtualExecutorService(WorkManagerScheduler scheduler, String name, int maxConcurrency, int maxQueueSize) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("MaxConcurrency must be >= 1, was " + maxConcurrency);
+        }
+        this.scheduler = scheduler;
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            reject(task);
+            return;
+        }
+        for (;;) {
+            int current = active.get();
+            if (current < maxConcurrency) {
+                if (active.compareAndSet(current, current + 1)) {
+                    dispatch(new Slot(task));
+                    return;
+                }
+                continue;
+            }
+            if (maxQueueSize > 0 && pendingCount.get() >= maxQueueSize) {
+                reject(task);
+                return;
+            }
+            pending.offer(task);
+            pendingCount.incrementAndGet();
+            // a slot may have been given back while we were queueing
+            if (active.get() < maxConcurrency) {
+                startPending();
+            }
+            return;
+        }
+    }
+
+    private void dispatch(Slot slot) {
+        try {
+            scheduler.submit(slot);
+        } catch (RejectedExecutionException e) {
+            active.decrementAndGet();
+            signalIfTerminated();
+            reject(slot.task);
+        }
+    }
+
+    private Runnable pollPending() {
+        Runnable task = pending.poll();
+        if (task != null) {
+            pendingCount.decrementAndGet();
+        }
+        return task;
+    }
+
+    private void startPending() {
+        for (;;) {
+            int current = active.get();
+            if (current >= maxConcurrency || pendingCount.get() == 0) {
+                return;
+            }
+            if (active.compareAndSet(current, current + 1)) {
+                Runnable task = pollPending();
+                if (task != null) {
+                    dispatch(new Slot(task));
+                } else {
+                    active.decrementAndGet();
+                    signalIfTerminated();
+                }
+                return;
+            }
+        }
+    }
+
+    private void reject(Runnable task) {
+        rejected.incrementAndGet();
+        if (!shutdown && callerRunsWhenRejected) {
+            task.run();
+            return;
+        }
+        throw new RejectedExecutionException("Task " + task + " rejected from " + this);
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        signalIfTerminated();
+    }
+
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> answer = new ArrayList<Runnable>();
+        Runnable task;
+        while ((task = pollPending()) != null) {
+            answer.add(task);
+        }
+        signalIfTerminated();
+        return answer;
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        return shutdown && active.get() == 0 && pendingCount.get() == 0;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!isTerminated()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = termination.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalIfTerminated() {
+        if (isTerminated()) {
+            lock.lock();
+            try {
+                termination.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getQueueSize() {
+        return pendingCount.get();
+    }
+
+    public long getCompletedTaskCount() {
+        return completed.get();
+    }
+
+    /**
+     * Number of tasks rejected because the queue was full, including those
+     * run by the calling thread.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public WorkManagerScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public boolean isCallerRunsWhenRejected() {
+        return callerRunsWhenRejected;
+    }
+
+    /**
+     * Whether the calling thread should run the task if the queue is full,
+     * default is <tt>true</tt>. Otherwise a {@link RejectedExecutionException}
+     * is thrown.
+     */
+    public void setCallerRunsWhenRejected(boolean callerRunsWhenRejected) {
+        this.callerRunsWhenRejected = callerRunsWhenRejected;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new WorkFutureTask<T>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new WorkFutureTask<T>(callable);
+    }
+
+    public String toString() {
+        return "WorkManagerVirtualExecutorService[" + name + ", active=" + active.get() + ", queued=" + pendingCount.get() + ", shutdown=" + shutdown + "]";
+    }
+
+    /**
+     * One of the <tt>maxConcurrency</tt> slots of this executor, which is
+     * reused for the next queued task.
+     */
+    private final class Slot implements Runnable, Rejectable {
+        private Runnable task;
+
+        private Slot(Runnable task) {
+            this.task = task;
+        }
+
+        public void run() {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                LOG.warn("Error running task " + task + " in " + WorkManagerVirtualExecutorService.this, e);
+            } finally {
+                completed.incrementAndGet();
+            }
+            Runnable next = pollPending();
+            if (next != null) {
+                task = next;
+                dispatch(this);
+            } else {
+                task = null;
+                active.decrementAndGet();
+                if (pendingCount.get() > 0) {
+                    startPending();
+                }
+                signalIfTerminated();
+            }
+        }
+
+        /**
+         * The scheduler stopped before running the task, so the slot is given
+         * back and the task rejected.
+         */
+        public void reject() {
+            Runnable rejectedTask = task;
+            task = null;
+            rejected.incrementAndGet();
+            active.decrementAndGet();
+            signalIfTerminated();
+            if (!WorkFutureTask.reject(rejectedTask, null)) {
+                LOG.warn("Scheduler rejected task {} from {}", rejectedTask, WorkManagerVirtualExecutorService.this);
+            }
+        }
+
+        public String toString() {
+            return "Slot[" + task + "]";
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
+
+/**
+ * The latencies and counters of the work scheduled on a WorkManager by one
+ * pool, as recorded by the {@link InstrumentedWorkManager}. The latencies are
+ * exposed in microseconds.
+ */
+@ManagedResource(description = "WorkManager work statistics")
+public class WorkStatistics {
+
+    private final String name;
+    private final WorkLatencyHistogram queueDelay = new WorkLatencyHistogram();
+    private final WorkLatencyHistogram runTime = new WorkLatencyHistogram();
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public WorkStatistics(String name) {
+        this.name = name;
+    }
+
+    void onScheduled() {
+        scheduled.incrementAndGet();
+    }
+
+    void onStarted(long queueDelayNanos) {
+        queueDelay.record(queueDelayNanos);
+    }
+
+    void onCompleted(long runTimeNanos, boolean failure) {
+        runTime.record(runTimeNanos);
+        if (failure) {
+            failed.incrementAndGet();
+        }
+    }
+
+    void onRejected() {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * The time between the work being accepted and started by the WorkManager.
+     */
+    public WorkLatencyHistogram getQueueDelay() {
+        return queueDelay;
+    }
+
+    /**
+     * The time between the work being started and completed.
+     */
+    public WorkLatencyHistogram getRunTime() {
+        return runTime;
+    }
+
+    @ManagedAttribute(description = "Name")
+    public String getName() {
+        return name;
+    }
+
+    @ManagedAttribute(description = "Number of scheduled work")
+    public long getScheduledCount() {
+        return scheduled.get();
+    }
+
+    @ManagedAttribute(description = "Number of rejected work")
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @ManagedAttribute(description = "Number of completed work")
+    public long getCompletedCount() {
+        return runTime.getCount();
+    }
+
+    @ManagedAttribute(description = "Number of work completed with an exception")
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    @ManagedAttribute(description = "Mean queue delay in microseconds")
+    public long getMeanQueueDelay() {
+        return toMicros((long) queueDelay.getMean());
+    }
+
+    @ManagedAttribute(description = "50th percentile queue delay in microseconds")
+    public long getQueueDelay50() {
+        return toMicros(queueDelay.getValueAtPercentile(50));
+    }
+
+    @ManagedAttribute(description = "99th percentile queue delay in microseconds")
+    public long getQueueDelay99() {
+        return toMicros(queueDelay.getValueAtPercentile(99));
+    }
+
+    @ManagedAttribute(description = "99.9th percentile queue delay in microseconds")
+    public long getQueueDelay999() {
+        return toMicros(queueDelay.getValueAtPercentile(99.9));
+    }
+
+    @ManagedAttribute(description = "Max queue delay in microseconds")
+    public long getMaxQueueDelay() {
+        return toMicros(queueDelay.getMax());
+    }
+
+    @ManagedAttribute(description = "Mean run time in microseconds")
+    public long getMeanRunTime() {
+        return toMicros((long) runTime.getMean());
+    }
+
+    @ManagedAttribute(description = "50th percentile run time in microseconds")
+    public long getRunTime50() {
+        return toMicros(runTime.getValueAtPercentile(50));
+    }
+
+    @ManagedAttribute(description = "99th percentile run time in microseconds")
+    public long getRunTime99() {
+        return toMicros(runTime.getValueAtPercentile(99));
+    }
+
+    @ManagedAttribute(description = "99.9th percentile run time in microseconds")
+    public long getRunTime999() {
+        return toMicros(runTime.getValueAtPercentile(99.9));
+    }
+
+    @ManagedAttribute(description = "Max run time in microseconds")
+    public long getMaxRunTime() {
+        return toMicros(runTime.getMax());
+    }
+
+    @ManagedOperation(description = "Reset the statistics")
+    public void reset() {
+        queueDelay.reset();
+        runTime.reset();
+        scheduled.set(0);
+        rejected.set(0);
+        failed.set(0);
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    public String toString() {
+        return "WorkStatistics[" + name + ", scheduled=" + scheduled.get() + ", rejected=" + rejected.get() + ", queueDelay=" + queueDelay
+               + ", runTime=" + runTime + "]";
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Records the WorkManager events as JDK Flight Recorder events. Loaded by
+ * {@link WorkManagerEventRecorder} when running on JDK 11 or later.
+ */
+public class JfrWorkManagerEventRecorder extends WorkManagerEventRecorder {
+    private final EventType scheduledType = EventType.getEventType(WorkScheduledEvent.class);
+    private final EventType startedType = EventType.getEventType(WorkStartedEvent.class);
+    private final EventType completedType = EventType.getEventType(WorkCompletedEvent.class);
+    private final EventType rejectedType = EventType.getEventType(WorkRejectedEvent.class);
+    private final EventType releasedType = EventType.getEventType(WorkReleasedEvent.class);
+
+    @Override
+    public boolean isEnabled() {
+        return scheduledType.isEnabled() || startedType.isEnabled() || completedType.isEnabled()
+            || rejectedType.isEnabled() || releasedType.isEnabled();
+    }
+
+    @Override
+    public void scheduled(String pool, String routeId) {
+        WorkScheduledEvent event = new WorkScheduledEvent();
+        if (event.shouldCommit()) {
+            event.pool = pool;
+            event.routeId = routeId;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void started(String pool, String routeId, long queueTime) {
+        WorkStartedEvent event = new WorkStartedEvent();
+        if (event.shouldCommit()) {
+            event.pool = pool;
+            event.routeId = routeId;
+            event.queueTime = queueTime;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void completed(String pool, String routeId, long runTime) {
+        WorkCompletedEvent event = new WorkCompletedEvent();
+        if (event.shouldCommit()) {
+            event.pool = pool;
+            event.routeId = routeId;
+            event.runTime = runTime;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void rejected(String pool, String routeId, Throwable cause) {
+        WorkRejectedEvent event = new WorkRejectedEvent();
+        if (event.shouldCommit()) {
+            event.pool = pool;
+            event.routeId = routeId;
+            event.cause = cause != null ? cause.toString() : null;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void released(String pool, String routeId, long runTime) {
+        WorkReleasedEvent event = new WorkReleasedEvent();
+        if (event.shouldCommit()) {
+            event.pool = pool;
+            event.routeId = routeId;
+            event.runTime = runTime;
+            event.commit();
+        }
+    }
+
+    @Category({"Apache Camel", "CommonJ"})
+    @StackTrace(false)
+    abstract static class WorkEvent extends Event {
+        @Label("Pool")
+        String pool;
+
+        @Label("Route Id")
+        String routeId;
+    }
+
+    @Name("org.apache.camel.commonj.WorkScheduled")
+    @Label("Work Scheduled")
+    @Description("A work is handed to the WorkManager")
+    static class WorkScheduledEvent extends WorkEvent {
+    }
+
+    @Name("org.apache.camel.commonj.WorkStarted")
+    @Label("Work Started")
+    @Description("The WorkManager started a work")
+    static class WorkStartedEvent extends WorkEvent {
+        @Label("Queue Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueTime;
+    }
+
+    @Name("org.apache.camel.commonj.WorkCompleted")
+    @Label("Work Completed")
+    @Description("A work has run")
+    static class WorkCompletedEvent extends WorkEvent {
+        @Label("Run Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long runTime;
+    }
+
+    @Name("org.apache.camel.commonj.WorkRejected")
+    @Label("Work Rejected")
+    @Description("The WorkManager rejected a work")
+    @StackTrace(true)
+    static class WorkRejectedEvent extends WorkEvent {
+        @Label("Cause")
+        String cause;
+    }
+
+    @Name("org.apache.camel.commonj.WorkReleased")
+    @Label("Work Released")
+    @Description("A running work is released, which interrupts it")
+    @StackTrace(true)
+    static class WorkReleasedEvent extends WorkEvent {
+        @Label("Run Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long runTime;
+    }
+}
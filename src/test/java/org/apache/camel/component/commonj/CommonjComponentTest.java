@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelExchangeException;
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.apache.camel.util.ObjectHelper;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class CommonjComponentTest extends CamelTestSupport {
+
+    private LocalWorkManager workmanager = new LocalWorkManager("test", 4);
+    private CountDownLatch started = new CountDownLatch(1);
+    private CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        super.tearDown();
+        workmanager.shutdown();
+    }
+
+    @Override
+    protected CamelContext createCamelContext() throws Exception {
+        CamelContext context = super.createCamelContext();
+        CommonjComponent component = new CommonjComponent();
+        component.setWorkmanager(workmanager);
+        context.addComponent("commonj", component);
+        return context;
+    }
+
+    @Test
+    public void testInOnly() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedBodiesReceived("Hello World");
+
+        template.sendBody("commonj:inonly", "Hello World");
+
+        assertMockEndpointsSatisfied();
+        String thread = mock.getReceivedExchanges().get(0).getIn().getHeader("thread", String.class);
+        Assert.assertTrue("Should run on the WorkManager, was " + thread, thread.startsWith("test"));
+    }
+
+    @Test
+    public void testInOut() throws Exception {
+        Assert.assertEquals("Bye World", template.requestBody("commonj:inout", "World"));
+        Assert.assertEquals("Bye Camel", template.requestBody("commonj:inout", "Camel"));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedMessageCount(20);
+
+        for (int i = 0; i < 20; i++) {
+            template.sendBody("commonj:batch?batchSize=5&maxConcurrentWork=1", "Message " + i);
+        }
+
+        assertMockEndpointsSatisfied();
+        CommonjEndpoint endpoint = context.getEndpoint("commonj:batch?batchSize=5&maxConcurrentWork=1", CommonjEndpoint.class);
+        Assert.assertTrue("Should have used less works than exchanges", endpoint.getCompletedWorkCount() < 20);
+        Assert.assertNotNull(mock.getReceivedExchanges().get(0).getProperty(Exchange.BATCH_SIZE));
+        Assert.assertEquals(0, endpoint.getPendingCount());
+    }
+
+    @Test
+    public void testNoConsumer() throws Exception {
+        try {
+            template.requestBody("commonj:none", "Hello World");
+            Assert.fail("Should have thrown an exception");
+        } catch (CamelExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof CamelExchangeException);
+        }
+    }
+
+    @Test
+    public void testStoppingTheConsumerFailsPendingExchanges() throws Exception {
+        Future<Object> first = template.asyncRequestBody("commonj:slow?maxConcurrentWork=1", "first");
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<Object> second = template.asyncRequestBody("commonj:slow?maxConcurrentWork=1", "second");
+        CommonjEndpoint endpoint = context.getEndpoint("commonj:slow?maxConcurrentWork=1", CommonjEndpoint.class);
+        for (int i = 0; i < 100 && endpoint.getPendingCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, endpoint.getPendingCount());
+
+        context.getRoute("slow").getConsumer().stop();
+        try {
+            second.get(5, TimeUnit.SECONDS);
+            Assert.fail("Should have thrown an exception");
+        } catch (ExecutionException e) {
+            Assert.assertNotNull(ObjectHelper.getException(CamelExchangeException.class, e));
+        }
+        Assert.assertEquals(0, endpoint.getPendingCount());
+        release.countDown();
+        Assert.assertEquals("first", first.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLocalWorkManagerIsRecreatedOnRestart() throws Exception {
+        CamelContext other = new DefaultCamelContext();
+        other.addComponent("commonj", new CommonjComponent());
+        other.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("commonj:restart").transform(simple("Bye ${body}"));
+            }
+        });
+        other.start();
+        ProducerTemplate producer = other.createProducerTemplate();
+        try {
+            Assert.assertEquals("Bye World", producer.requestBody("commonj:restart", "World"));
+            other.stop();
+            other.start();
+            Assert.assertEquals("Bye Camel", producer.requestBody("commonj:restart", "Camel"));
+        } finally {
+            producer.stop();
+            other.stop();
+        }
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("commonj:inonly").setHeader("thread", simple("${threadName}")).to("mock:result");
+
+                from("commonj:inout").transform(simple("Bye ${body}"));
+
+                from("commonj:batch?batchSize=5&maxConcurrentWork=1").delay(5).to("mock:result");
+
+                from("commonj:slow?maxConcurrentWork=1").routeId("slow").process(new Processor() {
+                    public void process(Exchange exchange) throws Exception {
+                        started.countDown();
+                        release.await(5, TimeUnit.SECONDS);
+                    }
+                });
+            }
+        };
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkException;
+import commonj.work.WorkItem;
+import commonj.work.WorkListener;
+
+/**
+ * WorkManager stand-in which runs the work on a {@link LocalWorkManager},
+ * counts the scheduled work and can be told to reject all work.
+ */
+public class ExecutorWorkManager extends LocalWorkManager {
+
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private volatile boolean rejectAll;
+
+    public ExecutorWorkManager() {
+        super("ExecutorWorkManager", Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a WorkManager running at most maxThreads works at once, daemon
+     * works included, the other works wait until a thread is free.
+     */
+    public ExecutorWorkManager(int maxThreads) {
+        super("ExecutorWorkManager", maxThreads);
+        setPoolDaemonWork(true);
+    }
+
+    public WorkItem schedule(Work work, WorkListener workListener) throws IllegalArgumentException {
+        scheduled.incrementAndGet();
+        if (rejectAll) {
+            DefaultWorkItem workItem = new DefaultWorkItem(work, workListener);
+            workItem.setStatus(WorkEvent.WORK_REJECTED, new WorkException("rejected"));
+            return workItem;
+        }
+        return super.schedule(work, workListener);
+    }
+
+    public int getScheduledCount() {
+        return scheduled.get();
+    }
+
+    public void setRejectAll(boolean rejectAll) {
+        this.rejectAll = rejectAll;
+    }
+}
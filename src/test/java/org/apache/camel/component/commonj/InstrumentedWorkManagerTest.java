@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import commonj.work.Work;
+
+/**
+ * @version
+ */
+public class InstrumentedWorkManagerTest {
+
+    private ExecutorWorkManager delegate = new ExecutorWorkManager();
+    private InstrumentedWorkManager workmanager = new InstrumentedWorkManager(delegate);
+
+    @After
+    public void tearDown() {
+        delegate.shutdown();
+    }
+
+    @Test
+    public void testRecordsThreadsOfAPoolTogether() throws Exception {
+        CountDownLatch latch = new CountDownLatch(3);
+        for (int i = 1; i <= 3; i++) {
+            Thread thread = new Thread(new Sleeper(latch), "Camel (camel-1) thread #" + i + " - seda://foo");
+            new WorkManagerThreadWrapper(workmanager, thread).start();
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        WorkStatistics stats = workmanager.getStatistics("Camel (camel-1) thread - seda://foo");
+        Assert.assertNotNull(stats);
+        Assert.assertEquals(3, stats.getScheduledCount());
+        waitForCompleted(stats, 3);
+        Assert.assertEquals(3, stats.getQueueDelay().getCount());
+        Assert.assertTrue(stats.getRunTime().getValueAtPercentile(50) >= TimeUnit.MILLISECONDS.toNanos(10));
+        Assert.assertEquals(1, workmanager.getStatistics().size());
+    }
+
+    @Test
+    public void testPatterns() throws Exception {
+        workmanager.setPatterns(Arrays.asList("Camel \\(.*\\) thread #\\d+ - (.*)"));
+        CountDownLatch latch = new CountDownLatch(1);
+        Thread thread = new Thread(new Sleeper(latch), "Camel (camel-1) thread #7 - seda://bar");
+        new WorkManagerThreadWrapper(workmanager, thread).start();
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        Assert.assertNotNull(workmanager.getStatistics("seda://bar"));
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        delegate.setRejectAll(true);
+        Work work = new WorkItem(new Thread("rejected"));
+        workmanager.schedule(work);
+
+        WorkStatistics stats = workmanager.getStatistics("rejected");
+        Assert.assertEquals(1, stats.getRejectedCount());
+        Assert.assertEquals(0, stats.getCompletedCount());
+    }
+
+    @Test
+    public void testHistogramPrecision() throws Exception {
+        WorkLatencyHistogram histogram = new WorkLatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(1000000, histogram.getMax());
+        long p50 = histogram.getValueAtPercentile(50);
+        Assert.assertTrue("p50 was " + p50, p50 >= 500000 && p50 <= 500000 * 1.07);
+        long p99 = histogram.getValueAtPercentile(99);
+        Assert.assertTrue("p99 was " + p99, p99 >= 990000 && p99 <= 1000000);
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    private static void waitForCompleted(WorkStatistics stats, long count) throws InterruptedException {
+        for (int i = 0; i < 100 && stats.getCompletedCount() < count; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(count, stats.getCompletedCount());
+    }
+
+    private static final class Sleeper implements Runnable {
+        private final CountDownLatch latch;
+
+        private Sleeper(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        public void run() {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            latch.countDown();
+        }
+    }
+}
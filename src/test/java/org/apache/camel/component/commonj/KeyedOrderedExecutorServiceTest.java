@@ -0,0 +1,248 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class KeyedOrderedExecutorServiceTest {
+
+    private ExecutorService pool = Executors.newFixedThreadPool(8);
+    private KeyedOrderedExecutorService executor = new KeyedOrderedExecutorService(pool, new ExchangeHeaderKeyExtractor(), "test");
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testTasksOfAKeyRunInOrder() throws Exception {
+        executor.setBatchSize(4);
+        final int keys = 50;
+        final int tasks = 200;
+        final ConcurrentHashMap<Integer, List<Integer>> runs = new ConcurrentHashMap<Integer, List<Integer>>();
+        final ConcurrentHashMap<Integer, AtomicInteger> running = new ConcurrentHashMap<Integer, AtomicInteger>();
+        final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        final CountDownLatch done = new CountDownLatch(keys * tasks);
+        for (int i = 0; i < keys; i++) {
+            runs.put(i, new ArrayList<Integer>());
+            running.put(i, new AtomicInteger());
+        }
+        for (int n = 0; n < tasks; n++) {
+            for (int i = 0; i < keys; i++) {
+                final int key = i;
+                final int sequence = n;
+                executor.execute(new KeyedTask() {
+                    public Object getKey() {
+                        return key;
+                    }
+
+                    public void run() {
+                        Assert.assertEquals("Tasks of a key should not overlap", 1, running.get(key).incrementAndGet());
+                        threads.add(Thread.currentThread());
+                        runs.get(key).add(sequence);
+                        running.get(key).decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+        }
+        Assert.assertTrue(done.await(20, TimeUnit.SECONDS));
+        for (int i = 0; i < keys; i++) {
+            List<Integer> sequence = runs.get(i);
+            Assert.assertEquals(tasks, sequence.size());
+            for (int n = 0; n < tasks; n++) {
+                Assert.assertEquals(n, sequence.get(n).intValue());
+            }
+        }
+        Assert.assertTrue("Keys should run on several threads", threads.size() > 1);
+        for (int i = 0; i < 100 && executor.getKeyCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Empty queues should be removed", 0, executor.getKeyCount());
+    }
+
+    @Test
+    public void testCustomKeyExtractorAndSubmit() throws Exception {
+        final AtomicInteger order = new AtomicInteger();
+        executor = new KeyedOrderedExecutorService(pool, new WorkManagerKeyExtractor() {
+            public Object getKey(Runnable task) {
+                return "same";
+            }
+        }, "test");
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                order.compareAndSet(0, 1);
+            }
+        });
+        Future<Integer> future = executor.submit(new Callable<Integer>() {
+            public Integer call() {
+                return order.get();
+            }
+        });
+        Assert.assertEquals(1, executor.getKeyCount());
+        release.countDown();
+        Assert.assertEquals("Should run after the first task", 1, future.get(5, TimeUnit.SECONDS).intValue());
+    }
+
+    @Test
+    public void testRejectedWhenExecutorIsShutdown() throws Exception {
+        pool.shutdown();
+        try {
+            executor.execute(new KeyedTask() {
+                public Object getKey() {
+                    return "key";
+                }
+
+                public void run() {
+                }
+            });
+            Assert.fail("Should have thrown an exception");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        Assert.assertEquals(0, executor.getKeyCount());
+    }
+
+    @Test
+    public void testShutdownNowStopsTheRunningQueue() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+        executor.execute(new KeyedTask() {
+            public Object getKey() {
+                return "key";
+            }
+
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // shutdownNow interrupts the task
+                }
+            }
+        });
+        for (int i = 0; i < 2; i++) {
+            executor.execute(new KeyedTask() {
+                public Object getKey() {
+                    return "key";
+                }
+
+                public void run() {
+                    ran.incrementAndGet();
+                }
+            });
+        }
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals("The queued tasks should be returned", 2, executor.shutdownNow().size());
+        Assert.assertTrue("The queue should stop instead of waiting for the drained tasks", executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, ran.get());
+        Assert.assertEquals(0, executor.getKeyCount());
+    }
+
+    @Test
+    public void testRejectedQueueKeepsTasksOfOtherCallers() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicInteger ran = new AtomicInteger();
+        final KeyedTask other = new KeyedTask() {
+            public Object getKey() {
+                return "key";
+            }
+
+            public void run() {
+                ran.incrementAndGet();
+            }
+        };
+        executor = new KeyedOrderedExecutorService(new AbstractExecutorService() {
+            public void execute(Runnable command) {
+                if (attempts.incrementAndGet() == 1) {
+                    // another caller queues a task under the same key before the pool rejects the queue
+                    executor.execute(other);
+                    throw new RejectedExecutionException("Pool is full");
+                }
+                pool.execute(command);
+            }
+
+            public void shutdown() {
+                pool.shutdown();
+            }
+
+            public List<Runnable> shutdownNow() {
+                return pool.shutdownNow();
+            }
+
+            public boolean isShutdown() {
+                return pool.isShutdown();
+            }
+
+            public boolean isTerminated() {
+                return pool.isTerminated();
+            }
+
+            public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                return pool.awaitTermination(timeout, unit);
+            }
+        }, new ExchangeHeaderKeyExtractor(), "test");
+
+        try {
+            executor.execute(new KeyedTask() {
+                public Object getKey() {
+                    return "key";
+                }
+
+                public void run() {
+                    Assert.fail("Should have been rejected");
+                }
+            });
+            Assert.fail("Should have thrown an exception");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        for (int i = 0; i < 100 && ran.get() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("The task of the other caller should run", 1, ran.get());
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkListener;
+
+/**
+ * @version
+ */
+public class LocalWorkManagerTest {
+
+    private LocalWorkManager workmanager = new LocalWorkManager("test", 1);
+
+    @After
+    public void tearDown() throws Exception {
+        workmanager.shutdown();
+    }
+
+    @Test
+    public void testListenerEvents() throws Exception {
+        final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+        commonj.work.WorkItem item = workmanager.schedule(new TestWork(null), new WorkListener() {
+            public void workAccepted(WorkEvent event) {
+                events.add(event.getType());
+            }
+
+            public void workRejected(WorkEvent event) {
+                events.add(event.getType());
+            }
+
+            public void workStarted(WorkEvent event) {
+                events.add(event.getType());
+            }
+
+            public void workCompleted(WorkEvent event) {
+                events.add(event.getType());
+            }
+        });
+        Assert.assertTrue(workmanager.waitForAll(Arrays.asList(item), 5000));
+        Assert.assertEquals(WorkEvent.WORK_COMPLETED, item.getStatus());
+        Assert.assertEquals(Arrays.asList(WorkEvent.WORK_ACCEPTED, WorkEvent.WORK_STARTED, WorkEvent.WORK_COMPLETED), events);
+    }
+
+    @Test
+    public void testComparableWorkRunsByPriority() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        commonj.work.WorkItem blocker = workmanager.schedule(new TestWork(release));
+        waitForActive();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        List<commonj.work.WorkItem> items = new ArrayList<commonj.work.WorkItem>();
+        items.add(workmanager.schedule(new TestWork(null)));
+        for (int priority : new int[] {3, 1, 2}) {
+            items.add(workmanager.schedule(new PriorityWork(priority, order)));
+        }
+        release.countDown();
+        Assert.assertTrue(workmanager.waitForAll(items, 5000));
+        Assert.assertEquals(WorkEvent.WORK_COMPLETED, blocker.getStatus());
+        Assert.assertEquals(Arrays.asList(1, 2, 3), order);
+    }
+
+    @Test
+    public void testWorkOfOtherComparableTypesRunsInSchedulingOrder() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        workmanager.schedule(new TestWork(release));
+        waitForActive();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        List<commonj.work.WorkItem> items = new ArrayList<commonj.work.WorkItem>();
+        items.add(workmanager.schedule(new PriorityWork(2, order)));
+        items.add(workmanager.schedule(new OtherPriorityWork(0, order)));
+        items.add(workmanager.schedule(new PriorityWork(1, order)));
+        Assert.assertTrue(items.get(0).compareTo(items.get(1)) < 0);
+        Assert.assertTrue(items.get(1).compareTo(items.get(2)) < 0);
+        Assert.assertTrue(items.get(2).compareTo(items.get(0)) < 0);
+        release.countDown();
+        Assert.assertTrue(workmanager.waitForAll(items, 5000));
+        Assert.assertEquals(3, order.size());
+    }
+
+    @Test
+    public void testWaitForAny() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        commonj.work.WorkItem blocked = workmanager.schedule(new TestWork(release));
+        Assert.assertTrue(workmanager.waitForAny(Arrays.asList(blocked), LocalWorkManager.IMMEDIATE).isEmpty());
+        Assert.assertTrue(workmanager.waitForAny(Arrays.asList(blocked), 50).isEmpty());
+        Assert.assertFalse(workmanager.waitForAll(Arrays.asList(blocked), 50));
+        release.countDown();
+        Collection finished = workmanager.waitForAny(Arrays.asList(blocked), LocalWorkManager.INDEFINITE);
+        Assert.assertEquals(1, finished.size());
+    }
+
+    @Test
+    public void testRejectedWhenQueueIsFull() throws Exception {
+        workmanager.setMaxQueueSize(1);
+        CountDownLatch release = new CountDownLatch(1);
+        workmanager.schedule(new TestWork(release));
+        waitForActive();
+        Assert.assertEquals(WorkEvent.WORK_ACCEPTED, workmanager.schedule(new TestWork(null)).getStatus());
+        Assert.assertEquals(WorkEvent.WORK_REJECTED, workmanager.schedule(new TestWork(null)).getStatus());
+        release.countDown();
+    }
+
+    @Test
+    public void testQueueSizeIsNeverExceeded() throws Exception {
+        workmanager.setMaxQueueSize(10);
+        CountDownLatch release = new CountDownLatch(1);
+        workmanager.schedule(new TestWork(release));
+        waitForActive();
+        final AtomicInteger accepted = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        if (workmanager.schedule(new TestWork(null)).getStatus() == WorkEvent.WORK_ACCEPTED) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        Assert.assertEquals(10, accepted.get());
+        Assert.assertEquals(10, workmanager.getQueueSize());
+        release.countDown();
+    }
+
+    @Test
+    public void testDaemonWorkRunsOnItsOwnThread() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        workmanager.schedule(new TestWork(release));
+        final CountDownLatch daemon = new CountDownLatch(1);
+        workmanager.schedule(new WorkItem(new Thread() {
+            public void run() {
+                daemon.countDown();
+            }
+        }));
+        Assert.assertTrue(daemon.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        commonj.work.WorkItem item = workmanager.schedule(new TestWork(null));
+        workmanager.shutdown();
+        Assert.assertTrue(workmanager.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(WorkEvent.WORK_COMPLETED, item.getStatus());
+        Assert.assertEquals(WorkEvent.WORK_REJECTED, workmanager.schedule(new TestWork(null)).getStatus());
+    }
+
+    private void waitForActive() throws InterruptedException {
+        // wait for the worker to take the blocking work
+        for (int i = 0; i < 100 && workmanager.getActiveCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static class TestWork implements Work {
+        private final CountDownLatch release;
+
+        TestWork(CountDownLatch release) {
+            this.release = release;
+        }
+
+        public void run() {
+            try {
+                if (release != null) {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void release() {
+        }
+
+        public boolean isDaemon() {
+            return false;
+        }
+    }
+
+    private static final class PriorityWork extends TestWork implements Comparable<PriorityWork> {
+        private final int priority;
+        private final List<Integer> order;
+
+        PriorityWork(int priority, List<Integer> order) {
+            super(null);
+            this.priority = priority;
+            this.order = order;
+        }
+
+        public void run() {
+            order.add(priority);
+        }
+
+        public int compareTo(PriorityWork other) {
+            return priority - other.priority;
+        }
+    }
+
+    private static final class OtherPriorityWork extends TestWork implements Comparable<OtherPriorityWork> {
+        private final int priority;
+        private final List<Integer> order;
+
+        OtherPriorityWork(int priority, List<Integer> order) {
+            super(null);
+            this.priority = priority;
+            this.order = order;
+        }
+
+        public void run() {
+            order.add(priority);
+        }
+
+        public int compareTo(OtherPriorityWork other) {
+            return priority - other.priority;
+        }
+    }
+}
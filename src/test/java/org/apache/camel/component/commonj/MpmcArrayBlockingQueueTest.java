@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Assert;
+
+import org.apache.camel.spi.ThreadPoolProfile;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class MpmcArrayBlockingQueueTest {
+
+    @Test
+    public void testBoundedFifo() throws Exception {
+        MpmcArrayBlockingQueue<Integer> queue = new MpmcArrayBlockingQueue<Integer>(3);
+        Assert.assertTrue(queue.offer(1));
+        Assert.assertTrue(queue.offer(2));
+        Assert.assertTrue(queue.offer(3));
+        Assert.assertFalse(queue.offer(4));
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(0, queue.remainingCapacity());
+        Assert.assertEquals(Integer.valueOf(1), queue.peek());
+        Assert.assertEquals(Integer.valueOf(1), queue.poll());
+        Assert.assertTrue(queue.offer(4));
+        List<Integer> drained = new ArrayList<Integer>();
+        Assert.assertEquals(3, queue.drainTo(drained));
+        Assert.assertEquals("[2, 3, 4]", drained.toString());
+        Assert.assertNull(queue.poll());
+        Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        MpmcArrayBlockingQueue<Integer> queue = new MpmcArrayBlockingQueue<Integer>(3);
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(3);
+        Assert.assertTrue(queue.remove(Integer.valueOf(2)));
+        Assert.assertFalse(queue.remove(Integer.valueOf(2)));
+        Assert.assertEquals(2, queue.size());
+        // the slot is freed once the consumers pass it
+        Assert.assertEquals(0, queue.remainingCapacity());
+        Assert.assertEquals(Integer.valueOf(1), queue.poll());
+        Assert.assertEquals(Integer.valueOf(3), queue.poll());
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(0, queue.size());
+        Assert.assertEquals(3, queue.remainingCapacity());
+    }
+
+    @Test
+    public void testThreadPoolPurgesCancelledTasks() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new MpmcArrayBlockingQueue<Runnable>(10));
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        // shut down
+                    }
+                }
+            });
+            Runnable task = new Runnable() {
+                public void run() {
+                }
+            };
+            executor.execute(task);
+            executor.submit(task).cancel(false);
+            Assert.assertEquals(2, executor.getQueue().size());
+            executor.purge();
+            Assert.assertEquals(1, executor.getQueue().size());
+            Assert.assertTrue(executor.remove(task));
+            Assert.assertEquals(0, executor.getQueue().size());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTakeWaitsForPut() throws Exception {
+        final MpmcArrayBlockingQueue<String> queue = new MpmcArrayBlockingQueue<String>(2);
+        queue.put("zero");
+        queue.put("first");
+        new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    Assert.assertEquals("zero", queue.take());
+                    Thread.sleep(50);
+                    queue.put("third");
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        }.start();
+        // blocks until the other thread took the first element
+        queue.put("second");
+        Assert.assertEquals("first", queue.take());
+        Assert.assertEquals("second", queue.take());
+        Assert.assertEquals("third", queue.take());
+    }
+
+    @Test
+    public void testManyProducersAndConsumers() throws Exception {
+        final MpmcArrayBlockingQueue<Long> queue = new MpmcArrayBlockingQueue<Long>(16);
+        final int producers = 4;
+        final int count = 20000;
+        final AtomicLong sum = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(producers * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(producers * 2);
+        for (int p = 0; p < producers; p++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        for (long i = 1; i <= count; i++) {
+                            queue.put(i);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                }
+            });
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < count; i++) {
+                            sum.addAndGet(queue.take());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertEquals(producers * ((long)count * (count + 1) / 2), sum.get());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testFactoryUsesQueueTypeOfProfile() throws Exception {
+        WorkManagerThreadPoolFactory factory = new WorkManagerThreadPoolFactory();
+        WorkManagerPoolProfile poolProfile = new WorkManagerPoolProfile("mpmc");
+        poolProfile.setQueueType(WorkManagerQueueType.MPMC);
+        factory.addPoolProfile(poolProfile);
+
+        ThreadPoolProfile profile = new ThreadPoolProfile("mpmc");
+        profile.setPoolSize(2);
+        profile.setMaxPoolSize(2);
+        profile.setKeepAliveTime(60L);
+        profile.setMaxQueueSize(100);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor)factory.newThreadPool(profile, Executors.defaultThreadFactory());
+        Assert.assertTrue(executor.getQueue() instanceof MpmcArrayBlockingQueue);
+
+        final CountDownLatch latch = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    latch.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
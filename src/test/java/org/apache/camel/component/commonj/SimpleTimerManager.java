@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.Date;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import commonj.timers.CancelTimerListener;
+import commonj.timers.Timer;
+import commonj.timers.TimerListener;
+import commonj.timers.TimerManager;
+
+/**
+ * In-memory TimerManager stand-in which keeps its timers on a single JDK
+ * scheduler thread.
+ */
+public class SimpleTimerManager implements TimerManager {
+
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+    private final AtomicInteger expirations = new AtomicInteger();
+    private volatile boolean suspended;
+    private volatile boolean stopped;
+
+    public Timer schedule(TimerListener listener, Date time) {
+        return schedule(listener, Math.max(0, time.getTime() - System.currentTimeMillis()));
+    }
+
+    public Timer schedule(TimerListener listener, long delay) {
+        SimpleTimer timer = new SimpleTimer(listener, delay, 0);
+        timer.future = scheduler.schedule(timer, delay, TimeUnit.MILLISECONDS);
+        return timer;
+    }
+
+    public Timer schedule(TimerListener listener, Date firstTime, long period) {
+        return schedule(listener, Math.max(0, firstTime.getTime() - System.currentTimeMillis()), period);
+    }
+
+    public Timer schedule(TimerListener listener, long delay, long period) {
+        SimpleTimer timer = new SimpleTimer(listener, delay, period);
+        timer.future = scheduler.scheduleWithFixedDelay(timer, delay, period, TimeUnit.MILLISECONDS);
+        return timer;
+    }
+
+    public Timer scheduleAtFixedRate(TimerListener listener, Date firstTime, long period) {
+        return scheduleAtFixedRate(listener, Math.max(0, firstTime.getTime() - System.currentTimeMillis()), period);
+    }
+
+    public Timer scheduleAtFixedRate(TimerListener listener, long delay, long period) {
+        SimpleTimer timer = new SimpleTimer(listener, delay, period);
+        timer.future = scheduler.scheduleAtFixedRate(timer, delay, period, TimeUnit.MILLISECONDS);
+        return timer;
+    }
+
+    public void suspend() {
+        suspended = true;
+    }
+
+    public boolean isSuspending() {
+        return false;
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    public boolean waitForSuspend(long timeout) throws InterruptedException {
+        return suspended;
+    }
+
+    public void resume() {
+        suspended = false;
+    }
+
+    public void stop() {
+        stopped = true;
+        scheduler.shutdownNow();
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public boolean isStopping() {
+        return false;
+    }
+
+    public boolean waitForStop(long timeout) throws InterruptedException {
+        return scheduler.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Number of timers which are still scheduled.
+     */
+    public int getScheduledCount() {
+        return scheduler.getQueue().size();
+    }
+
+    /**
+     * Number of times a timer expired.
+     */
+    public int getExpirations() {
+        return expirations.get();
+    }
+
+    private final class SimpleTimer implements Timer, Runnable {
+        private final TimerListener listener;
+        private final long period;
+        private volatile long scheduledExecutionTime;
+        private volatile ScheduledFuture<?> future;
+
+        private SimpleTimer(TimerListener listener, long delay, long period) {
+            this.listener = listener;
+            this.period = period;
+            this.scheduledExecutionTime = System.currentTimeMillis() + delay;
+        }
+
+        public void run() {
+            if (suspended) {
+                return;
+            }
+            expirations.incrementAndGet();
+            listener.timerExpired(this);
+            scheduledExecutionTime += period;
+        }
+
+        public boolean cancel() {
+            boolean answer = future != null && future.cancel(false);
+            scheduler.remove((Runnable)future);
+            if (answer && listener instanceof CancelTimerListener) {
+                ((CancelTimerListener)listener).timerCancel(this);
+            }
+            return answer;
+        }
+
+        public TimerListener getTimerListener() {
+            return listener;
+        }
+
+        public long getScheduledExecutionTime() {
+            return scheduledExecutionTime;
+        }
+
+        public long getPeriod() {
+            return period;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class TimerManagerScheduledExecutorServiceTest {
+
+    private SimpleTimerManager timerManager = new SimpleTimerManager();
+    private ExecutorWorkManager workmanager = new ExecutorWorkManager();
+    private TimerManagerScheduledExecutorService executor = new TimerManagerScheduledExecutorService(timerManager, workmanager, "test");
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        timerManager.stop();
+        workmanager.shutdown();
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        long start = System.currentTimeMillis();
+        ScheduledFuture<String> future = executor.schedule(new Callable<String>() {
+            public String call() throws Exception {
+                return "Bye World";
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(0, workmanager.getScheduledCount());
+        Assert.assertEquals("Bye World", future.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+        Assert.assertEquals(1, workmanager.getScheduledCount());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        ScheduledFuture<?> future = executor.schedule(new Runnable() {
+            public void run() {
+                Assert.fail("Should have been cancelled");
+            }
+        }, 1, TimeUnit.HOURS);
+        Assert.assertEquals(1, executor.getScheduledCount());
+        Assert.assertEquals(1, timerManager.getScheduledCount());
+        Assert.assertTrue(future.cancel(false));
+        Assert.assertEquals(0, executor.getScheduledCount());
+        Assert.assertEquals(0, timerManager.getScheduledCount());
+    }
+
+    @Test
+    public void testFixedRate() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(5);
+        ScheduledFuture<?> future = executor.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, 0, 20, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        future.cancel(false);
+        Assert.assertTrue(workmanager.getScheduledCount() >= 5);
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFixedDelay() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, 0, 20, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        // shutdown cancels the periodic tasks
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, executor.getScheduledCount());
+    }
+}
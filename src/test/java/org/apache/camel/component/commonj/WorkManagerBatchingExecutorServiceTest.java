@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkException;
+import commonj.work.WorkItem;
+import commonj.work.WorkListener;
+
+/**
+ * @version
+ */
+public class WorkManagerBatchingExecutorServiceTest {
+
+    private ExecutorWorkManager workmanager = new ExecutorWorkManager();
+
+    @After
+    public void tearDown() {
+        workmanager.shutdown();
+    }
+
+    @Test
+    public void testBatchesTasks() throws Exception {
+        ExecutorService executor = new WorkManagerBatchingExecutorService(workmanager, "test", 100, 50, 2);
+        final CountDownLatch latch = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    latch.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue("Expected tasks to be batched but got " + workmanager.getScheduledCount() + " works",
+                          workmanager.getScheduledCount() < 1000);
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailingTaskDoesNotAffectBatch() throws Exception {
+        ExecutorService executor = new WorkManagerBatchingExecutorService(workmanager, "test", 10, 1000, 1);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < 10; i++) {
+            final int number = i;
+            futures.add(executor.submit(new Runnable() {
+                public void run() {
+                    if (number == 5) {
+                        throw new IllegalStateException("Forced");
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < 10; i++) {
+            try {
+                futures.get(i).get(5, TimeUnit.SECONDS);
+                Assert.assertTrue(i != 5);
+            } catch (ExecutionException e) {
+                Assert.assertEquals(5, i);
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRejectedBatchRejectsOnlyTheCallersTask() throws Exception {
+        WorkManagerBatchingExecutorService executor = new WorkManagerBatchingExecutorService(workmanager, "test", 1, 0, 2);
+        executor.setCallerRunsWhenRejected(false);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // shut down
+                }
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        // waits for the running batch
+        Future<String> queued = executor.submit(new Runnable() {
+            public void run() {
+            }
+        }, "queued");
+
+        workmanager.setRejectAll(true);
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    Assert.fail("Should have been rejected");
+                }
+            });
+            Assert.fail("Should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        Assert.assertEquals(1, executor.getRejectedCount());
+        Assert.assertEquals(1, executor.getQueueSize());
+
+        workmanager.setRejectAll(false);
+        release.countDown();
+        Assert.assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLateRejectionRejectsQueuedTasks() throws Exception {
+        final AtomicReference<DefaultWorkItem> scheduled = new AtomicReference<DefaultWorkItem>();
+        workmanager = new ExecutorWorkManager() {
+            public WorkItem schedule(Work work, WorkListener workListener) {
+                // accepts the work, but reports the rejection later on
+                DefaultWorkItem answer = new DefaultWorkItem(work, workListener);
+                scheduled.set(answer);
+                return answer;
+            }
+        };
+        WorkManagerBatchingExecutorService executor = new WorkManagerBatchingExecutorService(workmanager, "test", 1, 0, 1);
+        executor.setCallerRunsWhenRejected(false);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < 2; i++) {
+            futures.add(executor.submit(new Runnable() {
+                public void run() {
+                    Assert.fail("Should have been rejected");
+                }
+            }));
+        }
+        Assert.assertEquals(2, executor.getQueueSize());
+
+        scheduled.get().setStatus(WorkEvent.WORK_REJECTED, new WorkException("rejected"));
+        for (Future<?> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                Assert.fail("Should have been rejected");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        Assert.assertEquals(0, executor.getQueueSize());
+        Assert.assertEquals(2, executor.getRejectedCount());
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class WorkManagerBulkheadTest {
+
+    private ExecutorService first = Executors.newCachedThreadPool();
+    private ExecutorService second = Executors.newCachedThreadPool();
+    private CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        first.shutdownNow();
+        second.shutdownNow();
+    }
+
+    @Test
+    public void testFailFastWhenPermitsAreTaken() throws Exception {
+        WorkManagerBulkhead bulkhead = new WorkManagerBulkhead("route", 2);
+        ExecutorService a = new WorkManagerBulkheadExecutorService(bulkhead, first);
+        ExecutorService b = new WorkManagerBulkheadExecutorService(bulkhead, second);
+        CountDownLatch started = new CountDownLatch(2);
+        a.execute(new WorkManagerTestHelper.Blocker(started, release));
+        b.execute(new WorkManagerTestHelper.Blocker(started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, bulkhead.getInFlightCount());
+
+        try {
+            a.execute(new WorkManagerTestHelper.Blocker(started, release));
+            Assert.fail("Should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        Assert.assertEquals(1, bulkhead.getDeniedCount());
+
+        release.countDown();
+        waitForInFlight(bulkhead, 0);
+        Assert.assertEquals(2, bulkhead.getAcceptedCount());
+    }
+
+    @Test
+    public void testWaitingTaskRunsWhenPermitIsFree() throws Exception {
+        WorkManagerBulkhead bulkhead = new WorkManagerBulkhead("route", 1);
+        bulkhead.setMaxWaiting(1);
+        ExecutorService executor = new WorkManagerBulkheadExecutorService(bulkhead, first);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new WorkManagerTestHelper.Blocker(started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Future<String> waiting = executor.submit(new Runnable() {
+            public void run() {
+            }
+        }, "done");
+        Assert.assertEquals(1, bulkhead.getWaitingCount());
+        try {
+            executor.execute(new WorkManagerTestHelper.Blocker(started, release));
+            Assert.fail("Should have been rejected as the waiting room is full");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        release.countDown();
+        Assert.assertEquals("done", waiting.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, bulkhead.getWaitingCount());
+        Assert.assertEquals(1, bulkhead.getWaitedCount());
+        Assert.assertEquals(1, bulkhead.getDeniedCount());
+    }
+
+    @Test
+    public void testWaitingTaskExpires() throws Exception {
+        WorkManagerBulkhead bulkhead = new WorkManagerBulkhead("route", 1);
+        bulkhead.setMaxWaiting(10);
+        bulkhead.setMaxWaitTime(50);
+        ExecutorService executor = new WorkManagerBulkheadExecutorService(bulkhead, first);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new WorkManagerTestHelper.Blocker(started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Future<?> waiting = executor.submit(new Runnable() {
+            public void run() {
+                Assert.fail("Should have expired");
+            }
+        });
+        Thread.sleep(100);
+        release.countDown();
+        try {
+            waiting.get(5, TimeUnit.SECONDS);
+            Assert.fail("Should have been rejected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(1, bulkhead.getExpiredCount());
+        waitForInFlight(bulkhead, 0);
+    }
+
+    @Test
+    public void testWaitingTaskExpiresWhilePermitsAreTaken() throws Exception {
+        WorkManagerBulkhead bulkhead = new WorkManagerBulkhead("route", 1);
+        bulkhead.setMaxWaiting(10);
+        bulkhead.setMaxWaitTime(50);
+        ExecutorService executor = new WorkManagerBulkheadExecutorService(bulkhead, first);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new WorkManagerTestHelper.Blocker(started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Future<?> waiting = executor.submit(new Runnable() {
+            public void run() {
+                Assert.fail("Should have expired");
+            }
+        });
+        Thread.sleep(100);
+        // the next task rejects the expired one, while the permit is still taken
+        executor.submit(new Runnable() {
+            public void run() {
+            }
+        });
+        try {
+            waiting.get(5, TimeUnit.SECONDS);
+            Assert.fail("Should have been rejected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(1, bulkhead.getExpiredCount());
+        Assert.assertEquals(1, bulkhead.getWaitingCount());
+        Assert.assertEquals(1, bulkhead.getInFlightCount());
+    }
+
+    @Test
+    public void testHandOffDoesNotRecurse() throws Exception {
+        WorkManagerBulkhead bulkhead = new WorkManagerBulkhead("route", 1);
+        bulkhead.setMaxWaiting(100);
+        bulkhead.setMaxWaitTime(5000);
+        CountDownLatch started = new CountDownLatch(1);
+        bulkhead.execute(new WorkManagerTestHelper.Blocker(started, release), first);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // runs the tasks in the thread handing them off, as a CallerRuns pool does when it is full
+        Executor callerRuns = new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        final List<Integer> depths = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            bulkhead.execute(new Runnable() {
+                public void run() {
+                    depths.add(Thread.currentThread().getStackTrace().length);
+                    done.countDown();
+                }
+            }, callerRuns);
+        }
+        Assert.assertEquals(50, bulkhead.getWaitingCount());
+
+        release.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("The waiting tasks should be handed off in a loop", 1, new HashSet<Integer>(depths).size());
+        waitForInFlight(bulkhead, 0);
+    }
+
+    @Test
+    public void testPermitsAreNeverExceeded() throws Exception {
+        final WorkManagerBulkhead bulkhead = new WorkManagerBulkhead("route", 3);
+        bulkhead.setMaxWaiting(10000);
+        bulkhead.setMaxWaitTime(60000);
+        final ExecutorService executor = new WorkManagerBulkheadExecutorService(bulkhead, first);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(4000);
+        final Runnable task = new Runnable() {
+            public void run() {
+                int current = running.incrementAndGet();
+                while (current > maxRunning.get()) {
+                    maxRunning.compareAndSet(maxRunning.get(), current);
+                }
+                Thread.yield();
+                running.decrementAndGet();
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < 4; i++) {
+            second.execute(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        executor.execute(task);
+                    }
+                }
+            });
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue("Ran " + maxRunning.get() + " tasks at once", maxRunning.get() <= 3);
+        waitForInFlight(bulkhead, 0);
+        Assert.assertEquals(0, bulkhead.getDeniedCount());
+    }
+
+    @Test
+    public void testShutdownNowGivesBackThePermits() throws Exception {
+        WorkManagerBulkhead bulkhead = new WorkManagerBulkhead("route", 2);
+        ExecutorService pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        ExecutorService executor = new WorkManagerBulkheadExecutorService(bulkhead, pool);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new WorkManagerTestHelper.Blocker(started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Runnable queued = new WorkManagerTestHelper.Blocker(started, release);
+        executor.execute(queued);
+        Assert.assertEquals(2, bulkhead.getInFlightCount());
+
+        List<Runnable> tasks = executor.shutdownNow();
+        Assert.assertEquals(1, tasks.size());
+        Assert.assertSame(queued, tasks.get(0));
+        waitForInFlight(bulkhead, 0);
+    }
+
+    @Test
+    public void testFactoryMatchesProfile() throws Exception {
+        WorkManagerBulkhead bulkhead = new WorkManagerBulkhead();
+        bulkhead.setProfileId("limited");
+        WorkManagerThreadPoolFactory factory = new WorkManagerThreadPoolFactory();
+        factory.setBulkheads(Collections.singletonList(bulkhead));
+
+        ExecutorService limited = factory.newThreadPool(WorkManagerTestHelper.profile("limited", 1, 2), Executors.defaultThreadFactory());
+        ExecutorService other = factory.newThreadPool(WorkManagerTestHelper.profile("other", 1, 2), Executors.defaultThreadFactory());
+        try {
+            Assert.assertTrue(limited instanceof WorkManagerBulkheadExecutorService);
+            Assert.assertSame(bulkhead, ((WorkManagerBulkheadExecutorService)limited).getBulkhead());
+            Assert.assertFalse(other instanceof WorkManagerBulkheadExecutorService);
+            // the registry reads the numbers of the pool behind the bulkhead
+            Assert.assertEquals(0, factory.getPoolRegistry().getPool(limited).getQueueSize());
+        } finally {
+            limited.shutdownNow();
+            other.shutdownNow();
+        }
+    }
+
+    private static void waitForInFlight(WorkManagerBulkhead bulkhead, int expected) throws InterruptedException {
+        for (int i = 0; i < 500 && bulkhead.getInFlightCount() != expected; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, bulkhead.getInFlightCount());
+    }
+}
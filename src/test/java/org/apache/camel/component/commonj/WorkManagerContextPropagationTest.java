@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+/**
+ * @version
+ */
+public class WorkManagerContextPropagationTest {
+
+    private ExecutorWorkManager workmanager = new ExecutorWorkManager();
+    private WorkManagerThreadPoolFactory factory = new WorkManagerThreadPoolFactory();
+    private List<ExecutorService> pools = new ArrayList<ExecutorService>();
+
+    @After
+    public void tearDown() throws Exception {
+        MDC.clear();
+        for (ExecutorService pool : pools) {
+            pool.shutdownNow();
+        }
+        factory.shutdown();
+        workmanager.shutdown();
+    }
+
+    @Test
+    public void testMdcOfThreadPool() throws Exception {
+        factory.setWorkmanager(workmanager);
+        factory.setContextPropagators(Collections.<WorkManagerContextPropagator>singletonList(new MdcContextPropagator()));
+        ExecutorService pool = pool(factory.newThreadPool(WorkManagerTestHelper.profile("mdc", 1, 1), Executors.defaultThreadFactory()));
+        // propagated inline by the pool itself
+        Assert.assertTrue(pool instanceof WorkManagerThreadPoolExecutor);
+
+        assertMdcPropagated(pool);
+    }
+
+    @Test
+    public void testMdcOfTaskPool() throws Exception {
+        factory.setWorkmanager(workmanager);
+        factory.getDefaultPoolProfile().setPoolType(WorkManagerPoolType.TASK);
+        factory.setContextPropagators(Collections.<WorkManagerContextPropagator>singletonList(new MdcContextPropagator()));
+        ExecutorService pool = pool(factory.newCachedThreadPool(Executors.defaultThreadFactory()));
+        Assert.assertTrue(pool instanceof WorkManagerExecutorService);
+
+        assertMdcPropagated(pool);
+    }
+
+    @Test
+    public void testMdcOfWrappedExecutor() throws Exception {
+        ExecutorService pool = pool(new WorkManagerContextExecutorService(Executors.newSingleThreadExecutor(),
+            Collections.<WorkManagerContextPropagator>singletonList(new MdcContextPropagator())));
+
+        assertMdcPropagated(pool);
+    }
+
+    @Test
+    public void testNoPropagatorsLeavesPoolUnwrapped() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        pools.add(executor);
+        Assert.assertSame(executor, WorkManagerContextExecutorService.propagate(executor, new WorkManagerContextPropagator[0]));
+    }
+
+    @Test
+    public void testClassLoaderOfThreadPool() throws Exception {
+        factory.setContextPropagators(Arrays.<WorkManagerContextPropagator>asList(new MdcContextPropagator(),
+            new ClassLoaderContextPropagator()));
+        ExecutorService pool = pool(factory.newThreadPool(WorkManagerTestHelper.profile("loader", 1, 1), Executors.defaultThreadFactory()));
+        final ClassLoader carrier = pool.submit(new ClassLoaderOf()).get(5, TimeUnit.SECONDS);
+
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        ClassLoader application = new URLClassLoader(new URL[0], original);
+        Thread.currentThread().setContextClassLoader(application);
+        try {
+            Assert.assertSame(application, pool.submit(new ClassLoaderOf()).get(5, TimeUnit.SECONDS));
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+        // the carrier gets its own class loader back
+        Assert.assertSame(carrier, pool.submit(new ClassLoaderOf()).get(5, TimeUnit.SECONDS));
+    }
+
+    private void assertMdcPropagated(ExecutorService pool) throws Exception {
+        MDC.put("camel.breadcrumbId", "first");
+        Future<String> first = pool.submit(new MdcOf());
+        // the context is captured on submission
+        MDC.put("camel.breadcrumbId", "second");
+        Assert.assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("second", pool.submit(new MdcOf()).get(5, TimeUnit.SECONDS));
+
+        // the carrier does not keep the context of the last task
+        MDC.clear();
+        Assert.assertNull(pool.submit(new MdcOf()).get(5, TimeUnit.SECONDS));
+    }
+
+    private ExecutorService pool(ExecutorService pool) {
+        pools.add(pool);
+        return pool;
+    }
+
+    private static final class MdcOf implements Callable<String> {
+        public String call() {
+            return MDC.get("camel.breadcrumbId");
+        }
+    }
+
+    private static final class ClassLoaderOf implements Callable<ClassLoader> {
+        public ClassLoader call() {
+            return Thread.currentThread().getContextClassLoader();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class WorkManagerExecutorServiceHelperTest {
+
+    private ExecutorWorkManager first = new ExecutorWorkManager();
+    private ExecutorWorkManager second = new ExecutorWorkManager();
+
+    @After
+    public void tearDown() {
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    public void testPoolsUseTheirOwnWorkManager() throws Exception {
+        ExecutorService firstPool = WorkManagerExecutorServiceHelper.newFixedThreadPool(first, 1, "#name#", "first", true);
+        ExecutorService secondPool = WorkManagerExecutorServiceHelper.newThreadPool(second, "#name#", "second", 1, 1);
+        ExecutorService jdkPool = WorkManagerExecutorServiceHelper.newSingleThreadExecutor(null, "#name#", "jdk", true);
+        try {
+            Assert.assertEquals("first", firstPool.submit(new Echo("first")).get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, first.getScheduledCount());
+            Assert.assertEquals(0, second.getScheduledCount());
+
+            Assert.assertEquals("second", secondPool.submit(new Echo("second")).get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, first.getScheduledCount());
+            Assert.assertEquals(1, second.getScheduledCount());
+
+            Assert.assertEquals("jdk", jdkPool.submit(new Echo("jdk")).get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, first.getScheduledCount());
+            Assert.assertEquals(1, second.getScheduledCount());
+        } finally {
+            firstPool.shutdownNow();
+            secondPool.shutdownNow();
+            jdkPool.shutdownNow();
+        }
+    }
+
+    private static final class Echo implements Callable<String> {
+        private final String value;
+
+        private Echo(String value) {
+            this.value = value;
+        }
+
+        public String call() {
+            return value;
+        }
+    }
+}
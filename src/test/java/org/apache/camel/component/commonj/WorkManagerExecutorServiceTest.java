@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.apache.camel.spi.ThreadPoolProfile;
+import org.apache.camel.util.concurrent.Rejectable;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class WorkManagerExecutorServiceTest {
+
+    private ExecutorWorkManager workmanager = new ExecutorWorkManager();
+
+    @After
+    public void tearDown() {
+        workmanager.shutdown();
+    }
+
+    @Test
+    public void testEachTaskIsScheduledAsWork() throws Exception {
+        ExecutorService executor = new WorkManagerExecutorService(workmanager, "test");
+        final CountDownLatch latch = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    latch.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(10, workmanager.getScheduledCount());
+
+        Future<String> future = executor.submit(new Callable<String>() {
+            public String call() throws Exception {
+                return "Bye World";
+            }
+        });
+        Assert.assertEquals("Bye World", future.get(5, TimeUnit.SECONDS));
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRejectedWorkFailsFuture() throws Exception {
+        workmanager.setRejectAll(true);
+        ExecutorService executor = new WorkManagerExecutorService(workmanager, "test");
+        Future<?> future = executor.submit(new Runnable() {
+            public void run() {
+            }
+        });
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("Should have been rejected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    public void testRejectedWorkFollowsPolicy() throws Exception {
+        workmanager.setRejectAll(true);
+        WorkManagerExecutorService executor = new WorkManagerExecutorService(workmanager, "test");
+        final AtomicReference<Thread> runner = new AtomicReference<Thread>();
+        executor.execute(new Runnable() {
+            public void run() {
+                runner.set(Thread.currentThread());
+            }
+        });
+        // the WorkManager reports the rejection in the scheduling thread
+        Assert.assertSame(Thread.currentThread(), runner.get());
+
+        executor.setCallerRunsWhenRejected(false);
+        final AtomicBoolean rejected = new AtomicBoolean();
+        executor.execute(new RejectableTask(rejected));
+        Assert.assertTrue(rejected.get());
+        Assert.assertEquals(2, executor.getRejectedCount());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testShutdownNowInterruptsRunningAndReturnsWaitingTasks() throws Exception {
+        workmanager.shutdown();
+        workmanager = new ExecutorWorkManager(1);
+        ExecutorService executor = new WorkManagerExecutorService(workmanager, "test");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final AtomicBoolean ran = new AtomicBoolean();
+        executor.execute(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        });
+        Runnable waiting = new Runnable() {
+            public void run() {
+                ran.set(true);
+            }
+        };
+        executor.execute(waiting);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals(Collections.singletonList(waiting), executor.shutdownNow());
+        Assert.assertTrue("The running task should be interrupted", interrupted.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertFalse("The returned task should not run", ran.get());
+    }
+
+    @Test
+    public void testFactoryCreatesTaskExecutorForProfile() throws Exception {
+        WorkManagerThreadPoolFactory factory = new WorkManagerThreadPoolFactory();
+        factory.setWorkmanager(workmanager);
+        WorkManagerPoolProfile poolProfile = new WorkManagerPoolProfile("fast");
+        poolProfile.setPoolType(WorkManagerPoolType.TASK);
+        factory.addPoolProfile(poolProfile);
+
+        ThreadPoolProfile profile = new ThreadPoolProfile("fast");
+        profile.setPoolSize(1);
+        profile.setMaxPoolSize(1);
+        profile.setKeepAliveTime(60L);
+        profile.setMaxQueueSize(10);
+        ExecutorService executor = factory.newThreadPool(profile, Executors.defaultThreadFactory());
+        Assert.assertTrue(executor instanceof WorkManagerExecutorService);
+        executor.shutdown();
+    }
+
+    private static final class RejectableTask implements Runnable, Rejectable {
+        private final AtomicBoolean rejected;
+
+        private RejectableTask(AtomicBoolean rejected) {
+            this.rejected = rejected;
+        }
+
+        public void run() {
+            Assert.fail("Should have been rejected");
+        }
+
+        public void reject() {
+            rejected.set(true);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class WorkManagerForkJoinWorkerThreadFactoryTest {
+
+    private LocalWorkManager workmanager = new LocalWorkManager("test", 2);
+    private ForkJoinPool pool;
+
+    @After
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        workmanager.shutdown();
+    }
+
+    @Test
+    public void testWorkersLeaseSlots() throws Exception {
+        WorkManagerForkJoinWorkerThreadFactory factory = new WorkManagerForkJoinWorkerThreadFactory(workmanager, "fj");
+        pool = new ForkJoinPool(2, factory, null, false);
+
+        Assert.assertEquals(Long.valueOf(500500), pool.invoke(new Sum(1, 1000)));
+        // the caller may have run the task before a lease started
+        for (int i = 0; i < 100 && factory.getLeaseCount() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(factory.getLeaseCount() >= 1);
+        Assert.assertTrue(factory.getLeaseCount() <= 2);
+        Assert.assertEquals(factory.getLeaseCount(), workmanager.getActiveCount());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && factory.getLeaseCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Terminated workers should release their slot", 0, factory.getLeaseCount());
+    }
+
+    @Test
+    public void testNoWorkerWithoutSlot() throws Exception {
+        WorkManagerForkJoinWorkerThreadFactory factory = new WorkManagerForkJoinWorkerThreadFactory(workmanager, "fj");
+        pool = new ForkJoinPool(4, factory, null, false);
+
+        Assert.assertEquals(Long.valueOf(500500), pool.invoke(new Sum(1, 1000)));
+        Assert.assertTrue("Should not lease more slots than the WorkManager has", factory.getLeaseCount() <= 2);
+    }
+
+    @Test
+    public void testCompensatingWorkerRunsWithoutSlot() throws Exception {
+        WorkManagerForkJoinWorkerThreadFactory factory = new WorkManagerForkJoinWorkerThreadFactory(workmanager, "fj");
+        pool = factory.newPool(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch unblocked = new CountDownLatch(1);
+        Future<?> blocked = pool.submit(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                        public boolean block() throws InterruptedException {
+                            unblocked.await();
+                            return true;
+                        }
+
+                        public boolean isReleasable() {
+                            return unblocked.getCount() == 0;
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        // the pool starts a worker beyond its parallelism to run this task
+        pool.submit(new Runnable() {
+            public void run() {
+                unblocked.countDown();
+            }
+        });
+        blocked.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(1, factory.getLeaseCount());
+    }
+
+    @Test
+    public void testNewThreadDoesNotWaitForSlot() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            workmanager.schedule(new WorkManagerTestHelper.Blocker(release));
+        }
+        try {
+            WorkManagerForkJoinWorkerThreadFactory factory = new WorkManagerForkJoinWorkerThreadFactory(workmanager, "fj");
+            pool = factory.newPool(2);
+            long start = System.nanoTime();
+            Future<Long> sum = pool.submit(new Sum(1, 1000));
+            Assert.assertTrue("Should not wait for the WorkManager", System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+            Thread.sleep(100);
+            Assert.assertFalse("Workers should wait for their lease", sum.isDone());
+            Assert.assertEquals(0, factory.getLeaseCount());
+
+            release.countDown();
+            Assert.assertEquals(Long.valueOf(500500), sum.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(2, factory.getLeaseCount());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testShutdownReleasesLeases() throws Exception {
+        WorkManagerForkJoinWorkerThreadFactory factory = new WorkManagerForkJoinWorkerThreadFactory(workmanager, "fj");
+        pool = factory.newPool(2);
+        for (int i = 0; i < 100 && factory.getLeaseCount() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Leases should be reserved up front", 2, factory.getLeaseCount());
+        Assert.assertEquals(Long.valueOf(500500), pool.invoke(new Sum(1, 1000)));
+        Assert.assertEquals("Workers should use the reserved leases", 2, factory.getLeaseCount());
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && factory.getLeaseCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, factory.getLeaseCount());
+        Assert.assertEquals(0, workmanager.getActiveCount());
+    }
+
+    @Test
+    public void testLeasesOnSlotReservoir() throws Exception {
+        WorkManagerSlotReservoir reservoir = new WorkManagerSlotReservoir(workmanager, 0);
+        reservoir.start();
+        WorkManagerForkJoinWorkerThreadFactory factory = new WorkManagerForkJoinWorkerThreadFactory(reservoir, "fj");
+        pool = factory.newPool(2);
+
+        Assert.assertEquals(Long.valueOf(500500), pool.invoke(new Sum(1, 1000)));
+        pool.shutdownNow();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && reservoir.getIdleCount() < reservoir.getCarrierCount(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Released leases should return to the reservoir", reservoir.getCarrierCount(), reservoir.getIdleCount());
+        reservoir.shutdown();
+    }
+
+    @Test
+    public void testFactoryPool() throws Exception {
+        WorkManagerThreadPoolFactory factory = new WorkManagerThreadPoolFactory();
+        factory.setWorkmanager(workmanager);
+        ForkJoinPool answer = (ForkJoinPool)factory.newForkJoinPool(workmanager, "fj", 3);
+        try {
+            Assert.assertEquals(3, answer.getParallelism());
+            Assert.assertTrue(answer.getFactory() instanceof WorkManagerForkJoinWorkerThreadFactory);
+        } finally {
+            answer.shutdownNow();
+        }
+    }
+
+    private static final class Sum extends RecursiveTask<Long> {
+        private final int from;
+        private final int to;
+
+        private Sum(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from < 50) {
+                long answer = 0;
+                for (int i = from; i <= to; i++) {
+                    answer += i;
+                }
+                return answer;
+            }
+            int middle = (from + to) / 2;
+            Sum left = new Sum(from, middle);
+            left.fork();
+            return new Sum(middle + 1, to).compute() + left.join();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import junit.framework.Assert;
+
+import org.apache.camel.impl.DefaultShutdownStrategy;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class WorkManagerPlacementPolicyTest {
+
+    private ExecutorWorkManager defaultWorkmanager = new ExecutorWorkManager();
+    private ExecutorWorkManager batchWorkmanager = new ExecutorWorkManager();
+    private WorkManagerPlacementPolicy policy = new WorkManagerPlacementPolicy();
+
+    @After
+    public void tearDown() {
+        defaultWorkmanager.shutdown();
+        batchWorkmanager.shutdown();
+    }
+
+    @Test
+    public void testFirstMatchingPlacementWins() throws Exception {
+        policy.addWorkmanager("batch", batchWorkmanager);
+        policy.addPlacement(placement("hot", null, null, WorkManagerPlacement.JDK));
+        policy.addPlacement(placement(null, null, "bulkRoute", "batch"));
+        policy.addPlacement(placement(null, "DefaultShutdownStrategy", null, WorkManagerPlacement.JDK));
+        policy.addPlacement(placement("hot", null, "bulkRoute", "batch"));
+
+        Assert.assertNull(policy.getWorkmanager("hot", null, "bulkRoute", defaultWorkmanager));
+        Assert.assertSame(batchWorkmanager, policy.getWorkmanager("other", null, "bulkRoute", defaultWorkmanager));
+        Assert.assertSame(defaultWorkmanager, policy.getWorkmanager("other", null, "otherRoute", defaultWorkmanager));
+        Assert.assertNull("Should match the super class", policy.getWorkmanager(null, new DefaultShutdownStrategy() {
+        }, null, defaultWorkmanager));
+    }
+
+    @Test
+    public void testUnknownWorkManager() throws Exception {
+        policy.addPlacement(placement(null, null, null, "unknown"));
+        try {
+            policy.getWorkmanager("any", null, null, defaultWorkmanager);
+            Assert.fail("Should have thrown an exception");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFactoryPlacesPoolsByProfile() throws Exception {
+        policy.addWorkmanager("batch", batchWorkmanager);
+        policy.addPlacement(placement("bulk", null, null, "batch"));
+        policy.addPlacement(placement("hot", null, null, WorkManagerPlacement.JDK));
+
+        WorkManagerThreadPoolFactory factory = new WorkManagerThreadPoolFactory();
+        factory.setWorkmanager(defaultWorkmanager);
+        factory.setPlacementPolicy(policy);
+        factory.getDefaultPoolProfile().setPoolType(WorkManagerPoolType.TASK);
+
+        ExecutorService bulk = factory.newThreadPool(WorkManagerTestHelper.profile("bulk", 1, 2), Executors.defaultThreadFactory());
+        Assert.assertSame(batchWorkmanager, ((WorkManagerExecutorService)bulk).getWorkmanager());
+        ExecutorService other = factory.newThreadPool(WorkManagerTestHelper.profile("other", 1, 2), Executors.defaultThreadFactory());
+        Assert.assertSame(defaultWorkmanager, ((WorkManagerExecutorService)other).getWorkmanager());
+        ExecutorService hot = factory.newThreadPool(WorkManagerTestHelper.profile("hot", 1, 2), Executors.defaultThreadFactory());
+        Assert.assertTrue("Should be a plain thread pool", hot instanceof ThreadPoolExecutor);
+        hot.shutdown();
+    }
+
+    private static WorkManagerPlacement placement(String profileId, String sourceType, String routeId, String workmanager) {
+        WorkManagerPlacement answer = new WorkManagerPlacement(workmanager);
+        answer.setProfileId(profileId);
+        answer.setSourceType(sourceType);
+        answer.setRouteId(routeId);
+        return answer;
+    }
+}
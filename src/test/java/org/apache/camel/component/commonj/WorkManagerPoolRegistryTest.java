@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class WorkManagerPoolRegistryTest {
+
+    private ExecutorWorkManager workmanager = new ExecutorWorkManager();
+    private WorkManagerThreadPoolFactory factory = new WorkManagerThreadPoolFactory();
+    private CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        for (WorkManagerPoolRegistry.RegisteredPool pool : factory.getPoolRegistry().getPools()) {
+            pool.getExecutor().shutdownNow();
+        }
+        factory.shutdown();
+        workmanager.shutdown();
+    }
+
+    @Test
+    public void testThreadPoolNumbers() throws Exception {
+        factory.setWorkmanager(workmanager);
+        ExecutorService pool = factory.newThreadPool(WorkManagerTestHelper.profile("busy", 1, 1), Executors.defaultThreadFactory());
+        CountDownLatch started = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            pool.execute(new WorkManagerTestHelper.Blocker(started, release));
+        }
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        WorkManagerPoolRegistry.PoolSnapshot snapshot = factory.getPoolRegistry().getSnapshot().get(0);
+        Assert.assertEquals("busy", snapshot.getThreadPoolProfileId());
+        Assert.assertEquals(1, snapshot.getActiveCount());
+        Assert.assertEquals(2, snapshot.getQueueSize());
+        Assert.assertEquals(1, snapshot.getSlotCount());
+        Assert.assertEquals(0, snapshot.getRejectedCount());
+
+        release.countDown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(3, factory.getPoolRegistry().getPool(pool).getCompletedTaskCount());
+    }
+
+    @Test
+    public void testJdkThreadsHoldNoSlots() throws Exception {
+        ExecutorService pool = factory.newThreadPool(WorkManagerTestHelper.profile("jdk", 1, 1), Executors.defaultThreadFactory());
+        CountDownLatch started = new CountDownLatch(1);
+        pool.execute(new WorkManagerTestHelper.Blocker(started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        WorkManagerPoolRegistry.RegisteredPool registered = factory.getPoolRegistry().getPool(pool);
+        Assert.assertEquals(1, registered.getActiveCount());
+        Assert.assertEquals(0, registered.getSlotCount());
+    }
+
+    @Test
+    public void testScheduledAndTaskPools() throws Exception {
+        factory.setWorkmanager(workmanager);
+        factory.getDefaultPoolProfile().setPoolType(WorkManagerPoolType.TASK);
+        ScheduledExecutorService scheduled = factory.newScheduledThreadPool(WorkManagerTestHelper.profile("timer", 1, 1), Executors.defaultThreadFactory());
+        ExecutorService tasks = factory.newCachedThreadPool(Executors.defaultThreadFactory());
+
+        CountDownLatch started = new CountDownLatch(2);
+        scheduled.schedule(new WorkManagerTestHelper.Blocker(started, release), 10, TimeUnit.MILLISECONDS);
+        tasks.execute(new WorkManagerTestHelper.Blocker(started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<WorkManagerPoolRegistry.PoolSnapshot> snapshot = factory.getPoolRegistry().getSnapshot();
+        Assert.assertEquals(2, snapshot.size());
+        for (WorkManagerPoolRegistry.PoolSnapshot pool : snapshot) {
+            Assert.assertEquals(pool.toString(), 1, pool.getActiveCount());
+            Assert.assertEquals(pool.toString(), 1, pool.getSlotCount());
+        }
+        Assert.assertEquals(2, factory.getPoolRegistry().getTotalSlotCount());
+        Assert.assertEquals("SizedScheduledExecutorService", factory.getPoolRegistry().getPool(scheduled).getType());
+        Assert.assertEquals("WorkManagerExecutorService", factory.getPoolRegistry().getPool(tasks).getType());
+    }
+
+    @Test
+    public void testRejectedCount() throws Exception {
+        ExecutorService pool = factory.newThreadPool(1, 1, 60, TimeUnit.SECONDS, 1, new ThreadPoolExecutor.AbortPolicy(), Executors.defaultThreadFactory());
+        CountDownLatch started = new CountDownLatch(1);
+        pool.execute(new WorkManagerTestHelper.Blocker(started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        pool.execute(new WorkManagerTestHelper.Blocker(started, release));
+        try {
+            pool.execute(new WorkManagerTestHelper.Blocker(started, release));
+            Assert.fail("Should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        Assert.assertEquals(1, factory.getPoolRegistry().getPool(pool).getRejectedCount());
+    }
+
+    @Test
+    public void testPoliciesAreLeftAlone() throws Exception {
+        RejectedExecutionHandler policy = new ThreadPoolExecutor.AbortPolicy();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), policy);
+        try {
+            WorkManagerPoolRegistry.RegisteredPool registered = factory.getPoolRegistry().register(pool, "jdk", null, null, null);
+            Assert.assertSame("Registry should not replace the policy of a pool", policy, pool.getRejectedExecutionHandler());
+            Assert.assertEquals("Rejections of a JDK pool are not counted", -1, registered.getRejectedCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTerminatedPoolsAreUnregistered() throws Exception {
+        ExecutorService first = factory.newThreadPool(WorkManagerTestHelper.profile("first", 1, 1), Executors.defaultThreadFactory());
+        ExecutorService second = factory.newThreadPool(WorkManagerTestHelper.profile("first", 1, 1), Executors.defaultThreadFactory());
+        Assert.assertEquals(2, factory.getPoolRegistry().getPoolCount());
+
+        first.shutdown();
+        Assert.assertTrue(first.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, factory.getPoolRegistry().getPoolCount());
+        Assert.assertNull(factory.getPoolRegistry().getPool(first));
+
+        factory.getPoolRegistry().unregister(second);
+        Assert.assertEquals(0, factory.getPoolRegistry().getPoolCount());
+    }
+}
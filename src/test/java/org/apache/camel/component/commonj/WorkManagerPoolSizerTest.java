@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.apache.camel.spi.ThreadPoolProfile;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class WorkManagerPoolSizerTest {
+
+    private WorkManagerPoolSizer sizer = new WorkManagerPoolSizer();
+    private WorkManagerThreadPoolExecutor executor = new WorkManagerThreadPoolExecutor("test", 1, 1, 60, TimeUnit.SECONDS,
+                                                                                       new LinkedBlockingQueue<Runnable>());
+
+    @After
+    public void tearDown() {
+        sizer.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testGrowsWhenTasksWaitAndShrinksWhenIdle() throws Exception {
+        // sample by hand
+        sizer.setInterval(Long.MAX_VALUE);
+        sizer.setTargetWaitTime(5);
+        sizer.register(executor, 1, 3);
+
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 5; i++) {
+            executor.execute(new WorkManagerTestHelper.Blocker(release));
+        }
+        sizer.sample();
+        Assert.assertEquals(2, executor.getCorePoolSize());
+        sizer.sample();
+        Assert.assertEquals(3, executor.getCorePoolSize());
+        sizer.sample();
+        Assert.assertEquals("Should not grow beyond its bounds", 3, executor.getCorePoolSize());
+
+        release.countDown();
+        waitForIdle();
+        for (int i = 0; i < 4; i++) {
+            sizer.sample();
+        }
+        Assert.assertEquals(1, executor.getCorePoolSize());
+        Assert.assertEquals(1, executor.getMaximumPoolSize());
+        Assert.assertTrue(sizer.getResizeCount() >= 4);
+    }
+
+    @Test
+    public void testMaxTotalThreads() throws Exception {
+        sizer.setInterval(Long.MAX_VALUE);
+        sizer.setMaxTotalThreads(2);
+        sizer.register(executor, 1, 10);
+
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 5; i++) {
+            executor.execute(new WorkManagerTestHelper.Blocker(release));
+        }
+        for (int i = 0; i < 5; i++) {
+            sizer.sample();
+        }
+        Assert.assertEquals(2, executor.getCorePoolSize());
+        Assert.assertEquals(2, sizer.getTotalThreads());
+        release.countDown();
+    }
+
+    @Test
+    public void testMaxTotalThreadsCountsTheOtherPools() throws Exception {
+        ExecutorWorkManager workmanager = new ExecutorWorkManager();
+        WorkManagerExecutorService other = new WorkManagerExecutorService(workmanager, "other");
+        WorkManagerPoolRegistry registry = new WorkManagerPoolRegistry();
+        registry.register(other, "other", null, null, null);
+        registry.register(executor, "test", null, null, null);
+        sizer.setPoolRegistry(registry);
+        sizer.setInterval(Long.MAX_VALUE);
+        sizer.setMaxTotalThreads(3);
+        sizer.register(executor, 1, 10);
+
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 2; i++) {
+                other.execute(new WorkManagerTestHelper.Blocker(release));
+            }
+            for (int i = 0; i < 5; i++) {
+                executor.execute(new WorkManagerTestHelper.Blocker(release));
+            }
+            for (int i = 0; i < 5; i++) {
+                sizer.sample();
+            }
+            Assert.assertEquals("Should not grow while the other pool holds threads", 1, executor.getCorePoolSize());
+            Assert.assertEquals(3, sizer.getTotalThreads());
+        } finally {
+            release.countDown();
+            workmanager.shutdown();
+        }
+    }
+
+    @Test
+    public void testFactoryRegistersAdaptivePools() throws Exception {
+        WorkManagerThreadPoolFactory factory = new WorkManagerThreadPoolFactory();
+        factory.setPoolSizer(sizer);
+        WorkManagerPoolProfile poolProfile = new WorkManagerPoolProfile("adaptive");
+        poolProfile.setAdaptive(true);
+        poolProfile.setAdaptiveMaxPoolSize(20);
+        factory.addPoolProfile(poolProfile);
+
+        ThreadPoolProfile profile = new ThreadPoolProfile("adaptive");
+        profile.setPoolSize(2);
+        profile.setMaxPoolSize(4);
+        profile.setKeepAliveTime(60L);
+        profile.setMaxQueueSize(100);
+        WorkManagerThreadPoolExecutor adaptive = (WorkManagerThreadPoolExecutor)factory.newThreadPool(profile, Executors.defaultThreadFactory());
+        Assert.assertEquals(1, sizer.getPoolCount());
+        Assert.assertEquals(2, sizer.getPools().get(0).getMinPoolSize());
+        Assert.assertEquals(20, sizer.getPools().get(0).getMaxPoolSize());
+
+        adaptive.shutdown();
+        sizer.sample();
+        Assert.assertEquals(0, sizer.getPoolCount());
+        factory.shutdown();
+    }
+
+    @Test
+    public void testFactoryRegistersAdaptivePoolsWithoutId() throws Exception {
+        WorkManagerThreadPoolFactory factory = new WorkManagerThreadPoolFactory();
+        factory.setPoolSizer(sizer);
+        factory.getDefaultPoolProfile().setAdaptive(true);
+
+        ThreadPoolProfile profile = new ThreadPoolProfile();
+        profile.setPoolSize(2);
+        profile.setMaxPoolSize(4);
+        profile.setKeepAliveTime(60L);
+        profile.setMaxQueueSize(100);
+        ExecutorService adaptive = factory.newThreadPool(profile, Executors.defaultThreadFactory());
+        Assert.assertTrue(adaptive instanceof WorkManagerThreadPoolExecutor);
+        Assert.assertEquals(1, sizer.getPoolCount());
+
+        adaptive.shutdown();
+        factory.shutdown();
+    }
+
+    private void waitForIdle() throws InterruptedException {
+        for (int i = 0; i < 100 && (executor.getActiveCount() > 0 || !executor.getQueue().isEmpty()); i++) {
+            Thread.sleep(10);
+        }
+    }
+}
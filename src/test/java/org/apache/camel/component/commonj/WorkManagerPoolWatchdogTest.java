@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class WorkManagerPoolWatchdogTest {
+
+    private WorkManagerThreadPoolFactory factory = new WorkManagerThreadPoolFactory();
+    private WorkManagerPoolWatchdog watchdog = new WorkManagerPoolWatchdog(factory.getPoolRegistry());
+    private ExecutorWorkManager workmanager;
+    private CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        for (WorkManagerPoolRegistry.RegisteredPool pool : factory.getPoolRegistry().getPools()) {
+            pool.getExecutor().shutdownNow();
+        }
+        factory.shutdown();
+        if (workmanager != null) {
+            workmanager.shutdown();
+        }
+    }
+
+    @Test
+    public void testNestedSubmissionDeadlock() throws Exception {
+        final ExecutorService pool = factory.newThreadPool(WorkManagerTestHelper.profile("nested", 1, 1), Executors.defaultThreadFactory());
+        Future<String> outer = pool.submit(new Callable<String>() {
+            public String call() throws Exception {
+                // waits on a task queued behind itself in a pool of one thread
+                return pool.submit(new Callable<String>() {
+                    public String call() {
+                        return "inner";
+                    }
+                }).get(10, TimeUnit.SECONDS);
+            }
+        });
+        for (int i = 0; i < 500 && watchdog.getDeadlockCount() == 0; i++) {
+            watchdog.check();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, watchdog.getDeadlockCount());
+        Assert.assertEquals(0, watchdog.getStallCount());
+        String report = watchdog.getLastReport();
+        Assert.assertTrue(report, report.contains("deadlocked"));
+        Assert.assertTrue(report, report.contains("1 threads wait on tasks queued in"));
+        Assert.assertTrue(report, report.contains("WorkManagerPoolWatchdogTest"));
+
+        // a lent thread runs the inner task
+        watchdog.setLendWork(true);
+        watchdog.check();
+        Assert.assertEquals(1, watchdog.getLoanCount());
+        Assert.assertEquals("inner", outer.get(5, TimeUnit.SECONDS));
+
+        // and is taken back once the queue drained
+        watchdog.check();
+        Assert.assertEquals(1, ((ThreadPoolExecutor)pool).getCorePoolSize());
+        Assert.assertEquals(1, ((ThreadPoolExecutor)pool).getMaximumPoolSize());
+    }
+
+    @Test
+    public void testStalledPool() throws Exception {
+        watchdog.setStallTime(100);
+        ExecutorService pool = factory.newThreadPool(WorkManagerTestHelper.profile("stalled", 1, 1), Executors.defaultThreadFactory());
+        CountDownLatch started = new CountDownLatch(1);
+        pool.execute(new WorkManagerTestHelper.Blocker(started, release));
+        pool.execute(new WorkManagerTestHelper.Blocker(started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        watchdog.check();
+        Assert.assertEquals(0, watchdog.getStallCount());
+        Thread.sleep(150);
+        watchdog.check();
+        Assert.assertEquals(1, watchdog.getStallCount());
+        Assert.assertEquals(0, watchdog.getDeadlockCount());
+        String report = watchdog.getLastReport();
+        Assert.assertTrue(report, report.contains("stalled"));
+        Assert.assertTrue(report, report.contains("CountDownLatch.await"));
+
+        // reported once per stall
+        watchdog.check();
+        Assert.assertEquals(1, watchdog.getStallCount());
+        release.countDown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPoolWithoutCompletedCountIsNotStalled() throws Exception {
+        watchdog.setStallTime(100);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        factory.getPoolRegistry().register(pool, "forkJoin", null, null, null);
+        CountDownLatch started = new CountDownLatch(1);
+        pool.execute(new WorkManagerTestHelper.Blocker(started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        pool.execute(new WorkManagerTestHelper.Blocker(release));
+
+        watchdog.check();
+        Thread.sleep(150);
+        watchdog.check();
+        Assert.assertEquals("A pool which does not count its completed tasks cannot be told stalled", 0, watchdog.getStallCount());
+    }
+
+    @Test
+    public void testThreadsWaitingForWorkManager() throws Exception {
+        watchdog.setStallTime(100);
+        workmanager = new ExecutorWorkManager(1);
+        CountDownLatch started = new CountDownLatch(1);
+        // takes the only WorkManager thread
+        workmanager.schedule(new WorkItem(new WorkManagerTestHelper.Blocker(started, release), "blocker"));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        factory.setWorkmanager(workmanager);
+        ExecutorService pool = factory.newThreadPool(WorkManagerTestHelper.profile("capped", 1, 1), Executors.defaultThreadFactory());
+        pool.execute(new WorkManagerTestHelper.Blocker(started, release));
+        pool.execute(new WorkManagerTestHelper.Blocker(started, release));
+
+        watchdog.check();
+        Thread.sleep(150);
+        watchdog.check();
+        Assert.assertEquals(1, watchdog.getStallCount());
+        String report = watchdog.getLastReport();
+        Assert.assertTrue(report, report.contains("1 threads wait for a WorkManager thread"));
+        Assert.assertTrue(watchdog.dumpPoolGraph(), watchdog.dumpPoolGraph().contains("threads=0, waiting=0, queued=1"));
+    }
+}
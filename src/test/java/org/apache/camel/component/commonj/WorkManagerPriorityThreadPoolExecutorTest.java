@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class WorkManagerPriorityThreadPoolExecutorTest {
+
+    private final List<String> runs = new CopyOnWriteArrayList<String>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private WorkManagerPriorityThreadPoolExecutor executor;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRunsByPriority() throws Exception {
+        executor = newExecutor(1000);
+        block();
+        executor.execute(new Task("low", 1));
+        executor.execute(new Task("high", 9));
+        executor.execute(new Task("normal", 4));
+        executor.execute(new Task("high2", 9));
+        Assert.assertEquals(2, executor.getQueueSize(9));
+        Assert.assertEquals(1, executor.getQueueSize(1));
+
+        release.countDown();
+        waitForRuns(4);
+        Assert.assertEquals("[high, high2, normal, low]", runs.toString());
+        Assert.assertEquals(0, executor.getQueueSize(9));
+        Assert.assertEquals(2, executor.getStatistics().get(9).getStartedCount());
+        Assert.assertTrue(executor.getStatistics().get(1).getMaxWaitTime() > 0);
+    }
+
+    @Test
+    public void testWaitingTasksAge() throws Exception {
+        executor = newExecutor(10);
+        block();
+        executor.execute(new Task("old", 0));
+        Thread.sleep(100);
+        executor.execute(new Task("new", 5));
+
+        release.countDown();
+        waitForRuns(2);
+        Assert.assertEquals("Should have aged beyond the newer task", "[old, new]", runs.toString());
+    }
+
+    @Test
+    public void testMaxQueueSize() throws Exception {
+        executor = new WorkManagerPriorityThreadPoolExecutor("test", 1, 60, TimeUnit.SECONDS, new TaskPriority(), 1, TimeUnit.SECONDS, 1);
+        executor.setRejectedExecutionHandler(new LoadSheddingRejectionPolicy());
+        block();
+        executor.execute(new Task("queued", 0));
+        Task rejected = new Task("rejected", 0);
+        try {
+            executor.execute(rejected);
+            Assert.fail("Should have thrown an exception");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        Assert.assertEquals(1, executor.getQueue().size());
+    }
+
+    private WorkManagerPriorityThreadPoolExecutor newExecutor(long agingInterval) {
+        return new WorkManagerPriorityThreadPoolExecutor("test", 1, 60, TimeUnit.SECONDS, new TaskPriority(), agingInterval, TimeUnit.MILLISECONDS, -1);
+    }
+
+    /**
+     * Occupies the single thread of the pool.
+     */
+    private void block() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private void waitForRuns(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && runs.size() < count; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(count, runs.size());
+    }
+
+    private static final class TaskPriority implements WorkManagerPriorityExtractor {
+        public int getPriority(Runnable task) {
+            return task instanceof Task ? ((Task)task).priority : 0;
+        }
+    }
+
+    private final class Task implements Runnable {
+        private final String name;
+        private final int priority;
+
+        private Task(String name, int priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        public void run() {
+            runs.add(name);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.apache.camel.util.concurrent.Rejectable;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class WorkManagerRejectionPolicyTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private WorkManagerThreadPoolExecutor executor = new WorkManagerThreadPoolExecutor("test", 1, 1, 60, TimeUnit.SECONDS,
+                                                                                       new LinkedBlockingQueue<Runnable>(1));
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testBlockingOfferQueuesOnceThereIsRoom() throws Exception {
+        BlockingOfferRejectionPolicy policy = new BlockingOfferRejectionPolicy(5000);
+        executor.setRejectedExecutionHandler(policy);
+        fill();
+
+        new Thread() {
+            public void run() {
+                pause(100);
+                release.countDown();
+            }
+        }.start();
+        executor.execute(new Task(new CountDownLatch(0)));
+        Assert.assertEquals(1, policy.getAcceptedCount());
+        Assert.assertTrue(policy.getBlockedTime() >= 50);
+        Assert.assertEquals(0, policy.getRejectedCount());
+    }
+
+    @Test
+    public void testBlockingOfferTimesOut() throws Exception {
+        BlockingOfferRejectionPolicy policy = new BlockingOfferRejectionPolicy(50);
+        executor.setRejectedExecutionHandler(policy);
+        fill();
+
+        RejectableTask task = new RejectableTask();
+        executor.execute(task);
+        Assert.assertTrue(task.rejected);
+        Assert.assertEquals(0, policy.getAcceptedCount());
+        Assert.assertEquals(1, policy.getRejectedCount());
+    }
+
+    @Test
+    public void testLoadSheddingUsesFallback() throws Exception {
+        final List<Runnable> fallback = new ArrayList<Runnable>();
+        LoadSheddingRejectionPolicy policy = new LoadSheddingRejectionPolicy(new RejectedExecutionHandler() {
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                fallback.add(runnable);
+            }
+        });
+        executor.setRejectedExecutionHandler(policy);
+        fill();
+
+        Runnable task = new RejectableTask();
+        executor.execute(task);
+        Assert.assertEquals(1, fallback.size());
+        Assert.assertSame(task, WorkManagerThreadPoolExecutor.unwrap(fallback.get(0)));
+        Assert.assertEquals(1, policy.getShedCount());
+        Assert.assertEquals(1, policy.getFallbackCount());
+    }
+
+    @Test
+    public void testLoadSheddingFallbackKeepsTheContext() throws Exception {
+        final AtomicReference<String> shed = new AtomicReference<String>();
+        final CountDownLatch ran = new CountDownLatch(1);
+        executor.setContextPropagators(new WorkManagerContextPropagator[] {new TestContextPropagator()});
+        executor.setRejectedExecutionHandler(new LoadSheddingRejectionPolicy(new RejectedExecutionHandler() {
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                // an overflow pool of its own
+                new Thread(runnable).start();
+            }
+        }));
+        fill();
+
+        TestContextPropagator.CONTEXT.set("submitter");
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    shed.set(TestContextPropagator.CONTEXT.get());
+                    ran.countDown();
+                }
+            });
+        } finally {
+            TestContextPropagator.CONTEXT.remove();
+        }
+        Assert.assertTrue(ran.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("The shed task should run with the context of the submitter", "submitter", shed.get());
+    }
+
+    @Test
+    public void testLoadSheddingDiscardsOldest() throws Exception {
+        LoadSheddingRejectionPolicy policy = new LoadSheddingRejectionPolicy();
+        policy.setDiscardOldest(true);
+        executor.setRejectedExecutionHandler(policy);
+        executor.execute(new Task(release));
+        RejectableTask oldest = new RejectableTask();
+        executor.execute(oldest);
+
+        RejectableTask task = new RejectableTask();
+        executor.execute(task);
+        Assert.assertTrue(oldest.rejected);
+        Assert.assertFalse(task.rejected);
+        Assert.assertEquals(1, executor.getQueue().size());
+        Assert.assertEquals(1, policy.getShedCount());
+    }
+
+    @Test
+    public void testQueueDelayRejectsEarly() throws Exception {
+        executor = new WorkManagerThreadPoolExecutor("test", 1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        QueueDelayRejectionPolicy policy = new QueueDelayRejectionPolicy(50);
+        executor.setRejectedExecutionHandler(policy);
+        fill();
+
+        executor.execute(new RejectableTask());
+        Assert.assertEquals("Should queue while the oldest task is fresh", 2, executor.getQueue().size());
+
+        Thread.sleep(100);
+        RejectableTask task = new RejectableTask();
+        executor.execute(task);
+        Assert.assertTrue(task.rejected);
+        Assert.assertEquals(1, policy.getEarlyRejectedCount());
+
+        try {
+            executor.execute(new Task(release));
+            Assert.fail("Should have thrown an exception");
+        } catch (RejectedExecutionException e) {
+            // expected, not rejectable
+        }
+        Assert.assertEquals(2, policy.getRejectedCount());
+    }
+
+    @Test
+    public void testSpilloverToWorkManagerUpToBurstLimit() throws Exception {
+        ExecutorWorkManager workmanager = new ExecutorWorkManager();
+        try {
+            SpilloverRejectionPolicy policy = new SpilloverRejectionPolicy(workmanager, 2);
+            executor.setRejectedExecutionHandler(policy);
+            fill();
+
+            CountDownLatch started = new CountDownLatch(2);
+            CountDownLatch spilled = new CountDownLatch(1);
+            executor.execute(new SpilledTask(started, spilled));
+            executor.execute(new SpilledTask(started, spilled));
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(2, policy.getActiveCount());
+
+            RejectableTask task = new RejectableTask();
+            executor.execute(task);
+            Assert.assertTrue("Should be rejected beyond the burst limit", task.rejected);
+            Assert.assertEquals(1, policy.getBurstExceededCount());
+
+            spilled.countDown();
+            for (int i = 0; i < 50 && policy.getActiveCount() > 0; i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(0, policy.getActiveCount());
+            Assert.assertEquals(2, policy.getSpilledCount());
+            Assert.assertEquals(1, executor.getPoolSize());
+        } finally {
+            workmanager.shutdown();
+        }
+    }
+
+    @Test
+    public void testSpilledOverTasksShareTheStatisticsOfThePool() throws Exception {
+        ExecutorWorkManager workmanager = new ExecutorWorkManager();
+        try {
+            InstrumentedWorkManager instrumented = new InstrumentedWorkManager(workmanager);
+            executor.setRejectedExecutionHandler(new SpilloverRejectionPolicy(instrumented, 2));
+            fill();
+
+            CountDownLatch started = new CountDownLatch(2);
+            CountDownLatch spilled = new CountDownLatch(0);
+            executor.execute(new SpilledTask(started, spilled));
+            executor.execute(new SpilledTask(started, spilled));
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, instrumented.getStatistics().size());
+            Assert.assertNotNull(instrumented.getStatistics("SpilloverWork[test]"));
+        } finally {
+            workmanager.shutdown();
+        }
+    }
+
+    @Test
+    public void testSpilloverRejectedByWorkManager() throws Exception {
+        ExecutorWorkManager workmanager = new ExecutorWorkManager();
+        workmanager.setRejectAll(true);
+        try {
+            SpilloverRejectionPolicy policy = new SpilloverRejectionPolicy(workmanager, 2);
+            executor.setRejectedExecutionHandler(policy);
+            fill();
+
+            RejectableTask task = new RejectableTask();
+            executor.execute(task);
+            for (int i = 0; i < 50 && !task.rejected; i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(task.rejected);
+            Assert.assertEquals(0, policy.getActiveCount());
+            Assert.assertEquals(1, policy.getRejectedCount());
+        } finally {
+            workmanager.shutdown();
+        }
+    }
+
+    @Test
+    public void testSpilledOverTaskKeepsItsContext() throws Exception {
+        ExecutorWorkManager workmanager = new ExecutorWorkManager();
+        try {
+            executor.setContextPropagators(new WorkManagerContextPropagator[] {new TestContextPropagator()});
+            executor.setRejectedExecutionHandler(new SpilloverRejectionPolicy(workmanager, 2));
+            fill();
+
+            final AtomicReference<String> spilled = new AtomicReference<String>();
+            final CountDownLatch ran = new CountDownLatch(1);
+            TestContextPropagator.CONTEXT.set("submitter");
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        spilled.set(TestContextPropagator.CONTEXT.get());
+                        ran.countDown();
+                    }
+                });
+            } finally {
+                TestContextPropagator.CONTEXT.remove();
+            }
+            Assert.assertTrue(ran.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals("The spilled over task should run with the context of the submitter", "submitter", spilled.get());
+        } finally {
+            workmanager.shutdown();
+        }
+    }
+
+    /**
+     * Occupies the thread and the queue of the pool.
+     */
+    private void fill() {
+        executor.execute(new Task(release));
+        executor.execute(new Task(new CountDownLatch(0)));
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Task implements Runnable {
+        private final CountDownLatch latch;
+
+        private Task(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        public void run() {
+            try {
+                latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class SpilledTask implements Runnable {
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        private SpilledTask(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        public void run() {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Propagates a thread local which the WorkManager threads do not inherit.
+     */
+    private static final class TestContextPropagator implements WorkManagerContextPropagator {
+        static final ThreadLocal<String> CONTEXT = new ThreadLocal<String>();
+
+        public Object capture() {
+            return CONTEXT.get();
+        }
+
+        public Object restore(Object snapshot) {
+            Object previous = CONTEXT.get();
+            CONTEXT.set((String)snapshot);
+            return previous;
+        }
+
+        public void reset(Object previous) {
+            CONTEXT.set((String)previous);
+        }
+    }
+
+    private static final class RejectableTask implements Runnable, Rejectable {
+        private volatile boolean rejected;
+
+        public void run() {
+        }
+
+        public void reject() {
+            rejected = true;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class WorkManagerSchedulerTest {
+
+    private ExecutorWorkManager workmanager = new ExecutorWorkManager();
+    private WorkManagerScheduler scheduler = new WorkManagerScheduler(workmanager, 2);
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+        workmanager.shutdown();
+    }
+
+    @Test
+    public void testManyPoolsShareTheWorkers() throws Exception {
+        scheduler.start();
+        final CountDownLatch latch = new CountDownLatch(400);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        for (int p = 0; p < 20; p++) {
+            ExecutorService executor = new WorkManagerVirtualExecutorService(scheduler, "pool" + p, 1, -1);
+            for (int i = 0; i < 20; i++) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        int current = running.incrementAndGet();
+                        if (current > maxRunning.get()) {
+                            maxRunning.set(current);
+                        }
+                        running.decrementAndGet();
+                        latch.countDown();
+                    }
+                });
+            }
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, workmanager.getScheduledCount());
+        Assert.assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testMaxConcurrencyAndQueueBound() throws Exception {
+        scheduler.start();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        WorkManagerVirtualExecutorService executor = new WorkManagerVirtualExecutorService(scheduler, "bounded", 1, 1);
+        executor.setCallerRunsWhenRejected(false);
+        executor.execute(new Runnable() {
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        final CountDownLatch queued = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                queued.countDown();
+            }
+        });
+        Assert.assertEquals(1, executor.getQueueSize());
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                }
+            });
+            Assert.fail("Should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        release.countDown();
+        Assert.assertTrue(queued.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStopRejectsQueuedTasks() throws Exception {
+        scheduler.start();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            scheduler.submit(new WorkManagerTestHelper.Blocker(started, release));
+        }
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        WorkFutureTask<String> queued = new WorkFutureTask<String>(new Runnable() {
+            public void run() {
+            }
+        }, "queued");
+        scheduler.submit(queued);
+        Assert.assertEquals(1, scheduler.getQueueSize());
+
+        scheduler.stop();
+        release.countDown();
+        try {
+            queued.get(5, TimeUnit.SECONDS);
+            Assert.fail("Should have been rejected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(0, scheduler.getQueueSize());
+    }
+
+    @Test
+    public void testStopsWhenWorkManagerReleasesAllWorkers() throws Exception {
+        scheduler.start();
+        for (int i = 0; i < 500 && scheduler.getIdleWorkers() < 2; i++) {
+            Thread.sleep(10);
+        }
+        // releases the running daemon works
+        workmanager.shutdown();
+        for (int i = 0; i < 500 && scheduler.isRunning(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(scheduler.isRunning());
+        Assert.assertEquals(0, scheduler.getAliveWorkers());
+
+        WorkManagerVirtualExecutorService executor = new WorkManagerVirtualExecutorService(scheduler, "orphan", 1, -1);
+        executor.setCallerRunsWhenRejected(false);
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                }
+            });
+            Assert.fail("Should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        Assert.assertEquals(0, executor.getActiveCount());
+    }
+}
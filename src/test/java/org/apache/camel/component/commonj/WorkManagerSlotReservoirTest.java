@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class WorkManagerSlotReservoirTest {
+
+    private ExecutorWorkManager workmanager = new ExecutorWorkManager();
+    private WorkManagerSlotReservoir reservoir = new WorkManagerSlotReservoir(workmanager, 2);
+    private ThreadPoolExecutor pool;
+
+    @After
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        reservoir.shutdown();
+        workmanager.shutdown();
+    }
+
+    @Test
+    public void testPrestartedWorksAreHandedOver() throws Exception {
+        reservoir.start();
+        waitForIdle(2);
+        Assert.assertEquals(2, workmanager.getScheduledCount());
+
+        pool = newPool(2);
+        pool.prestartAllCoreThreads();
+        runTasks(2);
+        Assert.assertEquals("Pool threads should not schedule new works", 2, workmanager.getScheduledCount());
+        Assert.assertEquals(2, reservoir.getHandOffCount());
+    }
+
+    @Test
+    public void testExitedThreadsReturnToReservoir() throws Exception {
+        reservoir.start();
+        waitForIdle(2);
+        pool = newPool(3);
+        pool.setKeepAliveTime(10, TimeUnit.MILLISECONDS);
+        pool.allowCoreThreadTimeOut(true);
+        runTasks(3);
+        waitForIdle(3);
+        Assert.assertEquals(3, workmanager.getScheduledCount());
+
+        runTasks(3);
+        Assert.assertEquals("Should reuse the idle works", 3, workmanager.getScheduledCount());
+    }
+
+    @Test
+    public void testIdleWorksAbovePrestartTimeOut() throws Exception {
+        reservoir.setKeepAliveTime(20);
+        reservoir.start();
+        waitForIdle(2);
+        pool = newPool(4);
+        pool.setKeepAliveTime(10, TimeUnit.MILLISECONDS);
+        pool.allowCoreThreadTimeOut(true);
+        runTasks(4);
+        for (int i = 0; i < 200 && reservoir.getCarrierCount() > 2; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Should keep the prestarted number of works", 2, reservoir.getCarrierCount());
+        Assert.assertEquals(2, reservoir.getIdleCount());
+    }
+
+    @Test
+    public void testShutdownNowInterruptsTask() throws Exception {
+        reservoir.start();
+        waitForIdle(2);
+        pool = newPool(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        pool.execute(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        pool.shutdownNow();
+        Assert.assertTrue("The work should have been interrupted", interrupted.await(5, TimeUnit.SECONDS));
+        waitForIdle(2);
+    }
+
+    @Test
+    public void testThreadsTakeTheSettingsOfTheFactory() throws Exception {
+        final CountDownLatch uncaught = new CountDownLatch(1);
+        final Thread.UncaughtExceptionHandler handler = new Thread.UncaughtExceptionHandler() {
+            public void uncaughtException(Thread thread, Throwable e) {
+                uncaught.countDown();
+            }
+        };
+        final AtomicInteger created = new AtomicInteger();
+        WorkManagerThreadFactory factory = new WorkManagerThreadFactory(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                created.incrementAndGet();
+                return new Thread(runnable);
+            }
+
+            public String toString() {
+                return "CamelThreadFactory[seda://foo]";
+            }
+        }, workmanager, true);
+        Assert.assertEquals("WorkManager thread #1 - seda://foo", factory.newThread(null).getName());
+        factory.setThreadNamePattern("Camel (camel-1) thread ##counter# - #name#");
+        factory.setPriority(Thread.MAX_PRIORITY);
+        factory.setUncaughtExceptionHandler(handler);
+        Thread thread = factory.newThread(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("Forced");
+            }
+        });
+        Assert.assertEquals("Camel (camel-1) thread #2 - seda://foo", thread.getName());
+        Assert.assertEquals(Thread.MAX_PRIORITY, thread.getPriority());
+        Assert.assertSame(handler, thread.getUncaughtExceptionHandler());
+        Assert.assertEquals("The delegate should not create threads", 0, created.get());
+
+        thread.start();
+        Assert.assertTrue("The handler should get what the task throws", uncaught.await(5, TimeUnit.SECONDS));
+    }
+
+    private ThreadPoolExecutor newPool(int size) {
+        ThreadPoolExecutor answer = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        answer.setThreadFactory(new WorkManagerThreadFactory(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "test");
+            }
+        }, reservoir, true));
+        return answer;
+    }
+
+    /**
+     * Runs tasks which wait for each other, so every task needs a thread.
+     */
+    private void runTasks(int count) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    latch.countDown();
+                    try {
+                        latch.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private void waitForIdle(int count) throws InterruptedException {
+        for (int i = 0; i < 200 && reservoir.getIdleCount() < count; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(count, reservoir.getIdleCount());
+    }
+}
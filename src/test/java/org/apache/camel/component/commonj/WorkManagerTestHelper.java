@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.spi.ThreadPoolProfile;
+
+import commonj.work.Work;
+
+/**
+ * Profiles and tasks shared by the pool tests.
+ */
+final class WorkManagerTestHelper {
+
+    private WorkManagerTestHelper() {
+    }
+
+    /**
+     * Creates a thread pool profile with a queue of 10 tasks.
+     */
+    static ThreadPoolProfile profile(String id, int poolSize, int maxPoolSize) {
+        ThreadPoolProfile answer = new ThreadPoolProfile(id);
+        answer.setPoolSize(poolSize);
+        answer.setMaxPoolSize(maxPoolSize);
+        answer.setKeepAliveTime(60L);
+        answer.setMaxQueueSize(10);
+        return answer;
+    }
+
+    /**
+     * A task, or WorkManager work, which blocks until it is released, for at
+     * most 5 seconds.
+     */
+    static final class Blocker implements Work {
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        Blocker(CountDownLatch release) {
+            this(null, release);
+        }
+
+        Blocker(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        public void run() {
+            if (started != null) {
+                started.countDown();
+            }
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public boolean isDaemon() {
+            return false;
+        }
+
+        public void release() {
+        }
+    }
+}
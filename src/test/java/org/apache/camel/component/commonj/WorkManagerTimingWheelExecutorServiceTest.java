@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkException;
+import commonj.work.WorkItem;
+import commonj.work.WorkListener;
+
+/**
+ * @version
+ */
+public class WorkManagerTimingWheelExecutorServiceTest {
+
+    private ExecutorWorkManager workmanager = new ExecutorWorkManager();
+    private WorkManagerTimingWheelExecutorService executor = new WorkManagerTimingWheelExecutorService(workmanager, "test", 5, 8);
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        workmanager.shutdown();
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        long start = System.currentTimeMillis();
+        ScheduledFuture<String> future = executor.schedule(new Callable<String>() {
+            public String call() throws Exception {
+                return "Bye World";
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        Assert.assertEquals("Bye World", future.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+        Assert.assertEquals(0, executor.getScheduledCount());
+    }
+
+    @Test
+    public void testHugeDelayDoesNotOverflow() throws Exception {
+        ScheduledFuture<?> future = executor.schedule(new Runnable() {
+            public void run() {
+                Assert.fail("Should not have run");
+            }
+        }, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        Thread.sleep(50);
+        Assert.assertFalse(future.isDone());
+        Assert.assertTrue(future.getDelay(TimeUnit.DAYS) > 365);
+        Assert.assertTrue(future.cancel(false));
+    }
+
+    @Test
+    public void testCancelRemovesFromWheel() throws Exception {
+        ScheduledFuture<?> future = executor.schedule(new Runnable() {
+            public void run() {
+                Assert.fail("Should have been cancelled");
+            }
+        }, 1, TimeUnit.HOURS);
+        // let the ticker move the task on the wheel
+        Thread.sleep(50);
+        Assert.assertEquals(1, executor.getScheduledCount());
+        Assert.assertTrue(future.cancel(false));
+        Assert.assertEquals(0, executor.getScheduledCount());
+    }
+
+    @Test
+    public void testFixedRate() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(5);
+        ScheduledFuture<?> future = executor.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, 0, 20, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        future.cancel(false);
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLateRejectionOfTheTickerRejectsTheTasks() throws Exception {
+        final AtomicReference<DefaultWorkItem> held = new AtomicReference<DefaultWorkItem>();
+        executor.shutdown();
+        workmanager.shutdown();
+        workmanager = new ExecutorWorkManager() {
+            public WorkItem schedule(Work work, WorkListener workListener) {
+                if (held.get() == null) {
+                    // accepts the first ticker, but reports the rejection later on
+                    held.set(new DefaultWorkItem(work, workListener));
+                    return held.get();
+                }
+                return super.schedule(work, workListener);
+            }
+        };
+        executor = new WorkManagerTimingWheelExecutorService(workmanager, "test", 5, 8);
+        ScheduledFuture<?> future = executor.schedule(new Runnable() {
+            public void run() {
+                Assert.fail("Should have been rejected");
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+
+        held.get().setStatus(WorkEvent.WORK_REJECTED, new WorkException("rejected"));
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("Should have been rejected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(0, executor.getScheduledCount());
+
+        // the next task starts a new ticker
+        ScheduledFuture<String> next = executor.schedule(new Callable<String>() {
+            public String call() throws Exception {
+                return "Bye World";
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        Assert.assertEquals("Bye World", next.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRejectedTaskDoesNotRunOnTheTicker() throws Exception {
+        executor.schedule(new Runnable() {
+            public void run() {
+            }
+        }, 0, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+        workmanager.setRejectAll(true);
+        final AtomicBoolean ran = new AtomicBoolean();
+        ScheduledFuture<?> future = executor.schedule(new Runnable() {
+            public void run() {
+                ran.set(true);
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("Should have been rejected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertFalse(ran.get());
+        Assert.assertTrue(executor.isTickerRunning());
+    }
+}
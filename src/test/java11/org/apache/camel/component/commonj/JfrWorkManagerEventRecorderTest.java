@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.commonj;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import junit.framework.Assert;
+
+import org.apache.camel.Exchange;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @version
+ */
+public class JfrWorkManagerEventRecorderTest {
+
+    private ExecutorWorkManager workmanager = new ExecutorWorkManager();
+
+    @After
+    public void tearDown() {
+        workmanager.shutdown();
+    }
+
+    @Test
+    public void testRecordsTaskWork() throws Exception {
+        Assert.assertTrue(WorkManagerEventRecorder.getInstance() instanceof JfrWorkManagerEventRecorder);
+        Assert.assertFalse("Should be disabled without a recording", WorkManagerEventRecorder.getInstance().isEnabled());
+
+        WorkManagerExecutorService executor = new WorkManagerExecutorService(workmanager, "task");
+        List<RecordedEvent> events = record(executor, "org.apache.camel.commonj.WorkScheduled",
+                                            "org.apache.camel.commonj.WorkStarted", "org.apache.camel.commonj.WorkCompleted");
+
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals("org.apache.camel.commonj.WorkScheduled", events.get(0).getEventType().getName());
+        Assert.assertEquals("org.apache.camel.commonj.WorkCompleted", events.get(2).getEventType().getName());
+        Assert.assertTrue(events.get(2).getDuration("runTime").toMillis() >= 10);
+    }
+
+    @Test
+    public void testRecordsPoolThreads() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        try (Recording recording = new Recording()) {
+            recording.enable("org.apache.camel.commonj.WorkStarted");
+            recording.start();
+            new WorkManagerThreadWrapper(workmanager, new Sleeper(latch), "Camel (camel-1) thread #3 - seda://foo").start();
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            recording.stop();
+            Assert.assertEquals(1, read(recording, "Camel (camel-1) thread - seda://foo").size());
+        }
+    }
+
+    @Test
+    public void testRecordsPoolTasksWithTheirRoute() throws Exception {
+        WorkManagerThreadPoolExecutor pool = new WorkManagerThreadPoolExecutor("routed", 1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        try (Recording recording = new Recording()) {
+            recording.enable("org.apache.camel.commonj.WorkScheduled");
+            recording.enable("org.apache.camel.commonj.WorkStarted");
+            recording.enable("org.apache.camel.commonj.WorkCompleted");
+            recording.start();
+            Exchange previous = WorkManagerExchangeBinding.bind(exchange("route1"));
+            Future<?> future;
+            try {
+                future = pool.submit(new Sleeper(new CountDownLatch(1)));
+            } finally {
+                WorkManagerExchangeBinding.restore(previous);
+            }
+            future.get(5, TimeUnit.SECONDS);
+            Thread.sleep(50);
+            recording.stop();
+            List<RecordedEvent> events = read(recording, "routed");
+            Assert.assertEquals(3, events.size());
+            for (RecordedEvent event : events) {
+                Assert.assertEquals("route1", event.getString("routeId"));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRecordsRejected() throws Exception {
+        workmanager.setRejectAll(true);
+        WorkManagerExecutorService executor = new WorkManagerExecutorService(workmanager, "rejected");
+        executor.setCallerRunsWhenRejected(false);
+        try (Recording recording = new Recording()) {
+            recording.enable("org.apache.camel.commonj.WorkRejected");
+            recording.start();
+            try {
+                executor.submit(new Sleeper(new CountDownLatch(1))).get(5, TimeUnit.SECONDS);
+                Assert.fail("Should have been rejected");
+            } catch (Exception e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            recording.stop();
+            Assert.assertEquals(1, read(recording, "rejected").size());
+        }
+    }
+
+    private List<RecordedEvent> record(WorkManagerExecutorService executor, String... names) throws Exception {
+        try (Recording recording = new Recording()) {
+            for (String name : names) {
+                recording.enable(name);
+            }
+            recording.start();
+            executor.submit(new Sleeper(new CountDownLatch(1))).get(5, TimeUnit.SECONDS);
+            Thread.sleep(50);
+            recording.stop();
+            return read(recording, executor.getName());
+        }
+    }
+
+    /**
+     * Reads the events of the pool in the order they happened. A dump may
+     * hold events of earlier recordings as well.
+     */
+    private static List<RecordedEvent> read(Recording recording, String pool) throws Exception {
+        File file = File.createTempFile("commonj", ".jfr");
+        try {
+            recording.dump(file.toPath());
+            List<RecordedEvent> answer = new ArrayList<RecordedEvent>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                if (recording.getSettings().containsKey(event.getEventType().getName() + "#enabled") && pool.equals(event.getString("pool"))) {
+                    answer.add(event);
+                }
+            }
+            Collections.sort(answer, new Comparator<RecordedEvent>() {
+                public int compare(RecordedEvent event1, RecordedEvent event2) {
+                    return event1.getStartTime().compareTo(event2.getStartTime());
+                }
+            });
+            return answer;
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static Exchange exchange(final String routeId) {
+        return (Exchange)Proxy.newProxyInstance(Exchange.class.getClassLoader(), new Class<?>[] {Exchange.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return "getFromRouteId".equals(method.getName()) ? routeId : null;
+            }
+        });
+    }
+
+    private static final class Sleeper implements Runnable {
+        private final CountDownLatch latch;
+
+        private Sleeper(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        public void run() {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            latch.countDown();
+        }
+    }
+}